@@ -50,6 +50,8 @@ CREATE TABLE PoisePMS (
     FOREIGN KEY (Customer_id) REFERENCES Customer(Customer_id)
 );
 
+-- Indexes for the listing queries are added by the application on startup (see "src/SchemaMigrator.java").
+
 -- -- // ================= Insert Values ================= //
 
 
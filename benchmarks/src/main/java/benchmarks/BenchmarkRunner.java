@@ -0,0 +1,36 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so each result comes with its allocation rate, and
+ * writes them to jmh-result.json for comparing runs.
+ *
+ * <p>Takes the usual JMH command line, so for example {@code -p projects=10000,100000} seeds only
+ * some sizes and a pattern such as {@code findProject} runs only the benchmarks matching it.</p>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(DataAccessBenchmark.class.getSimpleName());
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON).result("jmh-result.json");
+        }
+
+        new Runner(options.build()).run();
+    }
+}
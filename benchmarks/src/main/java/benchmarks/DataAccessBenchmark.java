@@ -0,0 +1,165 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks every data-access path of the project service against a seeded database. The console
+ * methods only print what these return, so the service methods behind them are measured instead.
+ *
+ * <p>Each benchmark runs in its own fork, so the writes of one never change the data another reads.
+ * The finalize and delete benchmarks use up rows as they go; once a project is finalized or deleted
+ * a later call on it measures the not-found or already-finalized path, which is why they pick
+ * numbers from the whole range rather than walking it in order.</p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataAccessBenchmark {
+
+    /**
+     * The random stream of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+
+        final SplittableRandom random = new SplittableRandom();
+
+        int projectNum(SeededDatabase database) {
+            return random.nextInt(1, database.projects + 1);
+        }
+    }
+
+    /**
+     * Project numbers for new projects, above every seeded number.
+     */
+    @State(Scope.Benchmark)
+    public static class NewProjectNumbers {
+
+        AtomicInteger next;
+
+        @Setup(Level.Trial)
+        public void setUp(SeededDatabase database) {
+            next = new AtomicInteger(database.projects + 1);
+        }
+    }
+
+    /**
+     * Projects added before each iteration for the delete benchmark to remove, so it always has
+     * something to delete without running down the seeded rows the size parameter describes.
+     */
+    @State(Scope.Benchmark)
+    public static class DisposableProjects {
+
+        static final int PER_ITERATION = 20_000;
+
+        AtomicInteger next;
+        int end;
+
+        @Setup(Level.Iteration)
+        public void setUp(SeededDatabase database, NewProjectNumbers numbers) throws Throwable {
+            int first = numbers.next.getAndAdd(PER_ITERATION);
+            List<Object> batch = new ArrayList<>(PER_ITERATION);
+            for (int projectNum = first; projectNum < first + PER_ITERATION; projectNum++) {
+                batch.add(newProject(database, projectNum, existingPerson(1), existingPerson(1), existingPerson(1)));
+            }
+            for (Object details : batch) {
+                Object stored = (Object) Targets.ADD_PROJECT.invokeExact(database.service, details);
+            }
+            next = new AtomicInteger(first);
+            end = first + PER_ITERATION;
+        }
+    }
+
+    @Benchmark
+    public Object findProject(SeededDatabase database, ThreadRandom random) throws Throwable {
+        return (Object) Targets.FIND_PROJECT.invokeExact(database.service, random.projectNum(database));
+    }
+
+    @Benchmark
+    public Object findProjectUncached(SeededDatabase database, ThreadRandom random) throws Throwable {
+        int projectNum = random.projectNum(database);
+        Targets.INVALIDATE_CACHED_PROJECT.invokeExact(projectNum);
+        return (Object) Targets.FIND_PROJECT.invokeExact(database.service, projectNum);
+    }
+
+    @Benchmark
+    public long incompleteProjects(SeededDatabase database) throws Throwable {
+        try (Stream<?> listing = (Stream<?>) Targets.INCOMPLETE_PROJECTS.invokeExact(database.service)) {
+            return listing.count();
+        }
+    }
+
+    @Benchmark
+    public long overdueProjects(SeededDatabase database) throws Throwable {
+        try (Stream<?> listing = (Stream<?>) Targets.OVERDUE_PROJECTS.invokeExact(database.service, database.today)) {
+            return listing.count();
+        }
+    }
+
+    @Benchmark
+    public Object addProjectWithNewPeople(SeededDatabase database, NewProjectNumbers numbers) throws Throwable {
+        int projectNum = numbers.next.getAndIncrement();
+        Object details = newProject(database, projectNum,
+                newPerson("Customer", projectNum), newPerson("Architect", projectNum), newPerson("Contractor", projectNum));
+        return (Object) Targets.ADD_PROJECT.invokeExact(database.service, details);
+    }
+
+    @Benchmark
+    public Object addProjectWithExistingPeople(SeededDatabase database, NewProjectNumbers numbers, ThreadRandom random) throws Throwable {
+        int personId = random.random.nextInt(1, SeededDatabase.PERSONS_PER_TABLE + 1);
+        Object details = newProject(database, numbers.next.getAndIncrement(),
+                existingPerson(personId), existingPerson(personId), existingPerson(personId));
+        return (Object) Targets.ADD_PROJECT.invokeExact(database.service, details);
+    }
+
+    @Benchmark
+    public Object finalizeProject(SeededDatabase database, ThreadRandom random) throws Throwable {
+        return (Object) Targets.FINALIZE_PROJECT.invokeExact(database.service, random.projectNum(database));
+    }
+
+    @Benchmark
+    public boolean deleteProject(SeededDatabase database, DisposableProjects disposable) throws Throwable {
+        int projectNum = disposable.next.getAndIncrement();
+        if (projectNum >= disposable.end) {
+            // Used up before the iteration ended; measure the not-found path for the rest of it
+            projectNum = Integer.MAX_VALUE;
+        }
+        return (boolean) Targets.DELETE_PROJECT.invokeExact(database.service, projectNum);
+    }
+
+    private static Object newProject(SeededDatabase database, int projectNum,
+                                     Object customer, Object architect, Object contractor) throws Throwable {
+        Object project = (Object) Targets.NEW_PROJECT.invokeExact(projectNum, "Benchmark " + projectNum, "House",
+                projectNum + " Bench Rd", 1234, 500_000, 0, database.today.plusDays(90), 0, 0, 0, false,
+                (java.time.LocalDate) null);
+        return (Object) Targets.NEW_PROJECT_DETAILS.invokeExact(project, customer, architect, contractor);
+    }
+
+    private static Object newPerson(String table, int projectNum) throws Throwable {
+        return (Object) Targets.NEW_PERSON.invokeExact(0, table + " " + projectNum, "555-123-4567",
+                table.toLowerCase() + projectNum + "@bench.example.com", projectNum + " Bench Rd");
+    }
+
+    private static Object existingPerson(int id) throws Throwable {
+        return (Object) Targets.NEW_PERSON.invokeExact(id, (String) null, (String) null, (String) null, (String) null);
+    }
+}
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks the read paths of the project service routed through a {@link Targets#REPLICA_ROUTER}
+ * to embedded databases standing in for read replicas. The replicas are seeded with the same rows
+ * as the primary, so every read returns the same result wherever it goes. With no replicas every
+ * read goes to the primary, which is the baseline to compare against.
+ *
+ * <p>Runs with several threads, since spreading reads only pays off when they compete for connections.</p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ReplicaRoutingBenchmark {
+
+    /**
+     * A seeded primary and its replicas, with a service that reads through the router.
+     */
+    @State(Scope.Benchmark)
+    public static class ReplicatedDatabase {
+
+        @Param({"10000", "100000"})
+        public int projects;
+
+        @Param({"0", "1", "2"})
+        public int replicas;
+
+        Object primary;
+        Object router;
+        Object service;
+        LocalDate today;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            today = LocalDate.now();
+            primary = SeededDatabase.newSeededPool(projects, today);
+            service = (Object) Targets.NEW_SERVICE.invokeExact(primary);
+
+            if (replicas > 0) {
+                List<Object> replicaPools = new ArrayList<>(replicas);
+                for (int i = 0; i < replicas; i++) {
+                    replicaPools.add(SeededDatabase.newSeededPool(projects, today));
+                }
+                router = (Object) Targets.NEW_REPLICA_ROUTER.invokeExact(primary, replicaPools, 5_000L);
+                Targets.START_REPLICA_ROUTER.invokeExact(router, 5_000L);
+                Targets.SET_REPLICA_ROUTER.invokeExact(service, router);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Throwable {
+            if (router != null) {
+                Targets.CLOSE_REPLICA_ROUTER.invokeExact(router);
+            }
+            Targets.CLOSE_POOL.invokeExact(primary);
+        }
+    }
+
+    /**
+     * The random stream of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public Object findProjectUncached(ReplicatedDatabase database, ThreadRandom random) throws Throwable {
+        int projectNum = random.random.nextInt(1, database.projects + 1);
+        Targets.INVALIDATE_CACHED_PROJECT.invokeExact(projectNum);
+        return (Object) Targets.FIND_PROJECT.invokeExact(database.service, projectNum);
+    }
+
+    @Benchmark
+    public long incompleteProjects(ReplicatedDatabase database) throws Throwable {
+        try (Stream<?> listing = (Stream<?>) Targets.INCOMPLETE_PROJECTS.invokeExact(database.service)) {
+            return listing.count();
+        }
+    }
+
+    @Benchmark
+    public long overdueProjects(ReplicatedDatabase database) throws Throwable {
+        try (Stream<?> listing = (Stream<?>) Targets.OVERDUE_PROJECTS.invokeExact(database.service, database.today)) {
+            return listing.count();
+        }
+    }
+}
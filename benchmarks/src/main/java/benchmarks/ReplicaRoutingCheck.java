@@ -0,0 +1,120 @@
+package benchmarks;
+
+import org.h2.tools.Server;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Checks what the replica router promises, against two embedded databases: a primary, and a replica
+ * served over TCP so it can be taken down and brought back. Both are seeded with the same rows, and a
+ * project is then finalized on the primary only, so the incomplete listing tells which database
+ * answered it.
+ *
+ * <ul>
+ *     <li>Read-your-writes: the thread that finalized the project reads from the primary, while
+ *     another thread still reads the replica, until the window has passed.</li>
+ *     <li>Failover: with the replica's server stopped, listings come from the primary.</li>
+ *     <li>Recovery: once the server is back, the health check returns the replica to use.</li>
+ * </ul>
+ *
+ * <p>Not a benchmark, so it is run on its own:
+ * {@code java -cp benchmarks/target/benchmarks.jar benchmarks.ReplicaRoutingCheck}. It exits with
+ * status 1 if any check fails.</p>
+ */
+public class ReplicaRoutingCheck {
+
+    private static final int PROJECTS = 2_000;
+    private static final long READ_YOUR_WRITES_MILLIS = 1_000;
+    private static final long HEALTH_CHECK_MILLIS = 100;
+
+    private static int failures;
+
+    public static void main(String[] args) throws Throwable {
+        LocalDate today = LocalDate.now();
+        Object primary = SeededDatabase.newSeededPool(PROJECTS, today);
+        String replicaName = SeededDatabase.newSeededDatabase(PROJECTS, today);
+
+        Server server = Server.createTcpServer("-tcpPort", "0").start();
+        int port = server.getPort();
+        String replicaUrl = "jdbc:h2:tcp://localhost:" + port + "/mem:" + replicaName + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        Object replica = (Object) Targets.NEW_POOL.invokeExact(replicaUrl, "sa", "", 2);
+
+        Object router = (Object) Targets.NEW_REPLICA_ROUTER.invokeExact(primary, List.of(replica), READ_YOUR_WRITES_MILLIS);
+        Object service = (Object) Targets.NEW_SERVICE.invokeExact(primary);
+        Targets.SET_REPLICA_ROUTER.invokeExact(service, router);
+        Targets.START_REPLICA_ROUTER.invokeExact(router, HEALTH_CHECK_MILLIS);
+        try {
+            long seeded = incomplete(service);
+            int projectNum = firstIncomplete(service);
+            Object outcome = (Object) Targets.FINALIZE_PROJECT.invokeExact(service, projectNum);
+            System.out.println("Finalized project " + projectNum + " on the primary: " + outcome);
+
+            // Read-your-writes
+            check("the writer reads its write from the primary", incomplete(service), seeded - 1);
+            check("another session reads the replica", incompleteOnOtherThread(service), seeded);
+            Thread.sleep(READ_YOUR_WRITES_MILLIS + 100);
+            check("the writer reads the replica once the window has passed", incomplete(service), seeded);
+
+            // Failover
+            server.stop();
+            check("listings fail over to the primary", incomplete(service), seeded - 1);
+            check("the replica is marked down", (int) Targets.HEALTHY_REPLICA_COUNT.invokeExact(router), 0);
+
+            // Recovery
+            server = Server.createTcpServer("-tcpPort", String.valueOf(port)).start();
+            long deadline = System.currentTimeMillis() + 5_000;
+            while ((int) Targets.HEALTHY_REPLICA_COUNT.invokeExact(router) == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(HEALTH_CHECK_MILLIS);
+            }
+            check("the replica is back after the health check", (int) Targets.HEALTHY_REPLICA_COUNT.invokeExact(router), 1);
+            check("listings read the replica again", incomplete(service), seeded);
+            System.out.println(router);
+        } finally {
+            Targets.CLOSE_REPLICA_ROUTER.invokeExact(router);
+            Targets.CLOSE_POOL.invokeExact(primary);
+            server.stop();
+        }
+
+        System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void check(String name, long actual, long expected) {
+        if (actual == expected) {
+            System.out.println("ok    " + name);
+        } else {
+            System.out.println("FAIL  " + name + ": got " + actual + ", expected " + expected);
+            failures++;
+        }
+    }
+
+    private static long incomplete(Object service) throws Throwable {
+        try (Stream<?> listing = (Stream<?>) Targets.INCOMPLETE_PROJECTS.invokeExact(service)) {
+            return listing.count();
+        }
+    }
+
+    private static int firstIncomplete(Object service) throws Throwable {
+        try (Stream<?> listing = (Stream<?>) Targets.INCOMPLETE_PROJECTS.invokeExact(service)) {
+            Object first = listing.findFirst().orElseThrow();
+            return (int) first.getClass().getMethod("projectNum").invoke(first);
+        }
+    }
+
+    private static long incompleteOnOtherThread(Object service) throws Exception {
+        AtomicLong count = new AtomicLong(-1);
+        Thread reader = new Thread(() -> {
+            try {
+                count.set(incomplete(service));
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        });
+        reader.start();
+        reader.join();
+        return count.get();
+    }
+}
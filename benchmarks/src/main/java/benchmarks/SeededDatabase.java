@@ -0,0 +1,156 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * An in-memory H2 database in MySQL mode with the tables of "Create-Database.sql", the schema
+ * migrations applied, and {@link #projects} seeded projects numbered 1 to projects. A third of the
+ * projects are finalized, and deadlines are spread over two years either side of today.
+ */
+@State(Scope.Benchmark)
+public class SeededDatabase {
+
+    static final int PERSONS_PER_TABLE = 1000;
+    private static final int SEED_BATCH_SIZE = 10_000;
+    private static final String[] PERSON_TABLES = {"Customer", "Architect", "Contractor"};
+
+    @Param({"10000", "100000", "1000000"})
+    public int projects;
+
+    Object pool;
+    Object service;
+    LocalDate today;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        today = LocalDate.now();
+        pool = newSeededPool(projects, today);
+        service = (Object) Targets.NEW_SERVICE.invokeExact(pool);
+    }
+
+    /**
+     * Creates and seeds a new in-memory database. The seed is fixed, so databases seeded with the same
+     * number of projects on the same day hold the same rows, and can stand in for a primary and its replicas.
+     *
+     * @return A connection pool on the database, with the schema migrations applied.
+     */
+    static Object newSeededPool(int projects, LocalDate today) throws Throwable {
+        String url = "jdbc:h2:mem:" + newSeededDatabase(projects, today) + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        Object pool = (Object) Targets.NEW_POOL.invokeExact(url, "sa", "", Runtime.getRuntime().availableProcessors());
+        int applied = (int) Targets.MIGRATE.invokeExact(pool);
+        return pool;
+    }
+
+    /**
+     * Creates and seeds a new in-memory database that stays open until the JVM exits, without a pool.
+     *
+     * @return The name of the database, as in jdbc:h2:mem:name.
+     */
+    static String newSeededDatabase(int projects, LocalDate today) throws IOException, SQLException {
+        String name = "bench" + System.nanoTime();
+        String url = "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+            createTables(connection);
+            seed(connection, projects, today);
+        }
+        return name;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Targets.CLOSE_POOL.invokeExact(pool);
+    }
+
+    /**
+     * Runs the CREATE TABLE statements of "Create-Database.sql", skipping its sample rows.
+     */
+    private static void createTables(Connection connection) throws IOException, SQLException {
+        String script;
+        try (InputStream in = SeededDatabase.class.getResourceAsStream("/Create-Database.sql")) {
+            if (in == null) {
+                throw new IOException("Create-Database.sql is not on the class path");
+            }
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : script.split(";")) {
+                String withoutComments = sql.replaceAll("(?m)^\\s*--.*$", "").trim();
+                if (withoutComments.toUpperCase().startsWith("CREATE TABLE")) {
+                    statement.execute(withoutComments);
+                }
+            }
+        }
+    }
+
+    private static void seed(Connection connection, int projects, LocalDate today) throws SQLException {
+        SplittableRandom random = new SplittableRandom(42);
+        connection.setAutoCommit(false);
+
+        for (String table : PERSON_TABLES) {
+            String insertSql = "INSERT INTO " + table + " (" + table + "_name, " + table + "_cell_num, "
+                    + table + "_email, " + table + "_address) VALUES (?, ?, ?, ?)";
+            try (PreparedStatement insertStatement = connection.prepareStatement(insertSql)) {
+                for (int i = 1; i <= PERSONS_PER_TABLE; i++) {
+                    insertStatement.setString(1, table + " " + i);
+                    insertStatement.setString(2, "555-000-" + i);
+                    insertStatement.setString(3, table.toLowerCase() + i + "@example.com");
+                    insertStatement.setString(4, i + " Main St");
+                    insertStatement.addBatch();
+                }
+                insertStatement.executeBatch();
+            }
+        }
+
+        String insertProjectSql = "INSERT INTO PoisePMS (Project_num, Project_name, Building_type, Physical_address, "
+                + "ERF_num, Total_fee, Total_paid, Project_deadline, Architect_id, Contractor_id, Customer_id, "
+                + "Finalized, Completion_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String[] buildingTypes = {"House", "Apartment", "Office", "Warehouse", "Retail"};
+
+        try (PreparedStatement insertStatement = connection.prepareStatement(insertProjectSql)) {
+            for (int projectNum = 1; projectNum <= projects; projectNum++) {
+                boolean finalized = random.nextInt(3) == 0;
+                LocalDate deadline = today.plusDays(random.nextInt(-730, 730));
+                insertStatement.setInt(1, projectNum);
+                insertStatement.setString(2, "Project " + projectNum);
+                insertStatement.setString(3, buildingTypes[random.nextInt(buildingTypes.length)]);
+                insertStatement.setString(4, projectNum + " Site Rd");
+                insertStatement.setInt(5, random.nextInt(1, 100_000));
+                insertStatement.setInt(6, random.nextInt(10_000, 1_000_000));
+                insertStatement.setInt(7, random.nextInt(0, 10_000));
+                insertStatement.setDate(8, java.sql.Date.valueOf(deadline));
+                insertStatement.setInt(9, random.nextInt(1, PERSONS_PER_TABLE + 1));
+                insertStatement.setInt(10, random.nextInt(1, PERSONS_PER_TABLE + 1));
+                insertStatement.setInt(11, random.nextInt(1, PERSONS_PER_TABLE + 1));
+                // Unfinalized projects keep Finalized NULL, as the console leaves them
+                insertStatement.setObject(12, finalized ? Boolean.TRUE : null);
+                insertStatement.setDate(13, finalized ? java.sql.Date.valueOf(deadline) : null);
+                insertStatement.addBatch();
+
+                if (projectNum % SEED_BATCH_SIZE == 0) {
+                    insertStatement.executeBatch();
+                    connection.commit();
+                }
+            }
+            insertStatement.executeBatch();
+            connection.commit();
+        }
+        connection.setAutoCommit(true);
+    }
+}
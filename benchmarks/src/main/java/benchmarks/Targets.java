@@ -0,0 +1,157 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * This class binds the application methods the benchmarks call. The application lives in the
+ * unnamed package, which a named package cannot import, and JMH does not accept benchmarks in the
+ * unnamed package, so the calls go through method handles. The handles are static final, so the
+ * JIT inlines them like direct calls; primitive parameters keep their type so nothing is boxed.
+ */
+final class Targets {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    static final Class<?> CONNECTION_POOL = load("ConnectionPool");
+    static final Class<?> PROJECT_SERVICE = load("ProjectService");
+    static final Class<?> PROJECT = load("Project");
+    static final Class<?> PERSON = load("Person");
+    static final Class<?> PROJECT_DETAILS = load("ProjectDetails");
+    static final Class<?> REPLICA_ROUTER = load("ReplicaRouter");
+
+    // new ConnectionPool(url, user, password, maxSize)
+    static final MethodHandle NEW_POOL = constructor(CONNECTION_POOL,
+            MethodType.methodType(Object.class, String.class, String.class, String.class, int.class),
+            String.class, String.class, String.class, int.class);
+
+    // ConnectionPool.close()
+    static final MethodHandle CLOSE_POOL = virtual(CONNECTION_POOL, "close",
+            MethodType.methodType(void.class, Object.class), void.class);
+
+    // new ProjectService(pool)
+    static final MethodHandle NEW_SERVICE = constructor(PROJECT_SERVICE,
+            MethodType.methodType(Object.class, Object.class), CONNECTION_POOL);
+
+    // new ReplicaRouter(primary, replicaPools, readYourWritesMillis)
+    static final MethodHandle NEW_REPLICA_ROUTER = constructor(REPLICA_ROUTER,
+            MethodType.methodType(Object.class, Object.class, List.class, long.class),
+            CONNECTION_POOL, List.class, long.class);
+
+    // router.start(healthCheckMillis)
+    static final MethodHandle START_REPLICA_ROUTER = virtual(REPLICA_ROUTER, "start",
+            MethodType.methodType(void.class, Object.class, long.class), void.class, long.class);
+
+    // router.close()
+    static final MethodHandle CLOSE_REPLICA_ROUTER = virtual(REPLICA_ROUTER, "close",
+            MethodType.methodType(void.class, Object.class), void.class);
+
+    // router.getHealthyReplicaCount()
+    static final MethodHandle HEALTHY_REPLICA_COUNT = virtual(REPLICA_ROUTER, "getHealthyReplicaCount",
+            MethodType.methodType(int.class, Object.class), int.class);
+
+    // service.setReplicaRouter(router)
+    static final MethodHandle SET_REPLICA_ROUTER = virtual(PROJECT_SERVICE, "setReplicaRouter",
+            MethodType.methodType(void.class, Object.class, Object.class), void.class, REPLICA_ROUTER);
+
+    // SchemaMigrator.migrate(pool)
+    static final MethodHandle MIGRATE = staticMethod(load("SchemaMigrator"), "migrate",
+            MethodType.methodType(int.class, Object.class), int.class, CONNECTION_POOL);
+
+    // ProjectInfoFetcher.getProjectCache().invalidate(projectNum)
+    static final MethodHandle INVALIDATE_CACHED_PROJECT = invalidateCachedProject();
+
+    // service.findProject(projectNum)
+    static final MethodHandle FIND_PROJECT = virtual(PROJECT_SERVICE, "findProject",
+            MethodType.methodType(Object.class, Object.class, int.class), PROJECT_DETAILS, int.class);
+
+    // service.incompleteProjects()
+    static final MethodHandle INCOMPLETE_PROJECTS = virtual(PROJECT_SERVICE, "incompleteProjects",
+            MethodType.methodType(Stream.class, Object.class), Stream.class);
+
+    // service.overdueProjects(today)
+    static final MethodHandle OVERDUE_PROJECTS = virtual(PROJECT_SERVICE, "overdueProjects",
+            MethodType.methodType(Stream.class, Object.class, LocalDate.class), Stream.class, LocalDate.class);
+
+    // service.addProject(details)
+    static final MethodHandle ADD_PROJECT = virtual(PROJECT_SERVICE, "addProject",
+            MethodType.methodType(Object.class, Object.class, Object.class), PROJECT_DETAILS, PROJECT_DETAILS);
+
+    // service.finalizeProject(projectNum)
+    static final MethodHandle FINALIZE_PROJECT = virtual(PROJECT_SERVICE, "finalizeProject",
+            MethodType.methodType(Object.class, Object.class, int.class), load("FinalizeProject$Outcome"), int.class);
+
+    // service.deleteProject(projectNum)
+    static final MethodHandle DELETE_PROJECT = virtual(PROJECT_SERVICE, "deleteProject",
+            MethodType.methodType(boolean.class, Object.class, int.class), boolean.class, int.class);
+
+    // new Person(id, name, cellNum, email, address)
+    static final MethodHandle NEW_PERSON = constructor(PERSON,
+            MethodType.methodType(Object.class, int.class, String.class, String.class, String.class, String.class),
+            int.class, String.class, String.class, String.class, String.class);
+
+    // new Project(projectNum, ..., finalized, completionDate)
+    static final MethodHandle NEW_PROJECT = constructor(PROJECT,
+            MethodType.methodType(Object.class, int.class, String.class, String.class, String.class, int.class,
+                    int.class, int.class, LocalDate.class, int.class, int.class, int.class, boolean.class, LocalDate.class),
+            int.class, String.class, String.class, String.class, int.class, int.class, int.class, LocalDate.class,
+            int.class, int.class, int.class, boolean.class, LocalDate.class);
+
+    // new ProjectDetails(project, customer, architect, contractor)
+    static final MethodHandle NEW_PROJECT_DETAILS = constructor(PROJECT_DETAILS,
+            MethodType.methodType(Object.class, Object.class, Object.class, Object.class, Object.class),
+            PROJECT, PERSON, PERSON, PERSON);
+
+    private Targets() {
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> type, MethodType callType, Class<?>... parameterTypes) {
+        try {
+            return LOOKUP.findConstructor(type, MethodType.methodType(void.class, parameterTypes)).asType(callType);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> type, String name, MethodType callType,
+                                        Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            return LOOKUP.findVirtual(type, name, MethodType.methodType(returnType, parameterTypes)).asType(callType);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle staticMethod(Class<?> type, String name, MethodType callType,
+                                             Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            return LOOKUP.findStatic(type, name, MethodType.methodType(returnType, parameterTypes)).asType(callType);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle invalidateCachedProject() {
+        try {
+            Class<?> cacheType = load("ProjectCache");
+            Object cache = LOOKUP.findStatic(load("ProjectInfoFetcher"), "getProjectCache",
+                    MethodType.methodType(cacheType)).invoke();
+            return LOOKUP.findVirtual(cacheType, "invalidate", MethodType.methodType(void.class, int.class))
+                    .bindTo(cache);
+        } catch (Throwable e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,436 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * This class holds the settings of the application, so a deployment is configured without
+ * recompiling. Each setting is looked up, first match wins, in:
+ *
+ * <ol>
+ *     <li>a command-line flag, such as {@code --pool.size=20};</li>
+ *     <li>an environment variable, the key in capitals with dots and dashes as underscores and
+ *     POISEPMS_ in front, such as {@code POISEPMS_POOL_SIZE};</li>
+ *     <li>the properties file named by {@code --config=...} or POISEPMS_CONFIG, or
+ *     {@code poisepms.properties} in the working directory if there is one;</li>
+ *     <li>the default below.</li>
+ * </ol>
+ *
+ * <p>Every setting is checked when the configuration is loaded, and all problems are reported together
+ * before anything connects, so a misconfigured deployment stops straight away. The database URL, user
+ * and password have no default.</p>
+ *
+ * <p>Settings marked reloadable are picked up while running: the properties file is checked for changes
+ * at an interval, and the listeners are told which settings changed. A change to any other setting is
+ * reported and takes effect on the next start. A file that no longer loads is reported and ignored.</p>
+ */
+public class AppConfig {
+
+    static final String DEFAULT_FILE = "poisepms.properties";
+    private static final String ENV_PREFIX = "POISEPMS_";
+
+    /**
+     * What a setting holds, and so how it is checked.
+     */
+    enum Kind {
+        STRING,
+        INT,
+        LONG,
+        PATH,
+        LIST,
+        BOOLEAN
+    }
+
+    /**
+     * A known setting.
+     *
+     * @param key          The key, as in the properties file.
+     * @param defaultValue The value when it is not set; null if it must be set, or "" if it may be left empty.
+     * @param kind         What it holds.
+     * @param min          The smallest allowed number, for INT and LONG.
+     * @param reloadable   Whether a change takes effect without a restart.
+     */
+    record Setting(String key, String defaultValue, Kind kind, long min, boolean reloadable) {
+
+        String envName() {
+            return ENV_PREFIX + key.toUpperCase(Locale.ROOT).replace('.', '_').replace('-', '_');
+        }
+    }
+
+    static final Map<String, Setting> SETTINGS = new LinkedHashMap<>();
+
+    static {
+        // Data source
+        define("db.url", null, Kind.STRING, 0, false);
+        define("db.user", null, Kind.STRING, 0, false);
+        define("db.password", null, Kind.STRING, 0, false);
+        define("pool.size", "10", Kind.INT, 1, false);
+        define("pool.connection-timeout-millis", "30000", Kind.LONG, 1, true);
+        define("pool.leak-detection-millis", "0", Kind.LONG, 0, true);
+        define("pool.statement-cache-size", "50", Kind.INT, 0, false);
+
+        // Read replicas
+        define("replicas.urls", "", Kind.LIST, 0, false);
+        define("replicas.pool-size", "10", Kind.INT, 1, false);
+        define("replicas.read-your-writes-millis", "5000", Kind.LONG, 0, false);
+        define("replicas.health-check-millis", "5000", Kind.LONG, 1, false);
+
+        // Reading
+        define("fetch.page-size", "1000", Kind.INT, 1, true);
+        define("fetch.fetch-size", "200", Kind.INT, 1, true);
+        define("cache.project.max-size", "1000", Kind.INT, 0, true);
+        define("cache.project.ttl-seconds", "300", Kind.LONG, 0, true);
+        define("import.chunk-size", "1000", Kind.INT, 1, false);
+
+        // Reports; 0 threads means one per processor, up to the pool size
+        define("report.threads", "0", Kind.INT, 0, false);
+        define("report.ranges-per-thread", "4", Kind.INT, 1, false);
+
+        // Statement timings
+        define("query.stats-enabled", "true", Kind.BOOLEAN, 0, false);
+        define("query.slow-millis", "200", Kind.LONG, 0, true);
+        define("query.stats-dump-seconds", "300", Kind.LONG, 1, false);
+
+        // In-memory views
+        define("aggregates.refresh-millis", "2000", Kind.LONG, 1, false);
+        define("deadlines.warning-days", "7", Kind.INT, 0, false);
+        define("deadlines.refresh-millis", "2000", Kind.LONG, 1, false);
+        define("search.snapshot-file", "search-index.snapshot", Kind.PATH, 0, false);
+        define("search.refresh-millis", "2000", Kind.LONG, 1, false);
+        define("snapshot.file", "", Kind.PATH, 0, false);
+        define("snapshot.refresh-millis", "2000", Kind.LONG, 1, false);
+        define("snapshot.max-delta-rows", "100000", Kind.INT, 0, false);
+        define("snapshot.verify-millis", "300000", Kind.LONG, 0, false);
+
+        // Audit log and change feed
+        define("audit.enabled", "false", Kind.BOOLEAN, 0, false);
+        define("audit.directory", "", Kind.PATH, 0, false);
+        define("audit.durability", "FLUSHED", Kind.STRING, 0, false);
+        define("audit.flush-millis", "200", Kind.LONG, 1, false);
+        define("audit.batch-size", "500", Kind.INT, 1, false);
+        define("audit.max-queued", "100000", Kind.INT, 1, false);
+        define("audit.dead-letter-directory", "audit-dead-letter", Kind.PATH, 0, false);
+        define("changes.capacity", "65536", Kind.INT, 2, false);
+        define("changes.spool-file", "change-feed.spool", Kind.PATH, 0, false);
+        define("changes.spool-max-bytes", "268435456", Kind.LONG, 0, false);
+        define("changes.idle-timeout-millis", "600000", Kind.LONG, 0, false);
+
+        // HTTP server
+        define("http.permit-timeout-millis", "2000", Kind.LONG, 0, true);
+
+        // How often the properties file is checked for changes; 0 never
+        define("config.reload-millis", "5000", Kind.LONG, 0, false);
+    }
+
+    private static void define(String key, String defaultValue, Kind kind, long min, boolean reloadable) {
+        SETTINGS.put(key, new Setting(key, defaultValue, kind, min, reloadable));
+    }
+
+    private final Map<String, String> flags;
+    private final Path file;
+    private final List<String> arguments;
+    private volatile Map<String, String> values;
+    private final List<Consumer<Set<String>>> reloadListeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService watcher;
+    private FileTime fileModified;
+
+    private AppConfig(Map<String, String> flags, Path file, List<String> arguments, Map<String, String> values, FileTime fileModified) {
+        this.flags = flags;
+        this.file = file;
+        this.arguments = arguments;
+        this.values = values;
+        this.fileModified = fileModified;
+    }
+
+    /**
+     * Loads and checks the configuration.
+     *
+     * @param args The command-line arguments. Settings flags and {@code --config=...} are taken out;
+     *             the rest are left for {@link #getArguments()}.
+     * @return The configuration.
+     * @throws IllegalArgumentException Listing every setting that is missing, unknown or invalid.
+     * @throws IOException              If the properties file cannot be read.
+     */
+    public static AppConfig load(String[] args) throws IOException {
+        Map<String, String> flags = new LinkedHashMap<>();
+        List<String> arguments = new ArrayList<>();
+        String fileName = System.getenv(ENV_PREFIX + "CONFIG");
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                arguments.add(arg);
+            } else if (arg.startsWith("--config=")) {
+                fileName = arg.substring(equals + 1);
+            } else {
+                flags.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+
+        Path file;
+        if (fileName != null) {
+            file = Path.of(fileName);
+            if (!Files.isRegularFile(file)) {
+                throw new IllegalArgumentException("Configuration file " + file + " does not exist");
+            }
+        } else {
+            file = Files.isRegularFile(Path.of(DEFAULT_FILE)) ? Path.of(DEFAULT_FILE) : null;
+        }
+
+        FileTime modified = file == null ? null : Files.getLastModifiedTime(file);
+        return new AppConfig(flags, file, Collections.unmodifiableList(arguments), resolve(flags, file), modified);
+    }
+
+    /**
+     * Reads every setting from the flags, environment, file and defaults, and checks them.
+     */
+    private static Map<String, String> resolve(Map<String, String> flags, Path file) throws IOException {
+        Properties properties = new Properties();
+        if (file != null) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            }
+        }
+
+        List<String> problems = new ArrayList<>();
+        for (String key : flags.keySet()) {
+            if (!SETTINGS.containsKey(key)) {
+                problems.add("unknown setting --" + key);
+            }
+        }
+        for (String key : properties.stringPropertyNames()) {
+            if (!SETTINGS.containsKey(key)) {
+                problems.add("unknown setting " + key + " in " + file);
+            }
+        }
+
+        Map<String, String> values = new LinkedHashMap<>();
+        for (Setting setting : SETTINGS.values()) {
+            String value = flags.get(setting.key());
+            String source = "--" + setting.key();
+            if (value == null) {
+                value = System.getenv(setting.envName());
+                source = setting.envName();
+            }
+            if (value == null) {
+                value = properties.getProperty(setting.key());
+                source = setting.key() + " in " + file;
+            }
+            if (value == null) {
+                value = setting.defaultValue();
+                source = setting.key();
+            }
+
+            if (value == null) {
+                problems.add(setting.key() + " is not set (use --" + setting.key() + "=..., " + setting.envName()
+                        + " or " + DEFAULT_FILE + ")");
+                continue;
+            }
+            String problem = check(setting, value.trim());
+            if (problem != null) {
+                problems.add(source + " " + problem);
+                continue;
+            }
+            values.put(setting.key(), value.trim());
+        }
+
+        String durability = values.get("audit.durability");
+        if (durability != null && Arrays.stream(AuditLog.Durability.values()).noneMatch(d -> d.name().equals(durability))) {
+            problems.add("audit.durability must be one of " + Arrays.toString(AuditLog.Durability.values()));
+        }
+        String batchSize = values.get("audit.batch-size");
+        String maxQueued = values.get("audit.max-queued");
+        if (batchSize != null && maxQueued != null && Integer.parseInt(maxQueued) < Integer.parseInt(batchSize)) {
+            problems.add("audit.max-queued must be at least audit.batch-size");
+        }
+
+        if (!problems.isEmpty()) {
+            throw new IllegalArgumentException("Invalid configuration:\n  " + String.join("\n  ", problems));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    private static String check(Setting setting, String value) {
+        switch (setting.kind()) {
+            case INT:
+            case LONG:
+                long number;
+                try {
+                    number = setting.kind() == Kind.INT ? Integer.parseInt(value) : Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    return "must be a whole number, not \"" + value + "\"";
+                }
+                return number < setting.min() ? "must be at least " + setting.min() + ", not " + number : null;
+            case PATH:
+                try {
+                    Path.of(value);
+                    return null;
+                } catch (RuntimeException e) {
+                    return "is not a valid path: " + e.getMessage();
+                }
+            case BOOLEAN:
+                return value.equals("true") || value.equals("false") ? null : "must be true or false, not \"" + value + "\"";
+            default:
+                return null;
+        }
+    }
+
+    // ================= Values ================= //
+
+    /**
+     * @return The command-line arguments that are not settings, such as the mode and its parameters.
+     */
+    public List<String> getArguments() {
+        return arguments;
+    }
+
+    public String getString(String key) {
+        String value = values.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Unknown setting " + key);
+        }
+        return value;
+    }
+
+    public int getInt(String key) {
+        return Integer.parseInt(getString(key));
+    }
+
+    public long getLong(String key) {
+        return Long.parseLong(getString(key));
+    }
+
+    public boolean getBoolean(String key) {
+        return Boolean.parseBoolean(getString(key));
+    }
+
+    /**
+     * @return The path, or null if the setting is empty.
+     */
+    public Path getPath(String key) {
+        String value = getString(key);
+        return value.isEmpty() ? null : Path.of(value);
+    }
+
+    /**
+     * @return The comma-separated values, without blanks.
+     */
+    public List<String> getList(String key) {
+        List<String> list = new ArrayList<>();
+        for (String value : getString(key).split(",")) {
+            if (!value.isBlank()) {
+                list.add(value.trim());
+            }
+        }
+        return list;
+    }
+
+    // ================= Reloading ================= //
+
+    /**
+     * Registers a listener told which reloadable settings changed after a reload. It reads the new values
+     * from this configuration.
+     */
+    public void addReloadListener(Consumer<Set<String>> listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Checks the properties file for changes at the config.reload-millis interval until {@link #stopWatching()}.
+     * Does nothing when there is no file or the interval is 0.
+     */
+    public synchronized void startWatching() {
+        long intervalMillis = getLong("config.reload-millis");
+        if (file == null || intervalMillis == 0 || watcher != null) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "config-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                FileTime modified = Files.getLastModifiedTime(file);
+                if (!modified.equals(fileModified)) {
+                    fileModified = modified;
+                    reload();
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Configuration not reloaded: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Reads the configuration again and applies the reloadable settings that changed.
+     *
+     * @return The reloadable settings that changed.
+     * @throws IllegalArgumentException If the configuration is no longer valid; the current values are kept.
+     * @throws IOException              If the properties file cannot be read.
+     */
+    public synchronized Set<String> reload() throws IOException {
+        Map<String, String> reloaded = resolve(flags, file);
+        Map<String, String> current = values;
+
+        Set<String> changed = new LinkedHashSet<>();
+        Map<String, String> applied = new LinkedHashMap<>(current);
+        for (Map.Entry<String, String> entry : reloaded.entrySet()) {
+            String key = entry.getKey();
+            if (entry.getValue().equals(current.get(key))) {
+                continue;
+            }
+            if (SETTINGS.get(key).reloadable()) {
+                applied.put(key, entry.getValue());
+                changed.add(key);
+            } else {
+                System.err.println("Setting " + key + " changed, it takes effect after a restart");
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            values = Collections.unmodifiableMap(applied);
+            System.err.println("Configuration reloaded: " + changed);
+            for (Consumer<Set<String>> listener : reloadListeners) {
+                try {
+                    listener.accept(changed);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return The settings, with the database password hidden.
+     */
+    @Override
+    public String toString() {
+        Map<String, String> shown = new LinkedHashMap<>(values);
+        shown.computeIfPresent("db.password", (key, value) -> "****");
+        return "AppConfig" + (file == null ? "" : "[" + file + "]") + shown;
+    }
+}
@@ -0,0 +1,227 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Collects the audit entries of one transaction. The rows about to be changed are read, and locked,
+ * with {@link #before}, their new values are given once they have been changed, and the difference
+ * becomes the entries: a row only known afterwards was inserted, a row gone afterwards was deleted,
+ * and otherwise only the columns that changed are recorded. Writers pass what they wrote to
+ * {@link #afterInsert}, {@link #afterUpdate} or {@link #afterDelete}, so no row is read again.
+ *
+ * <p>When no {@link AuditLog} is installed every method does nothing, so unaudited writes pay nothing.</p>
+ */
+public class AuditCapture {
+
+    private final Connection connection;
+    private final AuditLog log;
+    private final Map<String, Map<Integer, Map<String, String>>> beforeRows = new HashMap<>();
+    private final List<AuditEntry> entries = new ArrayList<>();
+
+    private AuditCapture(Connection connection, AuditLog log) {
+        this.connection = connection;
+        this.log = log;
+    }
+
+    /**
+     * Starts capturing the changes made on a connection, for the installed audit log.
+     *
+     * @param connection The connection, inside the transaction making the changes.
+     * @return The capture.
+     */
+    public static AuditCapture start(Connection connection) {
+        return new AuditCapture(connection, AuditLog.current());
+    }
+
+    public boolean isEnabled() {
+        return log != null;
+    }
+
+    /**
+     * Reads and locks rows before they are changed. Rows that do not exist yet need not be read.
+     *
+     * @param table  "PoisePMS", "Customer", "Architect" or "Contractor".
+     * @param rowIds The project numbers or person ids.
+     * @return The rows read that exist, by key, so the caller need not read them again. Empty if nothing is audited.
+     * @throws SQLException If a database error occurs.
+     */
+    public Map<Integer, Map<String, String>> before(String table, Collection<Integer> rowIds) throws SQLException {
+        if (log == null || rowIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Integer, Map<String, String>> rows = readRows(connection, table, rowIds, true);
+        beforeRows.computeIfAbsent(table, key -> new HashMap<>()).putAll(rows);
+        return Collections.unmodifiableMap(rows);
+    }
+
+    /**
+     * Reads and locks one row before it is changed, and returns it so the caller need not read it again.
+     *
+     * @param table "PoisePMS", "Customer", "Architect" or "Contractor".
+     * @param rowId The project number or person id.
+     * @return The row's audited columns by name, or null if it does not exist or nothing is audited.
+     * @throws SQLException If a database error occurs.
+     */
+    public Map<String, String> before(String table, int rowId) throws SQLException {
+        if (log == null) {
+            return null;
+        }
+        before(table, List.of(rowId));
+        Map<String, String> row = beforeRows.get(table).get(rowId);
+        return row == null ? null : Collections.unmodifiableMap(row);
+    }
+
+    /**
+     * Records a row inserted with the given values, without reading it back.
+     *
+     * @param table   "PoisePMS", "Customer", "Architect" or "Contractor".
+     * @param rowId   The project number or person id given to the row.
+     * @param columns The values written, by column name. Columns left out were written as null.
+     */
+    public void afterInsert(String table, int rowId, Map<String, ?> columns) {
+        if (log == null) {
+            return;
+        }
+        Map<String, String> newRow = new LinkedHashMap<>();
+        List<String> names = AuditLog.COLUMNS.get(table);
+        newRow.put(names.get(0), String.valueOf(rowId));
+        for (String name : names.subList(1, names.size())) {
+            Object value = columns.get(name);
+            newRow.put(name, value == null ? null : value.toString());
+        }
+        record(table, rowId, newRow, AuditLog.currentUser());
+    }
+
+    /**
+     * Records the columns written to a row read with {@link #before}, without reading it back. Does
+     * nothing for a row that did not exist before, as the update did not change it.
+     *
+     * @param table   "PoisePMS", "Customer", "Architect" or "Contractor".
+     * @param rowId   The project number or person id.
+     * @param columns The values written, by column name.
+     */
+    public void afterUpdate(String table, int rowId, Map<String, ?> columns) {
+        if (log == null) {
+            return;
+        }
+        Map<String, String> oldRow = beforeRows.computeIfAbsent(table, key -> new HashMap<>()).get(rowId);
+        if (oldRow == null) {
+            return;
+        }
+        Map<String, String> newRow = new LinkedHashMap<>(oldRow);
+        columns.forEach((name, value) -> newRow.put(name, value == null ? null : value.toString()));
+        record(table, rowId, newRow, AuditLog.currentUser());
+    }
+
+    /**
+     * Records rows read with {@link #before} as deleted, without reading them back.
+     *
+     * @param table  "PoisePMS", "Customer", "Architect" or "Contractor".
+     * @param rowIds The project numbers or person ids deleted.
+     */
+    public void afterDelete(String table, Collection<Integer> rowIds) {
+        if (log == null || rowIds.isEmpty()) {
+            return;
+        }
+        String user = AuditLog.currentUser();
+        for (int rowId : new LinkedHashSet<>(rowIds)) {
+            record(table, rowId, null, user);
+        }
+    }
+
+    private void record(String table, int rowId, Map<String, String> newRow, String user) {
+        // Stamped while the row is still locked by this transaction
+        Instant now = log.stamp(table, rowId);
+        Map<Integer, Map<String, String>> before = beforeRows.computeIfAbsent(table, key -> new HashMap<>());
+        Map<String, String> oldRow = before.get(rowId);
+        if (oldRow == null && newRow != null) {
+            entries.add(new AuditEntry(now, user, AuditEntry.Action.INSERT, table, rowId, null, newRow));
+        } else if (oldRow != null && newRow == null) {
+            entries.add(new AuditEntry(now, user, AuditEntry.Action.DELETE, table, rowId, oldRow, null));
+        } else if (oldRow != null) {
+            Map<String, String> changedBefore = new LinkedHashMap<>();
+            Map<String, String> changedAfter = new LinkedHashMap<>();
+            for (Map.Entry<String, String> column : newRow.entrySet()) {
+                String oldValue = oldRow.get(column.getKey());
+                if (!Objects.equals(oldValue, column.getValue())) {
+                    changedBefore.put(column.getKey(), oldValue);
+                    changedAfter.put(column.getKey(), column.getValue());
+                }
+            }
+            if (!changedAfter.isEmpty()) {
+                entries.add(new AuditEntry(now, user, AuditEntry.Action.UPDATE, table, rowId, changedBefore, changedAfter));
+            }
+        }
+        // A later change of the row in this transaction is recorded from here
+        if (newRow == null) {
+            before.remove(rowId);
+        } else {
+            before.put(rowId, newRow);
+        }
+    }
+
+    /**
+     * Hands the entries captured so far to the audit log. Call once the transaction has committed.
+     *
+     * @throws SQLException If the log did not record them as its durability promises. The changes
+     *                      themselves are already committed.
+     */
+    public void submit() throws SQLException {
+        if (log != null && !entries.isEmpty()) {
+            int count = entries.size();
+            boolean recorded = log.submit(new ArrayList<>(entries));
+            entries.clear();
+            if (!recorded) {
+                throw new SQLException("Changes committed, but " + count + " audit entries were not recorded");
+            }
+        }
+    }
+
+    /**
+     * Reads the audited columns of rows by key.
+     *
+     * @param connection The connection.
+     * @param table      "PoisePMS", "Customer", "Architect" or "Contractor".
+     * @param rowIds     The keys.
+     * @param lock       Whether to lock the rows until the transaction ends.
+     * @return The rows that exist, by key, each a mutable map of column name to value.
+     * @throws SQLException If a database error occurs.
+     */
+    static Map<Integer, Map<String, String>> readRows(Connection connection, String table, Collection<Integer> rowIds,
+                                                      boolean lock) throws SQLException {
+        List<String> columns = AuditLog.COLUMNS.get(table);
+        if (columns == null) {
+            throw new IllegalArgumentException("Table " + table + " is not audited");
+        }
+        String sql = "SELECT " + String.join(", ", columns) + " FROM " + table + " WHERE " + columns.get(0)
+                + " IN (%s)" + (lock ? " FOR UPDATE" : "");
+
+        Map<Integer, Map<String, String>> rows = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(rowIds);
+        for (int start = 0; start < ids.size(); start += InList.CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(start, Math.min(ids.size(), start + InList.CHUNK_SIZE));
+            try (PreparedStatement selectStatement = InList.prepare(connection, sql, chunk);
+                 ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    Map<String, String> row = new LinkedHashMap<>();
+                    for (int i = 0; i < columns.size(); i++) {
+                        row.put(columns.get(i), resultSet.getString(i + 1));
+                    }
+                    rows.put(resultSet.getInt(1), row);
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,25 @@
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * One row changed by a committed write: who changed it and when, and the values of the columns that
+ * changed before and after. An insert has no before values and a delete no after values; both hold
+ * every column of the row. Values are the text the database returns for the column.
+ *
+ * @param loggedAt  When the change was made.
+ * @param changedBy Who made it.
+ * @param action    Whether the row was inserted, updated or deleted.
+ * @param tableName "PoisePMS", "Customer", "Architect" or "Contractor".
+ * @param rowId     The project number or person id of the row.
+ * @param before    The changed columns before, or null for an insert.
+ * @param after     The changed columns after, or null for a delete.
+ */
+public record AuditEntry(Instant loggedAt, String changedBy, Action action, String tableName, int rowId,
+                         Map<String, String> before, Map<String, String> after) {
+
+    public enum Action {
+        INSERT,
+        UPDATE,
+        DELETE
+    }
+}
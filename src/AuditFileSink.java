@@ -0,0 +1,154 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Writes audit entries to append-only segment files in a directory, one JSON object per line with
+ * the same fields as the Audit_log table. A group is written with one write and, when forced, one
+ * fsync. A new segment is started once the current one passes the segment size.
+ *
+ * <p>A crash can leave the last line of the last segment cut short; reading skips it.</p>
+ */
+public class AuditFileSink implements AuditSink {
+
+    static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private FileChannel channel;
+    private int segmentNum;
+
+    /**
+     * Opens the directory, creating it if needed, and appends to its last segment.
+     *
+     * @param directory    The directory the segments are kept in.
+     * @param segmentBytes The size after which a new segment is started.
+     * @throws IOException If the directory or segment cannot be opened.
+     */
+    public AuditFileSink(Path directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        List<Path> segments = segments();
+        segmentNum = segments.isEmpty() ? 1 : segmentNum(segments.get(segments.size() - 1));
+        openSegment();
+    }
+
+    @Override
+    public synchronized void write(List<AuditEntry> entries, boolean force) throws IOException {
+        StringBuilder lines = new StringBuilder(entries.size() * 256);
+        for (AuditEntry entry : entries) {
+            lines.append("{\"Logged_at\":").append(entry.loggedAt().toEpochMilli());
+            lines.append(",\"Changed_by\":");
+            Json.appendString(lines, entry.changedBy());
+            lines.append(",\"Action\":\"").append(entry.action().name());
+            lines.append("\",\"Table_name\":");
+            Json.appendString(lines, entry.tableName());
+            lines.append(",\"Row_id\":").append(entry.rowId());
+            // Nested objects are stored as strings, so each line stays a flat object
+            lines.append(",\"Before_values\":");
+            Json.appendString(lines, entry.before() == null ? null : Json.appendFlatObject(new StringBuilder(), entry.before()).toString());
+            lines.append(",\"After_values\":");
+            Json.appendString(lines, entry.after() == null ? null : Json.appendFlatObject(new StringBuilder(), entry.after()).toString());
+            lines.append("}\n");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (force) {
+            channel.force(false);
+        }
+        if (channel.size() >= segmentBytes) {
+            channel.force(false);
+            channel.close();
+            segmentNum++;
+            openSegment();
+        }
+    }
+
+    @Override
+    public List<AuditEntry> read(String tableName, int rowId, Instant after) throws IOException {
+        List<AuditEntry> entries = new ArrayList<>();
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            boolean last = i == segments.size() - 1;
+            try (BufferedReader reader = Files.newBufferedReader(segments.get(i), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    AuditEntry entry;
+                    try {
+                        entry = parse(line);
+                    } catch (IOException | RuntimeException e) {
+                        if (last && reader.readLine() == null) {
+                            break; // Cut short by a crash while writing
+                        }
+                        throw new IOException("Corrupt audit entry in " + segments.get(i) + ": " + e.getMessage(), e);
+                    }
+                    if (entry.rowId() == rowId && entry.tableName().equals(tableName) && entry.loggedAt().isAfter(after)) {
+                        entries.add(entry);
+                    }
+                }
+            }
+        }
+        // Submissions reach the file in commit order, which need not be the order the rows were changed in
+        entries.sort(Comparator.comparing(AuditEntry::loggedAt));
+        return entries;
+    }
+
+    private static AuditEntry parse(String line) throws IOException {
+        Map<String, String> fields = Json.parseFlatObject(line);
+        return new AuditEntry(Instant.ofEpochMilli(Long.parseLong(fields.get("Logged_at"))), fields.get("Changed_by"),
+                AuditEntry.Action.valueOf(fields.get("Action")), fields.get("Table_name"),
+                Integer.parseInt(fields.get("Row_id")), AuditTableSink.fromJson(fields.get("Before_values")),
+                AuditTableSink.fromJson(fields.get("After_values")));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segmentNum, SEGMENT_SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @return The segment files, oldest first.
+     */
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    private static int segmentNum(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    @Override
+    public String toString() {
+        return "audit segments in " + directory;
+    }
+}
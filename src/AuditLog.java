@@ -0,0 +1,482 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class records who changed which rows, with the values before and after, without adding a
+ * write to every change. The classes that write to the database capture the changed rows with an
+ * {@link AuditCapture} and submit them once their transaction has committed. Submitted entries go
+ * onto a lock-free queue, and a background writer takes everything queued and writes it to the
+ * {@link AuditSink} as one group, so many changes share one commit or fsync.
+ *
+ * <p>The queue is bounded: a submit that finds it full waits for the writer to catch up, and is
+ * refused if it does not in time. A group that fails is retried, waiting longer each time; once it
+ * has failed {@value #MAX_ATTEMPTS} times its submissions are written one at a time, and any that
+ * still fails goes to a dead-letter directory of segment files, so one bad entry cannot hold up
+ * everything logged after it.</p>
+ *
+ * <p>Because every entry holds the before values of what it changed, a project can be rebuilt as it
+ * was at any time since logging started by undoing the later entries from its current state; see
+ * {@link #reconstruct(ConnectionPool, int, Instant)}.</p>
+ */
+public class AuditLog implements AutoCloseable {
+
+    /**
+     * When a submitted entry is safe.
+     */
+    public enum Durability {
+        /** Written within the flush interval; a file sink leaves it to the operating system to reach the disk. */
+        BUFFERED,
+        /** Written within the flush interval, each group committed or fsync'd. */
+        FLUSHED,
+        /** As FLUSHED, and the submitting thread waits until its group has been written. */
+        SYNC
+    }
+
+    // The audited columns of each table, the key first
+    static final Map<String, List<String>> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        COLUMNS.put("PoisePMS", List.of("Project_num", "Project_name", "Building_type", "Physical_address",
+                "ERF_num", "Total_fee", "Total_paid", "Project_deadline", "Architect_id", "Contractor_id",
+                "Customer_id", "Finalized", "Completion_date"));
+        for (String table : Person.TABLES) {
+            COLUMNS.put(table, List.of(table + "_id", table + "_name", table + "_cell_num", table + "_email",
+                    table + "_address"));
+        }
+    }
+
+    // How long a submit waits for room in the queue, and a SYNC submit for its entries to be written
+    private static final long SYNC_TIMEOUT_MILLIS = 10_000;
+
+    // Failed writes of a group before its submissions are written one at a time
+    static final int MAX_ATTEMPTS = 5;
+
+    // Rows whose last entry is older than this cannot be stamped with the same time again
+    private static final long STAMP_HORIZON_MILLIS = 1_000;
+    private static final int MAX_STAMPED_ROWS = 10_000;
+
+    private static volatile AuditLog current;
+    private static final ThreadLocal<String> CURRENT_USER = new ThreadLocal<>();
+
+    // The last time stamped on each recently changed row, by table and key
+    private final ConcurrentHashMap<String, Long> lastStamps = new ConcurrentHashMap<>();
+
+    private final AuditSink sink;
+    private final Durability durability;
+    private final long flushIntervalNanos;
+    private final int maxBatchSize;
+    private final int maxQueuedEntries;
+    private final Path deadLetterDirectory;
+    private final ConcurrentLinkedQueue<Submission> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedEntries = new AtomicInteger();
+    // Notified by the writer whenever queued entries are written
+    private final Object queueSpace = new Object();
+    private final Thread writer;
+    private volatile boolean closed;
+    // Opened by the writer on the first dead letter
+    private AuditFileSink deadLetters;
+
+    // Statistics
+    private final AtomicLong writtenEntries = new AtomicLong();
+    private final AtomicLong writtenGroups = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final AtomicLong deadLetterEntries = new AtomicLong();
+    private final AtomicLong refusedEntries = new AtomicLong();
+
+    /**
+     * The entries of one submit, the latch a SYNC submitter waits on, and whether they missed the sink.
+     */
+    private static final class Submission {
+        final List<AuditEntry> entries;
+        final CountDownLatch written;
+        volatile boolean failed;
+
+        Submission(List<AuditEntry> entries, CountDownLatch written) {
+            this.entries = entries;
+            this.written = written;
+        }
+    }
+
+    /**
+     * Creates a log and starts its writer thread.
+     *
+     * @param sink                Where the entries are written.
+     * @param durability          When a submitted entry is safe.
+     * @param flushIntervalMillis The longest an entry waits to be written.
+     * @param maxBatchSize        The most entries written in one group; a full batch is written without waiting.
+     * @param maxQueuedEntries    The most entries waiting to be written before submits wait for room.
+     * @param deadLetterDirectory Where entries the sink keeps refusing are written instead, or null to drop them.
+     */
+    public AuditLog(AuditSink sink, Durability durability, long flushIntervalMillis, int maxBatchSize,
+                    int maxQueuedEntries, Path deadLetterDirectory) {
+        if (flushIntervalMillis < 1 || maxBatchSize < 1 || maxQueuedEntries < maxBatchSize) {
+            throw new IllegalArgumentException("Flush interval and batch size must be at least 1, and the queue at least a batch");
+        }
+        this.sink = sink;
+        this.durability = durability;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.maxQueuedEntries = maxQueuedEntries;
+        this.deadLetterDirectory = deadLetterDirectory;
+        this.writer = new Thread(this::writeLoop, "audit-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Makes this the log the writing classes submit to. Until a log is installed nothing is captured.
+     */
+    public static void install(AuditLog log) {
+        current = log;
+    }
+
+    /**
+     * @return The installed log, or null if changes are not audited.
+     */
+    public static AuditLog current() {
+        return current;
+    }
+
+    /**
+     * Sets who the changes made on this thread are recorded as, for example the user of an HTTP request.
+     *
+     * @param user The user, or null for the operating system user.
+     */
+    public static void setCurrentUser(String user) {
+        if (user == null) {
+            CURRENT_USER.remove();
+        } else {
+            CURRENT_USER.set(user);
+        }
+    }
+
+    static String currentUser() {
+        String user = CURRENT_USER.get();
+        return user != null ? user : System.getProperty("user.name");
+    }
+
+    // ================= Writing ================= //
+
+    /**
+     * Queues committed changes to be written, waiting for room if the queue is full. With SYNC
+     * durability this also waits until they have been written.
+     *
+     * @param entries The entries, in the order they were made.
+     * @return false if the entries were not recorded as asked: the log is closed or stayed full, a SYNC
+     *         write did not finish in time, or the sink refused them and they went to the dead letters.
+     */
+    public boolean submit(List<AuditEntry> entries) {
+        if (entries.isEmpty()) {
+            return true;
+        }
+        if (closed) {
+            System.err.println("Audit log is closed, " + entries.size() + " entries not recorded");
+            return false;
+        }
+        if (!reserve(entries.size())) {
+            refusedEntries.addAndGet(entries.size());
+            System.err.println("Audit queue stayed full for " + SYNC_TIMEOUT_MILLIS + " ms, "
+                    + entries.size() + " entries not recorded");
+            return false;
+        }
+
+        Submission submission = new Submission(entries, durability == Durability.SYNC ? new CountDownLatch(1) : null);
+        queue.offer(submission);
+        if (queuedEntries.get() >= maxBatchSize || submission.written != null) {
+            LockSupport.unpark(writer);
+        }
+        if (submission.written == null) {
+            return true;
+        }
+        return await(submission.written) && !submission.failed;
+    }
+
+    /**
+     * Counts entries into the queue, waiting while that would take it past its bound. A submit larger
+     * than the bound is let in once the queue is empty.
+     */
+    private boolean reserve(int count) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SYNC_TIMEOUT_MILLIS);
+        synchronized (queueSpace) {
+            while (queuedEntries.get() > 0 && queuedEntries.get() + count > maxQueuedEntries) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || closed) {
+                    return false;
+                }
+                LockSupport.unpark(writer);
+                try {
+                    queueSpace.wait(TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            queuedEntries.addAndGet(count);
+        }
+        return true;
+    }
+
+    /**
+     * Waits until everything submitted before this call has been written.
+     *
+     * @return false if that did not happen within the timeout.
+     */
+    public boolean flush() {
+        CountDownLatch written = new CountDownLatch(1);
+        queue.offer(new Submission(Collections.emptyList(), written));
+        LockSupport.unpark(writer);
+        return await(written);
+    }
+
+    private static boolean await(CountDownLatch written) {
+        try {
+            return written.await(SYNC_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void writeLoop() {
+        List<Submission> group = new ArrayList<>();
+        List<AuditEntry> entries = new ArrayList<>();
+        int attempts = 0;
+        while (true) {
+            boolean stopping = closed;
+            // A group failed last time is retried before anything newer
+            if (group.isEmpty()) {
+                Submission submission;
+                while (entries.size() < maxBatchSize && (submission = queue.poll()) != null) {
+                    group.add(submission);
+                    entries.addAll(submission.entries);
+                }
+            }
+
+            if (!group.isEmpty()) {
+                try {
+                    if (!entries.isEmpty()) {
+                        sink.write(entries, durability != Durability.BUFFERED);
+                        writtenGroups.incrementAndGet();
+                        writtenEntries.addAndGet(entries.size());
+                    }
+                    attempts = 0;
+                } catch (IOException | SQLException | RuntimeException e) {
+                    failedWrites.incrementAndGet();
+                    if (++attempts == 1) {
+                        e.printStackTrace(); // Only the first failure of a group, not every retry
+                    }
+                    if (attempts < MAX_ATTEMPTS && !stopping) {
+                        LockSupport.parkNanos(this, flushIntervalNanos << (attempts - 1));
+                        continue;
+                    }
+                    System.err.println("Audit group of " + entries.size() + " entries failed " + attempts
+                            + " times, writing its submissions one at a time");
+                    group.forEach(this::writeAlone);
+                    attempts = 0;
+                }
+                group.forEach(done -> {
+                    if (done.written != null) {
+                        done.written.countDown();
+                    }
+                });
+                release(entries.size());
+                group.clear();
+                entries.clear();
+                continue;
+            }
+
+            if (stopping) {
+                closeDeadLetters();
+                return;
+            }
+            LockSupport.parkNanos(this, flushIntervalNanos);
+        }
+    }
+
+    /**
+     * Writes one submission of a group that kept failing, and moves it to the dead letters if the sink
+     * refuses it too.
+     */
+    private void writeAlone(Submission submission) {
+        if (submission.entries.isEmpty()) {
+            return;
+        }
+        try {
+            sink.write(submission.entries, durability != Durability.BUFFERED);
+            writtenGroups.incrementAndGet();
+            writtenEntries.addAndGet(submission.entries.size());
+            return;
+        } catch (IOException | SQLException | RuntimeException e) {
+            failedWrites.incrementAndGet();
+            System.err.println("Audit sink refused " + submission.entries.size() + " entries: " + e.getMessage());
+        }
+
+        submission.failed = true;
+        if (deadLetterDirectory == null) {
+            System.err.println(submission.entries.size() + " audit entries dropped, no dead-letter directory is set");
+            return;
+        }
+        try {
+            if (deadLetters == null) {
+                deadLetters = new AuditFileSink(deadLetterDirectory, AuditFileSink.DEFAULT_SEGMENT_BYTES);
+            }
+            deadLetters.write(submission.entries, true);
+            deadLetterEntries.addAndGet(submission.entries.size());
+            System.err.println(submission.entries.size() + " audit entries moved to " + deadLetterDirectory);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println(submission.entries.size() + " audit entries dropped");
+        }
+    }
+
+    private void release(int count) {
+        queuedEntries.addAndGet(-count);
+        synchronized (queueSpace) {
+            queueSpace.notifyAll();
+        }
+    }
+
+    private void closeDeadLetters() {
+        if (deadLetters != null) {
+            try {
+                deadLetters.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Writes whatever is queued, stops the writer and closes the sink.
+     */
+    @Override
+    public void close() {
+        if (current == this) {
+            current = null;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        synchronized (queueSpace) {
+            queueSpace.notifyAll();
+        }
+        try {
+            writer.join(SYNC_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            sink.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stamps a change of a row with the current time, later than any earlier change of the same row
+     * logged by this process. The caller holds the row's lock, so a second change of the row cannot
+     * be stamped until the first has committed, and replay can order the row's entries by time
+     * whatever order they reach the sink in.
+     *
+     * @param table The table of the row.
+     * @param rowId The project number or person id.
+     * @return The time of the change.
+     */
+    Instant stamp(String table, int rowId) {
+        long now = System.currentTimeMillis();
+        if (lastStamps.size() > MAX_STAMPED_ROWS) {
+            lastStamps.values().removeIf(last -> last < now - STAMP_HORIZON_MILLIS);
+        }
+        long stamped = lastStamps.merge(table + ":" + rowId, now, (last, current) -> Math.max(current, last + 1));
+        return Instant.ofEpochMilli(stamped);
+    }
+
+    // ================= Replay ================= //
+
+    /**
+     * Rebuilds a project and its people as they were at the given time: the current rows, with every
+     * entry logged after that time undone, latest first by the time the change was stamped. Changes made before logging started, or by
+     * writes that are not audited, cannot be undone.
+     *
+     * @param pool       The connection pool to read the current rows from.
+     * @param projectNum The project number.
+     * @param at         The time.
+     * @return The project and people columns by name, as in the JSON of a project, or null if the
+     *         project did not exist at that time.
+     * @throws SQLException If a database error occurs.
+     * @throws IOException  If the log cannot be read.
+     */
+    public Map<String, String> reconstruct(ConnectionPool pool, int projectNum, Instant at) throws SQLException, IOException {
+        flush();
+        Map<String, String> project = rowAt(pool, "PoisePMS", projectNum, at);
+        if (project == null) {
+            return null;
+        }
+
+        Map<String, String> columns = new LinkedHashMap<>(project);
+        for (String table : Person.TABLES) {
+            String personId = project.get(table + "_id");
+            Map<String, String> person = personId == null ? null : rowAt(pool, table, Integer.parseInt(personId), at);
+            if (person != null) {
+                columns.putAll(person);
+            }
+        }
+        return columns;
+    }
+
+    private Map<String, String> rowAt(ConnectionPool pool, String table, int rowId, Instant at) throws SQLException, IOException {
+        Map<String, String> row;
+        try (Connection connection = pool.getConnection()) {
+            row = AuditCapture.readRows(connection, table, List.of(rowId), false).get(rowId);
+        }
+
+        List<AuditEntry> later = new ArrayList<>(sink.read(table, rowId, at));
+        later.sort(Comparator.comparing(AuditEntry::loggedAt));
+        for (int i = later.size() - 1; i >= 0; i--) {
+            AuditEntry entry = later.get(i);
+            switch (entry.action()) {
+                case INSERT:
+                    row = null;
+                    break;
+                case DELETE:
+                    row = new LinkedHashMap<>(entry.before());
+                    break;
+                default:
+                    if (row != null) {
+                        row.putAll(entry.before());
+                    }
+                    break;
+            }
+        }
+        return row;
+    }
+
+    // ================= Statistics ================= //
+
+    public int getQueuedCount() {
+        return queuedEntries.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AuditLog[" + sink + ", durability=" + durability + ", queued=" + queuedEntries.get()
+                + ", written=" + writtenEntries.get() + " in " + writtenGroups.get() + " groups"
+                + ", failedWrites=" + failedWrites.get() + ", deadLetters=" + deadLetterEntries.get()
+                + ", refused=" + refusedEntries.get() + "]";
+    }
+}
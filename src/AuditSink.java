@@ -0,0 +1,35 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Where an {@link AuditLog} writes its entries, and reads them back for replay.
+ */
+public interface AuditSink extends AutoCloseable {
+
+    /**
+     * Writes a group of entries, in order, as one unit.
+     *
+     * @param entries The entries.
+     * @param force   Whether the entries must be on stable storage when this returns.
+     * @throws IOException  If a file cannot be written.
+     * @throws SQLException If a database error occurs.
+     */
+    void write(List<AuditEntry> entries, boolean force) throws IOException, SQLException;
+
+    /**
+     * Reads the entries of one row logged after the given time, ordered by the time they were logged.
+     *
+     * @param tableName The table of the row.
+     * @param rowId     The project number or person id.
+     * @param after     Only entries logged after this time are returned.
+     * @return The entries.
+     * @throws IOException  If a file cannot be read.
+     * @throws SQLException If a database error occurs.
+     */
+    List<AuditEntry> read(String tableName, int rowId, Instant after) throws IOException, SQLException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes audit entries to the Audit_log table, each group as one batched insert in one transaction.
+ * Before and after values are stored as flat JSON objects.
+ */
+public class AuditTableSink implements AuditSink {
+
+    private static final String INSERT_SQL = "INSERT INTO Audit_log "
+            + "(Logged_at, Changed_by, Action, Table_name, Row_id, Before_values, After_values) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_SQL = "SELECT Logged_at, Changed_by, Action, Table_name, Row_id, "
+            + "Before_values, After_values FROM Audit_log "
+            + "WHERE Table_name = ? AND Row_id = ? AND Logged_at > ? ORDER BY Logged_at, Audit_id";
+
+    private final ConnectionPool pool;
+
+    /**
+     * Creates a sink. The table is created by {@link SchemaMigrator}.
+     *
+     * @param pool The connection pool to borrow a connection from.
+     */
+    public AuditTableSink(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void write(List<AuditEntry> entries, boolean force) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement insertStatement = connection.prepareStatement(INSERT_SQL)) {
+                StringBuilder json = new StringBuilder();
+                for (AuditEntry entry : entries) {
+                    insertStatement.setLong(1, entry.loggedAt().toEpochMilli());
+                    insertStatement.setString(2, entry.changedBy());
+                    insertStatement.setString(3, entry.action().name());
+                    insertStatement.setString(4, entry.tableName());
+                    insertStatement.setInt(5, entry.rowId());
+                    insertStatement.setString(6, toJson(json, entry.before()));
+                    insertStatement.setString(7, toJson(json, entry.after()));
+                    insertStatement.addBatch();
+                }
+                insertStatement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public List<AuditEntry> read(String tableName, int rowId, Instant after) throws IOException, SQLException {
+        List<AuditEntry> entries = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement selectStatement = connection.prepareStatement(SELECT_SQL)) {
+            selectStatement.setString(1, tableName);
+            selectStatement.setInt(2, rowId);
+            selectStatement.setLong(3, after.toEpochMilli());
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    entries.add(new AuditEntry(Instant.ofEpochMilli(resultSet.getLong(1)), resultSet.getString(2),
+                            AuditEntry.Action.valueOf(resultSet.getString(3)), resultSet.getString(4), resultSet.getInt(5),
+                            fromJson(resultSet.getString(6)), fromJson(resultSet.getString(7))));
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public void close() {
+        // The pool is closed by its owner
+    }
+
+    private static String toJson(StringBuilder json, Map<String, String> values) {
+        if (values == null) {
+            return null;
+        }
+        json.setLength(0);
+        return Json.appendFlatObject(json, values).toString();
+    }
+
+    static Map<String, String> fromJson(String json) throws IOException {
+        return json == null ? null : Json.parseFlatObject(json);
+    }
+
+    @Override
+    public String toString() {
+        return "Audit_log table";
+    }
+}
@@ -0,0 +1,11 @@
+import java.time.Instant;
+
+/**
+ * A committed change as delivered by a {@link ChangeFeed}, numbered in the order it was committed.
+ *
+ * @param sequence    The position of the change in the feed, starting at 1.
+ * @param committedAt When the change was published.
+ * @param change      The change.
+ */
+public record ChangeEvent(long sequence, Instant committedAt, ProjectChange change) {
+}
@@ -0,0 +1,583 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class turns the changes published through {@link ProjectChanges} into a numbered stream that
+ * consumers such as reports and downstream caches read at their own pace, instead of polling the
+ * database. Each committed change is stored once in a ring buffer in memory. Every subscriber has its
+ * own cursor, the sequence number of the first change it has not confirmed, so a fast subscriber is
+ * never held back by a slow one. A read returns the changes from the cursor on but does not move it;
+ * the subscriber confirms them by asking for the changes after them next time. A response that never
+ * arrives is therefore read again, and every change is delivered at least once.
+ *
+ * <p>When the ring is about to overwrite a change a subscriber has not read yet, the oldest changes
+ * are encoded as fixed-width records and handed to the feed's spool thread, which writes them to a
+ * circular spool file; that subscriber reads them back from there. The spool only keeps what the
+ * slowest subscriber has not read, so it is trimmed from the front as that subscriber advances. No
+ * file is written or read while the feed is locked, so a slow disk never holds up the thread that
+ * committed a change. A subscriber that falls further behind than the spool can hold skips ahead to
+ * the oldest change still in memory, and its missed count says how many it lost, so it knows to
+ * re-read what it needs from the database.</p>
+ *
+ * <p>A subscriber that has not read for longer than the idle timeout is removed, so an abandoned one
+ * does not keep changes in the spool for ever.</p>
+ *
+ * <p>Sequence numbers start again at 1 each time the application starts.</p>
+ */
+public class ChangeFeed implements ProjectChangeListener, AutoCloseable {
+
+    // Sequence, commit time, type, project number, person table, person id
+    private static final int RECORD_BYTES = 8 + 8 + 1 + 4 + 1 + 4;
+    private static final ProjectChange.Type[] TYPES = ProjectChange.Type.values();
+    // How many rings of changes may wait in memory for the spool thread before slow subscribers lapse
+    private static final int MAX_STAGED_RINGS = 4;
+
+    private final ChangeEvent[] ring;
+    private final int mask;
+    private final Path spoolFile;
+    // The spool holds this many records, change s at record s % spoolRecords
+    private final long spoolRecords;
+    private final FileChannel spool;
+    private final long idleTimeoutMillis;
+    private final Map<String, Subscription> subscriptions = new LinkedHashMap<>();
+    private final Thread spooler;
+
+    // All guarded by this. Changes [spoolFrom, spoolTo) are in the file, [spoolTo, stagedTo) are
+    // encoded and waiting for the spool thread, and the ring holds the last ring.length before head
+    private final Deque<Batch> staged = new ArrayDeque<>();
+    private long head = 1;
+    private long spoolFrom = 1;
+    private long spoolTo = 1;
+    private long stagedTo = 1;
+    // Changed whenever the spool is dropped, so a write or read begun before is discarded
+    private long spoolEpoch;
+    private boolean closed;
+    private long nextExpiryCheck;
+
+    // Statistics
+    private long spooledCount;
+    private long lapsedCount;
+    private long expiredCount;
+
+    /**
+     * Changes [from, to) encoded for the spool file.
+     */
+    private record Batch(long from, long to, ByteBuffer records, long epoch) {
+    }
+
+    /**
+     * Creates a feed and starts its spool thread. It receives nothing until {@link #start()} is called.
+     *
+     * @param capacity      The number of changes kept in memory; rounded up to a power of two.
+     * @param spoolFile     The file changes not yet read by a slow subscriber are moved to; emptied now.
+     * @param maxSpoolBytes The largest the spool file may grow.
+     * @param idleTimeoutMillis How long a subscriber may go without reading before it is removed; 0 never.
+     * @throws IOException If the spool file cannot be opened.
+     */
+    public ChangeFeed(int capacity, Path spoolFile, long maxSpoolBytes, long idleTimeoutMillis) throws IOException {
+        if (capacity < 2 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 2 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new ChangeEvent[size];
+        this.mask = size - 1;
+        this.spoolFile = spoolFile;
+        this.spoolRecords = maxSpoolBytes / RECORD_BYTES;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.spool = FileChannel.open(spoolFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.spooler = new Thread(this::spoolLoop, "change-feed-spool");
+        spooler.setDaemon(true);
+        spooler.start();
+    }
+
+    /**
+     * Starts receiving every change committed from now on.
+     */
+    public void start() {
+        ProjectChanges.addListener(this);
+    }
+
+    /**
+     * Stops receiving changes, wakes any subscriber waiting in {@link Subscription#poll}, stops the
+     * spool thread and deletes the spool.
+     */
+    @Override
+    public void close() throws IOException {
+        ProjectChanges.removeListener(this);
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            spooler.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        spool.close();
+        Files.deleteIfExists(spoolFile);
+    }
+
+    // ================= Subscribing ================= //
+
+    /**
+     * Subscribes under a name, starting with the next change committed. Subscribing again under the
+     * same name returns the existing subscription, so a consumer that reconnects carries on where it was.
+     *
+     * @param name The name of the subscriber.
+     * @return The subscription.
+     */
+    public synchronized Subscription subscribe(String name) {
+        expireIdle();
+        Subscription subscription = subscriptions.computeIfAbsent(name, key -> new Subscription(key, head));
+        subscription.lastRead = System.currentTimeMillis();
+        return subscription;
+    }
+
+    /**
+     * Gets an existing subscription without creating one.
+     *
+     * @param name The name of the subscriber.
+     * @return The subscription, or null if there is none, or it expired.
+     */
+    public synchronized Subscription find(String name) {
+        expireIdle();
+        return subscriptions.get(name);
+    }
+
+    /**
+     * Removes a subscription, so the changes it has not read are no longer kept for it.
+     *
+     * @param name The name of the subscriber.
+     * @return Whether there was such a subscription.
+     */
+    public synchronized boolean unsubscribe(String name) {
+        boolean removed = subscriptions.remove(name) != null;
+        trimSpool();
+        return removed;
+    }
+
+    /**
+     * @return The sequence number the next committed change will get.
+     */
+    public synchronized long getNextSequence() {
+        return head;
+    }
+
+    // ================= Publishing ================= //
+
+    @Override
+    public synchronized void onChange(ProjectChange change) {
+        if (closed) {
+            return;
+        }
+        long evicted = head - ring.length;
+        if (evicted >= stagedTo && slowestCursor() <= evicted) {
+            stage(evicted);
+        }
+        ring[(int) (head & mask)] = new ChangeEvent(head, Instant.now(), change);
+        head++;
+        notifyAll();
+        expireIdle();
+    }
+
+    /**
+     * Removes the subscribers that have not read within the idle timeout, at most once a second. One
+     * waiting in {@link Subscription#poll} is reading, so it is kept.
+     */
+    private void expireIdle() {
+        long now = System.currentTimeMillis();
+        if (idleTimeoutMillis == 0 || now < nextExpiryCheck) {
+            return;
+        }
+        nextExpiryCheck = now + Math.min(1000, idleTimeoutMillis);
+
+        int before = subscriptions.size();
+        subscriptions.values().removeIf(subscription ->
+                subscription.waiting == 0 && now - subscription.lastRead > idleTimeoutMillis);
+        if (subscriptions.size() < before) {
+            expiredCount += before - subscriptions.size();
+            trimSpool();
+        }
+    }
+
+    /**
+     * Encodes the change about to leave the ring, and those after it, for the spool thread. Only memory
+     * is touched here, as this runs on the thread that committed the change.
+     */
+    private void stage(long evicted) {
+        if (stagedTo < evicted) {
+            // Nobody needed the changes in between, so nobody needs anything spooled before them
+            resetSpool(evicted);
+        }
+        trimSpool();
+
+        // Stage a quarter of the ring at once, so a slow subscriber costs one write per many changes
+        long end = Math.min(head, stagedTo + Math.max(1, ring.length / 4));
+        if (end - spoolFrom > spoolRecords || end - spoolTo > MAX_STAGED_RINGS * ring.length) {
+            lapse(evicted + 1); // Further behind than the spool holds, or the disk far behind the feed
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - stagedTo) * RECORD_BYTES);
+        for (long sequence = stagedTo; sequence < end; sequence++) {
+            write(buffer, ring[(int) (sequence & mask)]);
+        }
+        buffer.flip();
+        staged.addLast(new Batch(stagedTo, end, buffer, spoolEpoch));
+        stagedTo = end;
+        notifyAll();
+    }
+
+    /**
+     * Moves every subscriber behind the given sequence up to it and drops the spool.
+     */
+    private void lapse(long oldest) {
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.cursor < oldest) {
+                subscription.missed += oldest - subscription.cursor;
+                subscription.cursor = oldest;
+                lapsedCount++;
+            }
+        }
+        System.err.println("Change feed cannot spool more, slow subscribers skipped to change " + oldest);
+        resetSpool(oldest);
+    }
+
+    private void resetSpool(long from) {
+        spoolEpoch++;
+        staged.clear();
+        spoolFrom = spoolTo = stagedTo = from;
+    }
+
+    /**
+     * Lets go of the spooled changes every subscriber has read, so their records can be written over.
+     */
+    private void trimSpool() {
+        spoolFrom = Math.max(spoolFrom, Math.min(slowestCursor(), stagedTo));
+    }
+
+    private long slowestCursor() {
+        long slowest = head;
+        for (Subscription subscription : subscriptions.values()) {
+            slowest = Math.min(slowest, subscription.cursor);
+        }
+        return slowest;
+    }
+
+    /**
+     * Writes the staged batches to the spool file, oldest first, without holding the feed's lock.
+     */
+    private void spoolLoop() {
+        while (true) {
+            List<Batch> batches;
+            synchronized (this) {
+                while (staged.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                batches = new ArrayList<>(staged);
+            }
+
+            IOException failure = null;
+            try {
+                for (Batch batch : batches) {
+                    ByteBuffer records = batch.records().duplicate();
+                    long first = batch.from() % spoolRecords;
+                    int split = (int) Math.min(batch.to() - batch.from(), spoolRecords - first) * RECORD_BYTES;
+                    ByteBuffer wrapped = records.duplicate();
+                    records.limit(split);
+                    wrapped.position(split);
+                    writeFully(records, first * RECORD_BYTES);
+                    writeFully(wrapped, 0);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            synchronized (this) {
+                if (batches.get(0).epoch() != spoolEpoch || closed) {
+                    continue; // Dropped while it was being written
+                }
+                if (failure != null) {
+                    failure.printStackTrace();
+                    lapse(Math.max(1, head - ring.length));
+                    continue;
+                }
+                for (Batch batch : batches) {
+                    staged.removeFirst();
+                    spoolTo = batch.to();
+                    spooledCount += batch.to() - batch.from();
+                }
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += spool.write(buffer, position);
+        }
+    }
+
+    // ================= Reading ================= //
+
+    /**
+     * Reads the changes from the subscriber's cursor on from memory: the ring, or the batches not
+     * written yet. The cursor only moves if the subscriber lapsed.
+     *
+     * @return The changes, or null if the next change is only in the spool file.
+     */
+    private List<ChangeEvent> readMemory(Subscription subscription, int maxEvents) {
+        long ringFrom = Math.max(1, head - ring.length);
+        long oldest = spoolFrom < stagedTo ? spoolFrom : ringFrom;
+        if (subscription.cursor < oldest) {
+            // Only possible for a subscriber that was skipped ahead while spooling failed
+            subscription.missed += oldest - subscription.cursor;
+            subscription.cursor = oldest;
+        }
+
+        long cursor = subscription.cursor;
+        List<ChangeEvent> events = new ArrayList<>((int) Math.min(maxEvents, head - cursor));
+        while (cursor < head && events.size() < maxEvents) {
+            if (cursor >= ringFrom) {
+                events.add(ring[(int) (cursor & mask)]);
+            } else if (cursor >= spoolTo) {
+                events.add(stagedEvent(cursor));
+            } else {
+                break;
+            }
+            cursor++;
+        }
+        return events.isEmpty() ? null : events;
+    }
+
+    private ChangeEvent stagedEvent(long sequence) {
+        for (Batch batch : staged) {
+            if (sequence >= batch.from() && sequence < batch.to()) {
+                ByteBuffer records = batch.records().duplicate();
+                records.position((int) (sequence - batch.from()) * RECORD_BYTES);
+                return read(records);
+            }
+        }
+        throw new IllegalStateException("Change " + sequence + " is neither in memory nor spooled");
+    }
+
+    /**
+     * Reads changes [from, to) from the spool file. Called without the feed's lock.
+     *
+     * @return The changes, or null if the records are no longer those changes.
+     */
+    private List<ChangeEvent> readSpool(long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from) * RECORD_BYTES);
+        long first = from % spoolRecords;
+        int split = (int) Math.min(to - from, spoolRecords - first) * RECORD_BYTES;
+        buffer.limit(split);
+        readFully(buffer, first * RECORD_BYTES);
+        buffer.limit(buffer.capacity());
+        readFully(buffer, 0);
+        buffer.flip();
+
+        List<ChangeEvent> events = new ArrayList<>((int) (to - from));
+        while (buffer.hasRemaining()) {
+            ChangeEvent event = read(buffer);
+            if (event.sequence() != from + events.size()) {
+                return null;
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = spool.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Change feed spool " + spoolFile + " is shorter than expected");
+            }
+            position += read;
+        }
+    }
+
+    private static void write(ByteBuffer buffer, ChangeEvent event) {
+        ProjectChange change = event.change();
+        buffer.putLong(event.sequence());
+        buffer.putLong(event.committedAt().toEpochMilli());
+        buffer.put((byte) change.type().ordinal());
+        buffer.putInt(change.projectNum());
+        buffer.put(tableCode(change.personTable()));
+        buffer.putInt(change.personId());
+    }
+
+    private static ChangeEvent read(ByteBuffer buffer) {
+        long sequence = buffer.getLong();
+        Instant committedAt = Instant.ofEpochMilli(buffer.getLong());
+        ProjectChange.Type type = TYPES[buffer.get()];
+        int projectNum = buffer.getInt();
+        byte table = buffer.get();
+        int personId = buffer.getInt();
+        return new ChangeEvent(sequence, committedAt,
+                new ProjectChange(type, projectNum, table < 0 ? null : Person.TABLES[table], personId));
+    }
+
+    private static byte tableCode(String personTable) {
+        for (int i = 0; i < Person.TABLES.length; i++) {
+            if (Person.TABLES[i].equals(personTable)) {
+                return (byte) i;
+            }
+        }
+        return -1;
+    }
+
+    // ================= Statistics ================= //
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder out = new StringBuilder("ChangeFeed[next=").append(head)
+                .append(", capacity=").append(ring.length)
+                .append(", spooled=").append(stagedTo - spoolFrom).append(" now, ").append(spooledCount).append(" total")
+                .append(", lapses=").append(lapsedCount)
+                .append(", expiries=").append(expiredCount)
+                .append(", subscribers={");
+        String separator = "";
+        for (Subscription subscription : subscriptions.values()) {
+            out.append(separator).append(subscription.name).append(": lag ").append(head - subscription.cursor);
+            separator = ", ";
+        }
+        return out.append("}]").toString();
+    }
+
+    /**
+     * One subscriber's position in the feed. Only confirming changes advances it, so a change is read
+     * again until it is confirmed.
+     */
+    public final class Subscription {
+
+        private final String name;
+        // All guarded by the feed
+        private long cursor;
+        private long missed;
+        private long lastRead;
+        private int waiting;
+
+        private Subscription(String name, long cursor) {
+            this.name = name;
+            this.cursor = cursor;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Confirms the changes before {@code from} and reads the changes from there on, waiting for
+         * one if there are none yet. Changes in the spool file are read without holding the feed's lock.
+         *
+         * @param from          The sequence number after the last change received; changes before it
+         *                      are confirmed and are not read again. Lower than the cursor, it confirms
+         *                      nothing and reads from the cursor.
+         * @param maxEvents     The most changes returned.
+         * @param timeoutMillis How long to wait for a change; 0 to return straight away.
+         * @return The changes in commit order; empty if none came in time or the feed was closed.
+         * @throws IOException          If the spool cannot be read.
+         * @throws InterruptedException If the thread is interrupted while waiting.
+         */
+        public List<ChangeEvent> poll(long from, int maxEvents, long timeoutMillis) throws IOException, InterruptedException {
+            if (maxEvents < 1) {
+                throw new IllegalArgumentException("Must read at least one change");
+            }
+            synchronized (ChangeFeed.this) {
+                if (from > head) {
+                    throw new IllegalArgumentException("Change " + from + " has not been committed yet; the next is " + head);
+                }
+                if (from > cursor && subscriptions.get(name) == this) {
+                    cursor = from;
+                    trimSpool();
+                }
+            }
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (true) {
+                long start;
+                long to;
+                long epoch;
+                synchronized (ChangeFeed.this) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    waiting++;
+                    try {
+                        while (cursor >= head && !closed && remaining > 0) {
+                            ChangeFeed.this.wait(remaining);
+                            remaining = deadline - System.currentTimeMillis();
+                        }
+                    } finally {
+                        waiting--;
+                        lastRead = System.currentTimeMillis();
+                    }
+                    if (cursor >= head || closed || subscriptions.get(name) != this) {
+                        return Collections.emptyList();
+                    }
+                    List<ChangeEvent> events = readMemory(this, maxEvents);
+                    if (events != null) {
+                        return events;
+                    }
+                    start = cursor;
+                    to = Math.min(spoolTo, start + maxEvents);
+                    epoch = spoolEpoch;
+                }
+
+                List<ChangeEvent> events = readSpool(start, to);
+                synchronized (ChangeFeed.this) {
+                    if (spoolEpoch == epoch && cursor == start && subscriptions.get(name) == this) {
+                        if (events == null) {
+                            throw new IOException("Change feed spool " + spoolFile + " does not hold change " + start);
+                        }
+                        return events;
+                    }
+                }
+                // Confirmed meanwhile by another poll of this subscriber, or dropped by a lapse; look again
+            }
+        }
+
+        /**
+         * @return The sequence number of the first change this subscriber has not confirmed.
+         */
+        public long getCursor() {
+            synchronized (ChangeFeed.this) {
+                return cursor;
+            }
+        }
+
+        /**
+         * @return The number of committed changes this subscriber has not confirmed yet.
+         */
+        public long getLag() {
+            synchronized (ChangeFeed.this) {
+                return head - cursor;
+            }
+        }
+
+        /**
+         * @return The number of changes skipped because this subscriber fell too far behind.
+         */
+        public long getMissedCount() {
+            synchronized (ChangeFeed.this) {
+                return missed;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class looks up the position of each column of a result set once, so rows can then be
+ * read by index instead of by name.
+ */
+public class ColumnIndex {
+
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    /**
+     * Reads the column labels of a result set. When a label appears more than once, as the id
+     * columns of a join do, the first column with that label is used.
+     *
+     * @param resultSet The result set.
+     * @throws SQLException If a database error occurs.
+     */
+    public ColumnIndex(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            indexes.putIfAbsent(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+        }
+    }
+
+    /**
+     * Numbers the columns of a fixed select list in order, for a query whose columns are known
+     * before it runs. A column qualified by its table, such as {@code PoisePMS.Customer_id}, is
+     * labelled by its name alone.
+     *
+     * @param columns The selected columns, in select-list order.
+     */
+    public ColumnIndex(String... columns) {
+        for (int i = 0; i < columns.length; i++) {
+            String label = columns[i].substring(columns[i].lastIndexOf('.') + 1);
+            indexes.putIfAbsent(label.toLowerCase(Locale.ROOT), i + 1);
+        }
+    }
+
+    /**
+     * Gets the index of a column.
+     *
+     * @param label The column label, in any case.
+     * @return The 1-based column index.
+     * @throws SQLException If the result set has no such column.
+     */
+    public int indexOf(String label) throws SQLException {
+        Integer index = indexes.get(label.toLowerCase(Locale.ROOT));
+        if (index == null) {
+            throw new SQLException("Result set has no column " + label);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,482 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class provides a bounded pool of database connections for the project management system.
+ * Connections are validated when borrowed, evicted when idle or too old, and reported when they
+ * are held longer than the leak detection threshold.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private final String jdbcUrl;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+
+    // Tunables, changeable before the pool is first used; the timeout and leak threshold also while in use
+    private volatile long connectionTimeoutMillis = 30_000;
+    private long idleTimeoutMillis = 10 * 60_000;
+    private long maxLifetimeMillis = 30 * 60_000;
+    private volatile long leakDetectionThresholdMillis = 0;
+    private long validationIntervalMillis = 5_000;
+    private int validationTimeoutSeconds = 5;
+    private int statementCacheSize = 50;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowedConnections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    // Counters exposed for monitoring
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final StatementCache.Stats statementCacheStats = new StatementCache.Stats();
+    private final QueryStats queryStats = new QueryStats();
+
+    /**
+     * Creates a connection pool for the given database.
+     *
+     * @param jdbcUrl  The JDBC URL of the database.
+     * @param user     The database user.
+     * @param password The database password.
+     * @param maxSize  The maximum number of open connections.
+     */
+    public ConnectionPool(String jdbcUrl, String user, String password, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.jdbcUrl = jdbcUrl;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, 30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting up to the connection timeout for one to become free.
+     * Closing the returned connection hands it back to the pool instead of closing the socket.
+     *
+     * @return A validated connection.
+     * @throws SQLException If the pool is closed or a connection cannot be opened; a
+     *                      {@link SQLTimeoutException} if every connection stayed in use until the timeout.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(connectionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTimeoutException("Timed out after " + connectionTimeoutMillis
+                        + " ms waiting for a connection (active: " + getActiveConnections() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            PooledConnection pooled = takeIdleConnection();
+            if (pooled == null) {
+                pooled = openConnection();
+            }
+            recordWait(System.nanoTime() - waitStart);
+
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowedBy = leakDetectionThresholdMillis > 0 ? new Exception("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowedConnections.add(pooled);
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection, discarding any that are expired or fail validation.
+     *
+     * @return A usable idle connection, or null if none is available.
+     */
+    private PooledConnection takeIdleConnection() {
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            long now = System.currentTimeMillis();
+            if (now - pooled.createdAt > maxLifetimeMillis) {
+                discard(pooled);
+                continue;
+            }
+            if (now - pooled.lastUsedAt > validationIntervalMillis && !isValid(pooled)) {
+                discard(pooled);
+                continue;
+            }
+            return pooled;
+        }
+        return null;
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        Connection physical = DriverManager.getConnection(jdbcUrl, user, password);
+        if (queryStats.isEnabled()) {
+            physical = QueryInstrumentation.wrap(physical, queryStats);
+        }
+        totalConnections.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /**
+     * Hands a connection back to the pool, resetting any transaction state left behind by the borrower.
+     *
+     * @param pooled The connection being returned.
+     */
+    private void release(PooledConnection pooled) {
+        borrowedConnections.remove(pooled);
+        try {
+            if (closed || pooled.broken || pooled.physical.isClosed()) {
+                discard(pooled);
+                return;
+            }
+            if (!pooled.physical.getAutoCommit()) {
+                // The borrower left a transaction open, so roll it back before reuse
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastUsedAt = System.currentTimeMillis();
+            idleConnections.offerFirst(pooled);
+        } catch (SQLException e) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        if (pooled.statementCache != null) {
+            pooled.statementCache.close();
+        }
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            // The connection is being thrown away, so there is nothing more to do
+        }
+    }
+
+    /**
+     * Evicts idle and expired connections and reports connections held past the leak detection threshold.
+     */
+    private void houseKeep() {
+        long now = System.currentTimeMillis();
+
+        for (PooledConnection pooled : idleConnections) {
+            boolean idleTooLong = now - pooled.lastUsedAt > idleTimeoutMillis;
+            boolean tooOld = now - pooled.createdAt > maxLifetimeMillis;
+            if ((idleTooLong || tooOld) && idleConnections.remove(pooled)) {
+                discard(pooled);
+            }
+        }
+
+        if (leakDetectionThresholdMillis > 0) {
+            for (PooledConnection pooled : borrowedConnections) {
+                if (!pooled.leakReported && now - pooled.borrowedAt > leakDetectionThresholdMillis) {
+                    pooled.leakReported = true;
+                    leakCount.incrementAndGet();
+                    System.err.println("Possible connection leak: connection held for "
+                            + (now - pooled.borrowedAt) + " ms");
+                    if (pooled.borrowedBy != null) {
+                        pooled.borrowedBy.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the pool and every idle connection. Borrowed connections are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        queryStats.close();
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    /**
+     * @return Whether the error means the connection itself has failed: SQL state class 08, or one of
+     *         the JDBC connection exceptions that some drivers raise with a state of their own.
+     */
+    static boolean isConnectionFailure(SQLException e) {
+        String sqlState = e.getSQLState();
+        return sqlState != null && sqlState.startsWith("08")
+                || e instanceof SQLNonTransientConnectionException || e instanceof SQLTransientConnectionException;
+    }
+
+    // ================= Tuning ================= //
+
+    public void setConnectionTimeoutMillis(long connectionTimeoutMillis) {
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public void setMaxLifetimeMillis(long maxLifetimeMillis) {
+        this.maxLifetimeMillis = maxLifetimeMillis;
+    }
+
+    /**
+     * Sets how long a connection may be held before it is reported as a possible leak.
+     *
+     * @param leakDetectionThresholdMillis The threshold in milliseconds, or 0 to disable leak detection.
+     */
+    public void setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis) {
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+    }
+
+    public void setValidationIntervalMillis(long validationIntervalMillis) {
+        this.validationIntervalMillis = validationIntervalMillis;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    /**
+     * Sets how many prepared statements are cached per connection. Only connections opened
+     * after the change are affected.
+     *
+     * @param statementCacheSize The number of statements to cache, or 0 to disable caching.
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    // ================= Statistics ================= //
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveConnections() {
+        return borrowedConnections.size();
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public int getThreadsAwaitingConnection() {
+        return permits.getQueueLength();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / borrows;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    public StatementCache.Stats getStatementCacheStats() {
+        return statementCacheStats;
+    }
+
+    /**
+     * Returns the per-statement timings of this pool. Enable them before the pool is first used,
+     * since only connections opened while they are enabled are instrumented.
+     */
+    public QueryStats getQueryStats() {
+        return queryStats;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionPool[active=%d, idle=%d, total=%d/%d, waiting=%d, borrows=%d, avgWait=%.3f ms, maxWait=%.3f ms, timeouts=%d, leaks=%d]",
+                getActiveConnections(), getIdleConnections(), getTotalConnections(), maxSize,
+                getThreadsAwaitingConnection(), getBorrowCount(), getAverageWaitMillis(),
+                getMaxWaitMillis(), getTimeoutCount(), getLeakCount()) + " " + statementCacheStats;
+    }
+
+    /**
+     * A physical connection owned by the pool together with its bookkeeping.
+     */
+    private final class PooledConnection {
+        final Connection physical;
+        final StatementCache statementCache;
+        final long createdAt = System.currentTimeMillis();
+        volatile long lastUsedAt = createdAt;
+        volatile long borrowedAt;
+        volatile Exception borrowedBy;
+        volatile boolean leakReported;
+        volatile boolean broken;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statementCache = statementCacheSize > 0
+                    ? new StatementCache(physical, statementCacheSize, statementCacheStats, this::checkFailure) : null;
+        }
+
+        /**
+         * Marks the connection broken if the error means it has failed.
+         *
+         * @return The error, to be rethrown.
+         */
+        Throwable checkFailure(Throwable error) {
+            if (error instanceof SQLException && isConnectionFailure((SQLException) error)) {
+                broken = true;
+            }
+            return error;
+        }
+
+        /**
+         * Creates the handle given to a borrower. Each borrow gets its own handle so a stale
+         * reference cannot use the connection after it has been handed back.
+         */
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this));
+        }
+    }
+
+    /**
+     * Forwards calls to the physical connection, except close() which returns it to the pool
+     * and prepareStatement() which goes through the statement cache. Errors raised by the connection
+     * or by a cached statement mark the connection broken when they mean it has failed; one that
+     * fails an uncached statement is found the next time the idle connection is validated.
+     */
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    break;
+            }
+
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+
+            switch (method.getName()) {
+                case "unwrap":
+                    // Unwrapping to the physical connection would let a borrower close it under the pool
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    throw new SQLException("Pooled connection does not wrap " + ((Class<?>) args[0]).getName());
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                default:
+                    break;
+            }
+
+            try {
+                return invokePhysical((Connection) proxy, method, args);
+            } catch (InvocationTargetException e) {
+                throw pooled.checkFailure(e.getCause());
+            } catch (SQLException e) {
+                throw pooled.checkFailure(e);
+            }
+        }
+
+        private Object invokePhysical(Connection proxy, Method method, Object[] args) throws Exception {
+            if (pooled.statementCache != null && method.getName().equals("prepareStatement")) {
+                if (args.length == 1) {
+                    return pooled.statementCache.prepare((String) args[0], Statement.NO_GENERATED_KEYS, proxy);
+                }
+                if (args.length == 2 && args[1] instanceof Integer) {
+                    return pooled.statementCache.prepare((String) args[0], (Integer) args[1], proxy);
+                }
+            }
+            return method.invoke(pooled.physical, args);
+        }
+    }
+}
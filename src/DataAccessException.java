@@ -0,0 +1,19 @@
+import java.sql.SQLException;
+
+/**
+ * Thrown where a database error has to cross an API that cannot throw SQLException,
+ * such as an Iterator or a Stream.
+ */
+public class DataAccessException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DataAccessException(String message, SQLException cause) {
+        super(message, cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
@@ -0,0 +1,19 @@
+import java.time.LocalDate;
+
+/**
+ * A project deadline that has come close or passed, fired by {@link DeadlineTracker}.
+ *
+ * @param type    Whether the deadline is close or has passed.
+ * @param project The project, with its deadline.
+ * @param today   The date the deadline was checked against.
+ */
+public record DeadlineEvent(Type type, ProjectSummary project, LocalDate today) {
+
+    /**
+     * The kind of event.
+     */
+    public enum Type {
+        DUE_SOON,
+        OVERDUE
+    }
+}
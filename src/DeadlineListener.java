@@ -0,0 +1,13 @@
+/**
+ * Receives the events fired by a {@link DeadlineTracker}.
+ */
+public interface DeadlineListener {
+
+    /**
+     * Called once when a project comes within the warning period of its deadline and once when the
+     * deadline passes, on the tracker's thread. Moving the deadline makes both due again.
+     *
+     * @param event The event.
+     */
+    void onDeadline(DeadlineEvent event);
+}
@@ -0,0 +1,281 @@
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * This class keeps the projects that are not finalized and have a deadline in a skip list ordered by
+ * deadline, so the overdue projects are simply the head of the list and listing k of them reads k
+ * entries instead of the table. It also tells {@link DeadlineListener}s when a deadline comes within
+ * the warning period and when it passes.
+ *
+ * <p>The list is loaded once by {@link #load()}. After that, committed changes published through
+ * {@link ProjectChanges} mark their projects as pending, and a background refresh re-reads just those
+ * rows and then checks the deadlines, so answers are at most one refresh interval behind the database.</p>
+ */
+public class DeadlineTracker implements ProjectChangeListener, AutoCloseable {
+
+    private static final String SELECT_COLUMNS = "SELECT Project_num, Project_name, Project_deadline, Finalized FROM PoisePMS";
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int REFRESH_CHUNK_SIZE = InList.CHUNK_SIZE;
+
+    private final ConnectionPool pool;
+    private final int warningDays;
+    private final List<DeadlineListener> listeners = new CopyOnWriteArrayList<>();
+    private final PendingRefresh pending = new PendingRefresh("deadline-tracker");
+
+    // Keyed by deadline and then project number, see key(); written only while holding this object's monitor
+    private final ConcurrentSkipListMap<Long, ProjectSummary> byDeadline = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Long> keyByProjectNum = new ConcurrentHashMap<>();
+
+    // Every project keyed below these has had its overdue or due soon event; they only move forward
+    private long overdueFiredBelow = Long.MIN_VALUE;
+    private long dueSoonFiredBelow = Long.MIN_VALUE;
+    private LocalDate lastChecked;
+
+    /**
+     * Creates an empty tracker. Call {@link #load()} to fill it.
+     *
+     * @param pool        The connection pool to load from.
+     * @param warningDays How many days before its deadline a project is due soon.
+     */
+    public DeadlineTracker(ConnectionPool pool, int warningDays) {
+        if (warningDays < 0) {
+            throw new IllegalArgumentException("Warning days must not be negative");
+        }
+        this.pool = pool;
+        this.warningDays = warningDays;
+    }
+
+    public void addListener(DeadlineListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DeadlineListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Loads every project that is not finalized and has a deadline, and starts listening for changes.
+     * No events are fired until the first {@link #check(LocalDate)}.
+     *
+     * @throws SQLException If a database error occurs.
+     */
+    public synchronized void load() throws SQLException {
+        ProjectChanges.addListener(this);
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement selectStatement = connection.prepareStatement(
+                     SELECT_COLUMNS + " WHERE Finalized IS NOT TRUE AND Project_deadline IS NOT NULL",
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            selectStatement.setFetchSize(FETCH_SIZE);
+
+            byDeadline.clear();
+            keyByProjectNum.clear();
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    store(resultSet);
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-reads pending projects and checks deadlines against the current date at a fixed interval
+     * until {@link #close()} is called.
+     *
+     * @param intervalMillis The time between refreshes.
+     */
+    public void startRefreshing(long intervalMillis) {
+        pending.start(0, intervalMillis, () -> {
+            refresh();
+            check(LocalDate.now());
+        });
+    }
+
+    @Override
+    public void close() {
+        ProjectChanges.removeListener(this);
+        pending.close();
+    }
+
+    @Override
+    public void onChange(ProjectChange change) {
+        // Person changes cannot move a deadline
+        if (!change.isPersonChange()) {
+            pending.mark("PoisePMS", change.projectNum());
+        }
+    }
+
+    /**
+     * Re-reads the projects changed since the last refresh. Projects that were finalized, deleted or
+     * lost their deadline are dropped. A project whose deadline moved into a period that has already
+     * been checked gets its event straight away.
+     *
+     * @return The number of projects re-read.
+     * @throws SQLException If a database error occurs. The projects stay pending.
+     */
+    public synchronized int refresh() throws SQLException {
+        return pending.drain("PoisePMS", REFRESH_CHUNK_SIZE, this::refreshChunk);
+    }
+
+    private void refreshChunk(List<Integer> projectNums) throws SQLException {
+        String sql = SELECT_COLUMNS + " WHERE Project_num IN (%s)";
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement selectStatement = InList.prepare(connection, sql, projectNums)) {
+            Set<Integer> missing = new HashSet<>(projectNums);
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    int projectNum = resultSet.getInt(1);
+                    missing.remove(projectNum);
+                    if (resultSet.getBoolean(4) || resultSet.getDate(3) == null) {
+                        remove(projectNum);
+                        continue;
+                    }
+                    Long oldKey = keyByProjectNum.get(projectNum);
+                    long newKey = store(resultSet);
+                    if (oldKey == null || oldKey != newKey) {
+                        fireIfAlreadyChecked(newKey);
+                    }
+                }
+            }
+            missing.forEach(this::remove);
+        }
+    }
+
+    /**
+     * Stores the project at the cursor, replacing its old entry. Called holding the monitor.
+     *
+     * @return Its key.
+     */
+    private long store(ResultSet resultSet) throws SQLException {
+        int projectNum = resultSet.getInt(1);
+        Date deadline = resultSet.getDate(3);
+        ProjectSummary project = new ProjectSummary(projectNum, resultSet.getString(2), deadline.toLocalDate());
+        long key = key(project.projectDeadline(), projectNum);
+
+        Long oldKey = keyByProjectNum.put(projectNum, key);
+        if (oldKey != null && oldKey != key) {
+            byDeadline.remove(oldKey);
+        }
+        byDeadline.put(key, project);
+        return key;
+    }
+
+    private void remove(int projectNum) {
+        Long key = keyByProjectNum.remove(projectNum);
+        if (key != null) {
+            byDeadline.remove(key);
+        }
+    }
+
+    /**
+     * Fires the event a project would have had if it had been stored when its period was checked.
+     */
+    private void fireIfAlreadyChecked(long key) {
+        if (key < overdueFiredBelow) {
+            fire(DeadlineEvent.Type.OVERDUE, byDeadline.get(key), lastChecked);
+        } else if (key < dueSoonFiredBelow) {
+            fire(DeadlineEvent.Type.DUE_SOON, byDeadline.get(key), lastChecked);
+        }
+    }
+
+    /**
+     * Fires the events of every project whose deadline passed, or came within the warning period,
+     * since the last check. Each project is visited once per event, so a check that finds nothing
+     * new reads nothing. The first check fires the events of everything already overdue or due soon.
+     *
+     * @param today The date deadlines are compared against.
+     */
+    public synchronized void check(LocalDate today) {
+        long overdueBelow = key(today, Integer.MIN_VALUE);
+        long dueSoonBelow = key(today.plusDays(warningDays + 1L), Integer.MIN_VALUE);
+        lastChecked = today;
+
+        if (overdueBelow > overdueFiredBelow) {
+            for (ProjectSummary project : byDeadline.subMap(overdueFiredBelow, overdueBelow).values()) {
+                fire(DeadlineEvent.Type.OVERDUE, project, today);
+            }
+            overdueFiredBelow = overdueBelow;
+        }
+
+        // Projects that are already overdue skip straight to their overdue event
+        long dueSoonFrom = Math.max(dueSoonFiredBelow, overdueFiredBelow);
+        if (dueSoonBelow > dueSoonFrom) {
+            for (ProjectSummary project : byDeadline.subMap(dueSoonFrom, dueSoonBelow).values()) {
+                fire(DeadlineEvent.Type.DUE_SOON, project, today);
+            }
+        }
+        dueSoonFiredBelow = Math.max(dueSoonFiredBelow, dueSoonBelow);
+    }
+
+    private void fire(DeadlineEvent.Type type, ProjectSummary project, LocalDate today) {
+        DeadlineEvent event = new DeadlineEvent(type, project, today);
+        for (DeadlineListener listener : listeners) {
+            try {
+                listener.onDeadline(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Orders by deadline and then project number; the project number is in the low 32 bits.
+     */
+    private static long key(LocalDate deadline, int projectNum) {
+        return (deadline.toEpochDay() << 32) + projectNum;
+    }
+
+    // ================= Queries ================= //
+
+    /**
+     * Streams the projects that are not finalized and have a deadline before the given date, earliest
+     * deadline first. Only the returned projects are read.
+     *
+     * @param today The date deadlines are compared against.
+     * @return The overdue projects.
+     */
+    public Stream<ProjectSummary> overdue(LocalDate today) {
+        return byDeadline.headMap(key(today, Integer.MIN_VALUE)).values().stream();
+    }
+
+    /**
+     * Streams the projects that are not finalized and are due from the given date up to the given
+     * number of days after it, earliest deadline first.
+     *
+     * @param today The first date included.
+     * @param days  How many days after it are included.
+     * @return The projects due soon.
+     */
+    public Stream<ProjectSummary> dueWithin(LocalDate today, int days) {
+        return byDeadline.subMap(key(today, Integer.MIN_VALUE), key(today.plusDays(days + 1L), Integer.MIN_VALUE))
+                .values().stream();
+    }
+
+    public int size() {
+        return keyByProjectNum.size();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public String toString() {
+        return "DeadlineTracker[tracked=" + size() + ", pending=" + getPendingCount()
+                + ", warningDays=" + warningDays + "]";
+    }
+}
@@ -1,35 +1,59 @@
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class provides functionality to finalize existing projects in the project management system.
  */
 public class FinalizeProject {
 
+    /**
+     * The outcome of finalizing a single project.
+     */
+    public enum Outcome {
+        NOT_FOUND,
+        ALREADY_FINALIZED,
+        FINALIZED
+    }
+
+    // Checks and updates in one statement, so two operators cannot both finalize the same project
+    private static final String FINALIZE_SQL = "UPDATE PoisePMS SET Finalized = true, Completion_date = ? "
+            + "WHERE Project_num = ? AND Finalized IS NOT TRUE";
+
+    private static final String PROJECT_EXISTS_SQL = "SELECT 1 FROM PoisePMS WHERE Project_num = ?";
+
+    private static final String LOCK_FINALIZED_SQL = "SELECT Project_num, Finalized FROM PoisePMS WHERE Project_num IN (%s) FOR UPDATE";
+
+    // Clock used for completion dates, replaceable so the date can be controlled
+    private static volatile Clock clock = Clock.systemDefaultZone();
+
     /**
      * Finalizes an existing project by marking it as finalized and adding the completion date.
      *
-     * @param connection The database connection.
+     * @param service    The project service.
      * @param projectNum The project number to be finalized.
      */
-    public static void finalizeExistingProject(Connection connection, int projectNum) {
+    public static void finalizeExistingProject(ProjectService service, int projectNum) {
         try {
-            // Check if the project exists before finalizing
-            if (isProjectExists(connection, projectNum)) {
-                // Check if the project is already finalized
-                if (!isProjectFinalized(connection, projectNum)) {
-                    // Finalize the project
-                    markProjectAsFinalized(connection, projectNum);
-                    addCompletionDate(connection, projectNum);
+            switch (service.finalizeProject(projectNum)) {
+                case FINALIZED:
                     System.out.println("Project finalized successfully.");
-                } else {
+                    break;
+                case ALREADY_FINALIZED:
                     System.out.println("Project is already finalized.");
-                }
-            } else {
-                System.out.println("Project not found.");
+                    break;
+                default:
+                    System.out.println("Project not found.");
+                    break;
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -37,75 +61,180 @@ public class FinalizeProject {
     }
 
     /**
-     * Checks if a project with the given project number exists in the database.
+     * Finalizes a project with a single conditional update. The existence check only runs
+     * when no row was updated, to tell a missing project from one that is already finalized.
+     * When changes are audited the project is finalized as a batch of one, as the audit reads
+     * and locks the row before it is updated.
      *
-     * @param connection The database connection.
-     * @param projectNum The project number to check.
-     * @return true if the project exists, false otherwise.
+     * @param pool       The connection pool to borrow a connection from.
+     * @param projectNum The project number to be finalized.
+     * @return The outcome of the finalization.
      * @throws SQLException If a database error occurs.
      */
-    private static boolean isProjectExists(Connection connection, int projectNum) throws SQLException {
-        String query = "SELECT * FROM PoisePMS WHERE project_num = ?";
-        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-            preparedStatement.setInt(1, projectNum);
-            return preparedStatement.executeQuery().next();
+    public static Outcome finalizeProject(ConnectionPool pool, int projectNum) throws SQLException {
+        if (AuditLog.current() != null) {
+            return finalizeProjects(pool, List.of(projectNum)).get(projectNum);
+        }
+        try (Connection connection = pool.getConnection()) {
+            return finalizeProject(connection, projectNum);
+        }
+    }
+
+    private static Outcome finalizeProject(Connection connection, int projectNum) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(FINALIZE_SQL)) {
+            preparedStatement.setDate(1, today());
+            preparedStatement.setInt(2, projectNum);
+            if (preparedStatement.executeUpdate() > 0) {
+                ProjectChanges.publish(ProjectChange.of(ProjectChange.Type.PROJECT_FINALIZED, projectNum));
+                return Outcome.FINALIZED;
+            }
         }
+        return projectExists(connection, projectNum) ? Outcome.ALREADY_FINALIZED : Outcome.NOT_FOUND;
     }
 
     /**
-     * Checks if a project with the given project number is already finalized.
+     * Finalizes several projects in one batched statement inside a single transaction. The rows are
+     * read and locked first, so the outcomes come from their Finalized values rather than from update
+     * counts, which drivers that rewrite batches do not report per row.
      *
-     * @param connection The database connection.
-     * @param projectNum The project number to check.
-     * @return true if the project is finalized, false otherwise.
-     * @throws SQLException If a database error occurs.
+     * @param pool        The connection pool to borrow a connection from.
+     * @param projectNums The project numbers to be finalized; repeats are finalized once.
+     * @return The outcome for each project number, in the order given.
+     * @throws SQLException If a database error occurs. No project is finalized in that case.
      */
-    private static boolean isProjectFinalized(Connection connection, int projectNum) throws SQLException {
-        String query = "SELECT * FROM PoisePMS WHERE project_num = ? AND finalized = true";
-        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-            preparedStatement.setInt(1, projectNum);
-            return preparedStatement.executeQuery().next();
+    public static Map<Integer, Outcome> finalizeProjects(ConnectionPool pool, List<Integer> projectNums) throws SQLException {
+        List<Integer> distinctNums = new ArrayList<>(new LinkedHashSet<>(projectNums));
+        Map<Integer, Outcome> outcomes = new LinkedHashMap<>();
+        if (distinctNums.isEmpty()) {
+            return outcomes;
         }
+        AuditCapture audit;
+
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            audit = AuditCapture.start(connection);
+            try {
+                // The audit's before-read already locks the rows, so it is only read here when nothing is audited
+                Map<Integer, Boolean> finalized = new HashMap<>();
+                if (audit.isEnabled()) {
+                    audit.before("PoisePMS", distinctNums).forEach((projectNum, row) ->
+                            finalized.put(projectNum, isTrue(row.get("Finalized"))));
+                } else {
+                    finalized.putAll(lockFinalized(connection, distinctNums));
+                }
+
+                List<Integer> toFinalize = new ArrayList<>();
+                for (int projectNum : distinctNums) {
+                    Boolean wasFinalized = finalized.get(projectNum);
+                    if (wasFinalized == null) {
+                        outcomes.put(projectNum, Outcome.NOT_FOUND);
+                    } else if (wasFinalized) {
+                        outcomes.put(projectNum, Outcome.ALREADY_FINALIZED);
+                    } else {
+                        outcomes.put(projectNum, Outcome.FINALIZED);
+                        toFinalize.add(projectNum);
+                    }
+                }
+
+                java.sql.Date completionDate = today();
+                if (!toFinalize.isEmpty()) {
+                    try (PreparedStatement preparedStatement = connection.prepareStatement(FINALIZE_SQL)) {
+                        for (int projectNum : toFinalize) {
+                            preparedStatement.setDate(1, completionDate);
+                            preparedStatement.setInt(2, projectNum);
+                            preparedStatement.addBatch();
+                        }
+                        preparedStatement.executeBatch();
+                    }
+                }
+
+                // Recorded from what was written, so nothing is read back
+                Map<String, Object> finalizedColumns = new LinkedHashMap<>();
+                finalizedColumns.put("Finalized", true);
+                finalizedColumns.put("Completion_date", completionDate);
+                for (int projectNum : toFinalize) {
+                    audit.afterUpdate("PoisePMS", projectNum, finalizedColumns);
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        // Publish only once the batch has been committed
+        outcomes.forEach((projectNum, outcome) -> {
+            if (outcome == Outcome.FINALIZED) {
+                ProjectChanges.publish(ProjectChange.of(ProjectChange.Type.PROJECT_FINALIZED, projectNum));
+            }
+        });
+        audit.submit();
+        return outcomes;
     }
 
     /**
-     * Marks a project as finalized in the database.
+     * Checks if a project with the given project number exists in the database.
      *
      * @param connection The database connection.
-     * @param projectNum The project number to mark as finalized.
+     * @param projectNum The project number to check.
+     * @return true if the project exists, false otherwise.
      * @throws SQLException If a database error occurs.
      */
-    private static void markProjectAsFinalized(Connection connection, int projectNum) throws SQLException {
-        String query = "UPDATE PoisePMS SET Finalized = true WHERE project_num = ?";
-        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+    private static boolean projectExists(Connection connection, int projectNum) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(PROJECT_EXISTS_SQL)) {
             preparedStatement.setInt(1, projectNum);
-            preparedStatement.executeUpdate();
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                return resultSet.next();
+            }
         }
     }
 
     /**
-     * Adds the completion date to a project in the database.
+     * Reads and locks the Finalized value of each of the given projects that exists.
      *
-     * @param connection The database connection.
-     * @param projectNum The project number to add the completion date to.
+     * @param connection  The database connection, inside the transaction finalizing them.
+     * @param projectNums The project numbers to read.
+     * @return Whether each project is finalized, by project number; projects that do not exist are left out.
      * @throws SQLException If a database error occurs.
      */
-    private static void addCompletionDate(Connection connection, int projectNum) throws SQLException {
-        String query = "UPDATE PoisePMS SET Completion_date = ? WHERE project_num = ?";
-        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-            preparedStatement.setString(1, getCurrentDate());
-            preparedStatement.setInt(2, projectNum);
-            preparedStatement.executeUpdate();
+    private static Map<Integer, Boolean> lockFinalized(Connection connection, List<Integer> projectNums) throws SQLException {
+        Map<Integer, Boolean> finalized = new HashMap<>();
+        for (int start = 0; start < projectNums.size(); start += InList.CHUNK_SIZE) {
+            List<Integer> chunk = projectNums.subList(start, Math.min(projectNums.size(), start + InList.CHUNK_SIZE));
+            try (PreparedStatement preparedStatement = InList.prepare(connection, LOCK_FINALIZED_SQL, chunk);
+                 ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    finalized.put(resultSet.getInt(1), resultSet.getBoolean(2));
+                }
+            }
         }
+        return finalized;
+    }
+
+    /**
+     * Reads a boolean column as the audit captured it: drivers give "1" or "true".
+     */
+    private static boolean isTrue(String value) {
+        return "1".equals(value) || "true".equalsIgnoreCase(value);
+    }
+
+    /**
+     * Gets the current date from the configured clock.
+     *
+     * @return The current date.
+     */
+    private static java.sql.Date today() {
+        return java.sql.Date.valueOf(LocalDate.now(clock));
     }
 
     /**
-     * Gets the current date in the "yyyy-MM-dd" format.
+     * Replaces the clock used for completion dates.
      *
-     * @return The current date as a formatted string.
+     * @param newClock The clock to use.
      */
-    private static String getCurrentDate() {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-        return dateFormat.format(new Date());
+    public static void setClock(Clock newClock) {
+        clock = newClock;
     }
 }
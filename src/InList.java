@@ -0,0 +1,44 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class prepares statements that look rows up by an IN list of ids, a chunk of ids at a time.
+ */
+public class InList {
+
+    // Ids bound per statement; callers split longer lists into chunks of this size
+    static final int CHUNK_SIZE = 500;
+
+    /**
+     * Prepares a statement with an IN list of the given values. The list is padded to the next power
+     * of two by repeating the last value, so only a handful of distinct statements reach the statement
+     * cache however the chunks are sized.
+     *
+     * @param connection The connection.
+     * @param sqlFormat  The SQL with a %s where the placeholders go.
+     * @param values     The values, at least one.
+     * @return The prepared statement with every placeholder bound.
+     * @throws SQLException If a database error occurs.
+     */
+    static PreparedStatement prepare(Connection connection, String sqlFormat, List<Integer> values) throws SQLException {
+        int placeholders = Integer.highestOneBit(values.size());
+        if (placeholders < values.size()) {
+            placeholders <<= 1;
+        }
+        String sql = String.format(sqlFormat, String.join(", ", Collections.nCopies(placeholders, "?")));
+
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+            for (int i = 0; i < placeholders; i++) {
+                statement.setInt(i + 1, values.get(Math.min(i, values.size() - 1)));
+            }
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+        return statement;
+    }
+}
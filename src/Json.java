@@ -0,0 +1,294 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class reads and writes the small amount of JSON the system exchanges: flat objects whose
+ * values are strings, numbers, booleans or null.
+ */
+public class Json {
+
+    /**
+     * Parses a flat JSON object. Every value is returned as its text, and null as null.
+     *
+     * @param text The JSON text.
+     * @return The fields of the object.
+     * @throws IOException If the text is not a flat JSON object.
+     */
+    public static Map<String, String> parseFlatObject(String text) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        int[] pos = {skipWhitespace(text, 0)};
+        expect(text, pos, '{');
+
+        pos[0] = skipWhitespace(text, pos[0]);
+        if (pos[0] < text.length() && text.charAt(pos[0]) == '}') {
+            return fields;
+        }
+
+        while (true) {
+            pos[0] = skipWhitespace(text, pos[0]);
+            String key = readString(text, pos);
+            pos[0] = skipWhitespace(text, pos[0]);
+            expect(text, pos, ':');
+            pos[0] = skipWhitespace(text, pos[0]);
+
+            String value;
+            if (pos[0] < text.length() && text.charAt(pos[0]) == '"') {
+                value = readString(text, pos);
+            } else {
+                int end = pos[0];
+                while (end < text.length() && ",}".indexOf(text.charAt(end)) < 0 && !Character.isWhitespace(text.charAt(end))) {
+                    end++;
+                }
+                value = text.substring(pos[0], end);
+                pos[0] = end;
+                if (value.isEmpty()) {
+                    throw new IOException("Missing value for " + key + " at column " + (pos[0] + 1));
+                }
+                if (value.equals("null")) {
+                    value = null;
+                }
+            }
+            fields.put(key, value);
+
+            pos[0] = skipWhitespace(text, pos[0]);
+            if (pos[0] < text.length() && text.charAt(pos[0]) == ',') {
+                pos[0]++;
+                continue;
+            }
+            expect(text, pos, '}');
+            return fields;
+        }
+    }
+
+    private static String readString(String text, int[] pos) throws IOException {
+        expect(text, pos, '"');
+        StringBuilder value = new StringBuilder();
+        while (pos[0] < text.length()) {
+            char c = text.charAt(pos[0]++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c == '\\' && pos[0] < text.length()) {
+                char escaped = text.charAt(pos[0]++);
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (pos[0] + 4 > text.length()) {
+                            throw new IOException("Bad unicode escape at column " + pos[0]);
+                        }
+                        value.append((char) Integer.parseInt(text.substring(pos[0], pos[0] + 4), 16));
+                        pos[0] += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                        break;
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        throw new IOException("Unterminated string");
+    }
+
+    private static void expect(String text, int[] pos, char expected) throws IOException {
+        if (pos[0] >= text.length() || text.charAt(pos[0]) != expected) {
+            throw new IOException("Expected '" + expected + "' at column " + (pos[0] + 1));
+        }
+        pos[0]++;
+    }
+
+    private static int skipWhitespace(String text, int pos) {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Appends a string as a quoted JSON string, or null.
+     *
+     * @param out   The builder to append to.
+     * @param value The string.
+     * @return The builder.
+     */
+    public static StringBuilder appendString(StringBuilder out, String value) {
+        if (value == null) {
+            return out.append("null");
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                    break;
+            }
+        }
+        return out.append('"');
+    }
+
+    /**
+     * Writes a map of text values as a flat JSON object, or null.
+     *
+     * @param out    The builder to append to.
+     * @param fields The fields.
+     * @return The builder.
+     */
+    public static StringBuilder appendFlatObject(StringBuilder out, Map<String, String> fields) {
+        if (fields == null) {
+            return out.append("null");
+        }
+        out.append('{');
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            if (out.charAt(out.length() - 1) != '{') {
+                out.append(',');
+            }
+            appendString(out, field.getKey()).append(':');
+            appendString(out, field.getValue());
+        }
+        return out.append('}');
+    }
+
+    /**
+     * Writes a project and its people as one flat JSON object keyed by column name.
+     *
+     * @param out     The builder to append to.
+     * @param details The project.
+     * @return The builder.
+     */
+    public static StringBuilder appendProject(StringBuilder out, ProjectDetails details) {
+        Project project = details.project();
+        out.append("{\"Project_num\":").append(project.projectNum());
+        out.append(",\"Project_name\":");
+        appendString(out, project.projectName());
+        out.append(",\"Building_type\":");
+        appendString(out, project.buildingType());
+        out.append(",\"Physical_address\":");
+        appendString(out, project.physicalAddress());
+        out.append(",\"ERF_num\":").append(project.erfNum());
+        out.append(",\"Total_fee\":").append(project.totalFee());
+        out.append(",\"Total_paid\":").append(project.totalPaid());
+        out.append(",\"Project_deadline\":");
+        appendString(out, project.projectDeadline() == null ? null : project.projectDeadline().toString());
+        out.append(",\"Finalized\":").append(project.finalized());
+        out.append(",\"Completion_date\":");
+        appendString(out, project.completionDate() == null ? null : project.completionDate().toString());
+        appendPersonFields(out.append(','), "Customer", details.customer());
+        appendPersonFields(out.append(','), "Architect", details.architect());
+        appendPersonFields(out.append(','), "Contractor", details.contractor());
+        return out.append('}');
+    }
+
+    /**
+     * Writes a person as a JSON object keyed by column name, such as "Customer_email".
+     *
+     * @param out       The builder to append to.
+     * @param tableName "Customer", "Architect" or "Contractor".
+     * @param person    The person.
+     * @return The builder.
+     */
+    public static StringBuilder appendPerson(StringBuilder out, String tableName, Person person) {
+        appendPersonFields(out.append('{'), tableName, person);
+        return out.append('}');
+    }
+
+    private static void appendPersonFields(StringBuilder out, String tableName, Person person) {
+        out.append('"').append(tableName).append("_id\":").append(person.id());
+        out.append(",\"").append(tableName).append("_name\":");
+        appendString(out, person.name());
+        out.append(",\"").append(tableName).append("_cell_num\":");
+        appendString(out, person.cellNum());
+        out.append(",\"").append(tableName).append("_email\":");
+        appendString(out, person.email());
+        out.append(",\"").append(tableName).append("_address\":");
+        appendString(out, person.address());
+    }
+
+    /**
+     * Writes a project listing row as a JSON object.
+     *
+     * @param out     The builder to append to.
+     * @param summary The project.
+     * @return The builder.
+     */
+    public static StringBuilder appendSummary(StringBuilder out, ProjectSummary summary) {
+        out.append("{\"Project_num\":").append(summary.projectNum());
+        out.append(",\"Project_name\":");
+        appendString(out, summary.projectName());
+        out.append(",\"Project_deadline\":");
+        appendString(out, summary.projectDeadline() == null ? null : summary.projectDeadline().toString());
+        return out.append('}');
+    }
+
+    /**
+     * Writes a change from the change feed as a JSON object.
+     *
+     * @param out   The builder to append to.
+     * @param event The change.
+     * @return The builder.
+     */
+    public static StringBuilder appendChangeEvent(StringBuilder out, ChangeEvent event) {
+        ProjectChange change = event.change();
+        out.append("{\"sequence\":").append(event.sequence());
+        out.append(",\"committed_at\":");
+        appendString(out, event.committedAt().toString());
+        out.append(",\"type\":");
+        appendString(out, change.type().name());
+        out.append(",\"Project_num\":").append(change.projectNum());
+        if (change.isPersonChange()) {
+            out.append(",\"").append(change.personTable()).append("_id\":").append(change.personId());
+        }
+        return out.append('}');
+    }
+
+    /**
+     * Writes the totals of a group of projects as a JSON object.
+     *
+     * @param out    The builder to append to.
+     * @param rollup The totals.
+     * @return The builder.
+     */
+    public static StringBuilder appendRollup(StringBuilder out, ProjectRollup rollup) {
+        out.append("{\"group\":");
+        appendString(out, rollup.group());
+        out.append(",\"projects\":").append(rollup.projects());
+        out.append(",\"Total_fee\":").append(rollup.totalFee());
+        out.append(",\"Total_paid\":").append(rollup.totalPaid());
+        out.append(",\"outstanding\":").append(rollup.outstanding());
+        return out.append('}');
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records latencies into log-linear buckets: each power of two of microseconds is split
+ * into eight equal buckets, so a percentile is reported to within 12.5% of the true value with a fixed
+ * amount of memory. Recording takes no lock and allocates nothing, so it can be called from every
+ * request thread.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Up to 2^40 microseconds, about twelve days; anything longer goes in the last bucket
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucketOf(micros));
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the largest value that falls in a bucket.
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) totalMicros.sum() / n;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Returns the latency below which the given fraction of the recorded latencies fall.
+     *
+     * @param percentile A percentile between 0 and 100.
+     * @return The upper bound of the bucket holding that percentile, in microseconds, or 0 if nothing was recorded.
+     */
+    public long getPercentileMicros(double percentile) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * Clears every recorded latency.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts.set(bucket, 0);
+        }
+        count.reset();
+        totalMicros.reset();
+        maxMicros.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fus p50=%dus p90=%dus p99=%dus p99.9=%dus max=%dus",
+                getCount(), getMeanMicros(), getPercentileMicros(50), getPercentileMicros(90),
+                getPercentileMicros(99), getPercentileMicros(99.9), getMaxMicros());
+    }
+}
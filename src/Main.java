@@ -1,4 +1,11 @@
+import javax.management.JMException;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -7,18 +14,162 @@ import java.util.Scanner;
  */
 public class Main {
 
-    // JDBC connection details
-    static final String JDBC_URL = "jdbc:mysql://localhost:3306/{your database name}?useSSL=false";
-    static final String USER = "{user}";
-    static final String PASSWORD = "{password}";
-
     /**
      * The main method that executes the project management system.
      *
-     * @param args The command-line arguments (not used in this application).
+     * @param args The command-line arguments. Pass --check-query-plans to report queries that scan a whole table and exit,
+     *             --import followed by a CSV or JSON-lines file to load projects in bulk and exit, or --export
+     *             followed by a file name to write every project to a binary export file and exit, --report followed
+     *             by incomplete or overdue and a .csv or .html file name to write that report and exit, --dedup-people
+     *             to merge customers, architects and contractors entered more than once and exit (with --dry-run
+     *             after it, to list them without merging), or --server
+     *             followed by a port to serve projects over HTTP until Enter is pressed. Settings such as
+     *             --db.url=... may be given anywhere; see {@link AppConfig}.
      */
     public static void main(String[] args) {
-        try (Connection connection = DriverManager.getConnection(JDBC_URL, USER, PASSWORD)) {
+        // Every setting is checked before anything connects
+        AppConfig config;
+        try {
+            config = AppConfig.load(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        args = config.getArguments().toArray(new String[0]);
+        if (args.length > 0 && args[0].equals("--report") && (args.length < 3 || reportKind(args[1]) == null)) {
+            System.err.println("Usage: --report incomplete|overdue <file.csv|file.html>");
+            System.exit(2);
+            return;
+        }
+
+        try (ConnectionPool pool = openPool(config);
+             DeadlineTracker deadlines = new DeadlineTracker(pool, config.getInt("deadlines.warning-days"));
+             PersonDirectory people = new PersonDirectory(pool);
+             ProjectSearchIndex search = new ProjectSearchIndex(pool);
+             AuditLog audit = openAuditLog(config, pool);
+             ReplicaRouter replicas = openReplicaRouter(config, pool);
+             ProjectSnapshotStore snapshots = openSnapshotStore(config, pool)) {
+            // Time every statement from the first connection on, unless turned off; also readable over JMX
+            QueryStats queryStats = pool.getQueryStats();
+            queryStats.setEnabled(config.getBoolean("query.stats-enabled"));
+            queryStats.registerMBean("main");
+
+            // Bring the schema up to date before serving any requests
+            SchemaMigrator.migrate(pool);
+
+            // Every change from here on is audited when audit.enabled is set; the bulk importer writes without auditing
+            AuditLog.install(audit);
+
+            if (args.length > 0 && args[0].equals("--check-query-plans")) {
+                List<String> fullScans = QueryPlanCheck.findFullScans(pool);
+                fullScans.forEach(System.out::println);
+                if (!fullScans.isEmpty()) {
+                    System.exit(1);
+                }
+                return;
+            }
+
+            if (args.length > 1 && args[0].equals("--export")) {
+                long exported = ProjectExporter.exportProjects(pool, Path.of(args[1]), config.getInt("fetch.fetch-size"));
+                System.out.println("Exported " + exported + " projects to " + args[1]);
+                return;
+            }
+
+            if (args.length > 2 && args[0].equals("--report")) {
+                writeReport(config, pool, reportKind(args[1]), Path.of(args[2]));
+                return;
+            }
+
+            if (args.length > 1 && args[0].equals("--import")) {
+                ProjectImporter.Result result = new ProjectImporter(pool, config.getInt("import.chunk-size")).importFile(Path.of(args[1]));
+                System.out.printf("Imported %d projects and %d people in %d ms (%.0f rows/s), skipped %d lines already imported%n",
+                        result.projectsImported(), result.personsCreated(), result.elapsedMillis(),
+                        result.rowsPerSecond(), result.linesSkipped());
+                return;
+            }
+
+            // New people are matched against everyone on file from here on
+            people.load();
+
+            if (args.length > 0 && args[0].equals("--dedup-people")) {
+                if (args.length > 1 && args[1].equals("--dry-run")) {
+                    for (String table : Person.TABLES) {
+                        List<List<Person>> groups = people.findDuplicates(table);
+                        for (List<Person> group : groups) {
+                            System.out.println(table + " " + group.get(0) + " would absorb " + group.subList(1, group.size()));
+                        }
+                        System.out.println(groups.size() + " groups of duplicate " + table + " records");
+                    }
+                    return;
+                }
+                people.mergeDuplicates().forEach((table, merged) ->
+                        System.out.println("Merged " + merged + " duplicate " + table + " records"));
+                return;
+            }
+
+            // Overdue listings are answered from memory from here on
+            deadlines.load();
+            ProjectService service = new ProjectService(pool);
+            service.setDeadlineTracker(deadlines);
+            service.setPersonDirectory(people);
+            if (replicas != null) {
+                replicas.start(config.getLong("replicas.health-check-millis"));
+                service.setReplicaRouter(replicas);
+            }
+
+            // Lookups are answered from the mapped file straight away; the first refresh brings it up to date
+            if (snapshots != null) {
+                snapshots.load();
+                snapshots.startRefreshing(config.getLong("snapshot.refresh-millis"));
+                service.setSnapshotStore(snapshots);
+            }
+
+            // Tunables are applied now and again whenever the properties file changes
+            applyTunables(config, pool, service);
+            config.addReloadListener(changed -> applyTunables(config, pool, service));
+            config.startWatching();
+
+            // Searchable straight away from the snapshot; the first refresh checks it against the database
+            Path searchSnapshot = config.getPath("search.snapshot-file");
+            search.load(searchSnapshot);
+            search.startRefreshing(config.getLong("search.refresh-millis"));
+            service.setSearchIndex(search);
+
+            if (args.length > 1 && args[0].equals("--server")) {
+                try (ChangeFeed changes = new ChangeFeed(config.getInt("changes.capacity"),
+                        config.getPath("changes.spool-file"), config.getLong("changes.spool-max-bytes"),
+                        config.getLong("changes.idle-timeout-millis"));
+                     ProjectAggregates aggregates = new ProjectAggregates(pool);
+                     ProjectHttpServer server = new ProjectHttpServer(service, Integer.parseInt(args[1]))) {
+                    changes.start();
+                    aggregates.load();
+                    aggregates.startRefreshing(config.getLong("aggregates.refresh-millis"));
+                    server.setAggregates(aggregates);
+                    server.setChangeFeed(changes);
+                    server.setPermitTimeoutMillis(config.getLong("http.permit-timeout-millis"));
+                    config.addReloadListener(changed -> server.setPermitTimeoutMillis(config.getLong("http.permit-timeout-millis")));
+                    deadlines.addListener(Main::printDeadline);
+                    deadlines.startRefreshing(config.getLong("deadlines.refresh-millis"));
+                    server.start();
+                    if (queryStats.isEnabled()) {
+                        queryStats.startPeriodicDump(config.getLong("query.stats-dump-seconds"));
+                    }
+                    System.out.println("Serving projects on port " + server.getPort() + ", press Enter to stop");
+                    System.in.read();
+                }
+                config.stopWatching();
+                search.saveSnapshot(searchSnapshot);
+                if (snapshots != null) {
+                    snapshots.saveSnapshot();
+                }
+                return;
+            }
+
+            // No listener in the menu, so events do not interrupt a prompt
+            deadlines.startRefreshing(config.getLong("deadlines.refresh-millis"));
+
+            // One Scanner for the whole session, shared by every prompt
             try (Scanner scanner = new Scanner(System.in)) {
 
                 // Infinite loop for continuous user interaction
@@ -31,75 +182,230 @@ public class Main {
                     System.out.println("5. Find Incomplete Projects");
                     System.out.println("6. Find Overdue Projects");
                     System.out.println("7. Delete Project");
-                    System.out.println("8. Exit");
-                    System.out.print("Choose an option (1, 2, 3, 4, 5, 6, 7, or 8): ");
+                    System.out.println("8. Search Projects");
+                    System.out.println("9. Exit");
+                    System.out.print("Choose an option (1, 2, 3, 4, 5, 6, 7, 8, or 9): ");
 
                     int option = scanner.nextInt();
+                    scanner.nextLine(); // Discard the rest of the line so later prompts start clean
 
-                    if (option == 8) {
-                        // Exit the loop if the user chooses option 8
+                    if (option == 9) {
+                        // Exit the loop if the user chooses option 9
                         System.out.println("Exiting the program. Goodbye!");
                         break;
                     }
 
                     int projectNum = 0; // Initialize to avoid compilation error
 
-                    if (option != 3 && option != 5 && option != 6) {
+                    if (option != 3 && option != 5 && option != 6 && option != 8) {
                         // Take user input for project_num
                         System.out.print("Enter Project Number: ");
                         projectNum = scanner.nextInt();
+                        scanner.nextLine();
                     }
 
                     switch (option) {
                         case 1:
                             // Fetch project info based on user input
-                            ProjectInfoFetcher.fetchProjectInfo(connection, projectNum);
+                            ProjectInfoFetcher.fetchProjectInfo(service, projectNum);
                             break;
 
                         case 2:
                             // Edit project info based on user input
-                            ProjectInfoEditor.editProjectInfo(connection, projectNum);
+                            ProjectInfoEditor.editProjectInfo(service, scanner, projectNum);
                             break;
 
                         case 3:
                             // Add new project
-                            ProjectInfoAdd.addNewProject(connection);
+                            ProjectInfoAdd.addNewProject(service, scanner);
                             break;
 
                         case 4:
                             // Finalize existing project
-                            FinalizeProject.finalizeExistingProject(connection, projectNum);
+                            FinalizeProject.finalizeExistingProject(service, projectNum);
                             break;
 
                         case 5:
                             // Find all projects that still need to be completed
-                            ProjectInfoFetcher.findIncompleteProjects(connection);
+                            ProjectInfoFetcher.findIncompleteProjects(service);
                             break;
 
                         case 6:
                             // Find all overdue projects
-                            ProjectInfoFetcher.findOverdueProjects(connection);
+                            ProjectInfoFetcher.findOverdueProjects(service);
                             break;
 
                         case 7:
                             // Delete project based on user input with confirmation
                             if (confirmDelete(scanner)) {
-                                ProjectInfoDelete.deleteInfo(connection, projectNum);
+                                ProjectInfoDelete.deleteInfo(service, projectNum);
                             } else {
                                 System.out.println("Deletion canceled by user.");
                             }
                             break;
 
+                        case 8:
+                            // Find projects by name, address, ERF number or person
+                            ProjectInfoFetcher.searchProjects(service, scanner);
+                            break;
+
                         default:
-                            System.out.println("Invalid option. Please choose 1, 2, 3, 4, 5, 6, 7, or 8.");
+                            System.out.println("Invalid option. Please choose 1, 2, 3, 4, 5, 6, 7, 8, or 9.");
                     }
                 }
             }
-        } catch (SQLException e) {
+            config.stopWatching();
+            search.saveSnapshot(searchSnapshot);
+            if (snapshots != null) {
+                snapshots.saveSnapshot();
+            }
+        } catch (SQLException | IOException | JMException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Creates the pool of the primary database from the db.* and pool.* settings.
+     *
+     * @param config The configuration.
+     * @return The pool.
+     */
+    private static ConnectionPool openPool(AppConfig config) {
+        ConnectionPool pool = new ConnectionPool(config.getString("db.url"), config.getString("db.user"),
+                config.getString("db.password"), config.getInt("pool.size"));
+        pool.setStatementCacheSize(config.getInt("pool.statement-cache-size"));
+        return pool;
+    }
+
+    /**
+     * Applies the settings that can change while running.
+     *
+     * @param config  The configuration.
+     * @param pool    The connection pool of the primary.
+     * @param service The project service.
+     */
+    private static void applyTunables(AppConfig config, ConnectionPool pool, ProjectService service) {
+        pool.setConnectionTimeoutMillis(config.getLong("pool.connection-timeout-millis"));
+        pool.setLeakDetectionThresholdMillis(config.getLong("pool.leak-detection-millis"));
+        pool.getQueryStats().setSlowQueryThresholdMillis(config.getLong("query.slow-millis"));
+        service.setListingSizes(config.getInt("fetch.page-size"), config.getInt("fetch.fetch-size"));
+        ProjectCache cache = ProjectInfoFetcher.getProjectCache();
+        cache.setMaxSize(config.getInt("cache.project.max-size"));
+        cache.setTimeToLive(Duration.ofSeconds(config.getLong("cache.project.ttl-seconds")));
+    }
+
+    /**
+     * Opens the audit log: segment files in audit.directory, or the Audit_log table when it is empty.
+     *
+     * @param config The configuration.
+     * @param pool   The connection pool, for the Audit_log table.
+     * @return The audit log, not yet installed, or null if audit.enabled is false.
+     * @throws IOException If the audit directory cannot be opened.
+     */
+    private static AuditLog openAuditLog(AppConfig config, ConnectionPool pool) throws IOException {
+        if (!config.getBoolean("audit.enabled")) {
+            // Nothing is installed, so writes take no before-reads and queue no entries
+            return null;
+        }
+        Path directory = config.getPath("audit.directory");
+        AuditSink sink = directory == null
+                ? new AuditTableSink(pool)
+                : new AuditFileSink(directory, AuditFileSink.DEFAULT_SEGMENT_BYTES);
+        return new AuditLog(sink, AuditLog.Durability.valueOf(config.getString("audit.durability")),
+                config.getLong("audit.flush-millis"), config.getInt("audit.batch-size"),
+                config.getInt("audit.max-queued"), config.getPath("audit.dead-letter-directory"));
+    }
+
+    /**
+     * Creates a router over the replicas in replicas.urls, which use the same user and password as the primary.
+     *
+     * @param config The configuration.
+     * @param pool   The connection pool of the primary.
+     * @return The router, not yet started, or null if there are no replicas.
+     */
+    private static ReplicaRouter openReplicaRouter(AppConfig config, ConnectionPool pool) {
+        List<String> urls = config.getList("replicas.urls");
+        if (urls.isEmpty()) {
+            return null;
+        }
+        List<ConnectionPool> replicaPools = new ArrayList<>();
+        for (String url : urls) {
+            ConnectionPool replicaPool = new ConnectionPool(url, config.getString("db.user"), config.getString("db.password"),
+                    config.getInt("replicas.pool-size"));
+            replicaPool.setStatementCacheSize(config.getInt("pool.statement-cache-size"));
+            replicaPools.add(replicaPool);
+        }
+        return new ReplicaRouter(pool, replicaPools, config.getLong("replicas.read-your-writes-millis"));
+    }
+
+    /**
+     * Creates the store of project lookups kept in the memory-mapped snapshot.file.
+     *
+     * @param config The configuration.
+     * @param pool   The connection pool of the primary.
+     * @return The store, not yet loaded, or null if snapshot.file is empty.
+     */
+    private static ProjectSnapshotStore openSnapshotStore(AppConfig config, ConnectionPool pool) {
+        Path file = config.getPath("snapshot.file");
+        return file == null ? null : new ProjectSnapshotStore(pool, file, config.getInt("snapshot.max-delta-rows"),
+                config.getLong("snapshot.verify-millis"));
+    }
+
+    /**
+     * @return The report kind named on the command line, in any case, or null if there is no such report.
+     */
+    private static ProjectReport.Kind reportKind(String name) {
+        for (ProjectReport.Kind kind : ProjectReport.Kind.values()) {
+            if (kind.name().equalsIgnoreCase(name)) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes an incomplete or overdue report as of today, as CSV or HTML depending on the file name, and
+     * prints its totals.
+     *
+     * @param config The configuration.
+     * @param pool   The connection pool; the report uses up to report.threads of its connections.
+     * @param kind   Which projects are listed.
+     * @param file   The report file.
+     * @throws SQLException If a database error occurs.
+     * @throws IOException  If the file cannot be written.
+     */
+    private static void writeReport(AppConfig config, ConnectionPool pool, ProjectReport.Kind kind, Path file)
+            throws SQLException, IOException {
+        int threads = config.getInt("report.threads");
+        if (threads == 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        ProjectReport report = new ProjectReport(pool, threads, config.getInt("report.ranges-per-thread"),
+                config.getInt("fetch.fetch-size"));
+        ProjectReport.Format format = ProjectReport.Format.of(file);
+        ProjectReport.Result result = report.write(kind, LocalDate.now(), format, file);
+
+        ProjectReport.RangeSummary total = result.total();
+        System.out.printf("Wrote %d projects (%d overdue, %d outstanding) to %s in %d ms, %d ranges on %d threads%n",
+                total.projects(), total.overdue(), total.outstanding(), file, result.elapsedMillis(),
+                result.ranges().size(), result.threads());
+        if (format == ProjectReport.Format.CSV) {
+            System.out.println("Range totals are in " + ProjectReport.summaryFile(file));
+        }
+    }
+
+    /**
+     * Prints a deadline event in server mode.
+     *
+     * @param event The event.
+     */
+    private static void printDeadline(DeadlineEvent event) {
+        ProjectSummary project = event.project();
+        String when = event.type() == DeadlineEvent.Type.OVERDUE ? "is overdue" : "is due";
+        System.out.println("Project " + project.projectNum() + " (" + project.projectName() + ") " + when
+                + ", deadline " + project.projectDeadline());
+    }
+
     /**
      * Prompts the user for confirmation of project deletion.
      *
@@ -108,7 +414,7 @@ public class Main {
      */
     private static boolean confirmDelete(Scanner scanner) {
         System.out.print("Are you sure you want to delete this project? (yes/no): ");
-        String confirmation = scanner.next().toLowerCase();
+        String confirmation = scanner.nextLine().trim().toLowerCase();
         return confirmation.equals("yes");
     }
 }
@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps an in-memory view up to date after it has been loaded once. The view's
+ * {@link ProjectChangeListener} marks the rows a committed change names as pending, by table and key,
+ * and a background thread re-reads just those rows at a fixed interval.
+ *
+ * <p>A view registers its listener before it loads, so a change committed while loading is read again
+ * afterwards. Keys are taken off the pending set before they are read, so a change committed during
+ * the read marks them again and they are read once more; if the read fails they are marked again and
+ * retried next time. Until a key's read has finished, {@link #isPending} and {@link #isEmpty} still
+ * count it.</p>
+ */
+public class PendingRefresh implements AutoCloseable {
+
+    /**
+     * Re-reads a chunk of keys of one table into the view.
+     */
+    public interface ChunkReader {
+        void read(List<Integer> keys) throws SQLException;
+    }
+
+    /**
+     * The work done on each run of the background thread.
+     */
+    public interface Task {
+        void run() throws SQLException, IOException;
+    }
+
+    private final String threadName;
+    private final Map<String, Set<Integer>> pending = new ConcurrentHashMap<>();
+    private final Map<String, Set<Integer>> reading = new ConcurrentHashMap<>();
+    private ScheduledExecutorService refresher;
+
+    /**
+     * Creates an empty set of pending keys.
+     *
+     * @param threadName The name of the background thread.
+     */
+    public PendingRefresh(String threadName) {
+        this.threadName = threadName;
+    }
+
+    /**
+     * Marks a row as changed.
+     *
+     * @param table The table, such as "PoisePMS" or "Customer".
+     * @param key   The row's key.
+     */
+    public void mark(String table, int key) {
+        keys(pending, table).add(key);
+    }
+
+    /**
+     * @return Whether the row is marked or still being read.
+     */
+    public boolean isPending(String table, int key) {
+        Set<Integer> marked = pending.get(table);
+        Set<Integer> inRead = reading.get(table);
+        return (marked != null && marked.contains(key)) || (inRead != null && inRead.contains(key));
+    }
+
+    /**
+     * @return Whether no row is marked or being read.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return The number of rows marked or being read.
+     */
+    public int size() {
+        int size = 0;
+        for (Set<Integer> keys : pending.values()) {
+            size += keys.size();
+        }
+        for (Set<Integer> keys : reading.values()) {
+            size += keys.size();
+        }
+        return size;
+    }
+
+    /**
+     * Re-reads the marked rows of a table, a chunk at a time.
+     *
+     * @param table     The table.
+     * @param chunkSize The most keys given to the reader at once.
+     * @param reader    Reads a chunk of keys into the view.
+     * @return The number of keys read.
+     * @throws SQLException If the reader fails. The keys not yet read are marked again.
+     */
+    public int drain(String table, int chunkSize, ChunkReader reader) throws SQLException {
+        Set<Integer> marked = pending.get(table);
+        if (marked == null || marked.isEmpty()) {
+            return 0;
+        }
+        List<Integer> keys = new ArrayList<>(marked);
+        Set<Integer> inRead = keys(reading, table);
+
+        for (int start = 0; start < keys.size(); start += chunkSize) {
+            List<Integer> chunk = keys.subList(start, Math.min(keys.size(), start + chunkSize));
+            inRead.addAll(chunk);
+            chunk.forEach(marked::remove);
+            try {
+                reader.read(chunk);
+            } catch (SQLException | RuntimeException e) {
+                marked.addAll(keys.subList(start, keys.size()));
+                throw e;
+            } finally {
+                chunk.forEach(inRead::remove);
+            }
+        }
+        return keys.size();
+    }
+
+    private static Set<Integer> keys(Map<String, Set<Integer>> byTable, String table) {
+        return byTable.computeIfAbsent(table, key -> ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Runs a task on the background thread at a fixed interval until {@link #close()}, replacing any
+     * task started before. A failed run is reported, and the rows it did not read stay marked for the next.
+     *
+     * @param initialDelayMillis The time before the first run.
+     * @param intervalMillis     The time between the end of one run and the start of the next.
+     * @param task               The task, usually draining the pending keys.
+     */
+    public synchronized void start(long initialDelayMillis, long intervalMillis, Task task) {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            } catch (SQLException | IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, initialDelayMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    @Override
+    public synchronized void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * A customer, architect or contractor.
+ *
+ * @param id      The person's id in their table.
+ * @param name    The person's name.
+ * @param cellNum The person's cell number.
+ * @param email   The person's email address.
+ * @param address The person's physical address.
+ */
+public record Person(int id, String name, String cellNum, String email, String address) {
+
+    /**
+     * The tables people are kept in, in the order their columns follow a project's.
+     */
+    static final String[] TABLES = {"Customer", "Architect", "Contractor"};
+}
@@ -0,0 +1,524 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class keeps every customer, architect and contractor in memory, indexed by normalized email,
+ * by the digits of their cell number and by each word of their name, so the person an operator means
+ * can be found without a query and a new project does not create a second row for someone who is
+ * already on file. It also merges the duplicates that were created before it existed.
+ *
+ * <p>The index is loaded once by {@link #load()}. After that, committed changes published through
+ * {@link ProjectChanges} mark the people they name as pending, and every lookup first re-reads the
+ * pending people, so a lookup always sees the writes committed before it.</p>
+ *
+ * <p>Two programs adding the same new person at the same moment can still both insert them, since
+ * the tables have no unique key on email while duplicates remain; {@link #mergeDuplicates()} cleans
+ * up after that, and {@link #findDuplicates(String)} lists what it would merge.</p>
+ */
+public class PersonDirectory implements ProjectChangeListener, AutoCloseable {
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int REFRESH_CHUNK_SIZE = InList.CHUNK_SIZE;
+
+    // Duplicate groups merged per transaction
+    private static final int MERGE_CHUNK_SIZE = 200;
+
+    private static final String SELECT_PEOPLE_SQL = "SELECT %1$s_id, %1$s_name, %1$s_cell_num, %1$s_email, %1$s_address FROM %1$s";
+
+    private final ConnectionPool pool;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, TableIndex> indexes = new HashMap<>();
+    private final PendingRefresh pending = new PendingRefresh("person-directory-refresh");
+
+    /**
+     * Creates an empty directory. Call {@link #load()} to fill it.
+     *
+     * @param pool The connection pool to load from.
+     */
+    public PersonDirectory(ConnectionPool pool) {
+        this.pool = pool;
+        for (String table : Person.TABLES) {
+            indexes.put(table, new TableIndex());
+        }
+    }
+
+    /**
+     * Loads every person, replacing whatever was loaded before, and starts listening for changes.
+     *
+     * @throws SQLException If a database error occurs.
+     */
+    public void load() throws SQLException {
+        ProjectChanges.addListener(this);
+
+        try (Connection connection = pool.getConnection()) {
+            for (String table : Person.TABLES) {
+                TableIndex index = new TableIndex();
+                try (PreparedStatement selectStatement = connection.prepareStatement(String.format(SELECT_PEOPLE_SQL, table),
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    selectStatement.setFetchSize(FETCH_SIZE);
+                    try (ResultSet resultSet = selectStatement.executeQuery()) {
+                        while (resultSet.next()) {
+                            index.put(readPerson(resultSet));
+                        }
+                    }
+                }
+
+                lock.writeLock().lock();
+                try {
+                    indexes.put(table, index);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        ProjectChanges.removeListener(this);
+    }
+
+    @Override
+    public void onChange(ProjectChange change) {
+        if (change.isPersonChange()) {
+            pending.mark(change.personTable(), change.personId());
+        }
+    }
+
+    /**
+     * Re-reads the people changed since the last refresh, removing those that no longer exist. A lookup
+     * that finds people pending calls this too, so it waits for a refresh already in progress rather
+     * than reading the index before that refresh has updated it.
+     *
+     * @return The number of people re-read.
+     * @throws SQLException If a database error occurs. The people stay pending.
+     */
+    public synchronized int refresh() throws SQLException {
+        int refreshed = 0;
+        for (String table : Person.TABLES) {
+            refreshed += pending.drain(table, REFRESH_CHUNK_SIZE, personIds -> refreshChunk(table, personIds));
+        }
+        return refreshed;
+    }
+
+    private void refreshChunk(String table, List<Integer> personIds) throws SQLException {
+        String sql = String.format(SELECT_PEOPLE_SQL, table) + " WHERE " + table + "_id IN (%s)";
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement selectStatement = InList.prepare(connection, sql, personIds)) {
+            lock.writeLock().lock();
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                TableIndex index = indexes.get(table);
+                Set<Integer> missing = new TreeSet<>(personIds);
+                while (resultSet.next()) {
+                    Person person = readPerson(resultSet);
+                    missing.remove(person.id());
+                    index.put(person);
+                }
+                missing.forEach(index::remove);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void refreshIfPending() throws SQLException {
+        if (!pending.isEmpty()) {
+            refresh();
+        }
+    }
+
+    private static Person readPerson(ResultSet resultSet) throws SQLException {
+        return new Person(resultSet.getInt(1), resultSet.getString(2), resultSet.getString(3),
+                resultSet.getString(4), resultSet.getString(5));
+    }
+
+    // ================= Lookups ================= //
+
+    /**
+     * Gets a person by id.
+     *
+     * @param table "Customer", "Architect" or "Contractor".
+     * @param id    The id.
+     * @return The person, or null if there is nobody with that id.
+     * @throws SQLException If re-reading pending people fails.
+     */
+    public Person get(String table, int id) throws SQLException {
+        refreshIfPending();
+        lock.readLock().lock();
+        try {
+            return index(table).byId.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the person a new entry most likely refers to: the person with the same name and either the
+     * same email or the same cell number. A shared email alone is not enough, as an office address may
+     * be used by several people. Where there are duplicates the oldest is returned.
+     *
+     * @param table  "Customer", "Architect" or "Contractor".
+     * @param person The details entered.
+     * @return The existing person, or null if there is no match.
+     * @throws SQLException If re-reading pending people fails.
+     */
+    public Person resolve(String table, Person person) throws SQLException {
+        refreshIfPending();
+        lock.readLock().lock();
+        try {
+            TableIndex index = index(table);
+            String name = normalizeName(person.name());
+            Integer id = firstNamed(index, index.byEmail.get(normalizeEmail(person.email())), name);
+            if (id == null) {
+                id = firstNamed(index, index.byPhone.get(normalizePhone(person.cellNum())), name);
+            }
+            return id == null ? null : index.byId.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces each new person (id 0) of the given projects with the existing person they match, if any.
+     *
+     * @param detailsList The projects to be added.
+     * @return The projects with matched people replaced, in the same order.
+     * @throws SQLException If re-reading pending people fails.
+     */
+    public List<ProjectDetails> resolveNewPeople(List<ProjectDetails> detailsList) throws SQLException {
+        List<ProjectDetails> resolved = new ArrayList<>(detailsList.size());
+        for (ProjectDetails details : detailsList) {
+            Person customer = resolveIfNew("Customer", details.customer());
+            Person architect = resolveIfNew("Architect", details.architect());
+            Person contractor = resolveIfNew("Contractor", details.contractor());
+            Project project = details.project();
+            resolved.add(new ProjectDetails(new Project(project.projectNum(), project.projectName(), project.buildingType(),
+                    project.physicalAddress(), project.erfNum(), project.totalFee(), project.totalPaid(),
+                    project.projectDeadline(), architect.id(), contractor.id(), customer.id(),
+                    project.finalized(), project.completionDate()), customer, architect, contractor));
+        }
+        return resolved;
+    }
+
+    private Person resolveIfNew(String table, Person person) throws SQLException {
+        if (person.id() != 0) {
+            return person;
+        }
+        Person existing = resolve(table, person);
+        return existing == null ? person : existing;
+    }
+
+    /**
+     * Finds people for a typeahead: those with a name word starting with the first word typed and,
+     * if more words were typed, other name words starting with each of them. Sorted by name word.
+     *
+     * @param table  "Customer", "Architect" or "Contractor".
+     * @param prefix What has been typed so far, for example "jo" or "john sm".
+     * @param limit  The maximum number of people returned.
+     * @return The matching people, each once.
+     * @throws SQLException If re-reading pending people fails.
+     */
+    public List<Person> search(String table, String prefix, int limit) throws SQLException {
+        List<String> words = nameWords(prefix);
+        List<Person> found = new ArrayList<>();
+        if (words.isEmpty() || limit < 1) {
+            return found;
+        }
+
+        refreshIfPending();
+        lock.readLock().lock();
+        try {
+            TableIndex index = index(table);
+            Set<Integer> seen = new TreeSet<>();
+            String first = words.get(0);
+            // Keys are "word\0id", so every word starting with the prefix sorts between these two
+            for (String key : index.nameKeys.subSet(first, true, first + Character.MAX_VALUE, false)) {
+                int id = Integer.parseInt(key.substring(key.indexOf('\0') + 1));
+                Person person = index.byId.get(id);
+                if (seen.add(id) && matchesAll(nameWords(person.name()), words)) {
+                    found.add(person);
+                    if (found.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean matchesAll(List<String> nameWords, List<String> typedWords) {
+        for (String typed : typedWords.subList(1, typedWords.size())) {
+            if (nameWords.stream().noneMatch(word -> word.startsWith(typed))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Groups the people of a table that are the same person: the same name and email or, without an
+     * email, the same name and cell number. Each group is ordered by id, so the first is the one that is kept.
+     *
+     * @param table "Customer", "Architect" or "Contractor".
+     * @return The groups of two or more people.
+     * @throws SQLException If re-reading pending people fails.
+     */
+    public List<List<Person>> findDuplicates(String table) throws SQLException {
+        refreshIfPending();
+        lock.readLock().lock();
+        try {
+            TableIndex index = index(table);
+            Map<String, List<Person>> groups = new LinkedHashMap<>();
+            for (Person person : index.byId.values()) {
+                String email = normalizeEmail(person.email());
+                String phone = normalizePhone(person.cellNum());
+                if (email.isEmpty() && phone.isEmpty()) {
+                    continue; // Nothing to tell two people with the same name apart
+                }
+                String name = normalizeName(person.name());
+                String key = !email.isEmpty() ? email + "\0" + name : "\0" + phone + "\0" + name;
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(person);
+            }
+
+            List<List<Person>> duplicates = new ArrayList<>();
+            for (List<Person> group : groups.values()) {
+                if (group.size() > 1) {
+                    group.sort((a, b) -> Integer.compare(a.id(), b.id()));
+                    duplicates.add(group);
+                }
+            }
+            return duplicates;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ================= Merging ================= //
+
+    /**
+     * Merges every group of duplicates into its oldest person: their projects are pointed at that
+     * person and the others are deleted. Each chunk of groups is one transaction.
+     *
+     * @return The number of people merged away, by table.
+     * @throws SQLException If a database error occurs. The chunks committed before it stay merged.
+     */
+    public Map<String, Integer> mergeDuplicates() throws SQLException {
+        Map<String, Integer> merged = new LinkedHashMap<>();
+        for (String table : Person.TABLES) {
+            List<List<Person>> groups = findDuplicates(table);
+            int count = 0;
+            for (int start = 0; start < groups.size(); start += MERGE_CHUNK_SIZE) {
+                count += mergeChunk(table, groups.subList(start, Math.min(groups.size(), start + MERGE_CHUNK_SIZE)));
+            }
+            merged.put(table, count);
+        }
+        refresh();
+        return merged;
+    }
+
+    private int mergeChunk(String table, List<List<Person>> groups) throws SQLException {
+        Map<Integer, Integer> keptIdByDuplicate = new LinkedHashMap<>();
+        for (List<Person> group : groups) {
+            for (Person duplicate : group.subList(1, group.size())) {
+                keptIdByDuplicate.put(duplicate.id(), group.get(0).id());
+            }
+        }
+        List<Integer> duplicateIds = new ArrayList<>(keptIdByDuplicate.keySet());
+        List<Integer> affectedProjects = new ArrayList<>();
+        int deleted;
+        AuditCapture audit;
+
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            audit = AuditCapture.start(connection);
+            try {
+                // Locked first, so no project can be linked to a duplicate after its projects are listed
+                Set<Integer> lockedDuplicates = audit.before(table, duplicateIds).keySet();
+                String selectSql = "SELECT Project_num FROM PoisePMS WHERE " + table + "_id IN (%s)";
+                try (PreparedStatement selectStatement = InList.prepare(connection, selectSql, duplicateIds);
+                     ResultSet resultSet = selectStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        affectedProjects.add(resultSet.getInt(1));
+                    }
+                }
+                Map<Integer, Map<String, String>> projectRows = audit.before("PoisePMS", affectedProjects);
+                String repointSql = "UPDATE PoisePMS SET " + table + "_id = ? WHERE " + table + "_id = ?";
+                try (PreparedStatement repointStatement = connection.prepareStatement(repointSql)) {
+                    for (Map.Entry<Integer, Integer> entry : keptIdByDuplicate.entrySet()) {
+                        repointStatement.setInt(1, entry.getValue());
+                        repointStatement.setInt(2, entry.getKey());
+                        repointStatement.addBatch();
+                    }
+                    repointStatement.executeBatch();
+                }
+
+                // Skips anyone a project was linked to since the repoint, rather than failing on the foreign key
+                String deleteSql = String.format(ProjectInfoDelete.DELETE_ORPHANS_SQL, table, "%s");
+                try (PreparedStatement deleteStatement = InList.prepare(connection, deleteSql, duplicateIds)) {
+                    deleted = deleteStatement.executeUpdate();
+                }
+                // Recorded from what was written, so nothing is read back
+                projectRows.forEach((projectNum, row) -> {
+                    Integer keptId = keptIdByDuplicate.get(Integer.valueOf(row.get(table + "_id")));
+                    if (keptId != null) {
+                        audit.afterUpdate("PoisePMS", projectNum, Map.of(table + "_id", keptId));
+                    }
+                });
+                audit.afterDelete(table, lockedDuplicates);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        // Anyone who survived the delete is re-read and stays in the directory
+        for (int personId : duplicateIds) {
+            ProjectChanges.publish(ProjectChange.personDeleted(0, table, personId));
+        }
+        for (int projectNum : affectedProjects) {
+            ProjectChanges.publish(ProjectChange.of(ProjectChange.Type.PROJECT_UPDATED, projectNum));
+        }
+        audit.submit();
+        return deleted;
+    }
+
+    // ================= Index ================= //
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return indexes.values().stream().mapToInt(index -> index.byId.size()).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.readLock().lock();
+        try {
+            StringBuilder text = new StringBuilder("PersonDirectory[");
+            for (String table : Person.TABLES) {
+                text.append(table).append('=').append(indexes.get(table).byId.size()).append(", ");
+            }
+            return text.append("pending=").append(pending.size()).append(']').toString();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private TableIndex index(String table) {
+        TableIndex index = indexes.get(table);
+        if (index == null) {
+            throw new IllegalArgumentException("Invalid person type");
+        }
+        return index;
+    }
+
+    /**
+     * @return The lowest of the given ids whose person has the given normalized name, or null if none has.
+     */
+    private static Integer firstNamed(TableIndex index, Set<Integer> ids, String name) {
+        if (ids != null) {
+            for (int id : ids) {
+                if (normalizeName(index.byId.get(id).name()).equals(name)) {
+                    return id;
+                }
+            }
+        }
+        return null;
+    }
+
+    static String normalizeEmail(String email) {
+        return ProjectImporter.normalizeEmail(email);
+    }
+
+    /**
+     * Keeps only the digits, so "082 555-1234" and "0825551234" are the same number.
+     */
+    static String normalizePhone(String cellNum) {
+        return cellNum == null ? "" : cellNum.replaceAll("\\D", "");
+    }
+
+    static String normalizeName(String name) {
+        return String.join(" ", nameWords(name));
+    }
+
+    /**
+     * Splits text into lowercase words of letters and digits; also the terms of the project search index.
+     */
+    static List<String> nameWords(String name) {
+        List<String> words = new ArrayList<>();
+        if (name != null) {
+            for (String word : name.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * The people of one table and their lookup keys. Guarded by the directory's lock.
+     */
+    private static final class TableIndex {
+        final Map<Integer, Person> byId = new HashMap<>();
+        final Map<String, TreeSet<Integer>> byEmail = new HashMap<>();
+        final Map<String, TreeSet<Integer>> byPhone = new HashMap<>();
+        final NavigableSet<String> nameKeys = new TreeSet<>();
+
+        void put(Person person) {
+            remove(person.id());
+            byId.put(person.id(), person);
+            addKey(byEmail, normalizeEmail(person.email()), person.id());
+            addKey(byPhone, normalizePhone(person.cellNum()), person.id());
+            for (String word : nameWords(person.name())) {
+                nameKeys.add(word + '\0' + person.id());
+            }
+        }
+
+        void remove(int id) {
+            Person person = byId.remove(id);
+            if (person == null) {
+                return;
+            }
+            removeKey(byEmail, normalizeEmail(person.email()), id);
+            removeKey(byPhone, normalizePhone(person.cellNum()), id);
+            for (String word : nameWords(person.name())) {
+                nameKeys.remove(word + '\0' + id);
+            }
+        }
+
+        private static void addKey(Map<String, TreeSet<Integer>> keys, String key, int id) {
+            if (!key.isEmpty()) {
+                keys.computeIfAbsent(key, k -> new TreeSet<>()).add(id);
+            }
+        }
+
+        private static void removeKey(Map<String, TreeSet<Integer>> keys, String key, int id) {
+            TreeSet<Integer> ids = keys.get(key);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                keys.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * This class turns rows holding the columns of a Customer, Architect or Contractor into {@link Person}
+ * records. The column positions are looked up once when the mapper is created, so no column names
+ * are built or searched for per row.
+ */
+public class PersonRowMapper {
+
+    private final int id;
+    private final int name;
+    private final int cellNum;
+    private final int email;
+    private final int address;
+
+    /**
+     * Creates a mapper for one person table's columns in the given result set.
+     *
+     * @param columns   The column positions of the result set.
+     * @param tableName "Customer", "Architect" or "Contractor".
+     * @throws SQLException If a column of the table is missing.
+     */
+    public PersonRowMapper(ColumnIndex columns, String tableName) throws SQLException {
+        id = columns.indexOf(tableName + "_id");
+        name = columns.indexOf(tableName + "_name");
+        cellNum = columns.indexOf(tableName + "_cell_num");
+        email = columns.indexOf(tableName + "_email");
+        address = columns.indexOf(tableName + "_address");
+    }
+
+    /**
+     * Reads the person in the current row.
+     *
+     * @param resultSet The result set, positioned on a row.
+     * @return The person.
+     * @throws SQLException If a database error occurs.
+     */
+    public Person map(ResultSet resultSet) throws SQLException {
+        return new Person(resultSet.getInt(id),
+                resultSet.getString(name),
+                resultSet.getString(cellNum),
+                resultSet.getString(email),
+                resultSet.getString(address));
+    }
+}
@@ -0,0 +1,24 @@
+import java.time.LocalDate;
+
+/**
+ * A row of the PoisePMS table.
+ *
+ * @param projectNum      The project number.
+ * @param projectName     The project name.
+ * @param buildingType    The type of building.
+ * @param physicalAddress The address of the site.
+ * @param erfNum          The ERF number of the site.
+ * @param totalFee        The total fee charged.
+ * @param totalPaid       The amount paid so far.
+ * @param projectDeadline The project deadline, or null if none is set.
+ * @param architectId     The id of the project's architect.
+ * @param contractorId    The id of the project's contractor.
+ * @param customerId      The id of the project's customer.
+ * @param finalized       Whether the project has been finalized.
+ * @param completionDate  The date the project was finalized, or null if it is not finalized.
+ */
+public record Project(int projectNum, String projectName, String buildingType, String physicalAddress,
+                      int erfNum, int totalFee, int totalPaid, LocalDate projectDeadline,
+                      int architectId, int contractorId, int customerId,
+                      boolean finalized, LocalDate completionDate) {
+}
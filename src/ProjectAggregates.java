@@ -0,0 +1,538 @@
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class keeps the financial columns of every project in memory as primitive arrays, one array
+ * per column, and answers group-by totals from them without going to the database. Building types
+ * are stored as codes into a dictionary and deadlines as epoch days and month numbers.
+ *
+ * <p>The arrays are loaded once by {@link #load()}. After that, committed changes published through
+ * {@link ProjectChanges} mark their projects as pending, and a background refresh re-reads just those
+ * rows every few seconds, so totals are at most one refresh interval behind the database.</p>
+ */
+public class ProjectAggregates implements ProjectChangeListener, AutoCloseable {
+
+    /**
+     * What projects are grouped by.
+     */
+    public enum Dimension {
+        BUILDING_TYPE,
+        ARCHITECT,
+        CONTRACTOR,
+        DEADLINE_MONTH
+    }
+
+    private static final String SELECT_COLUMNS = "SELECT Project_num, Building_type, Total_fee, Total_paid, "
+            + "Project_deadline, Architect_id, Contractor_id FROM PoisePMS";
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int REFRESH_CHUNK_SIZE = InList.CHUNK_SIZE;
+
+    // Below this many rows a group-by runs on the calling thread
+    private static final int PARALLEL_THRESHOLD = 16_384;
+
+    // Group keys spanning at most this many values are totalled in plain arrays indexed by key instead of a hash table
+    private static final int DENSE_KEY_RANGE = 1 << 16;
+
+    // Deadline days and months of a project without a deadline; months count from January 1970 as 1
+    private static final int NO_DEADLINE_DAY = Integer.MIN_VALUE;
+    private static final int NO_DEADLINE_MONTH = 0;
+
+    private final ConnectionPool pool;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final PendingRefresh pending = new PendingRefresh("project-aggregates-refresh");
+
+    // One entry per project, all guarded by lock; rows are not kept in any order
+    private int size;
+    private int[] projectNums = new int[0];
+    private int[] buildingTypeCodes = new int[0];
+    private int[] totalFees = new int[0];
+    private int[] totalPaids = new int[0];
+    private int[] deadlineDays = new int[0];
+    private int[] deadlineMonths = new int[0];
+    private int[] architectIds = new int[0];
+    private int[] contractorIds = new int[0];
+    private final Map<Integer, Integer> rowByProjectNum = new HashMap<>();
+
+    // Building type dictionary; codes are never reused, so a code is valid in every snapshot
+    private final List<String> buildingTypes = new ArrayList<>();
+    private final Map<String, Integer> buildingTypeCodesByName = new HashMap<>();
+
+    /**
+     * Creates an empty aggregate store. Call {@link #load()} to fill it.
+     *
+     * @param pool The connection pool to load from.
+     */
+    public ProjectAggregates(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Loads every project, replacing whatever was loaded before, and starts listening for changes.
+     *
+     * @throws SQLException If a database error occurs.
+     */
+    public void load() throws SQLException {
+        ProjectChanges.addListener(this);
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement selectStatement = connection.prepareStatement(SELECT_COLUMNS,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            selectStatement.setFetchSize(FETCH_SIZE);
+
+            lock.writeLock().lock();
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                size = 0;
+                rowByProjectNum.clear();
+                while (resultSet.next()) {
+                    upsert(resultSet);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Re-reads pending projects at a fixed interval until {@link #close()} is called.
+     *
+     * @param intervalMillis The time between refreshes.
+     */
+    public void startRefreshing(long intervalMillis) {
+        pending.start(intervalMillis, intervalMillis, this::refresh);
+    }
+
+    @Override
+    public void close() {
+        ProjectChanges.removeListener(this);
+        pending.close();
+    }
+
+    @Override
+    public void onChange(ProjectChange change) {
+        // Person changes do not touch the columns kept here; reassigning a person is a project update
+        if (!change.isPersonChange()) {
+            pending.mark("PoisePMS", change.projectNum());
+        }
+    }
+
+    /**
+     * Re-reads the projects changed since the last refresh, removing those that no longer exist.
+     *
+     * @return The number of projects re-read.
+     * @throws SQLException If a database error occurs. The projects stay pending.
+     */
+    public int refresh() throws SQLException {
+        return pending.drain("PoisePMS", REFRESH_CHUNK_SIZE, this::refreshChunk);
+    }
+
+    private void refreshChunk(List<Integer> projectNums) throws SQLException {
+        String sql = SELECT_COLUMNS + " WHERE Project_num IN (%s)";
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement selectStatement = InList.prepare(connection, sql, projectNums)) {
+            lock.writeLock().lock();
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                Set<Integer> missing = new HashSet<>(projectNums);
+                while (resultSet.next()) {
+                    missing.remove(upsert(resultSet));
+                }
+                missing.forEach(this::remove);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Stores the project at the cursor, adding a row if it is new. Called with the write lock held.
+     *
+     * @return The project number.
+     */
+    private int upsert(ResultSet resultSet) throws SQLException {
+        int projectNum = resultSet.getInt(1);
+        Integer row = rowByProjectNum.get(projectNum);
+        if (row == null) {
+            row = size;
+            ensureCapacity(size + 1);
+            size++;
+            rowByProjectNum.put(projectNum, row);
+        }
+
+        Date deadline = resultSet.getDate(5);
+        projectNums[row] = projectNum;
+        buildingTypeCodes[row] = codeOf(resultSet.getString(2));
+        totalFees[row] = resultSet.getInt(3);
+        totalPaids[row] = resultSet.getInt(4);
+        if (deadline == null) {
+            deadlineDays[row] = NO_DEADLINE_DAY;
+            deadlineMonths[row] = NO_DEADLINE_MONTH;
+        } else {
+            LocalDate date = deadline.toLocalDate();
+            deadlineDays[row] = (int) date.toEpochDay();
+            deadlineMonths[row] = (date.getYear() - 1970) * 12 + date.getMonthValue();
+        }
+        architectIds[row] = resultSet.getInt(6);
+        contractorIds[row] = resultSet.getInt(7);
+        return projectNum;
+    }
+
+    /**
+     * Removes a project by moving the last row into its place. Called with the write lock held.
+     */
+    private void remove(int projectNum) {
+        Integer row = rowByProjectNum.remove(projectNum);
+        if (row == null) {
+            return;
+        }
+        int last = --size;
+        if (row != last) {
+            projectNums[row] = projectNums[last];
+            buildingTypeCodes[row] = buildingTypeCodes[last];
+            totalFees[row] = totalFees[last];
+            totalPaids[row] = totalPaids[last];
+            deadlineDays[row] = deadlineDays[last];
+            deadlineMonths[row] = deadlineMonths[last];
+            architectIds[row] = architectIds[last];
+            contractorIds[row] = contractorIds[last];
+            rowByProjectNum.put(projectNums[row], row);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= projectNums.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, Math.max(1024, projectNums.length * 2));
+        projectNums = Arrays.copyOf(projectNums, newCapacity);
+        buildingTypeCodes = Arrays.copyOf(buildingTypeCodes, newCapacity);
+        totalFees = Arrays.copyOf(totalFees, newCapacity);
+        totalPaids = Arrays.copyOf(totalPaids, newCapacity);
+        deadlineDays = Arrays.copyOf(deadlineDays, newCapacity);
+        deadlineMonths = Arrays.copyOf(deadlineMonths, newCapacity);
+        architectIds = Arrays.copyOf(architectIds, newCapacity);
+        contractorIds = Arrays.copyOf(contractorIds, newCapacity);
+    }
+
+    private int codeOf(String buildingType) {
+        String name = buildingType == null ? "" : buildingType;
+        Integer code = buildingTypeCodesByName.get(name);
+        if (code == null) {
+            code = buildingTypes.size();
+            buildingTypes.add(name);
+            buildingTypeCodesByName.put(name, code);
+        }
+        return code;
+    }
+
+    // ================= Queries ================= //
+
+    /**
+     * Totals fees and payments per group, largest outstanding balance first.
+     *
+     * @param dimension What to group by.
+     * @return One rollup per group that has at least one project.
+     */
+    public List<ProjectRollup> rollup(Dimension dimension) {
+        lock.readLock().lock();
+        try {
+            int[] keys = keyColumn(dimension);
+            int minKey = Integer.MAX_VALUE;
+            int maxKey = Integer.MIN_VALUE;
+            for (int row = 0; row < size; row++) {
+                minKey = Math.min(minKey, keys[row]);
+                maxKey = Math.max(maxKey, keys[row]);
+            }
+
+            List<ProjectRollup> rollups = new ArrayList<>();
+            if (size == 0) {
+                return rollups;
+            }
+            if ((long) maxKey - minKey < DENSE_KEY_RANGE) {
+                // Ids, dictionary codes and months are usually close together, so no hashing is needed
+                DenseGroups totals = invoke(new DenseGroupTask(keys, minKey, maxKey - minKey + 1, 0, size));
+                for (int offset = 0; offset < totals.counts.length; offset++) {
+                    if (totals.counts[offset] > 0) {
+                        rollups.add(new ProjectRollup(groupName(dimension, minKey + offset),
+                                totals.counts[offset], totals.fees[offset], totals.paids[offset]));
+                    }
+                }
+            } else {
+                GroupTable totals = invoke(new HashGroupTask(keys, 0, size));
+                for (int slot = 0; slot < totals.keys.length; slot++) {
+                    if (totals.used[slot]) {
+                        rollups.add(new ProjectRollup(groupName(dimension, totals.keys[slot]),
+                                totals.counts[slot], totals.fees[slot], totals.paids[slot]));
+                    }
+                }
+            }
+            rollups.sort(Comparator.comparingLong(ProjectRollup::outstanding).reversed());
+            return rollups;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> T invoke(RecursiveTask<T> task) {
+        return size < PARALLEL_THRESHOLD ? task.invoke() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    /**
+     * Totals fees and payments over the projects whose deadline is before the given date.
+     *
+     * @param today The date deadlines are compared against.
+     */
+    public ProjectRollup overdueTotal(LocalDate today) {
+        int todayDay = (int) today.toEpochDay();
+        lock.readLock().lock();
+        try {
+            int projects = 0;
+            long fees = 0;
+            long paids = 0;
+            for (int row = 0; row < size; row++) {
+                if (deadlineDays[row] != NO_DEADLINE_DAY && deadlineDays[row] < todayDay) {
+                    projects++;
+                    fees += totalFees[row];
+                    paids += totalPaids[row];
+                }
+            }
+            return new ProjectRollup("overdue", projects, fees, paids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Totals fees and payments over every project.
+     */
+    public ProjectRollup total() {
+        lock.readLock().lock();
+        try {
+            long fees = 0;
+            long paids = 0;
+            for (int row = 0; row < size; row++) {
+                fees += totalFees[row];
+                paids += totalPaids[row];
+            }
+            return new ProjectRollup("all", size, fees, paids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private int[] keyColumn(Dimension dimension) {
+        switch (dimension) {
+            case BUILDING_TYPE:
+                return buildingTypeCodes;
+            case ARCHITECT:
+                return architectIds;
+            case CONTRACTOR:
+                return contractorIds;
+            case DEADLINE_MONTH:
+                return deadlineMonths;
+            default:
+                throw new IllegalArgumentException("Unknown dimension " + dimension);
+        }
+    }
+
+    private String groupName(Dimension dimension, int key) {
+        switch (dimension) {
+            case BUILDING_TYPE:
+                return buildingTypes.get(key);
+            case DEADLINE_MONTH:
+                if (key == NO_DEADLINE_MONTH) {
+                    return "none";
+                }
+                return String.format("%04d-%02d", 1970 + Math.floorDiv(key - 1, 12), Math.floorMod(key - 1, 12) + 1);
+            default:
+                return Integer.toString(key);
+        }
+    }
+
+    /**
+     * Totals a range of rows into arrays indexed by key, splitting it in half until it is small
+     * enough to scan. Runs with the read lock held by the thread that started it.
+     */
+    private final class DenseGroupTask extends RecursiveTask<DenseGroups> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] keys;
+        private final int minKey;
+        private final int range;
+        private final int from;
+        private final int to;
+
+        DenseGroupTask(int[] keys, int minKey, int range, int from, int to) {
+            this.keys = keys;
+            this.minKey = minKey;
+            this.range = range;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected DenseGroups compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                DenseGroups groups = new DenseGroups(range);
+                for (int row = from; row < to; row++) {
+                    int offset = keys[row] - minKey;
+                    groups.counts[offset]++;
+                    groups.fees[offset] += totalFees[row];
+                    groups.paids[offset] += totalPaids[row];
+                }
+                return groups;
+            }
+            int middle = (from + to) >>> 1;
+            DenseGroupTask left = new DenseGroupTask(keys, minKey, range, from, middle);
+            left.fork();
+            DenseGroups right = new DenseGroupTask(keys, minKey, range, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Totals per key, at index key minus the smallest key.
+     */
+    private static final class DenseGroups {
+        final int[] counts;
+        final long[] fees;
+        final long[] paids;
+
+        DenseGroups(int range) {
+            counts = new int[range];
+            fees = new long[range];
+            paids = new long[range];
+        }
+
+        DenseGroups merge(DenseGroups other) {
+            for (int offset = 0; offset < counts.length; offset++) {
+                counts[offset] += other.counts[offset];
+                fees[offset] += other.fees[offset];
+                paids[offset] += other.paids[offset];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Totals a range of rows into a hash table, for keys too far apart for {@link DenseGroupTask}.
+     */
+    private final class HashGroupTask extends RecursiveTask<GroupTable> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] keys;
+        private final int from;
+        private final int to;
+
+        HashGroupTask(int[] keys, int from, int to) {
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected GroupTable compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                GroupTable table = new GroupTable();
+                for (int row = from; row < to; row++) {
+                    table.add(keys[row], 1, totalFees[row], totalPaids[row]);
+                }
+                return table;
+            }
+            int middle = (from + to) >>> 1;
+            HashGroupTask left = new HashGroupTask(keys, from, middle);
+            left.fork();
+            GroupTable right = new HashGroupTask(keys, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * An open addressing hash table from group key to totals, so grouping boxes nothing.
+     */
+    private static final class GroupTable {
+        int[] keys = new int[64];
+        boolean[] used = new boolean[64];
+        int[] counts = new int[64];
+        long[] fees = new long[64];
+        long[] paids = new long[64];
+        int size;
+
+        void add(int key, int count, long fee, long paid) {
+            int mask = keys.length - 1;
+            int hash = key * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            counts[slot] += count;
+            fees[slot] += fee;
+            paids[slot] += paid;
+            if (size * 2 > keys.length) {
+                grow();
+            }
+        }
+
+        GroupTable merge(GroupTable other) {
+            for (int slot = 0; slot < other.keys.length; slot++) {
+                if (other.used[slot]) {
+                    add(other.keys[slot], other.counts[slot], other.fees[slot], other.paids[slot]);
+                }
+            }
+            return this;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            boolean[] oldUsed = used;
+            int[] oldCounts = counts;
+            long[] oldFees = fees;
+            long[] oldPaids = paids;
+            int capacity = oldKeys.length * 2;
+            keys = new int[capacity];
+            used = new boolean[capacity];
+            counts = new int[capacity];
+            fees = new long[capacity];
+            paids = new long[capacity];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldUsed[slot]) {
+                    add(oldKeys[slot], oldCounts[slot], oldFees[slot], oldPaids[slot]);
+                }
+            }
+        }
+    }
+}
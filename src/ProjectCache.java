@@ -0,0 +1,200 @@
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * This class keeps recently fetched projects, with their customer, architect and contractor, in memory.
+ * Entries are evicted in least recently used order once the cache is full and expire after a fixed
+ * time to live. Committed changes published through {@link ProjectChanges} remove the affected entries.
+ */
+public class ProjectCache implements ProjectChangeListener {
+
+    /**
+     * Loads a project from the database when it is not cached.
+     */
+    public interface Loader {
+        /**
+         * @param projectNum The project number to load.
+         * @return The project, or null if it does not exist.
+         * @throws SQLException If a database error occurs.
+         */
+        ProjectDetails load(int projectNum) throws SQLException;
+    }
+
+    private int maxSize;
+    private volatile long timeToLiveNanos;
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Bumped on every invalidation so a load that raced with a write is not cached
+    private long invalidationCount;
+
+    // Counters exposed for monitoring
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+    private long loadCount;
+    private long totalLoadNanos;
+
+    /**
+     * Creates a project cache.
+     *
+     * @param maxSize    The maximum number of projects kept.
+     * @param timeToLive How long a project is kept after it was loaded.
+     */
+    public ProjectCache(int maxSize, Duration timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    /**
+     * Gets a project from the cache, loading and caching it if it is missing or expired.
+     *
+     * @param projectNum The project number.
+     * @param loader     Loads the project on a miss.
+     * @return The project, or null if it does not exist.
+     * @throws SQLException If loading fails.
+     */
+    public ProjectDetails get(int projectNum, Loader loader) throws SQLException {
+        long invalidationsBeforeLoad;
+        synchronized (this) {
+            Entry entry = entries.get(projectNum);
+            if (entry != null) {
+                if (System.nanoTime() - entry.loadedAt < timeToLiveNanos) {
+                    hits++;
+                    return entry.details;
+                }
+                entries.remove(projectNum);
+                expirations++;
+            }
+            misses++;
+            invalidationsBeforeLoad = invalidationCount;
+        }
+
+        // Load outside the lock so one slow query does not block every other lookup
+        long loadStart = System.nanoTime();
+        ProjectDetails details = loader.load(projectNum);
+        long loadEnd = System.nanoTime();
+
+        synchronized (this) {
+            loadCount++;
+            totalLoadNanos += loadEnd - loadStart;
+            if (details != null && invalidationCount == invalidationsBeforeLoad) {
+                entries.put(projectNum, new Entry(details, loadEnd));
+                evictOverflow();
+            }
+        }
+        return details;
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes a project from the cache.
+     *
+     * @param projectNum The project number.
+     */
+    public synchronized void invalidate(int projectNum) {
+        invalidationCount++;
+        if (entries.remove(projectNum) != null) {
+            invalidations++;
+        }
+    }
+
+    /**
+     * Removes every cached project that refers to the given person.
+     *
+     * @param personTable "Customer", "Architect" or "Contractor".
+     * @param personId    The id of the person.
+     */
+    public synchronized void invalidatePerson(String personTable, int personId) {
+        invalidationCount++;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().details.person(personTable).id() == personId) {
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        invalidationCount++;
+        entries.clear();
+    }
+
+    @Override
+    public void onChange(ProjectChange change) {
+        // A new person is not on any cached project yet
+        if (change.isPersonChange() && change.type() != ProjectChange.Type.PERSON_ADDED) {
+            invalidatePerson(change.personTable(), change.personId());
+        }
+        invalidate(change.projectNum());
+    }
+
+    public void setTimeToLive(Duration timeToLive) {
+        this.timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    /**
+     * Changes how many projects are kept, evicting the least recently used ones if there are now too many.
+     *
+     * @param maxSize The maximum number of projects kept.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        evictOverflow();
+    }
+
+    // ================= Statistics ================= //
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public synchronized double getAverageLoadMillis() {
+        return loadCount == 0 ? 0 : totalLoadNanos / 1_000_000.0 / loadCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ProjectCache[size=%d/%d, hits=%d, misses=%d, hitRatio=%.2f, avgLoad=%.3f ms, evictions=%d, expirations=%d, invalidations=%d]",
+                entries.size(), maxSize, hits, misses, getHitRatio(), getAverageLoadMillis(),
+                evictions, expirations, invalidations);
+    }
+
+    /**
+     * A cached project and when it was loaded.
+     */
+    private static final class Entry {
+        final ProjectDetails details;
+        final long loadedAt;
+
+        Entry(ProjectDetails details, long loadedAt) {
+            this.details = details;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
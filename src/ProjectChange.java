@@ -0,0 +1,46 @@
+/**
+ * A committed change to a project or to one of its people.
+ *
+ * @param type        What changed.
+ * @param projectNum  The project that was changed, or through which the person was changed; 0 if there was none.
+ * @param personTable For person changes, "Customer", "Architect" or "Contractor"; otherwise null.
+ * @param personId    For person changes, the id of the person; otherwise 0.
+ */
+public record ProjectChange(Type type, int projectNum, String personTable, int personId) {
+
+    /**
+     * The kind of change.
+     */
+    public enum Type {
+        PROJECT_ADDED,
+        PROJECT_UPDATED,
+        PROJECT_FINALIZED,
+        PROJECT_DELETED,
+        PERSON_ADDED,
+        PERSON_UPDATED,
+        PERSON_DELETED
+    }
+
+    public static ProjectChange of(Type type, int projectNum) {
+        return new ProjectChange(type, projectNum, null, 0);
+    }
+
+    public static ProjectChange personUpdated(int projectNum, String personTable, int personId) {
+        return new ProjectChange(Type.PERSON_UPDATED, projectNum, personTable, personId);
+    }
+
+    public static ProjectChange personAdded(int projectNum, String personTable, int personId) {
+        return new ProjectChange(Type.PERSON_ADDED, projectNum, personTable, personId);
+    }
+
+    public static ProjectChange personDeleted(int projectNum, String personTable, int personId) {
+        return new ProjectChange(Type.PERSON_DELETED, projectNum, personTable, personId);
+    }
+
+    /**
+     * @return Whether only a customer, architect or contractor row changed, not the project row.
+     */
+    public boolean isPersonChange() {
+        return personTable != null;
+    }
+}
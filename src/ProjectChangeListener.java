@@ -0,0 +1,12 @@
+/**
+ * Receives committed changes published through {@link ProjectChanges}.
+ */
+public interface ProjectChangeListener {
+
+    /**
+     * Called after a change has been committed, on the thread that made it.
+     *
+     * @param change The change.
+     */
+    void onChange(ProjectChange change);
+}
@@ -0,0 +1,40 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This class passes committed changes from the classes that write to the database to the
+ * listeners that keep derived data, such as caches, up to date.
+ */
+public class ProjectChanges {
+
+    private static final List<ProjectChangeListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers a listener for every change published after this call.
+     *
+     * @param listener The listener to add.
+     */
+    public static void addListener(ProjectChangeListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(ProjectChangeListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Tells every listener about a committed change. A failing listener does not stop the
+     * others or the write that published the change.
+     *
+     * @param change The change.
+     */
+    public static void publish(ProjectChange change) {
+        for (ProjectChangeListener listener : LISTENERS) {
+            try {
+                listener.onChange(change);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
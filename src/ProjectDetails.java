@@ -0,0 +1,29 @@
+/**
+ * A project together with its customer, architect and contractor.
+ *
+ * @param project    The project.
+ * @param customer   The project's customer.
+ * @param architect  The project's architect.
+ * @param contractor The project's contractor.
+ */
+public record ProjectDetails(Project project, Person customer, Person architect, Person contractor) {
+
+    /**
+     * Gets the project's person from the given table.
+     *
+     * @param tableName "Customer", "Architect" or "Contractor".
+     * @return The person.
+     */
+    public Person person(String tableName) {
+        switch (tableName) {
+            case "Customer":
+                return customer;
+            case "Architect":
+                return architect;
+            case "Contractor":
+                return contractor;
+            default:
+                throw new IllegalArgumentException("Invalid person type");
+        }
+    }
+}
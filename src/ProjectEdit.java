@@ -0,0 +1,167 @@
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The changed fields of a project and its people, keyed by column name, such as "Total_paid" or
+ * "Customer_email". Only the columns that are set are written, and an edit that sets nothing for a
+ * table writes nothing to it. A customer, architect or contractor can instead be replaced by a new
+ * person, who is inserted and linked in the same transaction.
+ */
+public class ProjectEdit {
+
+    // The editable columns of PoisePMS and the type of their values
+    private static final Map<String, Class<?>> PROJECT_COLUMNS = new LinkedHashMap<>();
+
+    static {
+        PROJECT_COLUMNS.put("Project_name", String.class);
+        PROJECT_COLUMNS.put("Building_type", String.class);
+        PROJECT_COLUMNS.put("Physical_address", String.class);
+        PROJECT_COLUMNS.put("ERF_num", Integer.class);
+        PROJECT_COLUMNS.put("Total_fee", Integer.class);
+        PROJECT_COLUMNS.put("Total_paid", Integer.class);
+        PROJECT_COLUMNS.put("Project_deadline", LocalDate.class);
+    }
+
+    // The editable columns of each person table, after the table name and an underscore
+    private static final String[] PERSON_COLUMNS = {"name", "cell_num", "email", "address"};
+
+    private final int projectNum;
+    // Sorted, so the same set of columns always produces the same SQL text for the statement cache
+    private final Map<String, Object> projectChanges = new TreeMap<>();
+    private final Map<String, Map<String, String>> personChanges = new TreeMap<>();
+    private final Map<String, Person> newPeople = new LinkedHashMap<>();
+
+    /**
+     * Creates an edit that changes nothing yet.
+     *
+     * @param projectNum The project to edit.
+     */
+    public ProjectEdit(int projectNum) {
+        this.projectNum = projectNum;
+    }
+
+    /**
+     * Sets one column.
+     *
+     * @param column The column name, for example "Project_deadline" or "Architect_cell_num".
+     * @param value  A String, an Integer for ERF_num, Total_fee and Total_paid, or a LocalDate for Project_deadline.
+     * @return This edit.
+     * @throws IllegalArgumentException If the column cannot be edited or the value has the wrong type.
+     */
+    public ProjectEdit set(String column, Object value) {
+        Class<?> type = PROJECT_COLUMNS.get(column);
+        if (type != null) {
+            if (!type.isInstance(value)) {
+                throw new IllegalArgumentException(column + " must be of type " + type.getSimpleName());
+            }
+            projectChanges.put(column, value);
+            return this;
+        }
+
+        String tableName = personTable(column);
+        if (tableName == null) {
+            throw new IllegalArgumentException("Cannot edit " + column);
+        }
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException(column + " must be a String");
+        }
+        if (newPeople.containsKey(tableName)) {
+            throw new IllegalArgumentException(tableName + " is being replaced by a new one and cannot also be edited");
+        }
+        personChanges.computeIfAbsent(tableName, key -> new TreeMap<>()).put(column, (String) value);
+        return this;
+    }
+
+    /**
+     * Sets every editable column found in a map of text fields, such as a parsed JSON body,
+     * converting numbers and dates. Other fields are ignored.
+     *
+     * @param fields The fields by column name.
+     * @return This edit.
+     * @throws IllegalArgumentException If a number or date cannot be parsed.
+     */
+    public ProjectEdit setAll(Map<String, String> fields) {
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            String column = field.getKey();
+            Class<?> type = PROJECT_COLUMNS.get(column);
+            if (type == Integer.class) {
+                set(column, Integer.parseInt(field.getValue().trim()));
+            } else if (type == LocalDate.class) {
+                set(column, LocalDate.parse(field.getValue().trim()));
+            } else if (type != null || personTable(column) != null) {
+                set(column, field.getValue());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Replaces a customer, architect or contractor with a new person.
+     *
+     * @param tableName "Customer", "Architect" or "Contractor".
+     * @param person    The new person. The id is ignored.
+     * @return This edit.
+     */
+    public ProjectEdit assignNew(String tableName, Person person) {
+        if (!isPersonTable(tableName)) {
+            throw new IllegalArgumentException("Invalid person type");
+        }
+        if (personChanges.containsKey(tableName)) {
+            throw new IllegalArgumentException(tableName + " is being edited and cannot also be replaced");
+        }
+        newPeople.put(tableName, person);
+        return this;
+    }
+
+    public int getProjectNum() {
+        return projectNum;
+    }
+
+    /**
+     * @return The changed PoisePMS columns and their values, sorted by column name.
+     */
+    public Map<String, Object> getProjectChanges() {
+        return Collections.unmodifiableMap(projectChanges);
+    }
+
+    /**
+     * @return The changed columns of each edited person table, by table name, sorted by column name.
+     */
+    public Map<String, Map<String, String>> getPersonChanges() {
+        return Collections.unmodifiableMap(personChanges);
+    }
+
+    /**
+     * @return The new people, by the table they are inserted into.
+     */
+    public Map<String, Person> getNewPeople() {
+        return Collections.unmodifiableMap(newPeople);
+    }
+
+    public boolean isEmpty() {
+        return projectChanges.isEmpty() && personChanges.isEmpty() && newPeople.isEmpty();
+    }
+
+    private static String personTable(String column) {
+        for (String tableName : Person.TABLES) {
+            for (String suffix : PERSON_COLUMNS) {
+                if (column.equals(tableName + "_" + suffix)) {
+                    return tableName;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isPersonTable(String tableName) {
+        for (String table : Person.TABLES) {
+            if (table.equals(tableName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
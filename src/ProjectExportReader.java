@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class reads a file written by {@link ProjectExporter} one project at a time, so the file
+ * can be analysed offline without loading it into memory or touching the database.
+ */
+public class ProjectExportReader implements Iterator<ProjectDetails>, AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final List<String> buildingTypes = new ArrayList<>();
+    private ProjectDetails next;
+    private boolean finished;
+    private long projectsRead;
+
+    /**
+     * Opens an export file and checks its header.
+     *
+     * @param file The file to read.
+     * @throws IOException If the file cannot be read or is not an export file.
+     */
+    public ProjectExportReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer.flip();
+        try {
+            require(8);
+            if (buffer.getInt() != ProjectExporter.MAGIC) {
+                throw new IOException(file + " is not a project export file");
+            }
+            int version = buffer.getInt();
+            if (version != ProjectExporter.VERSION) {
+                throw new IOException("Unsupported export file version " + version);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            try {
+                next = readNext();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public ProjectDetails next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ProjectDetails current = next;
+        next = null;
+        return current;
+    }
+
+    private ProjectDetails readNext() throws IOException {
+        while (true) {
+            require(1);
+            byte tag = buffer.get();
+            switch (tag) {
+                case ProjectExporter.TAG_BUILDING_TYPE:
+                    require(2);
+                    short code = buffer.getShort();
+                    if (code != buildingTypes.size()) {
+                        throw new IOException("Building type codes out of order");
+                    }
+                    buildingTypes.add(getString());
+                    break;
+                case ProjectExporter.TAG_PROJECT:
+                    require(4);
+                    require(buffer.getInt());
+                    projectsRead++;
+                    return decodeProject();
+                case ProjectExporter.TAG_END:
+                    require(8);
+                    long count = buffer.getLong();
+                    if (count != projectsRead) {
+                        throw new IOException("Export file holds " + projectsRead + " projects, expected " + count);
+                    }
+                    finished = true;
+                    return null;
+                default:
+                    throw new IOException("Corrupt export file, unknown entry " + tag);
+            }
+        }
+    }
+
+    private ProjectDetails decodeProject() throws IOException {
+        int projectNum = buffer.getInt();
+        short buildingTypeCode = buffer.getShort();
+        int erfNum = buffer.getInt();
+        int totalFee = buffer.getInt();
+        int totalPaid = buffer.getInt();
+        LocalDate deadline = toDate(buffer.getInt());
+        boolean finalized = buffer.get() != 0;
+        LocalDate completionDate = toDate(buffer.getInt());
+        String projectName = getString();
+        String physicalAddress = getString();
+
+        Person customer = getPerson();
+        Person architect = getPerson();
+        Person contractor = getPerson();
+
+        if (buildingTypeCode >= buildingTypes.size()) {
+            throw new IOException("Unknown building type code " + buildingTypeCode);
+        }
+        String buildingType = buildingTypeCode < 0 ? null : buildingTypes.get(buildingTypeCode);
+
+        Project project = new Project(projectNum, projectName, buildingType, physicalAddress, erfNum,
+                totalFee, totalPaid, deadline, architect.id(), contractor.id(), customer.id(),
+                finalized, completionDate);
+        return new ProjectDetails(project, customer, architect, contractor);
+    }
+
+    private Person getPerson() throws IOException {
+        return new Person(buffer.getInt(), getString(), getString(), getString(), getString());
+    }
+
+    private static LocalDate toDate(int epochDay) {
+        return epochDay == ProjectExporter.NULL_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private String getString() throws IOException {
+        require(4);
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        require(length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Makes sure the given number of bytes can be read from the buffer, reading more of the file if needed.
+     */
+    private void require(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        if (bytes > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(bytes);
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of export file");
+            }
+        }
+        buffer.flip();
+    }
+
+    public long getProjectsRead() {
+        return projectsRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class writes every project, joined with its customer, architect and contractor, to a compact
+ * binary file that {@link ProjectExportReader} can read back without a database.
+ *
+ * <p>The file starts with the magic number and format version. It is followed by tagged entries:
+ * a dictionary entry assigns a short code to a building type the first time it is seen, a project entry
+ * holds one length-prefixed record, and the end entry holds the number of projects written. Strings are
+ * written as a length followed by UTF-8 bytes, a length of -1 meaning null, and dates as epoch days.</p>
+ */
+public class ProjectExporter {
+
+    static final int MAGIC = 0x504D5358; // "PMSX"
+    static final int VERSION = 1;
+
+    static final byte TAG_END = 0;
+    static final byte TAG_BUILDING_TYPE = 1;
+    static final byte TAG_PROJECT = 2;
+
+    static final int NULL_DATE = Integer.MIN_VALUE;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String EXPORT_SQL = "SELECT PoisePMS.Project_num, PoisePMS.Project_name, PoisePMS.Building_type, "
+            + "PoisePMS.Physical_address, PoisePMS.ERF_num, PoisePMS.Total_fee, PoisePMS.Total_paid, "
+            + "PoisePMS.Project_deadline, PoisePMS.Finalized, PoisePMS.Completion_date, "
+            + "Customer.Customer_id, Customer.Customer_name, Customer.Customer_cell_num, Customer.Customer_email, Customer.Customer_address, "
+            + "Architect.Architect_id, Architect.Architect_name, Architect.Architect_cell_num, Architect.Architect_email, Architect.Architect_address, "
+            + "Contractor.Contractor_id, Contractor.Contractor_name, Contractor.Contractor_cell_num, Contractor.Contractor_email, Contractor.Contractor_address "
+            + "FROM PoisePMS "
+            + "JOIN Customer ON PoisePMS.Customer_id = Customer.Customer_id "
+            + "JOIN Architect ON PoisePMS.Architect_id = Architect.Architect_id "
+            + "JOIN Contractor ON PoisePMS.Contractor_id = Contractor.Contractor_id "
+            + "ORDER BY PoisePMS.Project_num";
+
+    /**
+     * Exports every project to the given file, replacing it if it exists.
+     *
+     * @param pool      The connection pool to borrow a connection from.
+     * @param file      The file to write.
+     * @param fetchSize The JDBC fetch size. Integer.MIN_VALUE streams row by row on MySQL.
+     * @return The number of projects written.
+     * @throws SQLException If a database error occurs.
+     * @throws IOException  If the file cannot be written.
+     */
+    public static long exportProjects(ConnectionPool pool, Path file, int fetchSize) throws SQLException, IOException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement selectStatement = connection.prepareStatement(EXPORT_SQL,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            selectStatement.setFetchSize(fetchSize);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            ByteBuffer record = ByteBuffer.allocate(4 * 1024);
+            Map<String, Short> buildingTypeCodes = new HashMap<>();
+            long count = 0;
+
+            buffer.putInt(MAGIC).putInt(VERSION);
+
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    String buildingType = resultSet.getString(3);
+                    short buildingTypeCode = -1;
+                    if (buildingType != null) {
+                        Short code = buildingTypeCodes.get(buildingType);
+                        if (code == null) {
+                            if (buildingTypeCodes.size() == Short.MAX_VALUE) {
+                                throw new IOException("Too many building types to encode");
+                            }
+                            code = (short) buildingTypeCodes.size();
+                            buildingTypeCodes.put(buildingType, code);
+
+                            record.clear();
+                            record = putString(record, buildingType);
+                            record.flip();
+                            buffer = ensureRoom(channel, buffer, 1 + 2 + record.remaining());
+                            buffer.put(TAG_BUILDING_TYPE).putShort(code).put(record);
+                        }
+                        buildingTypeCode = code;
+                    }
+
+                    record.clear();
+                    record = encodeProject(resultSet, buildingTypeCode, record);
+                    record.flip();
+
+                    buffer = ensureRoom(channel, buffer, 1 + 4 + record.remaining());
+                    buffer.put(TAG_PROJECT).putInt(record.remaining()).put(record);
+                    count++;
+                }
+            }
+
+            buffer = ensureRoom(channel, buffer, 1 + 8);
+            buffer.put(TAG_END).putLong(count);
+            flush(channel, buffer);
+            channel.force(true);
+            return count;
+        }
+    }
+
+    private static ByteBuffer encodeProject(ResultSet resultSet, short buildingTypeCode, ByteBuffer record) throws SQLException {
+        record = ensureCapacity(record, 4 + 2 + 4 * 5 + 1);
+        record.putInt(resultSet.getInt(1));
+        record.putShort(buildingTypeCode);
+        record.putInt(resultSet.getInt(5));
+        record.putInt(resultSet.getInt(6));
+        record.putInt(resultSet.getInt(7));
+        record.putInt(epochDay(resultSet.getDate(8)));
+        record.put((byte) (resultSet.getBoolean(9) ? 1 : 0));
+        record.putInt(epochDay(resultSet.getDate(10)));
+        record = putString(record, resultSet.getString(2));
+        record = putString(record, resultSet.getString(4));
+
+        // Customer, architect and contractor, five columns each starting at column 11
+        for (int column = 11; column <= 21; column += 5) {
+            record = ensureCapacity(record, 4);
+            record.putInt(resultSet.getInt(column));
+            for (int field = 1; field <= 4; field++) {
+                record = putString(record, resultSet.getString(column + field));
+            }
+        }
+        return record;
+    }
+
+    private static int epochDay(Date date) {
+        return date == null ? NULL_DATE : (int) date.toLocalDate().toEpochDay();
+    }
+
+    private static ByteBuffer putString(ByteBuffer record, String value) {
+        if (value == null) {
+            record = ensureCapacity(record, 4);
+            return record.putInt(-1);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        record = ensureCapacity(record, 4 + bytes.length);
+        return record.putInt(bytes.length).put(bytes);
+    }
+
+    /**
+     * Grows the record buffer when it cannot hold the given number of extra bytes.
+     */
+    private static ByteBuffer ensureCapacity(ByteBuffer record, int extraBytes) {
+        if (record.remaining() >= extraBytes) {
+            return record;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + extraBytes));
+        record.flip();
+        return larger.put(record);
+    }
+
+    /**
+     * Writes the buffer to the file when it cannot hold the given number of extra bytes.
+     */
+    private static ByteBuffer ensureRoom(FileChannel channel, ByteBuffer buffer, int extraBytes) throws IOException {
+        if (buffer.remaining() < extraBytes) {
+            flush(channel, buffer);
+        }
+        if (buffer.remaining() < extraBytes) {
+            // A single entry larger than the buffer gets a buffer of its own
+            return ByteBuffer.allocate(extraBytes);
+        }
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
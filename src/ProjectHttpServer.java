@@ -0,0 +1,733 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * This class serves the project service as JSON over the JDK's built-in HTTP server, so many site
+ * offices can use the system at once. Bodies and responses are flat JSON objects keyed by column name,
+ * the same fields the bulk importer reads.
+ *
+ * <pre>
+ * GET    /projects/{num}[?at=...]        fetch a project with its people, or as it was at an ISO-8601
+ *                                        instant, rebuilt from the audit log
+ * POST   /projects                       add a project
+ * PUT    /projects/{num}                 edit project and people fields in one transaction;
+ *                                        fields left out keep their value
+ * PUT    /projects/{num}/{person}        edit only the customer, architect or contractor
+ * POST   /projects/{num}/finalize        finalize a project
+ * DELETE /projects/{num}                 delete a project
+ * GET    /projects/incomplete            list projects that are not finalized
+ * GET    /projects/overdue[?date=...]    list projects with a deadline before the date, today by default;
+ *                                        from memory when the service has a deadline tracker
+ * GET    /projects/search?q=...[&limit=] list the projects best matching the words, from memory
+ * GET    /rollups/{dimension}            fee and payment totals by building-type, architect,
+ *                                        contractor or deadline-month, from memory
+ * GET    /people/{person}?q=...[&limit=] customers, architects or contractors whose name starts with
+ *                                        the words typed, from memory when the service has a person directory
+ * POST   /changes/{subscriber}           subscribe, starting with the next committed change
+ * GET    /changes/{subscriber}[?from=&limit=&wait=]  committed changes for a subscriber from
+ *                                        sequence from on, waiting up to wait seconds for one; changes
+ *                                        before from are confirmed, and the rest are sent again until they are
+ * DELETE /changes/{subscriber}           unsubscribe, so changes are no longer kept for it
+ * GET    /metrics                        latency per endpoint, pool and cache statistics
+ * </pre>
+ *
+ * <p>Fetches and listings go to a read replica when the service has a replica router, except for a
+ * caller who has just made a change; callers are told apart by the X-User header or their address.
+ * Changes are audited as the caller's address, with any X-User noted beside it, as nothing checks the
+ * header.</p>
+ *
+ * <p>Each request runs on a virtual thread when the JVM has them and on a bounded thread pool otherwise.
+ * A request only goes to the database once it holds one of as many permits as the pool has connections;
+ * a request that cannot get one within the permit timeout is answered 503 instead of queueing without
+ * limit behind the pool.</p>
+ */
+public class ProjectHttpServer implements AutoCloseable {
+
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int DEFAULT_SEARCH_LIMIT = 10;
+    private static final int MAX_SEARCH_LIMIT = 100;
+    private static final int DEFAULT_CHANGE_LIMIT = 100;
+    private static final int MAX_CHANGE_LIMIT = 10_000;
+    private static final int MAX_CHANGE_WAIT_SECONDS = 30;
+    // Longest X-User kept in the audit log, which has room for 255 characters
+    private static final int MAX_USER_NOTE_LENGTH = 100;
+
+    private final ProjectService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final Semaphore changeWaiters;
+    private volatile long permitTimeoutMillis = 2_000;
+    private volatile ProjectAggregates aggregates;
+    private volatile ChangeFeed changeFeed;
+
+    // Counters exposed on the metrics endpoint
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Creates a server. It does not accept requests until {@link #start()} is called.
+     *
+     * @param service The project service requests are handled by.
+     * @param port    The port to listen on, or 0 for any free port.
+     * @throws IOException If the port cannot be bound.
+     */
+    public ProjectHttpServer(ProjectService service, int port) throws IOException {
+        this.service = service;
+        int poolSize = service.getPool().getMaxSize();
+        this.permits = new Semaphore(poolSize, true);
+        // Half the fallback pool at most is held by long polls, so the other endpoints always have threads
+        this.changeWaiters = new Semaphore(poolSize * 2);
+        this.executor = newRequestExecutor(poolSize * 4);
+
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/projects", this::handleProjects);
+        server.createContext("/rollups", this::handleRollups);
+        server.createContext("/people", this::handlePeople);
+        server.createContext("/changes", this::handleChanges);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Creates a virtual thread per task executor through reflection, so the server still runs on a
+     * Java 17 JVM, where it falls back to a fixed pool of platform threads.
+     */
+    static ExecutorService newRequestExecutor(int fallbackThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            AtomicInteger threadNum = new AtomicInteger();
+            return Executors.newFixedThreadPool(fallbackThreads, runnable -> {
+                Thread thread = new Thread(runnable, "http-worker-" + threadNum.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Sets how long a request waits for a database permit before it is answered 503.
+     */
+    public void setPermitTimeoutMillis(long permitTimeoutMillis) {
+        this.permitTimeoutMillis = permitTimeoutMillis;
+    }
+
+    /**
+     * Sets the in-memory totals the rollup endpoint answers from. Without them it answers 503.
+     */
+    public void setAggregates(ProjectAggregates aggregates) {
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * Sets the feed the changes endpoint reads from. Without it it answers 503.
+     */
+    public void setChangeFeed(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    /**
+     * Stops accepting requests, gives those in progress up to a second to finish, and stops the request threads.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    // ================= Routing ================= //
+
+    /**
+     * @return The method as named in latency metrics; any method no endpoint serves counts as OTHER,
+     *         so made-up methods cannot add metrics without bound.
+     */
+    private static String metricMethod(String method) {
+        switch (method) {
+            case "GET":
+            case "POST":
+            case "PUT":
+            case "DELETE":
+                return method;
+            default:
+                return "OTHER";
+        }
+    }
+
+    private static String abbreviate(String text, int maxLength) {
+        return text.length() <= maxLength ? text : text.substring(0, maxLength) + "...";
+    }
+
+    private void handleProjects(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+        // path[0] is empty and path[1] is "projects"
+        String endpoint = metricMethod(method) + " /projects";
+        // Changes made by this request are audited as the caller's address. X-User is not authenticated,
+        // so it is only noted next to the address; it still tells callers apart for reading their own
+        // changes back from the primary until the replicas have caught up
+        String address = exchange.getRemoteAddress().getAddress().getHostAddress();
+        String user = exchange.getRequestHeaders().getFirst("X-User");
+        AuditLog.setCurrentUser(user == null ? address : address + " (X-User: " + abbreviate(user, MAX_USER_NOTE_LENGTH) + ")");
+        ReplicaRouter.setCurrentSession(user != null ? user : address);
+
+        try {
+            if (path.length == 2 && method.equals("POST")) {
+                withPermit(exchange, () -> addProject(exchange));
+            } else if (path.length == 3 && path[2].equals("incomplete") && method.equals("GET")) {
+                endpoint = "GET /projects/incomplete";
+                withPermit(exchange, () -> writeListing(exchange, service.incompleteProjects()));
+            } else if (path.length == 3 && path[2].equals("overdue") && method.equals("GET")) {
+                endpoint = "GET /projects/overdue";
+                String date = queryParameter(exchange, "date");
+                LocalDate today = date == null ? LocalDate.now() : LocalDate.parse(date);
+                if (service.getDeadlineTracker() != null) {
+                    // Answered from memory, so it needs no database permit
+                    writeListing(exchange, service.overdueProjects(today));
+                } else {
+                    withPermit(exchange, () -> writeListing(exchange, service.overdueProjects(today)));
+                }
+            } else if (path.length == 3 && path[2].equals("search") && method.equals("GET")) {
+                endpoint = "GET /projects/search";
+                if (service.getSearchIndex() == null) {
+                    sendError(exchange, 503, "Search index is not loaded");
+                } else {
+                    // Answered from memory, so it needs no database permit
+                    String query = queryParameter(exchange, "q");
+                    String limit = queryParameter(exchange, "limit");
+                    writeListing(exchange, service.searchProjects(query == null ? "" : query,
+                            limit == null ? DEFAULT_SEARCH_LIMIT : Math.min(parseInt(limit), MAX_SEARCH_LIMIT)).stream());
+                }
+            } else if (path.length == 3) {
+                endpoint = metricMethod(method) + " /projects/{num}";
+                int projectNum = Integer.parseInt(path[2]);
+                switch (method) {
+                    case "GET":
+                        String at = queryParameter(exchange, "at");
+                        if (at == null) {
+                            withPermit(exchange, () -> fetchProject(exchange, projectNum));
+                        } else {
+                            Instant instant = Instant.parse(at);
+                            withPermit(exchange, () -> fetchProjectAsOf(exchange, projectNum, instant));
+                        }
+                        break;
+                    case "PUT":
+                        withPermit(exchange, () -> editProject(exchange, projectNum));
+                        break;
+                    case "DELETE":
+                        withPermit(exchange, () -> deleteProject(exchange, projectNum));
+                        break;
+                    default:
+                        sendError(exchange, 405, "Method not allowed");
+                }
+            } else if (path.length == 4 && path[3].equals("finalize") && method.equals("POST")) {
+                endpoint = "POST /projects/{num}/finalize";
+                int projectNum = Integer.parseInt(path[2]);
+                withPermit(exchange, () -> finalizeProject(exchange, projectNum));
+            } else if (path.length == 4 && method.equals("PUT")) {
+                endpoint = "PUT /projects/{num}/{person}";
+                int projectNum = Integer.parseInt(path[2]);
+                String tableName = personTable(path[3]);
+                if (tableName == null) {
+                    sendError(exchange, 404, "Unknown person type " + path[3]);
+                } else {
+                    withPermit(exchange, () -> editPerson(exchange, projectNum, tableName));
+                }
+            } else {
+                sendError(exchange, 404, "No such endpoint");
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // NumberFormatException is an IllegalArgumentException too
+            sendError(exchange, 400, e.getMessage());
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace(); // Handle more gracefully in a production environment
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            AuditLog.setCurrentUser(null);
+            ReplicaRouter.setCurrentSession(null);
+            exchange.close();
+            latencies.computeIfAbsent(endpoint, name -> new LatencyHistogram()).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * A piece of request handling that uses the database.
+     */
+    private interface DatabaseWork {
+        void run() throws IOException, SQLException;
+    }
+
+    private void withPermit(HttpExchange exchange, DatabaseWork work) throws IOException, SQLException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(permitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejectedCount.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "Server busy, try again");
+            return;
+        }
+
+        inFlight.incrementAndGet();
+        try {
+            work.run();
+        } finally {
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    // ================= Handlers ================= //
+
+    private void fetchProject(HttpExchange exchange, int projectNum) throws IOException, SQLException {
+        ProjectDetails details = service.findProject(projectNum);
+        if (details == null) {
+            sendError(exchange, 404, "Project " + projectNum + " not found");
+            return;
+        }
+        sendJson(exchange, 200, Json.appendProject(new StringBuilder(), details).toString());
+    }
+
+    private void fetchProjectAsOf(HttpExchange exchange, int projectNum, Instant at) throws IOException, SQLException {
+        if (AuditLog.current() == null) {
+            sendError(exchange, 503, "Audit log is not enabled");
+            return;
+        }
+        Map<String, String> columns = service.findProjectAsOf(projectNum, at);
+        if (columns == null) {
+            sendError(exchange, 404, "Project " + projectNum + " did not exist at " + at);
+            return;
+        }
+        sendJson(exchange, 200, Json.appendFlatObject(new StringBuilder(), columns).toString());
+    }
+
+    private void addProject(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, String> fields = readBody(exchange);
+        Person customer = readNewOrExistingPerson(fields, "Customer");
+        Person architect = readNewOrExistingPerson(fields, "Architect");
+        Person contractor = readNewOrExistingPerson(fields, "Contractor");
+        Project project = new Project(parseInt(required(fields, "Project_num")),
+                required(fields, "Project_name"),
+                required(fields, "Building_type"),
+                required(fields, "Physical_address"),
+                parseInt(required(fields, "ERF_num")),
+                parseInt(required(fields, "Total_fee")),
+                parseInt(required(fields, "Total_paid")),
+                LocalDate.parse(required(fields, "Project_deadline")),
+                architect.id(), contractor.id(), customer.id(), false, null);
+
+        ProjectDetails stored = service.addProject(new ProjectDetails(project, customer, architect, contractor));
+        sendJson(exchange, 201, Json.appendProject(new StringBuilder(), stored).toString());
+    }
+
+    private void editProject(HttpExchange exchange, int projectNum) throws IOException, SQLException {
+        applyEdit(exchange, new ProjectEdit(projectNum).setAll(readBody(exchange)));
+    }
+
+    private void editPerson(HttpExchange exchange, int projectNum, String tableName) throws IOException, SQLException {
+        Map<String, String> fields = readBody(exchange);
+        // Only the fields of the person in the path are applied
+        fields.keySet().removeIf(field -> !field.startsWith(tableName + "_"));
+        applyEdit(exchange, new ProjectEdit(projectNum).setAll(fields));
+    }
+
+    private void applyEdit(HttpExchange exchange, ProjectEdit edit) throws IOException, SQLException {
+        if (service.editProject(edit) == null) {
+            sendError(exchange, 404, "Project " + edit.getProjectNum() + " not found");
+            return;
+        }
+        fetchProject(exchange, edit.getProjectNum());
+    }
+
+    private void finalizeProject(HttpExchange exchange, int projectNum) throws IOException, SQLException {
+        FinalizeProject.Outcome outcome = service.finalizeProject(projectNum);
+        int status;
+        switch (outcome) {
+            case NOT_FOUND:
+                status = 404;
+                break;
+            case ALREADY_FINALIZED:
+                status = 409;
+                break;
+            default:
+                status = 200;
+                break;
+        }
+        sendJson(exchange, status, "{\"Project_num\":" + projectNum + ",\"outcome\":\"" + outcome + "\"}");
+    }
+
+    private void deleteProject(HttpExchange exchange, int projectNum) throws IOException, SQLException {
+        if (service.deleteProject(projectNum)) {
+            exchange.sendResponseHeaders(204, -1);
+        } else {
+            sendError(exchange, 404, "Project " + projectNum + " not found");
+        }
+    }
+
+    /**
+     * Writes a listing as a JSON array, streaming it page by page so a long listing is never held in memory.
+     */
+    private void writeListing(HttpExchange exchange, Stream<ProjectSummary> listing) throws IOException {
+        try (listing) {
+            Iterator<ProjectSummary> summaries = listing.iterator();
+            // Read the first page before committing to a 200, so a database error can still become a 500
+            boolean any = summaries.hasNext();
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+                StringBuilder row = new StringBuilder();
+                writer.write('[');
+                while (any) {
+                    row.setLength(0);
+                    writer.append(Json.appendSummary(row, summaries.next()));
+                    any = summaries.hasNext();
+                    if (any) {
+                        writer.write(',');
+                    }
+                }
+                writer.write(']');
+            }
+        }
+    }
+
+    /**
+     * Answers from the in-memory totals, so it needs no database permit.
+     */
+    private void handleRollups(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+            ProjectAggregates current = aggregates;
+            if (!exchange.getRequestMethod().equals("GET") || path.length != 3) {
+                sendError(exchange, 404, "No such endpoint");
+                return;
+            }
+            if (current == null) {
+                sendError(exchange, 503, "Rollups are not loaded");
+                return;
+            }
+
+            ProjectAggregates.Dimension dimension;
+            try {
+                dimension = ProjectAggregates.Dimension.valueOf(path[2].toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 404, "Unknown dimension " + path[2]);
+                return;
+            }
+
+            StringBuilder json = new StringBuilder("{\"total\":");
+            Json.appendRollup(json, current.total()).append(",\"groups\":[");
+            List<ProjectRollup> rollups = current.rollup(dimension);
+            for (int i = 0; i < rollups.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                Json.appendRollup(json, rollups.get(i));
+            }
+            sendJson(exchange, 200, json.append("]}").toString());
+        } finally {
+            exchange.close();
+            latencies.computeIfAbsent("GET /rollups/{dimension}", name -> new LatencyHistogram())
+                    .record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Answers a typeahead from the person directory, so it needs no database permit.
+     */
+    private void handlePeople(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+            PersonDirectory directory = service.getPersonDirectory();
+            if (!exchange.getRequestMethod().equals("GET") || path.length != 3) {
+                sendError(exchange, 404, "No such endpoint");
+                return;
+            }
+            String tableName = personTable(path[2]);
+            if (tableName == null) {
+                sendError(exchange, 404, "Unknown person type " + path[2]);
+                return;
+            }
+            if (directory == null) {
+                sendError(exchange, 503, "People are not loaded");
+                return;
+            }
+
+            String prefix = queryParameter(exchange, "q");
+            String limit = queryParameter(exchange, "limit");
+            List<Person> people = directory.search(tableName, prefix == null ? "" : prefix,
+                    limit == null ? DEFAULT_SEARCH_LIMIT : Math.min(parseInt(limit), MAX_SEARCH_LIMIT));
+
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < people.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                Json.appendPerson(json, tableName, people.get(i));
+            }
+            sendJson(exchange, 200, json.append(']').toString());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace(); // Handle more gracefully in a production environment
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+            latencies.computeIfAbsent("GET /people/{person}", name -> new LatencyHistogram())
+                    .record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Reads from the change feed, so it needs no database permit. A subscriber that waits holds its
+     * request thread, so only so many may wait at once; beyond that a read returns straight away.
+     */
+    private void handleChanges(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String method = exchange.getRequestMethod();
+        try {
+            String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+            ChangeFeed feed = changeFeed;
+            if (path.length != 3 || !(method.equals("GET") || method.equals("POST") || method.equals("DELETE"))) {
+                sendError(exchange, 404, "No such endpoint");
+                return;
+            }
+            if (feed == null) {
+                sendError(exchange, 503, "Change feed is not running");
+                return;
+            }
+
+            if (method.equals("DELETE")) {
+                if (feed.unsubscribe(path[2])) {
+                    sendJson(exchange, 200, "{\"unsubscribed\":true}");
+                } else {
+                    sendError(exchange, 404, "No subscriber " + path[2]);
+                }
+                return;
+            }
+
+            if (method.equals("POST")) {
+                ChangeFeed.Subscription subscription = feed.subscribe(path[2]);
+                sendJson(exchange, 200, "{\"subscribed\":true,\"lag\":" + subscription.getLag() + "}");
+                return;
+            }
+
+            ChangeFeed.Subscription subscription = feed.find(path[2]);
+            if (subscription == null) {
+                sendError(exchange, 404, "No subscriber " + path[2] + ", subscribe with POST first");
+                return;
+            }
+            String from = queryParameter(exchange, "from");
+            String limit = queryParameter(exchange, "limit");
+            String wait = queryParameter(exchange, "wait");
+            int maxEvents = limit == null ? DEFAULT_CHANGE_LIMIT : Math.min(parseInt(limit), MAX_CHANGE_LIMIT);
+            long waitMillis = wait == null ? 0 : TimeUnit.SECONDS.toMillis(Math.min(parseInt(wait), MAX_CHANGE_WAIT_SECONDS));
+            // Without from nothing is confirmed, so the changes sent last time are sent again
+            long fromSequence = from == null ? 0 : Long.parseLong(from.trim());
+            List<ChangeEvent> events;
+            if (waitMillis > 0 && changeWaiters.tryAcquire()) {
+                try {
+                    events = subscription.poll(fromSequence, maxEvents, waitMillis);
+                } finally {
+                    changeWaiters.release();
+                }
+            } else {
+                events = subscription.poll(fromSequence, maxEvents, 0);
+            }
+
+            StringBuilder json = new StringBuilder("{\"events\":[");
+            for (int i = 0; i < events.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                Json.appendChangeEvent(json, events.get(i));
+            }
+            long next = events.isEmpty() ? subscription.getCursor() : events.get(events.size() - 1).sequence() + 1;
+            json.append("],\"next\":").append(next);
+            json.append(",\"lag\":").append(subscription.getLag());
+            json.append(",\"missed\":").append(subscription.getMissedCount()).append('}');
+            sendJson(exchange, 200, json.toString());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 503, "Server is stopping");
+        } catch (RuntimeException e) {
+            e.printStackTrace(); // Handle more gracefully in a production environment
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+            latencies.computeIfAbsent(metricMethod(method) + " /changes/{subscriber}", name -> new LatencyHistogram())
+                    .record(System.nanoTime() - start);
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            StringBuilder metrics = new StringBuilder();
+            latencies.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(entry -> metrics.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n'));
+            metrics.append("in flight: ").append(inFlight.get())
+                    .append(", rejected: ").append(rejectedCount.get())
+                    .append(", permits available: ").append(permits.availablePermits()).append('\n');
+            metrics.append("pool: ").append(service.getPool()).append('\n');
+            metrics.append("project cache: ").append(ProjectInfoFetcher.getProjectCache()).append('\n');
+            if (service.getSnapshotStore() != null) {
+                metrics.append("snapshot: ").append(service.getSnapshotStore()).append('\n');
+            }
+            if (service.getDeadlineTracker() != null) {
+                metrics.append("deadlines: ").append(service.getDeadlineTracker()).append('\n');
+            }
+            if (service.getReplicaRouter() != null) {
+                metrics.append("replicas: ").append(service.getReplicaRouter()).append('\n');
+            }
+            if (changeFeed != null) {
+                metrics.append("changes: ").append(changeFeed).append('\n');
+            }
+            if (AuditLog.current() != null) {
+                metrics.append("audit: ").append(AuditLog.current()).append('\n');
+            }
+            if (service.getPersonDirectory() != null) {
+                metrics.append("people: ").append(service.getPersonDirectory()).append('\n');
+            }
+            metrics.append(service.getPool().getQueryStats().getReport()).append('\n');
+
+            byte[] body = metrics.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // ================= Helpers ================= //
+
+    private static Map<String, String> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("Request body larger than " + MAX_BODY_BYTES + " bytes");
+            }
+            try {
+                return Json.parseFlatObject(new String(body, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // Malformed JSON is the client's mistake, not a failed read
+                throw new IllegalArgumentException("Malformed JSON: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Reads a person of a new project: an existing one when an id is given, otherwise a new one with id 0.
+     */
+    private static Person readNewOrExistingPerson(Map<String, String> fields, String tableName) {
+        String id = fields.get(tableName + "_id");
+        if (id != null && parseInt(id) != 0) {
+            return new Person(parseInt(id), null, null, null, null);
+        }
+        return new Person(0,
+                required(fields, tableName + "_name"),
+                required(fields, tableName + "_cell_num"),
+                required(fields, tableName + "_email"),
+                required(fields, tableName + "_address"));
+    }
+
+    private static String personTable(String pathSegment) {
+        for (String table : Person.TABLES) {
+            if (table.equalsIgnoreCase(pathSegment)) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    private static String required(Map<String, String> fields, String field) {
+        String value = fields.get(field);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing " + field);
+        }
+        return value;
+    }
+
+    private static int parseInt(String value) {
+        return Integer.parseInt(value.trim());
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                return pair.substring(equals + 1);
+            }
+        }
+        return null;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            // A listing failed part way through; the client sees the body cut short instead
+            return;
+        }
+        sendJson(exchange, status, Json.appendString(new StringBuilder("{\"error\":"), message).append('}').toString());
+    }
+}
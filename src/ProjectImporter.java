@@ -0,0 +1,388 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class loads projects in bulk from a CSV file or a JSON-lines file. Customers, architects and
+ * contractors are matched by email, both against the database and within the file, so each person is
+ * only inserted once; a person without an email is refused rather than matched. Rows are inserted with
+ * JDBC batches and committed in chunks; after every chunk the number of the last committed line is
+ * written to a checkpoint file, and a later run over the same file resumes after it. The checkpoint is
+ * written after the commit, so a run stopped in between leaves one committed chunk unrecorded; the
+ * resuming run skips the projects of that chunk that already exist instead of inserting them again.
+ *
+ * <p>Field names are the column names of the tables: Project_num, Project_name, Building_type,
+ * Physical_address, ERF_num, Total_fee, Total_paid, Project_deadline, and Customer_name,
+ * Customer_cell_num, Customer_email, Customer_address with the same four fields for Architect and
+ * Contractor. A CSV file starts with a header row naming the fields. Add rewriteBatchedStatements=true
+ * to the JDBC URL so MySQL sends each batch as a multi-row insert.</p>
+ */
+public class ProjectImporter {
+
+    private static final String INSERT_PROJECT_SQL = "INSERT INTO PoisePMS "
+            + "(Project_num, Project_name, Building_type, Physical_address, ERF_num, "
+            + "Total_fee, Total_paid, Project_deadline, Architect_id, Contractor_id, Customer_id) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * The totals of an import run.
+     *
+     * @param projectsImported The number of projects inserted by this run.
+     * @param personsCreated   The number of customers, architects and contractors inserted by this run.
+     * @param linesSkipped     The number of lines skipped because an earlier run committed them.
+     * @param elapsedMillis    How long the run took.
+     */
+    public record Result(long projectsImported, long personsCreated, long linesSkipped, long elapsedMillis) {
+
+        public double rowsPerSecond() {
+            return elapsedMillis == 0 ? projectsImported : projectsImported * 1000.0 / elapsedMillis;
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final int chunkSize;
+
+    // Normalized email to id, per person table
+    private final Map<String, Map<String, Integer>> personIdsByEmail = new HashMap<>();
+
+    /**
+     * Creates an importer.
+     *
+     * @param pool      The connection pool to borrow a connection from.
+     * @param chunkSize The number of projects committed together.
+     */
+    public ProjectImporter(ConnectionPool pool, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Imports every project in the file, resuming after the last committed line if a checkpoint exists.
+     * Files ending in ".jsonl" or ".json" are read as JSON lines, anything else as CSV.
+     *
+     * @param file The file to import.
+     * @return The totals of the run.
+     * @throws IOException  If the file cannot be read or a line cannot be parsed.
+     * @throws SQLException If a chunk fails. Earlier chunks stay committed and the next run resumes after them.
+     */
+    public Result importFile(Path file) throws IOException, SQLException {
+        long start = System.currentTimeMillis();
+        boolean jsonLines = file.getFileName().toString().matches("(?i).*\\.jsonl?$");
+        Path checkpoint = file.resolveSibling(file.getFileName() + ".checkpoint");
+        boolean resuming = Files.exists(checkpoint);
+        long resumeAfterLine = resuming ? Long.parseLong(Files.readString(checkpoint).trim()) : 0;
+        if (!resuming) {
+            // Written before the first commit, so a run stopped before its first checkpoint is resumed too
+            Files.writeString(checkpoint, "0");
+        }
+
+        loadExistingPersons();
+
+        long projectsImported = 0;
+        long personsCreated = 0;
+        long linesSkipped = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<String> header = null;
+            List<Map<String, String>> chunk = new ArrayList<>(chunkSize);
+            long lineNum = 0;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lineNum++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (!jsonLines && header == null) {
+                    header = parseCsvLine(line);
+                    continue;
+                }
+                if (lineNum <= resumeAfterLine) {
+                    linesSkipped++;
+                    continue;
+                }
+
+                chunk.add(jsonLines ? parseJsonLine(line, lineNum) : toRow(header, parseCsvLine(line), lineNum));
+                if (chunk.size() == chunkSize) {
+                    if (resuming) {
+                        linesSkipped += dropImported(chunk);
+                        resuming = false;
+                    }
+                    personsCreated += importChunk(chunk);
+                    projectsImported += chunk.size();
+                    Files.writeString(checkpoint, Long.toString(lineNum));
+                    printProgress(projectsImported, start);
+                    chunk.clear();
+                }
+            }
+
+            if (resuming) {
+                linesSkipped += dropImported(chunk);
+            }
+            if (!chunk.isEmpty()) {
+                personsCreated += importChunk(chunk);
+                projectsImported += chunk.size();
+                printProgress(projectsImported, start);
+            }
+        }
+
+        // The whole file is in, so a later run should start from the beginning again
+        Files.deleteIfExists(checkpoint);
+        return new Result(projectsImported, personsCreated, linesSkipped, System.currentTimeMillis() - start);
+    }
+
+    private static void printProgress(long projectsImported, long start) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        System.out.printf("Imported %d projects (%.0f rows/s)%n", projectsImported, projectsImported * 1000.0 / elapsed);
+    }
+
+    /**
+     * Removes the rows whose project already exists: the first chunk after the checkpoint may have been
+     * committed by the run that wrote it.
+     *
+     * @return The number of rows removed.
+     */
+    private int dropImported(List<Map<String, String>> chunk) throws SQLException {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        List<Integer> projectNums = new ArrayList<>();
+        for (Map<String, String> row : chunk) {
+            projectNums.add(parseInt(row, "Project_num"));
+        }
+        Set<Integer> existing = new HashSet<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement selectStatement = InList.prepare(connection,
+                     "SELECT Project_num FROM PoisePMS WHERE Project_num IN (%s)", projectNums);
+             ResultSet resultSet = selectStatement.executeQuery()) {
+            while (resultSet.next()) {
+                existing.add(resultSet.getInt(1));
+            }
+        }
+        int before = chunk.size();
+        chunk.removeIf(row -> existing.contains(parseInt(row, "Project_num")));
+        return before - chunk.size();
+    }
+
+    /**
+     * Reads the email and id of every existing person so the file is matched against them. People
+     * without an email cannot be matched, so they are left out.
+     */
+    private void loadExistingPersons() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            for (String table : Person.TABLES) {
+                Map<String, Integer> ids = new HashMap<>();
+                String query = "SELECT " + table + "_id, " + table + "_email FROM " + table;
+                try (PreparedStatement selectStatement = connection.prepareStatement(query);
+                     ResultSet resultSet = selectStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        String email = normalizeEmail(resultSet.getString(2));
+                        if (!email.isEmpty()) {
+                            ids.putIfAbsent(email, resultSet.getInt(1));
+                        }
+                    }
+                }
+                personIdsByEmail.put(table, ids);
+            }
+        }
+    }
+
+    /**
+     * Inserts one chunk in a single transaction: first the people not seen before, then the projects.
+     *
+     * @param chunk The rows of the chunk.
+     * @return The number of people inserted.
+     */
+    private long importChunk(List<Map<String, String>> chunk) throws SQLException {
+        Map<String, List<String>> newEmails = new HashMap<>();
+        long personsCreated = 0;
+
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (String table : Person.TABLES) {
+                    List<String> inserted = insertNewPersons(connection, table, chunk);
+                    newEmails.put(table, inserted);
+                    personsCreated += inserted.size();
+                }
+                insertProjects(connection, chunk);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                // The people of this chunk were rolled back, so forget their ids
+                newEmails.forEach((table, emails) -> emails.forEach(personIdsByEmail.get(table)::remove));
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        // The people were inserted for the file rather than for one project
+        newEmails.forEach((table, emails) -> emails.forEach(email ->
+                ProjectChanges.publish(ProjectChange.personAdded(0, table, personIdsByEmail.get(table).get(email)))));
+        for (Map<String, String> row : chunk) {
+            ProjectChanges.publish(ProjectChange.of(ProjectChange.Type.PROJECT_ADDED, Integer.parseInt(row.get("Project_num"))));
+        }
+        return personsCreated;
+    }
+
+    /**
+     * Inserts, in one batch, the people of the chunk whose email has not been seen, and records their generated ids.
+     *
+     * @return The normalized emails of the people inserted.
+     */
+    private List<String> insertNewPersons(Connection connection, String table, List<Map<String, String>> chunk) throws SQLException {
+        Map<String, Integer> ids = personIdsByEmail.get(table);
+        Map<String, Map<String, String>> newPersons = new LinkedHashMap<>();
+        for (Map<String, String> row : chunk) {
+            // A blank email matches nobody, and required() below refuses it
+            String email = normalizeEmail(row.get(table + "_email"));
+            if (!ids.containsKey(email)) {
+                newPersons.putIfAbsent(email, row);
+            }
+        }
+        List<String> emails = new ArrayList<>(newPersons.keySet());
+        if (emails.isEmpty()) {
+            return emails;
+        }
+
+        String insertSql = "INSERT INTO " + table + " (" + table + "_name, " + table + "_cell_num, "
+                + table + "_email, " + table + "_address) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement insertStatement = connection.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+            for (Map<String, String> row : newPersons.values()) {
+                insertStatement.setString(1, required(row, table + "_name"));
+                insertStatement.setString(2, required(row, table + "_cell_num"));
+                insertStatement.setString(3, required(row, table + "_email").trim());
+                insertStatement.setString(4, required(row, table + "_address"));
+                insertStatement.addBatch();
+            }
+            insertStatement.executeBatch();
+
+            // Generated keys come back in the order the rows were added to the batch
+            try (ResultSet generatedKeys = insertStatement.getGeneratedKeys()) {
+                for (String email : emails) {
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("Missing generated key for " + table + " " + email);
+                    }
+                    ids.put(email, generatedKeys.getInt(1));
+                }
+            }
+        }
+        return emails;
+    }
+
+    private void insertProjects(Connection connection, List<Map<String, String>> chunk) throws SQLException {
+        try (PreparedStatement insertStatement = connection.prepareStatement(INSERT_PROJECT_SQL)) {
+            for (Map<String, String> row : chunk) {
+                insertStatement.setInt(1, parseInt(row, "Project_num"));
+                insertStatement.setString(2, row.get("Project_name"));
+                insertStatement.setString(3, row.get("Building_type"));
+                insertStatement.setString(4, row.get("Physical_address"));
+                insertStatement.setInt(5, parseInt(row, "ERF_num"));
+                insertStatement.setInt(6, parseInt(row, "Total_fee"));
+                insertStatement.setInt(7, parseInt(row, "Total_paid"));
+                insertStatement.setDate(8, java.sql.Date.valueOf(LocalDate.parse(required(row, "Project_deadline"))));
+                insertStatement.setInt(9, personId(row, "Architect"));
+                insertStatement.setInt(10, personId(row, "Contractor"));
+                insertStatement.setInt(11, personId(row, "Customer"));
+                insertStatement.addBatch();
+            }
+            insertStatement.executeBatch();
+        }
+    }
+
+    private int personId(Map<String, String> row, String table) {
+        return personIdsByEmail.get(table).get(normalizeEmail(row.get(table + "_email")));
+    }
+
+    static String normalizeEmail(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String required(Map<String, String> row, String field) {
+        String value = row.get(field);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing " + field + " for project " + row.get("Project_num"));
+        }
+        return value;
+    }
+
+    private static int parseInt(Map<String, String> row, String field) {
+        return Integer.parseInt(required(row, field).trim());
+    }
+
+    // ================= Parsing ================= //
+
+    private static Map<String, String> toRow(List<String> header, List<String> values, long lineNum) throws IOException {
+        if (values.size() != header.size()) {
+            throw new IOException("Line " + lineNum + " has " + values.size() + " fields, expected " + header.size());
+        }
+        Map<String, String> row = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            row.put(header.get(i).trim(), values.get(i));
+        }
+        return row;
+    }
+
+    /**
+     * Splits a CSV line into fields. Fields may be quoted, with "" standing for a quote inside a quoted field.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Parses a flat JSON object, adding the line number to any error.
+     */
+    static Map<String, String> parseJsonLine(String line, long lineNum) throws IOException {
+        try {
+            return Json.parseFlatObject(line);
+        } catch (IOException e) {
+            throw new IOException(e.getMessage() + " on line " + lineNum, e);
+        }
+    }
+}
@@ -3,6 +3,12 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
@@ -27,13 +33,17 @@ public class ProjectInfoAdd {
             + "Total_fee, Total_paid, Project_deadline, Architect_id, Contractor_id, Customer_id) "
             + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
+    // People listed for a name search when adding a project
+    private static final int PERSON_SEARCH_LIMIT = 10;
+
     /**
      * Adds a new project to the database based on user input.
      *
-     * @param connection The database connection.
+     * @param service The project service.
+     * @param scanner The Scanner object for user input. It is left open.
      */
-    public static void addNewProject(Connection connection) {
-        try (Scanner scanner = new Scanner(System.in)) {
+    public static void addNewProject(ProjectService service, Scanner scanner) {
+        try {
             System.out.println("Enter information for the new project:");
 
             // Get information from the user
@@ -44,107 +54,236 @@ public class ProjectInfoAdd {
             int erfNumber = getNumericUserInput(scanner, "ERF Number");
             int totalFee = getNumericUserInput(scanner, "Total Fee");
             int totalPaid = getNumericUserInput(scanner, "Total Paid");
-            String projectDeadline = getUserInput(scanner, "Project Deadline (YYYY-MM-DD)");
-
-            // Get or insert data into Customer table
-            int customerId = getOrCreatePersonId(scanner, connection, "Customer", INSERT_CUSTOMER_SQL);
+            LocalDate projectDeadline = getDateUserInput(scanner, "Project Deadline (YYYY-MM-DD)");
 
-            // Get or insert data into Architect table
-            int architectId = getOrCreatePersonId(scanner, connection, "Architect", INSERT_ARCHITECT_SQL);
+            // Get an existing person or the details of a new one for each role
+            Person customer = getOrCreatePerson(service, scanner, "Customer");
+            Person architect = getOrCreatePerson(service, scanner, "Architect");
+            Person contractor = getOrCreatePerson(service, scanner, "Contractor");
 
-            // Get or insert data into Contractor table
-            int contractorId = getOrCreatePersonId(scanner, connection, "Contractor", INSERT_CONTRACTOR_SQL);
+            Project project = new Project(projectNum, projectName, buildingType, physicalAddress, erfNumber,
+                    totalFee, totalPaid, projectDeadline, architect.id(), contractor.id(),
+                    customer.id(), false, null);
 
             // Insert data into Project table
-            insertIntoProject(connection, projectNum, projectName, buildingType, physicalAddress, erfNumber, totalFee, totalPaid, projectDeadline, architectId, contractorId, customerId);
+            service.addProject(new ProjectDetails(project, customer, architect, contractor));
+            System.out.println("New project added successfully!");
 
         } catch (SQLException e) {
             e.printStackTrace(); // Handle more gracefully in a production environment
         }
     }
 
-    private static int getOrCreatePersonId(Scanner scanner, Connection connection, String personType, String insertSql) throws SQLException {
+    /**
+     * Asks whether the person is new. A new person is returned with id 0 so it is inserted
+     * with the project, unless the person directory already has them; an existing person is
+     * returned with only the id the user entered or picked from a name search.
+     */
+    private static Person getOrCreatePerson(ProjectService service, Scanner scanner, String personType) throws SQLException {
+        PersonDirectory directory = service.getPersonDirectory();
         System.out.println("Is this a new " + personType + "? (yes/no)");
         String isNewPerson = scanner.nextLine().trim().toLowerCase();
 
         if (isNewPerson.equals("yes")) {
-            // If it's a new person, get information and insert into the respective table
-            switch (personType) {
-                case "Customer":
-                    return insertIntoPerson(scanner, connection, INSERT_CUSTOMER_SQL);
-                case "Architect":
-                    return insertIntoPerson(scanner, connection, INSERT_ARCHITECT_SQL);
-                case "Contractor":
-                    return insertIntoPerson(scanner, connection, INSERT_CONTRACTOR_SQL);
-                default:
-                    throw new IllegalArgumentException("Invalid person type");
+            // If it's a new person, get the information to insert into the respective table
+            System.out.println("Enter information for the new person:");
+            Person person = new Person(0,
+                    getUserInput(scanner, "Name"),
+                    getUserInput(scanner, "Cell Number"),
+                    getUserInput(scanner, "Email"),
+                    getUserInput(scanner, "Address"));
+            Person existing = directory == null ? null : directory.resolve(personType, person);
+            if (existing != null) {
+                System.out.println("Using existing " + personType + " " + existing.id()
+                        + " (" + existing.name() + ", " + existing.email() + ")");
+                return existing;
             }
+            return person;
         } else if (isNewPerson.equals("no")) {
             // If it's an existing person, ask for their ID
-            System.out.println("Enter the " + personType + " ID:");
-            return getNumericUserInput(scanner, personType + " ID");
+            if (directory == null) {
+                System.out.println("Enter the " + personType + " ID:");
+                return new Person(getNumericUserInput(scanner, personType + " ID"), null, null, null, null);
+            }
+            return findExistingPerson(directory, scanner, personType);
         } else {
             System.out.println("Invalid input. Please enter 'yes' or 'no'.");
-            return getOrCreatePersonId(scanner, connection, personType, insertSql);
+            return getOrCreatePerson(service, scanner, personType);
+        }
+    }
+
+    /**
+     * Asks for an ID or the start of a name, listing the matching people for a name.
+     */
+    private static Person findExistingPerson(PersonDirectory directory, Scanner scanner, String personType) throws SQLException {
+        while (true) {
+            String input = getUserInput(scanner, personType + " ID or start of name");
+            if (input.matches("\\d+")) {
+                return new Person(Integer.parseInt(input), null, null, null, null);
+            }
+
+            List<Person> matches = directory.search(personType, input, PERSON_SEARCH_LIMIT);
+            if (matches.isEmpty()) {
+                System.out.println("No " + personType + " found with a name starting with " + input);
+                continue;
+            }
+            for (Person match : matches) {
+                System.out.println(match.id() + ": " + match.name() + ", " + match.email() + ", " + match.cellNum());
+            }
+            return new Person(getNumericUserInput(scanner, personType + " ID"), null, null, null, null);
         }
     }
 
-    private static int insertIntoPerson(Scanner scanner, Connection connection, String insertSql) throws SQLException {
-        System.out.println("Enter information for the new person:");
+    /**
+     * Adds a project in one transaction, first inserting any of its people whose id is 0.
+     *
+     * @param pool    The connection pool to borrow a connection from.
+     * @param details The project and its people.
+     * @return The project as stored, with the ids of any people that were inserted.
+     * @throws SQLException If a database error occurs. Nothing is inserted in that case.
+     */
+    public static ProjectDetails addProject(ConnectionPool pool, ProjectDetails details) throws SQLException {
+        return addProjects(pool, List.of(details)).get(0);
+    }
+
+    /**
+     * Adds several projects in one transaction, using one batch per table.
+     *
+     * @param pool        The connection pool to borrow a connection from.
+     * @param detailsList The projects and their people.
+     * @return The projects as stored, in the order given.
+     * @throws SQLException If a database error occurs. Nothing is inserted in that case.
+     */
+    public static List<ProjectDetails> addProjects(ConnectionPool pool, List<ProjectDetails> detailsList) throws SQLException {
+        List<ProjectDetails> stored;
+        AuditCapture audit;
+
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            audit = AuditCapture.start(connection);
+            try {
+                List<Person> customers = insertNewPersons(connection, INSERT_CUSTOMER_SQL, detailsList, "Customer");
+                List<Person> architects = insertNewPersons(connection, INSERT_ARCHITECT_SQL, detailsList, "Architect");
+                List<Person> contractors = insertNewPersons(connection, INSERT_CONTRACTOR_SQL, detailsList, "Contractor");
+
+                stored = new ArrayList<>(detailsList.size());
+                for (int i = 0; i < detailsList.size(); i++) {
+                    Project project = detailsList.get(i).project();
+                    Project linked = new Project(project.projectNum(), project.projectName(), project.buildingType(),
+                            project.physicalAddress(), project.erfNum(), project.totalFee(), project.totalPaid(),
+                            project.projectDeadline(), architects.get(i).id(), contractors.get(i).id(),
+                            customers.get(i).id(), project.finalized(), project.completionDate());
+                    stored.add(new ProjectDetails(linked, customers.get(i), architects.get(i), contractors.get(i)));
+                }
+
+                insertIntoProject(connection, stored);
 
-        String name = getUserInput(scanner, "Name");
-        String cellNumber = getUserInput(scanner, "Cell Number");
-        String email = getUserInput(scanner, "Email");
-        String address = getUserInput(scanner, "Address");
+                // Recorded from what was written, so nothing is read back
+                for (int i = 0; i < stored.size(); i++) {
+                    for (String table : Person.TABLES) {
+                        if (detailsList.get(i).person(table).id() == 0) {
+                            Person person = stored.get(i).person(table);
+                            audit.afterInsert(table, person.id(), ProjectInfoEditor.personColumns(table, person));
+                        }
+                    }
+                    Project project = stored.get(i).project();
+                    Map<String, Object> projectColumns = ProjectInfoEditor.projectColumns(project);
+                    projectColumns.put("Architect_id", project.architectId());
+                    projectColumns.put("Contractor_id", project.contractorId());
+                    projectColumns.put("Customer_id", project.customerId());
+                    audit.afterInsert("PoisePMS", project.projectNum(), projectColumns);
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
 
-        return insertIntoTable(connection, insertSql, name, cellNumber, email, address);
+        for (int i = 0; i < stored.size(); i++) {
+            int projectNum = stored.get(i).project().projectNum();
+            for (String table : Person.TABLES) {
+                if (detailsList.get(i).person(table).id() == 0) {
+                    ProjectChanges.publish(ProjectChange.personAdded(projectNum, table, stored.get(i).person(table).id()));
+                }
+            }
+            ProjectChanges.publish(ProjectChange.of(ProjectChange.Type.PROJECT_ADDED, projectNum));
+        }
+        audit.submit();
+        return stored;
     }
 
-    private static int insertIntoTable(Connection connection, String sql, String name, String cellNumber, String email, String address) throws SQLException {
-        try (PreparedStatement insertStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            insertStatement.setString(1, name);
-            insertStatement.setString(2, cellNumber);
-            insertStatement.setString(3, email);
-            insertStatement.setString(4, address);
-
-            int rowsInserted = insertStatement.executeUpdate();
-            if (rowsInserted > 0) {
-                ResultSet generatedKeys = insertStatement.getGeneratedKeys();
-                if (generatedKeys.next()) {
-                    return generatedKeys.getInt(1);
+    /**
+     * Inserts, in one batch, the people of the given role that have id 0.
+     *
+     * @return The person of each project, with generated ids filled in.
+     */
+    private static List<Person> insertNewPersons(Connection connection, String insertSql,
+                                                 List<ProjectDetails> detailsList, String personType) throws SQLException {
+        List<Person> persons = new ArrayList<>(detailsList.size());
+        List<Integer> newPositions = new ArrayList<>();
+
+        try (PreparedStatement insertStatement = connection.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+            for (ProjectDetails details : detailsList) {
+                Person person = details.person(personType);
+                if (person.id() == 0) {
+                    insertStatement.setString(1, person.name());
+                    insertStatement.setString(2, person.cellNum());
+                    insertStatement.setString(3, person.email());
+                    insertStatement.setString(4, person.address());
+                    insertStatement.addBatch();
+                    newPositions.add(persons.size());
+                }
+                persons.add(person);
+            }
+
+            if (newPositions.isEmpty()) {
+                return persons;
+            }
+            insertStatement.executeBatch();
+
+            // Generated keys come back in the order the rows were added to the batch
+            try (ResultSet generatedKeys = insertStatement.getGeneratedKeys()) {
+                for (int position : newPositions) {
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("Failed to insert new " + personType);
+                    }
+                    Person person = persons.get(position);
+                    persons.set(position, new Person(generatedKeys.getInt(1), person.name(),
+                            person.cellNum(), person.email(), person.address()));
                 }
             }
         }
-        return -1; // Return -1 if the insertion failed
+        return persons;
     }
 
-    private static void insertIntoProject(Connection connection, int projectNum, String projectName, String buildingType, String physicalAddress,
-                                          int erfNumber, int totalFee, int totalPaid, String projectDeadline,
-                                          int architectId, int contractorId, int customerId) throws SQLException {
+    private static void insertIntoProject(Connection connection, List<ProjectDetails> detailsList) throws SQLException {
         try (PreparedStatement insertStatement = connection.prepareStatement(INSERT_PROJECT_SQL)) {
-            insertStatement.setInt(1, projectNum);
-            insertStatement.setString(2, projectName);
-            insertStatement.setString(3, buildingType);
-            insertStatement.setString(4, physicalAddress);
-            insertStatement.setInt(5, erfNumber);
-            insertStatement.setInt(6, totalFee);
-            insertStatement.setInt(7, totalPaid);
-            insertStatement.setDate(8, java.sql.Date.valueOf(projectDeadline));
-            insertStatement.setInt(9, architectId);
-            insertStatement.setInt(10, contractorId);
-            insertStatement.setInt(11, customerId);
-
-            int rowsInserted = insertStatement.executeUpdate();
-            if (rowsInserted > 0) {
-                System.out.println("New project added successfully!");
-            } else {
-                System.out.println("Failed to add new project.");
+            for (ProjectDetails details : detailsList) {
+                Project project = details.project();
+                insertStatement.setInt(1, project.projectNum());
+                insertStatement.setString(2, project.projectName());
+                insertStatement.setString(3, project.buildingType());
+                insertStatement.setString(4, project.physicalAddress());
+                insertStatement.setInt(5, project.erfNum());
+                insertStatement.setInt(6, project.totalFee());
+                insertStatement.setInt(7, project.totalPaid());
+                if (project.projectDeadline() != null) {
+                    insertStatement.setDate(8, java.sql.Date.valueOf(project.projectDeadline()));
+                } else {
+                    insertStatement.setNull(8, Types.DATE);
+                }
+                insertStatement.setInt(9, project.architectId());
+                insertStatement.setInt(10, project.contractorId());
+                insertStatement.setInt(11, project.customerId());
+                insertStatement.addBatch();
             }
+            insertStatement.executeBatch();
         }
     }
 
-    // ... (previous code)
-
     /**
      * Gets numeric user input, validating for valid numbers.
      *
@@ -164,6 +303,23 @@ public class ProjectInfoAdd {
         }
     }
 
+    /**
+     * Gets a date for a given prompt, asking again until it is a valid YYYY-MM-DD date.
+     *
+     * @param scanner The Scanner object for user input.
+     * @param prompt  The prompt message.
+     * @return The user-provided date.
+     */
+    private static LocalDate getDateUserInput(Scanner scanner, String prompt) {
+        while (true) {
+            try {
+                return LocalDate.parse(getUserInput(scanner, prompt));
+            } catch (DateTimeParseException e) {
+                System.out.println("Invalid input. Please enter a date as YYYY-MM-DD.");
+            }
+        }
+    }
+
     /**
      * Gets user input for a given prompt.
      *
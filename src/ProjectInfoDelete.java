@@ -1,59 +1,213 @@
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * This class provides functionality to delete project information from the project management system.
+ *
+ * <p>Projects are deleted a chunk at a time with set-based statements: one query finds the chunk's
+ * projects and their people, one statement deletes the projects, and per person table one query finds
+ * and locks the people who no longer belong to any project and one statement deletes them by key.
+ * People shared with a project that is kept are left alone.</p>
  */
 public class ProjectInfoDelete {
 
+    private static final String SELECT_PEOPLE_SQL = "SELECT Project_num, Customer_id, Architect_id, Contractor_id "
+            + "FROM PoisePMS WHERE Project_num IN (%s)";
+    private static final String DELETE_PROJECTS_SQL = "DELETE FROM PoisePMS WHERE Project_num IN (%s)";
+
+    // Only the people no remaining project refers to; the foreign key index makes NOT EXISTS a lookup.
+    // Locking them stops a project being linked to one of them before they are deleted.
+    private static final String LOCK_ORPHANS_SQL = "SELECT %1$s_id FROM %1$s WHERE %1$s_id IN (%2$s) "
+            + "AND NOT EXISTS (SELECT 1 FROM PoisePMS WHERE PoisePMS.%1$s_id = %1$s.%1$s_id) FOR UPDATE";
+    static final String DELETE_ORPHANS_SQL = "DELETE FROM %1$s WHERE %1$s_id IN (%2$s) "
+            + "AND NOT EXISTS (SELECT 1 FROM PoisePMS WHERE PoisePMS.%1$s_id = %1$s.%1$s_id)";
+    private static final String DELETE_PEOPLE_SQL = "DELETE FROM %1$s WHERE %1$s_id IN (%2$s)";
+
     /**
      * Deletes project information based on the specified project ID.
      *
-     * @param connection The Connection object for the database connection.
-     * @param projectId  The project ID to be deleted.
+     * @param service   The project service.
+     * @param projectId The project ID to be deleted.
      * @throws SQLException If a database error occurs.
      */
-    public static void deleteInfo(Connection connection, int projectId) throws SQLException {
-        try {
-            // Disable auto-commit to ensure atomicity of the delete operations
-            connection.setAutoCommit(false);
+    public static void deleteInfo(ProjectService service, int projectId) throws SQLException {
+        if (service.deleteProject(projectId)) {
+            // Display a confirmation message
+            System.out.println("Project with project_num " + projectId
+                    + " has been deleted, along with any customer, architect or contractor it did not share with another project.");
+        } else {
+            System.out.println("Project not found for Project Number: " + projectId);
+        }
+    }
 
-            // Delete information from all related tables
-            deleteFromTable(connection, "PoisePMS", "project_num", projectId); // Project table
-            deleteFromTable(connection, "Customer", "customer_id", projectId); // Customer table
-            deleteFromTable(connection, "Architect", "architect_id", projectId); // Architect table
-            deleteFromTable(connection, "Contractor", "contractor_id", projectId); // Contractor table
+    /**
+     * Deletes a project and the people only it refers to.
+     *
+     * @param pool      The connection pool to borrow a connection from.
+     * @param projectId The project ID to be deleted.
+     * @return true if the project was deleted, false if it does not exist.
+     * @throws SQLException If a database error occurs. Nothing is deleted in that case.
+     */
+    public static boolean deleteProject(ConnectionPool pool, int projectId) throws SQLException {
+        return deleteProjects(pool, List.of(projectId)) > 0;
+    }
 
-            // Commit the transaction if all delete operations succeed
-            connection.commit();
+    /**
+     * Deletes several projects and the people only they refer to in a single transaction.
+     *
+     * @param pool       The connection pool to borrow a connection from.
+     * @param projectIds The project IDs to be deleted.
+     * @return The number of projects deleted.
+     * @throws SQLException If a database error occurs. Nothing is deleted in that case.
+     */
+    public static int deleteProjects(ConnectionPool pool, List<Integer> projectIds) throws SQLException {
+        return deleteInChunks(pool, projectIds, InList.CHUNK_SIZE, false);
+    }
 
-            // Display a confirmation message
-            System.out.println("Project with project_num " + projectId + " and related information has been deleted.");
+    /**
+     * Deletes a large number of projects and the people only they refer to, committing after each
+     * chunk so an archival purge never holds its locks for long or grows one huge transaction.
+     *
+     * @param pool       The connection pool to borrow a connection from.
+     * @param projectIds The project IDs to be deleted.
+     * @param chunkSize  The number of projects deleted per transaction.
+     * @return The number of projects deleted.
+     * @throws SQLException If a database error occurs. The chunks committed before it stay deleted.
+     */
+    public static int purgeProjects(ConnectionPool pool, List<Integer> projectIds, int chunkSize) throws SQLException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        return deleteInChunks(pool, projectIds, chunkSize, true);
+    }
+
+    private static int deleteInChunks(ConnectionPool pool, List<Integer> projectIds, int chunkSize,
+                                      boolean commitEachChunk) throws SQLException {
+        List<Integer> distinctIds = new ArrayList<>(new LinkedHashSet<>(projectIds));
+        List<Integer> deleted = new ArrayList<>();
+        List<ProjectChange> personDeletes = new ArrayList<>();
+        int committed = 0;
+        AuditCapture audit;
+
+        try (Connection connection = pool.getConnection()) {
+            audit = AuditCapture.start(connection);
+            try {
+                // Disable auto-commit to ensure atomicity of the delete operations
+                connection.setAutoCommit(false);
+
+                for (int start = 0; start < distinctIds.size(); start += chunkSize) {
+                    List<Integer> chunk = distinctIds.subList(start, Math.min(distinctIds.size(), start + chunkSize));
+                    deleted.addAll(deleteChunk(connection, chunk, personDeletes, audit));
+                    if (commitEachChunk) {
+                        connection.commit();
+                        publishDeleted(deleted.subList(committed, deleted.size()), personDeletes);
+                        audit.submit();
+                        committed = deleted.size();
+                    }
+                }
+
+                // Commit the transaction if all delete operations succeed
+                connection.commit();
+
+            } catch (SQLException | RuntimeException e) {
+                // Rollback the transaction in case of any exceptions
+                connection.rollback();
+                throw e;
+            } finally {
+                // Enable auto-commit to return to the default behavior
+                connection.setAutoCommit(true);
+            }
+        }
+
+        publishDeleted(deleted.subList(committed, deleted.size()), personDeletes);
+        audit.submit();
+        return deleted.size();
+    }
 
-        } catch (SQLException e) {
-            // Rollback the transaction in case of any exceptions
-            connection.rollback();
-            throw e;
-        } finally {
-            // Enable auto-commit to return to the default behavior
-            connection.setAutoCommit(true);
+    /**
+     * Publishes the committed deletes and clears the person deletes.
+     */
+    private static void publishDeleted(List<Integer> projectIds, List<ProjectChange> personDeletes) {
+        personDeletes.forEach(ProjectChanges::publish);
+        personDeletes.clear();
+        for (int projectId : projectIds) {
+            ProjectChanges.publish(ProjectChange.of(ProjectChange.Type.PROJECT_DELETED, projectId));
         }
     }
 
     /**
-     * Deletes information from a specific table based on the specified condition.
+     * Deletes one chunk of projects and then whichever of their people are left without a project.
      *
-     * @param connection The Connection object for the database connection.
-     * @param tableName  The name of the table to delete from.
-     * @param conditionColumn The column used in the condition.
-     * @param conditionValue The value to match in the condition.
+     * @param connection    The connection, inside a transaction.
+     * @param projectIds    The distinct project IDs of the chunk.
+     * @param personDeletes Where a change is added for every person deleted.
+     * @param audit         Captures the deleted rows.
+     * @return The project IDs that existed and were deleted.
      * @throws SQLException If a database error occurs.
      */
-    private static void deleteFromTable(Connection connection, String tableName, String conditionColumn, int conditionValue) throws SQLException {
-        String deleteQuery = "DELETE FROM " + tableName + " WHERE " + conditionColumn + " = ?";
+    private static List<Integer> deleteChunk(Connection connection, List<Integer> projectIds,
+                                             List<ProjectChange> personDeletes, AuditCapture audit) throws SQLException {
+        List<Integer> found = new ArrayList<>();
+        List<Set<Integer>> people = new ArrayList<>();
+        for (int table = 0; table < Person.TABLES.length; table++) {
+            people.add(new LinkedHashSet<>());
+        }
 
-        try (PreparedStatement deleteStatement = connection.prepareStatement(deleteQuery)) {
-            deleteStatement.setInt(1, conditionValue);
+        try (PreparedStatement selectStatement = InList.prepare(connection, SELECT_PEOPLE_SQL, projectIds)) {
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    found.add(resultSet.getInt(1));
+                    // Columns 2 to 4 are in the order of Person.TABLES
+                    for (int table = 0; table < people.size(); table++) {
+                        int personId = resultSet.getInt(table + 2);
+                        if (!resultSet.wasNull()) {
+                            people.get(table).add(personId);
+                        }
+                    }
+                }
+            }
+        }
+        if (found.isEmpty()) {
+            return found;
+        }
+
+        audit.before("PoisePMS", found);
+        try (PreparedStatement deleteStatement = InList.prepare(connection, DELETE_PROJECTS_SQL, found)) {
             deleteStatement.executeUpdate();
         }
+        audit.afterDelete("PoisePMS", found);
+
+        for (int table = 0; table < people.size(); table++) {
+            if (people.get(table).isEmpty()) {
+                continue;
+            }
+            String tableName = Person.TABLES[table];
+            List<Integer> orphans = new ArrayList<>();
+            String selectSql = String.format(LOCK_ORPHANS_SQL, tableName, "%s");
+            try (PreparedStatement selectStatement = InList.prepare(connection, selectSql, new ArrayList<>(people.get(table)));
+                 ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    orphans.add(resultSet.getInt(1));
+                }
+            }
+            if (orphans.isEmpty()) {
+                continue;
+            }
+
+            // The orphans are locked, so they can be deleted by key without checking NOT EXISTS again
+            audit.before(tableName, orphans);
+            String deleteSql = String.format(DELETE_PEOPLE_SQL, tableName, "%s");
+            try (PreparedStatement deleteStatement = InList.prepare(connection, deleteSql, orphans)) {
+                deleteStatement.executeUpdate();
+            }
+            audit.afterDelete(tableName, orphans);
+            for (int personId : orphans) {
+                personDeletes.add(ProjectChange.personDeleted(0, tableName, personId));
+            }
+        }
+        return found;
     }
 }
@@ -1,7 +1,19 @@
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
 
 public class ProjectInfoEditor {
 
@@ -9,71 +21,85 @@ public class ProjectInfoEditor {
     private static final String UPDATE_PROJECT_SQL = "UPDATE PoisePMS SET Project_name=?, Building_type=?, Physical_address=?, " +
             "ERF_num=?, Total_fee=?, Total_paid=?, Project_deadline=? " +
             "WHERE Project_num = ?";
+    private static final String SELECT_PROJECT_NUMS_SQL = "SELECT Project_num FROM PoisePMS WHERE Project_num IN (%s)";
 
+    // Person updates are keyed by id so the change can name the person that was edited
     private static final String UPDATE_CUSTOMER_SQL = "UPDATE Customer SET " +
             "Customer_name=?, Customer_cell_num=?, Customer_email=?, Customer_address=? " +
-            "WHERE customer_id = (SELECT Customer_id FROM PoisePMS WHERE Project_num = ?)";
+            "WHERE customer_id = ?";
 
     private static final String UPDATE_ARCHITECT_SQL = "UPDATE Architect SET " +
             "Architect_name=?, Architect_cell_num=?, Architect_email=?, Architect_address=? " +
-            "WHERE architect_id = (SELECT Architect_id FROM PoisePMS WHERE Project_num = ?)";
+            "WHERE architect_id = ?";
 
     private static final String UPDATE_CONTRACTOR_SQL = "UPDATE Contractor SET " +
             "Contractor_name=?, Contractor_cell_num=?, Contractor_email=?, Contractor_address=? " +
-            "WHERE contractor_id = (SELECT Contractor_id FROM PoisePMS WHERE Project_num = ?)";
+            "WHERE contractor_id = ?";
 
-    private static final String SELECT_PROJECT_SQL = "SELECT * FROM PoisePMS WHERE Project_num = ?";
+    // Locks the project row, so its people cannot be reassigned while an edit is being applied
+    private static final String LOCK_PEOPLE_SQL = "SELECT Customer_id, Architect_id, Contractor_id FROM PoisePMS " +
+            "WHERE Project_num = ? FOR UPDATE";
+
+    private static final String INSERT_PERSON_SQL = "INSERT INTO %1$s " +
+            "(%1$s_name, %1$s_cell_num, %1$s_email, %1$s_address) VALUES (?, ?, ?, ?)";
 
     /**
-     * Checks if a project with the given project number exists in the database.
+     * Edits project information based on user input. Changes to the project and its people are
+     * collected first and then saved together in one transaction.
      *
-     * @param connection The database connection.
-     * @param projectNum The project number to check.
-     * @return true if the project exists, false otherwise.
-     * @throws SQLException If a database error occurs.
+     * @param service    The project service.
+     * @param scanner    The Scanner object for user input. It is left open.
+     * @param projectNum The project number to edit.
      */
-    private static boolean projectExists(Connection connection, int projectNum) throws SQLException {
-        try (PreparedStatement selectStatement = connection.prepareStatement(SELECT_PROJECT_SQL)) {
-            selectStatement.setInt(1, projectNum);
-            try (var resultSet = selectStatement.executeQuery()) {
-                return resultSet.next();
-            }
-        }
-    }
-
-    public static void editProjectInfo(Connection connection, int projectNum) {
+    public static void editProjectInfo(ProjectService service, Scanner scanner, int projectNum) {
         try {
             // Check if the project exists before proceeding with editing
-            if (!projectExists(connection, projectNum)) {
+            ProjectDetails details = service.findProject(projectNum);
+            if (details == null) {
                 System.out.println("Project not found for Project Number: " + projectNum);
                 return;
             }
+            ProjectEdit edit = new ProjectEdit(projectNum);
 
-            Scanner scanner = new Scanner(System.in);
-            System.out.println("Choose the field to update for Project Number " + projectNum + ":");
-            System.out.println("1. Project Information");
-            System.out.println("2. Customer Information");
-            System.out.println("3. Architect Information");
-            System.out.println("4. Contractor Information");
-            System.out.print("Enter your choice (1-4): ");
-            int choice = getNumericUserInput(scanner, "Choice");
-
-            switch (choice) {
-                case 1:
-                    updateProjectInformation(connection, scanner, projectNum);
-                    break;
-                case 2:
-                    updateRelatedTable(connection, scanner, UPDATE_CUSTOMER_SQL, "Customer", projectNum);
-                    break;
-                case 3:
-                    updateRelatedTable(connection, scanner, UPDATE_ARCHITECT_SQL, "Architect", projectNum);
-                    break;
-                case 4:
-                    updateRelatedTable(connection, scanner, UPDATE_CONTRACTOR_SQL, "Contractor", projectNum);
-                    break;
-                default:
-                    System.out.println("Invalid choice. No updates performed.");
-                    break;
+            while (true) {
+                System.out.println("Choose the information to change for Project Number " + projectNum + ":");
+                System.out.println("1. Project Information");
+                System.out.println("2. Customer Information");
+                System.out.println("3. Architect Information");
+                System.out.println("4. Contractor Information");
+                System.out.println("5. Save Changes");
+                System.out.println("6. Cancel");
+                System.out.print("Enter your choice (1-6): ");
+                int choice = getNumericUserInput(scanner, "Choice");
+
+                try {
+                    switch (choice) {
+                        case 1:
+                            readProjectChanges(scanner, details.project(), edit);
+                            break;
+                        case 2:
+                            readPersonChanges(scanner, "Customer", details, edit);
+                            break;
+                        case 3:
+                            readPersonChanges(scanner, "Architect", details, edit);
+                            break;
+                        case 4:
+                            readPersonChanges(scanner, "Contractor", details, edit);
+                            break;
+                        case 5:
+                            saveChanges(service, edit);
+                            return;
+                        case 6:
+                            System.out.println("No updates performed.");
+                            return;
+                        default:
+                            System.out.println("Invalid choice.");
+                            break;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Editing a person that is also being replaced, or the other way round
+                    System.out.println(e.getMessage());
+                }
             }
 
         } catch (SQLException e) {
@@ -81,35 +107,159 @@ public class ProjectInfoEditor {
         }
     }
 
-    private static void updateProjectInformation(Connection connection, Scanner scanner, int projectNum) throws SQLException {
-        // Get updated information from the user
-        String projectName = getUserInput(scanner, "Project Name");
-        String buildingType = getUserInput(scanner, "Building Type");
-        String physicalAddress = getUserInput(scanner, "Physical Address");
-        int erfNumber = getNumericUserInput(scanner, "ERF Number");
-        int totalFee = getNumericUserInput(scanner, "Total Fee");
-        int totalPaid = getNumericUserInput(scanner, "Total Paid");
-        String projectDeadline = getUserInput(scanner, "Project Deadline (YYYY-MM-DD)");
+    private static void readProjectChanges(Scanner scanner, Project project, ProjectEdit edit) {
+        System.out.println("Enter new values, or leave a value blank to keep it:");
+        setIfEntered(edit, "Project_name", getOptionalInput(scanner, "Project Name", project.projectName()));
+        setIfEntered(edit, "Building_type", getOptionalInput(scanner, "Building Type", project.buildingType()));
+        setIfEntered(edit, "Physical_address", getOptionalInput(scanner, "Physical Address", project.physicalAddress()));
+        setIfEntered(edit, "ERF_num", getOptionalNumericInput(scanner, "ERF Number", project.erfNum()));
+        setIfEntered(edit, "Total_fee", getOptionalNumericInput(scanner, "Total Fee", project.totalFee()));
+        setIfEntered(edit, "Total_paid", getOptionalNumericInput(scanner, "Total Paid", project.totalPaid()));
+        setIfEntered(edit, "Project_deadline", getOptionalDateInput(scanner, "Project Deadline (YYYY-MM-DD)", project.projectDeadline()));
+    }
+
+    private static void readPersonChanges(Scanner scanner, String tableName, ProjectDetails details, ProjectEdit edit) {
+        System.out.println("Do you want to edit the existing " + tableName + " or assign a new " + tableName + "?");
+        System.out.print("Enter 'edit' or 'new': ");
+        String choice = scanner.nextLine().trim().toLowerCase();
+
+        if (choice.equals("edit")) {
+            Person person = details.person(tableName);
+            System.out.println("Enter new values for the existing " + tableName + ", or leave a value blank to keep it:");
+            setIfEntered(edit, tableName + "_name", getOptionalInput(scanner, "Name", person.name()));
+            setIfEntered(edit, tableName + "_cell_num", getOptionalInput(scanner, "Cell Number", person.cellNum()));
+            setIfEntered(edit, tableName + "_email", getOptionalInput(scanner, "Email", person.email()));
+            setIfEntered(edit, tableName + "_address", getOptionalInput(scanner, "Address", person.address()));
+        } else if (choice.equals("new")) {
+            System.out.println("Enter information for the new " + tableName + " to be assigned to Project Number "
+                    + details.project().projectNum() + ":");
+            edit.assignNew(tableName, readPerson(scanner, 0));
+        } else {
+            System.out.println("Invalid choice. No changes recorded.");
+        }
+    }
+
+    private static void setIfEntered(ProjectEdit edit, String column, Object value) {
+        if (value != null) {
+            edit.set(column, value);
+        }
+    }
+
+    private static void saveChanges(ProjectService service, ProjectEdit edit) throws SQLException {
+        if (edit.isEmpty()) {
+            System.out.println("No changes to save.");
+            return;
+        }
+        Map<String, Integer> newPersonIds = service.editProject(edit);
+        if (newPersonIds == null) {
+            System.out.println("Failed to update project information.");
+            return;
+        }
+        System.out.println("Project information updated successfully!");
+        newPersonIds.forEach((tableName, id) -> System.out.println("New " + tableName + " " + id
+                + " assigned to Project Number " + edit.getProjectNum() + "."));
+    }
 
-        // Set project_num and execute the update query for the PoisePMS table
-        try (PreparedStatement updateProjectStatement = connection.prepareStatement(UPDATE_PROJECT_SQL)) {
-            updateProjectStatement.setString(1, projectName);
-            updateProjectStatement.setString(2, buildingType);
-            updateProjectStatement.setString(3, physicalAddress);
-            updateProjectStatement.setInt(4, erfNumber);
-            updateProjectStatement.setInt(5, totalFee);
-            updateProjectStatement.setInt(6, totalPaid);
-            updateProjectStatement.setDate(7, java.sql.Date.valueOf(projectDeadline));
-            updateProjectStatement.setInt(8, projectNum);
+    /**
+     * Updates the project columns of PoisePMS, leaving its people, finalization and completion date as they are.
+     *
+     * @param pool    The connection pool to borrow a connection from.
+     * @param project The project with its new values.
+     * @return true if the project was updated, false if it does not exist.
+     * @throws SQLException If a database error occurs.
+     */
+    public static boolean updateProject(ConnectionPool pool, Project project) throws SQLException {
+        return updateProjects(pool, List.of(project)) > 0;
+    }
 
-            int rowsUpdatedProject = updateProjectStatement.executeUpdate();
+    /**
+     * Updates several projects in one batch inside a single transaction.
+     *
+     * @param pool     The connection pool to borrow a connection from.
+     * @param projects The projects with their new values.
+     * @return The number of projects updated.
+     * @throws SQLException If a database error occurs. No project is updated in that case.
+     */
+    public static int updateProjects(ConnectionPool pool, List<Project> projects) throws SQLException {
+        List<Integer> updatedNums = new ArrayList<>();
+        AuditCapture audit;
 
-            if (rowsUpdatedProject > 0) {
-                System.out.println("Project information updated successfully!");
-            } else {
-                System.out.println("Failed to update project information.");
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            audit = AuditCapture.start(connection);
+            List<Integer> projectNums = projects.stream().map(Project::projectNum).toList();
+            // Set project_num and execute the update query for the PoisePMS table
+            try (PreparedStatement updateProjectStatement = connection.prepareStatement(UPDATE_PROJECT_SQL)) {
+                audit.before("PoisePMS", projectNums);
+                for (Project project : projects) {
+                    updateProjectStatement.setString(1, project.projectName());
+                    updateProjectStatement.setString(2, project.buildingType());
+                    updateProjectStatement.setString(3, project.physicalAddress());
+                    updateProjectStatement.setInt(4, project.erfNum());
+                    updateProjectStatement.setInt(5, project.totalFee());
+                    updateProjectStatement.setInt(6, project.totalPaid());
+                    if (project.projectDeadline() != null) {
+                        updateProjectStatement.setDate(7, java.sql.Date.valueOf(project.projectDeadline()));
+                    } else {
+                        updateProjectStatement.setNull(7, Types.DATE);
+                    }
+                    updateProjectStatement.setInt(8, project.projectNum());
+                    updateProjectStatement.addBatch();
+                }
+                int[] updateCounts = updateProjectStatement.executeBatch();
+                Set<Integer> existing = findUpdated(connection, projectNums, updateCounts);
+                for (Project project : projects) {
+                    if (existing.contains(project.projectNum())) {
+                        updatedNums.add(project.projectNum());
+                        audit.afterUpdate("PoisePMS", project.projectNum(), projectColumns(project));
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        for (int projectNum : updatedNums) {
+            ProjectChanges.publish(ProjectChange.of(ProjectChange.Type.PROJECT_UPDATED, projectNum));
+        }
+        audit.submit();
+        return updatedNums.size();
+    }
+
+    /**
+     * Finds the projects a batch update found. A driver that rewrites batches reports
+     * SUCCESS_NO_INFO rather than a count per row, so those projects are looked up instead.
+     *
+     * @param connection  The connection the batch ran on, still inside its transaction.
+     * @param projectNums The project number of each statement in the batch.
+     * @param updateCounts The counts the batch returned.
+     * @return The project numbers that exist.
+     * @throws SQLException If a database error occurs.
+     */
+    private static Set<Integer> findUpdated(Connection connection, List<Integer> projectNums, int[] updateCounts) throws SQLException {
+        Set<Integer> found = new HashSet<>();
+        List<Integer> unknown = new ArrayList<>();
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] > 0) {
+                found.add(projectNums.get(i));
+            } else if (updateCounts[i] == Statement.SUCCESS_NO_INFO) {
+                unknown.add(projectNums.get(i));
             }
         }
+        for (int start = 0; start < unknown.size(); start += InList.CHUNK_SIZE) {
+            List<Integer> chunk = unknown.subList(start, Math.min(unknown.size(), start + InList.CHUNK_SIZE));
+            try (PreparedStatement selectStatement = InList.prepare(connection, SELECT_PROJECT_NUMS_SQL, chunk);
+                 ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    found.add(resultSet.getInt(1));
+                }
+            }
+        }
+        return found;
     }
 
     /**
@@ -144,102 +294,318 @@ public class ProjectInfoEditor {
         return input;
     }
 
-    // Modified method to handle foreign keys
-    private static void updateRelatedTable(Connection connection, Scanner scanner,
-                                           String updateSql, String tableName, int projectId) throws SQLException {
-        System.out.println("Do you want to edit the existing " + tableName + " or assign a new " + tableName + "?");
-        System.out.print("Enter 'edit' or 'new': ");
-        String choice = scanner.nextLine().trim().toLowerCase();
+    /**
+     * Gets user input that may be left blank to keep the current value.
+     *
+     * @param scanner The Scanner object for user input.
+     * @param prompt  The prompt message.
+     * @param current The current value, shown in the prompt.
+     * @return The new value, or null if the input was blank.
+     */
+    private static String getOptionalInput(Scanner scanner, String prompt, Object current) {
+        String input = getUserInput(scanner, prompt + " [" + current + "]");
+        return input.isEmpty() ? null : input;
+    }
 
-        if (choice.equals("edit")) {
-            updateExistingPerson(connection, scanner, updateSql, tableName, projectId);
-        } else if (choice.equals("new")) {
-            insertNewPerson(connection, scanner, tableName, projectId);
-        } else {
-            System.out.println("Invalid choice. No updates performed.");
+    private static Integer getOptionalNumericInput(Scanner scanner, String prompt, int current) {
+        while (true) {
+            String input = getOptionalInput(scanner, prompt, current);
+            if (input == null) {
+                return null;
+            }
+            try {
+                return Integer.parseInt(input);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid input. Please enter a valid number.");
+            }
         }
     }
 
-    private static void updateExistingPerson(Connection connection, Scanner scanner,
-                                             String updateSql, String tableName, int projectId) throws SQLException {
-        System.out.println("Enter updated information for existing " + tableName +
-                " with Project Number " + projectId + ":");
-
-        String name = getUserInput(scanner, "Name");
-        String cellNumber = getUserInput(scanner, "Cell Number");
-        String email = getUserInput(scanner, "Email");
-        String address = getUserInput(scanner, "Address");
-
-        try (PreparedStatement updateStatement = connection.prepareStatement(updateSql)) {
-            updateStatement.setString(1, name);
-            updateStatement.setString(2, cellNumber);
-            updateStatement.setString(3, email);
-            updateStatement.setString(4, address);
-            updateStatement.setInt(5, projectId);
-
-            int rowsUpdated = updateStatement.executeUpdate();
-
-            if (rowsUpdated > 0) {
-                System.out.println("Existing " + tableName + " information updated successfully!");
-            } else {
-                System.out.println("Failed to update existing " + tableName + " information.");
+    private static LocalDate getOptionalDateInput(Scanner scanner, String prompt, LocalDate current) {
+        while (true) {
+            String input = getOptionalInput(scanner, prompt, current);
+            if (input == null) {
+                return null;
+            }
+            try {
+                return LocalDate.parse(input);
+            } catch (DateTimeParseException e) {
+                System.out.println("Invalid input. Please enter a date as YYYY-MM-DD.");
             }
         }
     }
 
-    private static void insertNewPerson(Connection connection, Scanner scanner, String tableName, int projectId) throws SQLException {
-        System.out.println("Enter information for the new " + tableName + " to be assigned to Project Number " + projectId + ":");
-
-        String name = getUserInput(scanner, "Name");
-        String cellNumber = getUserInput(scanner, "Cell Number");
-        String email = getUserInput(scanner, "Email");
-        String address = getUserInput(scanner, "Address");
+    private static Person readPerson(Scanner scanner, int id) {
+        return new Person(id,
+                getUserInput(scanner, "Name"),
+                getUserInput(scanner, "Cell Number"),
+                getUserInput(scanner, "Email"),
+                getUserInput(scanner, "Address"));
+    }
 
-        String insertSql;
+    /**
+     * Updates an existing customer, architect or contractor.
+     *
+     * @param pool       The connection pool to borrow a connection from.
+     * @param projectNum The project the person is being edited through.
+     * @param tableName  "Customer", "Architect" or "Contractor".
+     * @param person     The person with their id and new values.
+     * @return true if the person was updated, false if they do not exist.
+     * @throws SQLException If a database error occurs.
+     */
+    public static boolean updatePerson(ConnectionPool pool, int projectNum, String tableName, Person person) throws SQLException {
+        String updateSql;
         switch (tableName) {
             case "Customer":
-                insertSql = "INSERT INTO Customer (Customer_name, Customer_cell_num, Customer_email, Customer_address) VALUES (?, ?, ?, ?)";
+                updateSql = UPDATE_CUSTOMER_SQL;
                 break;
             case "Architect":
-                insertSql = "INSERT INTO Architect (Architect_name, Architect_cell_num, Architect_email, Architect_address) VALUES (?, ?, ?, ?)";
+                updateSql = UPDATE_ARCHITECT_SQL;
                 break;
             case "Contractor":
-                insertSql = "INSERT INTO Contractor (Contractor_name, Contractor_cell_num, Contractor_email, Contractor_address) VALUES (?, ?, ?, ?)";
+                updateSql = UPDATE_CONTRACTOR_SQL;
                 break;
             default:
-                System.out.println("Invalid table name. No updates performed.");
-                return;
+                throw new IllegalArgumentException("Invalid person type");
+        }
+
+        AuditCapture audit;
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            audit = AuditCapture.start(connection);
+            try (PreparedStatement updateStatement = connection.prepareStatement(updateSql)) {
+                audit.before(tableName, List.of(person.id()));
+                updateStatement.setString(1, person.name());
+                updateStatement.setString(2, person.cellNum());
+                updateStatement.setString(3, person.email());
+                updateStatement.setString(4, person.address());
+                updateStatement.setInt(5, person.id());
+
+                if (updateStatement.executeUpdate() == 0) {
+                    connection.rollback();
+                    return false;
+                }
+                audit.afterUpdate(tableName, person.id(), personColumns(tableName, person));
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
         }
+        ProjectChanges.publish(ProjectChange.personUpdated(projectNum, tableName, person.id()));
+        audit.submit();
+        return true;
+    }
 
-        try (PreparedStatement insertStatement = connection.prepareStatement(insertSql, PreparedStatement.RETURN_GENERATED_KEYS)) {
-            insertStatement.setString(1, name);
-            insertStatement.setString(2, cellNumber);
-            insertStatement.setString(3, email);
-            insertStatement.setString(4, address);
+    /**
+     * Inserts a new customer, architect or contractor and assigns them to a project, both in one transaction.
+     *
+     * @param pool       The connection pool to borrow a connection from.
+     * @param projectNum The project to assign the person to.
+     * @param tableName  "Customer", "Architect" or "Contractor".
+     * @param person     The new person. The id is ignored.
+     * @return The id of the new person, or 0 if the project does not exist, in which case nobody is inserted.
+     * @throws SQLException If a database error occurs.
+     */
+    public static int assignNewPerson(ConnectionPool pool, int projectNum, String tableName, Person person) throws SQLException {
+        Map<String, Integer> newPersonIds = applyEdit(pool, new ProjectEdit(projectNum).assignNew(tableName, person));
+        return newPersonIds == null ? 0 : newPersonIds.get(tableName);
+    }
 
-            int rowsInserted = insertStatement.executeUpdate();
+    /**
+     * Applies the changed fields of a project and its people in a single transaction. The project
+     * row gets one UPDATE with its changed columns and the ids of any new people, and each edited
+     * person gets one UPDATE with theirs; nothing is run for a table without changes.
+     *
+     * @param pool The connection pool to borrow a connection from.
+     * @param edit The changes.
+     * @return The ids of the people inserted, by table name, or null if the project does not exist.
+     * @throws SQLException If a database error occurs. Nothing is changed in that case.
+     */
+    public static Map<String, Integer> applyEdit(ConnectionPool pool, ProjectEdit edit) throws SQLException {
+        int projectNum = edit.getProjectNum();
+        Map<String, Integer> newPersonIds = new LinkedHashMap<>();
+        Map<String, Integer> editedPersonIds = new LinkedHashMap<>();
+        Map<String, Object> projectColumns = new TreeMap<>(edit.getProjectChanges());
+        AuditCapture audit;
 
-            if (rowsInserted > 0) {
-                // Get the generated key (person_id) and update the PoisePMS table with the new foreign key
-                try (var generatedKeys = insertStatement.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        int newPersonId = generatedKeys.getInt(1);
-                        updatePoisePMSForeignKey(connection, tableName, newPersonId, projectId);
-                        System.out.println("New " + tableName + " assigned to Project Number " + projectId + " successfully!");
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            audit = AuditCapture.start(connection);
+            try {
+                // The audit read locks the row and has its people, so it stands in for lockPeople. Without
+                // it, a project-only edit finds out whether the project exists from its update count
+                Map<String, Integer> personIds = null;
+                if (audit.isEnabled()) {
+                    Map<String, String> projectRow = audit.before("PoisePMS", projectNum);
+                    if (projectRow == null) {
+                        connection.rollback();
+                        return null;
+                    }
+                    personIds = new LinkedHashMap<>();
+                    for (String tableName : Person.TABLES) {
+                        String personId = projectRow.get(tableName + "_id");
+                        if (personId != null) {
+                            personIds.put(tableName, Integer.parseInt(personId));
+                        }
+                    }
+                } else if (!edit.getPersonChanges().isEmpty() || !edit.getNewPeople().isEmpty() || projectColumns.isEmpty()) {
+                    personIds = lockPeople(connection, projectNum);
+                    if (personIds == null) {
+                        connection.rollback();
+                        return null;
                     }
                 }
-            } else {
-                System.out.println("Failed to insert new " + tableName + ". No updates performed.");
+
+                for (Map.Entry<String, Person> newPerson : edit.getNewPeople().entrySet()) {
+                    String tableName = newPerson.getKey();
+                    int personId = insertPerson(connection, tableName, newPerson.getValue());
+                    newPersonIds.put(tableName, personId);
+                    projectColumns.put(tableName + "_id", personId);
+                }
+
+                if (!projectColumns.isEmpty()
+                        && updateColumns(connection, "PoisePMS", projectColumns, "Project_num", projectNum) == 0) {
+                    connection.rollback();
+                    return null;
+                }
+
+                for (Map.Entry<String, Map<String, String>> personChange : edit.getPersonChanges().entrySet()) {
+                    String tableName = personChange.getKey();
+                    Integer personId = personIds.get(tableName);
+                    if (personId == null) {
+                        throw new IllegalArgumentException("Project " + projectNum + " has no " + tableName);
+                    }
+                    audit.before(tableName, List.of(personId));
+                    updateColumns(connection, tableName, personChange.getValue(), tableName + "_id", personId);
+                    editedPersonIds.put(tableName, personId);
+                }
+
+                // Recorded from what was written, so nothing is read back
+                for (String tableName : Person.TABLES) {
+                    Person newPerson = edit.getNewPeople().get(tableName);
+                    if (newPerson != null) {
+                        audit.afterInsert(tableName, newPersonIds.get(tableName), personColumns(tableName, newPerson));
+                    } else if (editedPersonIds.containsKey(tableName)) {
+                        audit.afterUpdate(tableName, editedPersonIds.get(tableName), edit.getPersonChanges().get(tableName));
+                    }
+                }
+                audit.afterUpdate("PoisePMS", projectNum, projectColumns);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
         }
+
+        newPersonIds.forEach((tableName, personId) ->
+                ProjectChanges.publish(ProjectChange.personAdded(projectNum, tableName, personId)));
+        if (!projectColumns.isEmpty()) {
+            ProjectChanges.publish(ProjectChange.of(ProjectChange.Type.PROJECT_UPDATED, projectNum));
+        }
+        editedPersonIds.forEach((tableName, personId) ->
+                ProjectChanges.publish(ProjectChange.personUpdated(projectNum, tableName, personId)));
+        audit.submit();
+        return newPersonIds;
+    }
+
+    static Map<String, Object> projectColumns(Project project) {
+        Map<String, Object> columns = new LinkedHashMap<>();
+        columns.put("Project_name", project.projectName());
+        columns.put("Building_type", project.buildingType());
+        columns.put("Physical_address", project.physicalAddress());
+        columns.put("ERF_num", project.erfNum());
+        columns.put("Total_fee", project.totalFee());
+        columns.put("Total_paid", project.totalPaid());
+        columns.put("Project_deadline", project.projectDeadline());
+        return columns;
+    }
+
+    static Map<String, String> personColumns(String tableName, Person person) {
+        Map<String, String> columns = new LinkedHashMap<>();
+        columns.put(tableName + "_name", person.name());
+        columns.put(tableName + "_cell_num", person.cellNum());
+        columns.put(tableName + "_email", person.email());
+        columns.put(tableName + "_address", person.address());
+        return columns;
     }
 
-    private static void updatePoisePMSForeignKey(Connection connection, String tableName, int newPersonId, int projectId) throws SQLException {
-        String updateForeignKeySql = "UPDATE PoisePMS SET " + tableName.toLowerCase() + "_id = ? WHERE Project_num = ?";
-        try (PreparedStatement updateForeignKeyStatement = connection.prepareStatement(updateForeignKeySql)) {
-            updateForeignKeyStatement.setInt(1, newPersonId);
-            updateForeignKeyStatement.setInt(2, projectId);
-            updateForeignKeyStatement.executeUpdate();
+    /**
+     * Reads and locks the people of a project until the transaction ends.
+     *
+     * @return The ids of its people by table name, leaving out any that are not set, or null if the project does not exist.
+     */
+    private static Map<String, Integer> lockPeople(Connection connection, int projectNum) throws SQLException {
+        try (PreparedStatement selectStatement = connection.prepareStatement(LOCK_PEOPLE_SQL)) {
+            selectStatement.setInt(1, projectNum);
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                Map<String, Integer> personIds = new LinkedHashMap<>();
+                // Columns 1 to 3 are in the order of Person.TABLES
+                for (int table = 0; table < Person.TABLES.length; table++) {
+                    int personId = resultSet.getInt(table + 1);
+                    if (!resultSet.wasNull()) {
+                        personIds.put(Person.TABLES[table], personId);
+                    }
+                }
+                return personIds;
+            }
+        }
+    }
+
+    private static int insertPerson(Connection connection, String tableName, Person person) throws SQLException {
+        String insertSql = String.format(INSERT_PERSON_SQL, tableName);
+        try (PreparedStatement insertStatement = connection.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+            insertStatement.setString(1, person.name());
+            insertStatement.setString(2, person.cellNum());
+            insertStatement.setString(3, person.email());
+            insertStatement.setString(4, person.address());
+            insertStatement.executeUpdate();
+
+            try (ResultSet generatedKeys = insertStatement.getGeneratedKeys()) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException("Failed to insert new " + tableName);
+                }
+                return generatedKeys.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Updates the given columns of one row. Column and table names come from {@link ProjectEdit}, never from input.
+     *
+     * @return The number of rows updated.
+     */
+    private static int updateColumns(Connection connection, String tableName, Map<String, ?> columns,
+                                     String keyColumn, int key) throws SQLException {
+        StringBuilder updateSql = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+        for (String column : columns.keySet()) {
+            if (updateSql.charAt(updateSql.length() - 1) == '?') {
+                updateSql.append(", ");
+            }
+            updateSql.append(column).append(" = ?");
+        }
+        updateSql.append(" WHERE ").append(keyColumn).append(" = ?");
+
+        try (PreparedStatement updateStatement = connection.prepareStatement(updateSql.toString())) {
+            int index = 1;
+            for (Object value : columns.values()) {
+                if (value instanceof LocalDate) {
+                    updateStatement.setDate(index++, java.sql.Date.valueOf((LocalDate) value));
+                } else if (value instanceof Integer) {
+                    updateStatement.setInt(index++, (Integer) value);
+                } else {
+                    updateStatement.setString(index++, (String) value);
+                }
+            }
+            updateStatement.setInt(index, key);
+            return updateStatement.executeUpdate();
         }
     }
 }
@@ -2,150 +2,345 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Scanner;
+import java.util.stream.Stream;
 
 /**
  * This class provides functionality to fetch project information from the project management system.
  */
 public class ProjectInfoFetcher {
 
+    // The selected columns, listed so their positions do not depend on the table layout of the
+    // pool the query runs on. Each person id is the PoisePMS column it is joined on.
+    private static final String[] DETAIL_COLUMNS = {
+            "Project_num", "Project_name", "Building_type", "Physical_address", "ERF_num",
+            "Total_fee", "Total_paid", "Project_deadline", "PoisePMS.Architect_id",
+            "PoisePMS.Contractor_id", "PoisePMS.Customer_id", "Finalized", "Completion_date",
+            "Customer_name", "Customer_cell_num", "Customer_email", "Customer_address",
+            "Architect_name", "Architect_cell_num", "Architect_email", "Architect_address",
+            "Contractor_name", "Contractor_cell_num", "Contractor_email", "Contractor_address"};
+
+    static final String SELECT_PROJECT_SQL = "SELECT " + String.join(", ", DETAIL_COLUMNS) + " FROM PoisePMS "
+            + "JOIN Customer ON PoisePMS.Customer_id = Customer.Customer_id "
+            + "JOIN Architect ON PoisePMS.Architect_id = Architect.Architect_id "
+            + "JOIN Contractor ON PoisePMS.Contractor_id = Contractor.Contractor_id "
+            + "WHERE Project_num = ?";
+
+    // Recently fetched projects, kept up to date by the changes published by the write paths
+    private static final ProjectCache PROJECT_CACHE = new ProjectCache(1000, Duration.ofMinutes(5));
+
+    static {
+        ProjectChanges.addListener(PROJECT_CACHE);
+    }
+
+    // Rows read per page and per driver round trip when listing projects
+    static final int DEFAULT_PAGE_SIZE = 1000;
+    static final int DEFAULT_FETCH_SIZE = 200;
+
+    // Projects printed for a search
+    static final int SEARCH_RESULT_LIMIT = 20;
+
+    // Keyset pages that seek past the last row read, selecting only the listed columns
+    static final String INCOMPLETE_PAGE_SQL = "SELECT Project_num, Project_name, Project_deadline FROM PoisePMS "
+            + "WHERE Finalized IS NULL AND Project_num > ? ORDER BY Project_num LIMIT ?";
+
+    // Paged in the order of the deadline index, so each page seeks to where the last one ended instead of sorting every overdue row
+    static final String OVERDUE_PAGE_SQL = "SELECT Project_num, Project_name, Project_deadline FROM PoisePMS "
+            + "WHERE Project_deadline < ? AND Finalized IS NULL "
+            + "AND (Project_deadline > ? OR (Project_deadline = ? AND Project_num > ?)) "
+            + "ORDER BY Project_deadline, Project_num LIMIT ?";
+
     /**
      * Fetches project information based on the provided project number.
      *
-     * @param connection The database connection.
+     * @param service    The project service.
      * @param projectNum The project number to fetch information for.
      * @throws SQLException If a database error occurs.
      */
-    public static void fetchProjectInfo(Connection connection, int projectNum) throws SQLException {
-        String selectProjectSQL = "SELECT * FROM PoisePMS "
-                + "JOIN Customer ON PoisePMS.Customer_id = Customer.Customer_id "
-                + "JOIN Architect ON PoisePMS.Architect_id = Architect.Architect_id "
-                + "JOIN Contractor ON PoisePMS.Contractor_id = Contractor.Contractor_id "
-                + "WHERE Project_num = ?";
-
-        try (PreparedStatement preparedStatement = connection.prepareStatement(selectProjectSQL)) {
-            preparedStatement.setInt(1, projectNum);
+    public static void fetchProjectInfo(ProjectService service, int projectNum) throws SQLException {
+        ProjectDetails details = service.findProject(projectNum);
 
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                if (resultSet.next()) {
-                    boolean isFinalized = resultSet.getBoolean("Finalized");
+        if (details != null) {
+            Project project = details.project();
 
-                    // Display project details collected from the database
-                    System.out.println("=======================");
-                    System.out.println("Project Details:");
+            // Display project details collected from the database
+            System.out.println("=======================");
+            System.out.println("Project Details:");
 
-                    // Print project information
-                    printProjectInformation(resultSet);
+            // Print project information
+            printProjectInformation(project);
+
+            // Print related table information
+            System.out.println("Customer Details:");
+            printRelatedTableInformation(details.customer(), "Customer");
 
-                    // Print related table information
-                    System.out.println("Customer Details:");
-                    printRelatedTableInformation(resultSet, "Customer");
+            System.out.println("Architect Details:");
+            printRelatedTableInformation(details.architect(), "Architect");
 
-                    System.out.println("Architect Details:");
-                    printRelatedTableInformation(resultSet, "Architect");
+            System.out.println("Contractor Details:");
+            printRelatedTableInformation(details.contractor(), "Contractor");
 
-                    System.out.println("Contractor Details:");
-                    printRelatedTableInformation(resultSet, "Contractor");
+            // Print project finalization and completion information
+            System.out.println("Finalized: " + (project.finalized() ? "true" : "false"));
+            System.out.println("Date of Completion: " + project.completionDate());
+            System.out.println("=======================");
+        } else { // Error handling
+            System.out.println("Project not found for Project Number: " + projectNum);
+        }
+    }
 
-                    // Print project finalization and completion information
-                    System.out.println("Finalized: " + (isFinalized ? "true" : "false"));
-                    System.out.println("Date of Completion: " + resultSet.getString("Completion_date"));
-                    System.out.println("=======================");
-                } else { // Error handling
-                    System.out.println("Project not found for Project Number: " + projectNum);
+    /**
+     * Finds a project with its customer, architect and contractor, serving it from the project cache when possible.
+     *
+     * @param pool       The connection pool to borrow a connection from on a cache miss.
+     * @param projectNum The project number.
+     * @return The project, or null if it does not exist.
+     * @throws SQLException If a database error occurs.
+     */
+    public static ProjectDetails findProject(ConnectionPool pool, int projectNum) throws SQLException {
+        return PROJECT_CACHE.get(projectNum, key -> loadProject(pool, key));
+    }
+
+    /**
+     * Finds a project like {@link #findProject(ConnectionPool, int)}, loading a cache miss from a read
+     * replica. A project, or one of its people, changed within the router's read-your-writes window is
+     * loaded from the primary instead, so the cache is never filled with a copy a replica has not
+     * caught up on yet.
+     *
+     * @param router     The router that picks the database to load from.
+     * @param projectNum The project number.
+     * @return The project, or null if it does not exist.
+     * @throws SQLException If a database error occurs.
+     */
+    public static ProjectDetails findProject(ReplicaRouter router, int projectNum) throws SQLException {
+        return PROJECT_CACHE.get(projectNum, key -> {
+            if (router.changedRecently("PoisePMS", key)) {
+                return loadProject(router.getPrimary(), key);
+            }
+            ProjectDetails details = router.read(pool -> loadProject(pool, key));
+            // The people are only known once loaded, and may have been changed through another project
+            if (details != null && (router.changedRecently("Customer", details.customer().id())
+                    || router.changedRecently("Architect", details.architect().id())
+                    || router.changedRecently("Contractor", details.contractor().id()))) {
+                return loadProject(router.getPrimary(), key);
+            }
+            return details;
+        });
+    }
+
+    /**
+     * Gets the cache used by {@link #findProject}, for its statistics.
+     *
+     * @return The project cache.
+     */
+    public static ProjectCache getProjectCache() {
+        return PROJECT_CACHE;
+    }
+
+    private static ProjectDetails loadProject(ConnectionPool pool, int projectNum) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SELECT_PROJECT_SQL)) {
+            preparedStatement.setInt(1, projectNum);
+
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
                 }
+                return DETAILS_MAPPER.map(resultSet);
+            }
+        }
+    }
+
+    // The column positions of SELECT_PROJECT_SQL, fixed by its select list
+    private static final DetailsMapper DETAILS_MAPPER = DetailsMapper.forDetailColumns();
+
+    /**
+     * The mappers for a project and its three people in one row of {@link #SELECT_PROJECT_SQL}.
+     */
+    private static final class DetailsMapper {
+        private final ProjectRowMapper project;
+        private final PersonRowMapper customer;
+        private final PersonRowMapper architect;
+        private final PersonRowMapper contractor;
+
+        DetailsMapper(ColumnIndex columns) throws SQLException {
+            project = new ProjectRowMapper(columns);
+            customer = new PersonRowMapper(columns, "Customer");
+            architect = new PersonRowMapper(columns, "Architect");
+            contractor = new PersonRowMapper(columns, "Contractor");
+        }
+
+        static DetailsMapper forDetailColumns() {
+            try {
+                return new DetailsMapper(new ColumnIndex(DETAIL_COLUMNS));
+            } catch (SQLException e) {
+                throw new IllegalStateException("DETAIL_COLUMNS is missing a mapped column", e);
             }
         }
+
+        ProjectDetails map(ResultSet resultSet) throws SQLException {
+            return new ProjectDetails(project.map(resultSet), customer.map(resultSet),
+                    architect.map(resultSet), contractor.map(resultSet));
+        }
     }
 
     /**
      * Prints information for a specific project.
      *
-     * @param resultSet The result set containing project information.
-     * @throws SQLException If a database error occurs.
+     * @param project The project to print.
      */
-    private static void printProjectInformation(ResultSet resultSet) throws SQLException {
+    private static void printProjectInformation(Project project) {
         // Print project information
-        System.out.println("Project Number: " + resultSet.getInt("Project_num"));
-        System.out.println("Project Name: " + resultSet.getString("Project_name"));
-        System.out.println("Building Type: " + resultSet.getString("Building_type"));
+        System.out.println("Project Number: " + project.projectNum());
+        System.out.println("Project Name: " + project.projectName());
+        System.out.println("Building Type: " + project.buildingType());
         // Print other project information
-        System.out.println("Physical Address: " + resultSet.getString("Physical_address"));
-        System.out.println("ERF Number: " + resultSet.getInt("ERF_num"));
-        System.out.println("Total Fee: " + resultSet.getInt("Total_fee"));
-        System.out.println("Total Paid: " + resultSet.getInt("Total_paid"));
-        System.out.println("Project Deadline: " + resultSet.getDate("Project_deadline"));
+        System.out.println("Physical Address: " + project.physicalAddress());
+        System.out.println("ERF Number: " + project.erfNum());
+        System.out.println("Total Fee: " + project.totalFee());
+        System.out.println("Total Paid: " + project.totalPaid());
+        System.out.println("Project Deadline: " + project.projectDeadline());
     }
 
     /**
      * Prints information for a related table (Customer, Architect, or Contractor).
      *
-     * @param resultSet The result set containing related table information.
+     * @param person    The person to print.
      * @param tableName The name of the related table.
-     * @throws SQLException If a database error occurs.
      */
-    private static void printRelatedTableInformation(ResultSet resultSet, String tableName) throws SQLException {
-        System.out.println(tableName + " Name: " + resultSet.getString(tableName + "_name"));
-        System.out.println(tableName + " Cell Number: " + resultSet.getString(tableName + "_cell_num"));
-        System.out.println(tableName + " Email: " + resultSet.getString(tableName + "_email"));
-        System.out.println(tableName + " Address: " + resultSet.getString(tableName + "_address"));
+    private static void printRelatedTableInformation(Person person, String tableName) {
+        System.out.println(tableName + " Name: " + person.name());
+        System.out.println(tableName + " Cell Number: " + person.cellNum());
+        System.out.println(tableName + " Email: " + person.email());
+        System.out.println(tableName + " Address: " + person.address());
     }
 
     /**
-     * Finds projects that are not finalized.
+     * Asks for words to search for and prints the best matching projects.
      *
-     * @param connection The database connection.
+     * @param service The project service.
+     * @param scanner The Scanner object for user input. It is left open.
      */
-    public static void findIncompleteProjects(Connection connection) {
-        try {
-            String query = "SELECT * FROM PoisePMS WHERE finalized IS NULL";
-            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-                ResultSet resultSet = preparedStatement.executeQuery();
-
-                if (resultSet.next()) {
-                    do {
-                        // Print project information
-                        System.out.println("Project Number: " + resultSet.getInt("project_num"));
-                        System.out.println("Project Name: " + resultSet.getString("project_name") + "\n");
-                        // Print other project information
-                    } while (resultSet.next());
-                } else {
-                    System.out.println("No projects need to be completed.");
-                }
+    public static void searchProjects(ProjectService service, Scanner scanner) {
+        System.out.print("Search for (name, address, ERF number or person): ");
+        List<ProjectSummary> projects = service.searchProjects(scanner.nextLine(), SEARCH_RESULT_LIMIT);
+
+        if (projects.isEmpty()) {
+            System.out.println("\nNo matching projects.\n");
+        }
+        for (ProjectSummary project : projects) {
+            System.out.println("\n" + "Project Number: " + project.projectNum());
+            System.out.println("Project Name: " + project.projectName());
+            System.out.println("Project Deadline: " + project.projectDeadline() + "\n");
+        }
+    }
+
+    /**
+     * Finds projects that are not finalized, printing them as they are read.
+     *
+     * @param service The project service.
+     */
+    public static void findIncompleteProjects(ProjectService service) {
+        try (Stream<ProjectSummary> projects = service.incompleteProjects()) {
+            Iterator<ProjectSummary> iterator = projects.iterator();
+
+            if (iterator.hasNext()) {
+                do {
+                    ProjectSummary project = iterator.next();
+                    // Print project information
+                    System.out.println("Project Number: " + project.projectNum());
+                    System.out.println("Project Name: " + project.projectName() + "\n");
+                } while (iterator.hasNext());
+            } else {
+                System.out.println("No projects need to be completed.");
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        } catch (DataAccessException e) {
+            e.getCause().printStackTrace();
         }
     }
 
     /**
-     * Finds projects that have a  completion date in the past.
+     * Finds projects that have a  completion date in the past, printing them as they are read.
      *
-     * @param connection The database connection.
+     * @param service The project service.
      */
-    public static void findOverdueProjects(Connection connection) {
-        try {
-            // Get the current date
-            java.sql.Date currentDate = new java.sql.Date(System.currentTimeMillis());
-
-            // Select all projects that have a date less then the current date
-            String query = "SELECT * FROM PoisePMS WHERE Project_deadline < ?";
-            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-                preparedStatement.setDate(1, currentDate);
-                ResultSet resultSet = preparedStatement.executeQuery();
-    
-                if (resultSet.next()) {
-                    do {
-                        // Print project information
-                        System.out.println("\n"  +"Project Number: " + resultSet.getInt("Project_num"));
-                        System.out.println("Project Name: " + resultSet.getString("Project_name"));
-                        System.out.println("Project Deadline: " + resultSet.getString("Project_deadline") + "\n");
-                    } while (resultSet.next());
-                } else {
-                    System.out.println("\nNo need to be completed.\n\n");
-                }
+    public static void findOverdueProjects(ProjectService service) {
+        try (Stream<ProjectSummary> projects = service.overdueProjects(LocalDate.now())) {
+            Iterator<ProjectSummary> iterator = projects.iterator();
+
+            if (iterator.hasNext()) {
+                do {
+                    ProjectSummary project = iterator.next();
+                    // Print project information
+                    System.out.println("\n"  +"Project Number: " + project.projectNum());
+                    System.out.println("Project Name: " + project.projectName());
+                    System.out.println("Project Deadline: " + project.projectDeadline() + "\n");
+                } while (iterator.hasNext());
+            } else {
+                System.out.println("\nNo need to be completed.\n\n");
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        } catch (DataAccessException e) {
+            e.getCause().printStackTrace();
         }
-    } 
+    }
+
+    /**
+     * Streams projects that are not finalized in Project_num order.
+     * The stream must be closed to return the connection of the current page to the pool.
+     *
+     * @param pool      The connection pool to borrow a connection from.
+     * @param pageSize  The number of rows read per query.
+     * @param fetchSize The JDBC fetch size. Integer.MIN_VALUE streams row by row on MySQL.
+     * @return A stream of incomplete projects.
+     */
+    public static Stream<ProjectSummary> streamIncompleteProjects(ConnectionPool pool, int pageSize, int fetchSize) {
+        return new ProjectPageIterator(pool, INCOMPLETE_PAGE_SQL, ProjectPageIterator.Keyset.PROJECT_NUM, new Object[0], pageSize, fetchSize).stream();
+    }
+
+    /**
+     * Streams projects that are not finalized in Project_num order, reading each page from the database
+     * the router picks and falling back to the primary if a replica fails.
+     *
+     * @param router    The router that picks the database to read from.
+     * @param pageSize  The number of rows read per query.
+     * @param fetchSize The JDBC fetch size. Integer.MIN_VALUE streams row by row on MySQL.
+     * @return A stream of incomplete projects.
+     */
+    public static Stream<ProjectSummary> streamIncompleteProjects(ReplicaRouter router, int pageSize, int fetchSize) {
+        return new ProjectPageIterator(router, INCOMPLETE_PAGE_SQL, ProjectPageIterator.Keyset.PROJECT_NUM, new Object[0], pageSize, fetchSize).stream();
+    }
+
+    /**
+     * Streams projects that are not finalized and have a deadline before the given date, earliest deadline first.
+     * The stream must be closed to return the connection of the current page to the pool.
+     *
+     * @param pool      The connection pool to borrow a connection from.
+     * @param today     The date deadlines are compared against.
+     * @param pageSize  The number of rows read per query.
+     * @param fetchSize The JDBC fetch size. Integer.MIN_VALUE streams row by row on MySQL.
+     * @return A stream of overdue projects.
+     */
+    public static Stream<ProjectSummary> streamOverdueProjects(ConnectionPool pool, LocalDate today, int pageSize, int fetchSize) {
+        return new ProjectPageIterator(pool, OVERDUE_PAGE_SQL, ProjectPageIterator.Keyset.DEADLINE,
+                new Object[]{java.sql.Date.valueOf(today)}, pageSize, fetchSize).stream();
+    }
+
+    /**
+     * Streams projects that are not finalized and have a deadline before the given date, earliest deadline first, reading each page
+     * from the database the router picks and falling back to the primary if a replica fails.
+     *
+     * @param router    The router that picks the database to read from.
+     * @param today     The date deadlines are compared against.
+     * @param pageSize  The number of rows read per query.
+     * @param fetchSize The JDBC fetch size. Integer.MIN_VALUE streams row by row on MySQL.
+     * @return A stream of overdue projects.
+     */
+    public static Stream<ProjectSummary> streamOverdueProjects(ReplicaRouter router, LocalDate today, int pageSize, int fetchSize) {
+        return new ProjectPageIterator(router, OVERDUE_PAGE_SQL, ProjectPageIterator.Keyset.DEADLINE,
+                new Object[]{java.sql.Date.valueOf(today)}, pageSize, fetchSize).stream();
+    }
 }
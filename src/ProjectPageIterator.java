@@ -0,0 +1,224 @@
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class walks a project listing page by page, seeking past the last row read instead of using OFFSET.
+ * Rows are read from the driver as they are consumed, so memory use depends on the page and fetch
+ * size rather than on the size of the table. A connection is only held while a page is being read.
+ * Given a {@link ReplicaRouter}, each page is read from the database it picks, and from the primary
+ * if that replica fails to open the page.
+ *
+ * <p>The query must select Project_num, Project_name and Project_deadline in that order. Ordered by
+ * {@link Keyset#PROJECT_NUM} it must end with "Project_num > ? ORDER BY Project_num LIMIT ?"; ordered by
+ * {@link Keyset#DEADLINE} with "(Project_deadline > ? OR (Project_deadline = ? AND Project_num > ?))
+ * ORDER BY Project_deadline, Project_num LIMIT ?", and it must leave out projects without a deadline.</p>
+ */
+public class ProjectPageIterator implements Iterator<ProjectSummary>, AutoCloseable {
+
+    /**
+     * The columns a listing is ordered and paged by.
+     */
+    public enum Keyset {
+        /** Project_num. */
+        PROJECT_NUM,
+        /** Project_deadline, then Project_num. */
+        DEADLINE
+    }
+
+    // Below every deadline MySQL can store, so the first page of a deadline listing starts at the beginning
+    private static final Date FIRST_DEADLINE = Date.valueOf("1000-01-01");
+
+    private final ConnectionPool pool;
+    private final ReplicaRouter router;
+    private final String pageSql;
+    private final Keyset keyset;
+    private final Object[] leadingParams;
+    private final int pageSize;
+    private final int fetchSize;
+
+    private Connection connection;
+    private PreparedStatement statement;
+    private ResultSet resultSet;
+    private ProjectSummary next;
+    private int lastProjectNum = Integer.MIN_VALUE;
+    private Date lastDeadline = FIRST_DEADLINE;
+    private int rowsInPage;
+    private boolean lastPage;
+
+    /**
+     * Creates an iterator over a keyset-paginated query.
+     *
+     * @param pool          The connection pool to borrow a connection from for each page.
+     * @param pageSql       The page query.
+     * @param keyset        The columns the query is ordered and paged by.
+     * @param leadingParams The parameters bound before the keyset and LIMIT parameters.
+     * @param pageSize      The maximum number of rows per page.
+     * @param fetchSize     The JDBC fetch size. Integer.MIN_VALUE streams row by row on MySQL.
+     */
+    public ProjectPageIterator(ConnectionPool pool, String pageSql, Keyset keyset, Object[] leadingParams,
+                               int pageSize, int fetchSize) {
+        this(pool, null, pageSql, keyset, leadingParams, pageSize, fetchSize);
+    }
+
+    /**
+     * Creates an iterator over a keyset-paginated query that reads each page through a replica router.
+     *
+     * @param router        The router that picks the database each page is read from.
+     * @param pageSql       The page query.
+     * @param keyset        The columns the query is ordered and paged by.
+     * @param leadingParams The parameters bound before the keyset and LIMIT parameters.
+     * @param pageSize      The maximum number of rows per page.
+     * @param fetchSize     The JDBC fetch size. Integer.MIN_VALUE streams row by row on MySQL.
+     */
+    public ProjectPageIterator(ReplicaRouter router, String pageSql, Keyset keyset, Object[] leadingParams,
+                               int pageSize, int fetchSize) {
+        this(router.getPrimary(), router, pageSql, keyset, leadingParams, pageSize, fetchSize);
+    }
+
+    private ProjectPageIterator(ConnectionPool pool, ReplicaRouter router, String pageSql, Keyset keyset,
+                                Object[] leadingParams, int pageSize, int fetchSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        this.pool = pool;
+        this.router = router;
+        this.pageSql = pageSql;
+        this.keyset = keyset;
+        this.leadingParams = leadingParams;
+        this.pageSize = pageSize;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Wraps the iterator in a sequential stream that releases the connection when closed.
+     *
+     * @return A stream over the remaining rows.
+     */
+    public Stream<ProjectSummary> stream() {
+        Spliterator<ProjectSummary> spliterator = Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = readNext();
+            } catch (SQLException e) {
+                close();
+                throw new DataAccessException("Failed to read project page", e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public ProjectSummary next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ProjectSummary current = next;
+        next = null;
+        return current;
+    }
+
+    private ProjectSummary readNext() throws SQLException {
+        while (true) {
+            if (resultSet == null) {
+                if (lastPage) {
+                    return null;
+                }
+                openPage();
+            }
+
+            if (resultSet.next()) {
+                rowsInPage++;
+                Date deadline = resultSet.getDate(3);
+                lastProjectNum = resultSet.getInt(1);
+                lastDeadline = deadline;
+                return new ProjectSummary(lastProjectNum, resultSet.getString(2),
+                        deadline == null ? null : deadline.toLocalDate());
+            }
+
+            // A short page means there is nothing after it
+            lastPage = rowsInPage < pageSize;
+            closePage();
+        }
+    }
+
+    private void openPage() throws SQLException {
+        if (router == null) {
+            openPage(pool);
+        } else {
+            router.read(readPool -> {
+                openPage(readPool);
+                return null;
+            });
+        }
+    }
+
+    private void openPage(ConnectionPool readPool) throws SQLException {
+        try {
+            connection = readPool.getConnection();
+            statement = connection.prepareStatement(pageSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+
+            int index = 1;
+            for (Object param : leadingParams) {
+                statement.setObject(index++, param);
+            }
+            if (keyset == Keyset.DEADLINE) {
+                statement.setDate(index++, lastDeadline);
+                statement.setDate(index++, lastDeadline);
+            }
+            statement.setInt(index++, lastProjectNum);
+            statement.setInt(index, pageSize);
+
+            resultSet = statement.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            closePage(); // So a page retried on the primary does not leave the replica's connection behind
+            throw e;
+        }
+        rowsInPage = 0;
+    }
+
+    private void closePage() {
+        try {
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            if (statement != null) {
+                statement.close();
+            }
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            // The page has been read, so a failure to close it does not affect the results
+        } finally {
+            resultSet = null;
+            statement = null;
+            connection = null;
+        }
+    }
+
+    /**
+     * Stops the iteration and returns the connection of the current page to the pool.
+     */
+    @Override
+    public void close() {
+        lastPage = true;
+        next = null;
+        closePage();
+    }
+}
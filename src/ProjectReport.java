@@ -0,0 +1,433 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class writes the incomplete and overdue listings to a CSV or HTML file, scanning the table in
+ * parallel. The projects are split into ranges of Project_num holding the same number of rows, several
+ * per thread so a range that happens to be slow does not leave the other threads idle. The bounds are
+ * found by stepping through the primary key, so gaps in the numbering never give empty ranges. Each range is scanned on its own pooled
+ * connection and rendered by the thread that scanned it. The ranges are written to the file in order,
+ * so the report lists projects by number just as the single-threaded listing does.
+ *
+ * <p>A range holds at most {@link #MAX_RANGE_PROJECTS} projects, so a big table is split into
+ * more ranges rather than larger ones. Each range is rendered in memory before it is written, and only
+ * twice as many ranges as threads are in flight at once, so memory use depends on the number of threads
+ * and not on the size of the table. Each range also gets a summary of its projects, overdue projects,
+ * fees, payments and outstanding balance, written at the end of the HTML report or to a "-summary.csv"
+ * file next to the CSV report. Overdue means past its deadline and not finalized, as in {@link DeadlineTracker}.</p>
+ */
+public class ProjectReport {
+
+    /**
+     * Which projects are listed.
+     */
+    public enum Kind {
+        /** Projects that are not finalized. */
+        INCOMPLETE,
+        /** Projects that are not finalized and have a deadline before the report date. */
+        OVERDUE
+    }
+
+    /**
+     * How the report is written.
+     */
+    public enum Format {
+        CSV,
+        HTML;
+
+        /**
+         * @return HTML for a file ending in .html or .htm, otherwise CSV.
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            return name.endsWith(".html") || name.endsWith(".htm") ? HTML : CSV;
+        }
+    }
+
+    /**
+     * The totals of one range of project numbers, or of the whole report.
+     *
+     * @param fromProjectNum The first project number of the range.
+     * @param toProjectNum   The last project number of the range.
+     * @param projects       The number of projects listed.
+     * @param overdue        How many of them are overdue.
+     * @param totalFee       Their total fee.
+     * @param totalPaid      Their total paid.
+     * @param scanMillis     How long the range took to scan and render.
+     */
+    public record RangeSummary(int fromProjectNum, int toProjectNum, long projects, long overdue,
+                               long totalFee, long totalPaid, long scanMillis) {
+
+        public long outstanding() {
+            return totalFee - totalPaid;
+        }
+    }
+
+    /**
+     * A written report.
+     *
+     * @param file          The report file.
+     * @param total         The totals of the whole report.
+     * @param ranges        The totals of each range, in project number order.
+     * @param threads       The number of ranges scanned at once.
+     * @param elapsedMillis How long the report took.
+     */
+    public record Result(Path file, RangeSummary total, List<RangeSummary> ranges, int threads, long elapsedMillis) {
+    }
+
+    /**
+     * The most projects one range holds, and so the most rows rendered in memory for it.
+     */
+    static final int MAX_RANGE_PROJECTS = 10_000;
+
+    private static final String BOUNDS_SQL = "SELECT MIN(Project_num), MAX(Project_num), COUNT(*) FROM PoisePMS";
+
+    // The project number the given number of rows after the first one at or above a bound: the last of a range starting there
+    private static final String RANGE_END_SQL = "SELECT Project_num FROM PoisePMS WHERE Project_num >= ? "
+            + "ORDER BY Project_num LIMIT 1 OFFSET ?";
+
+    private static final String RANGE_SQL = "SELECT Project_num, Project_name, Project_deadline, Total_fee, Total_paid "
+            + "FROM PoisePMS WHERE Finalized IS NOT TRUE AND Project_num BETWEEN ? AND ?%s ORDER BY Project_num";
+
+    private static final String CSV_HEADER = "Project_num,Project_name,Project_deadline,Total_fee,Total_paid,Outstanding,Days_overdue\n";
+
+    private final ConnectionPool pool;
+    private final int threads;
+    private final int rangesPerThread;
+    private final int fetchSize;
+
+    /**
+     * Creates a report writer.
+     *
+     * @param pool            The connection pool; each thread holds one of its connections while the report runs.
+     * @param threads         The number of ranges scanned at once, at most the pool size.
+     * @param rangesPerThread How many ranges the keyspace is split into per thread.
+     * @param fetchSize       The JDBC fetch size of each range scan.
+     */
+    public ProjectReport(ConnectionPool pool, int threads, int rangesPerThread, int fetchSize) {
+        if (threads < 1 || rangesPerThread < 1) {
+            throw new IllegalArgumentException("Threads and ranges per thread must be at least 1");
+        }
+        this.pool = pool;
+        this.threads = Math.min(threads, pool.getMaxSize());
+        this.rangesPerThread = rangesPerThread;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Writes a report, replacing the file only once it is complete.
+     *
+     * @param kind   Which projects are listed.
+     * @param today  The date deadlines are compared against.
+     * @param format How the report is written.
+     * @param file   The report file.
+     * @return The totals of the report and of each range.
+     * @throws SQLException If a database error occurs.
+     * @throws IOException  If the file cannot be written.
+     */
+    public Result write(Kind kind, LocalDate today, Format format, Path file) throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        List<int[]> ranges = splitKeyspace();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        List<RangeSummary> summaries = new ArrayList<>(ranges.size());
+        AtomicInteger threadNum = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "report-worker-" + threadNum.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            out.write(format == Format.CSV ? CSV_HEADER : htmlHeader(kind, today));
+
+            // Keep twice as many ranges going as there are threads, so a thread never waits for the writer
+            Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            while (next < ranges.size() && inFlight.size() < threads * 2) {
+                int[] range = ranges.get(next++);
+                inFlight.add(workers.submit(() -> scan(kind, today, format, range[0], range[1])));
+            }
+            while (!inFlight.isEmpty()) {
+                Chunk chunk = await(inFlight.poll());
+                out.write(chunk.rows());
+                summaries.add(chunk.summary());
+                if (next < ranges.size()) {
+                    int[] range = ranges.get(next++);
+                    inFlight.add(workers.submit(() -> scan(kind, today, format, range[0], range[1])));
+                }
+            }
+
+            RangeSummary total = total(summaries);
+            if (format == Format.HTML) {
+                out.write(htmlSummary(summaries, total));
+            } else {
+                writeCsvSummary(summaryFile(file), summaries, total);
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            workers.shutdownNow();
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new Result(file, total(summaries), summaries, threads, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return The CSV file the range summaries of a CSV report are written to.
+     */
+    public static Path summaryFile(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return file.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + "-summary.csv");
+    }
+
+    /**
+     * Splits the projects into ranges of project numbers holding the same number of rows, at least
+     * rangesPerThread per thread and none holding more than {@link #MAX_RANGE_PROJECTS}. Each bound is
+     * found by skipping that many entries of the primary key from the previous one.
+     *
+     * @return The first and last project number of each range, in order; none if the table is empty.
+     */
+    private List<int[]> splitKeyspace() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            int min;
+            int max;
+            long rows;
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(BOUNDS_SQL)) {
+                resultSet.next();
+                min = resultSet.getInt(1);
+                if (resultSet.wasNull()) {
+                    return List.of();
+                }
+                max = resultSet.getInt(2);
+                rows = resultSet.getLong(3);
+            }
+
+            long count = Math.max((long) threads * rangesPerThread, (rows + MAX_RANGE_PROJECTS - 1) / MAX_RANGE_PROJECTS);
+            long rangeRows = Math.max(1, (rows + count - 1) / count);
+            List<int[]> ranges = new ArrayList<>();
+            try (PreparedStatement selectStatement = connection.prepareStatement(RANGE_END_SQL)) {
+                long from = min;
+                while (from <= max) {
+                    selectStatement.setInt(1, (int) from);
+                    selectStatement.setLong(2, rangeRows - 1);
+                    int to = max;
+                    try (ResultSet resultSet = selectStatement.executeQuery()) {
+                        if (resultSet.next()) {
+                            to = Math.min(max, resultSet.getInt(1));
+                        }
+                    }
+                    ranges.add(new int[]{(int) from, to});
+                    from = (long) to + 1;
+                }
+            }
+            return ranges;
+        }
+    }
+
+    /**
+     * The rendered rows and the summary of one range.
+     */
+    private record Chunk(String rows, RangeSummary summary) {
+    }
+
+    private Chunk scan(Kind kind, LocalDate today, Format format, int from, int to) throws SQLException {
+        long start = System.currentTimeMillis();
+        String sql = String.format(RANGE_SQL, kind == Kind.OVERDUE ? " AND Project_deadline < ?" : "");
+        StringBuilder rows = new StringBuilder();
+        long projects = 0;
+        long overdue = 0;
+        long totalFee = 0;
+        long totalPaid = 0;
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement selectStatement = connection.prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            selectStatement.setFetchSize(fetchSize);
+            selectStatement.setInt(1, from);
+            selectStatement.setInt(2, to);
+            if (kind == Kind.OVERDUE) {
+                selectStatement.setDate(3, Date.valueOf(today));
+            }
+
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    Date deadlineDate = resultSet.getDate(3);
+                    LocalDate deadline = deadlineDate == null ? null : deadlineDate.toLocalDate();
+                    int fee = resultSet.getInt(4);
+                    int paid = resultSet.getInt(5);
+                    long daysOverdue = deadline != null && deadline.isBefore(today) ? ChronoUnit.DAYS.between(deadline, today) : 0;
+
+                    projects++;
+                    totalFee += fee;
+                    totalPaid += paid;
+                    if (daysOverdue > 0) {
+                        overdue++;
+                    }
+                    if (format == Format.CSV) {
+                        appendCsvRow(rows, resultSet.getInt(1), resultSet.getString(2), deadline, fee, paid, daysOverdue);
+                    } else {
+                        appendHtmlRow(rows, resultSet.getInt(1), resultSet.getString(2), deadline, fee, paid, daysOverdue);
+                    }
+                }
+            }
+        }
+        return new Chunk(rows.toString(), new RangeSummary(from, to, projects, overdue, totalFee, totalPaid,
+                System.currentTimeMillis() - start));
+    }
+
+    private static Chunk await(Future<Chunk> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a report range", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new IllegalStateException("Report range failed", e.getCause());
+        }
+    }
+
+    private static RangeSummary total(List<RangeSummary> summaries) {
+        long projects = 0;
+        long overdue = 0;
+        long totalFee = 0;
+        long totalPaid = 0;
+        long scanMillis = 0;
+        for (RangeSummary summary : summaries) {
+            projects += summary.projects();
+            overdue += summary.overdue();
+            totalFee += summary.totalFee();
+            totalPaid += summary.totalPaid();
+            scanMillis += summary.scanMillis();
+        }
+        return new RangeSummary(summaries.isEmpty() ? 0 : summaries.get(0).fromProjectNum(),
+                summaries.isEmpty() ? 0 : summaries.get(summaries.size() - 1).toProjectNum(),
+                projects, overdue, totalFee, totalPaid, scanMillis);
+    }
+
+    // ================= CSV ================= //
+
+    private static void appendCsvRow(StringBuilder out, int projectNum, String projectName, LocalDate deadline,
+                                     int fee, int paid, long daysOverdue) {
+        out.append(projectNum).append(',');
+        appendCsvField(out, projectName);
+        out.append(',').append(deadline == null ? "" : deadline.toString());
+        out.append(',').append(fee).append(',').append(paid).append(',').append(fee - paid);
+        out.append(',').append(daysOverdue).append('\n');
+    }
+
+    private static void appendCsvField(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.append(value);
+            return;
+        }
+        out.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static void writeCsvSummary(Path file, List<RangeSummary> summaries, RangeSummary total) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("From_project_num,To_project_num,Projects,Overdue,Total_fee,Total_paid,Outstanding,Scan_millis\n");
+            for (RangeSummary summary : summaries) {
+                out.write(csvSummaryRow(String.valueOf(summary.fromProjectNum()), String.valueOf(summary.toProjectNum()), summary));
+            }
+            out.write(csvSummaryRow("Total", "", total));
+        }
+    }
+
+    private static String csvSummaryRow(String from, String to, RangeSummary summary) {
+        return from + ',' + to + ',' + summary.projects() + ',' + summary.overdue() + ',' + summary.totalFee() + ','
+                + summary.totalPaid() + ',' + summary.outstanding() + ',' + summary.scanMillis() + '\n';
+    }
+
+    // ================= HTML ================= //
+
+    private static String htmlHeader(Kind kind, LocalDate today) {
+        String title = (kind == Kind.OVERDUE ? "Overdue" : "Incomplete") + " projects on " + today;
+        return "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>" + title + "</title>\n"
+                + "<style>table{border-collapse:collapse}td,th{border:1px solid #ccc;padding:2px 6px}"
+                + "td.n{text-align:right}</style>\n</head>\n<body>\n<h1>" + title + "</h1>\n<table>\n"
+                + "<tr><th>Project</th><th>Name</th><th>Deadline</th><th>Fee</th><th>Paid</th>"
+                + "<th>Outstanding</th><th>Days overdue</th></tr>\n";
+    }
+
+    private static void appendHtmlRow(StringBuilder out, int projectNum, String projectName, LocalDate deadline,
+                                      int fee, int paid, long daysOverdue) {
+        out.append("<tr><td class=\"n\">").append(projectNum).append("</td><td>");
+        appendHtmlText(out, projectName);
+        out.append("</td><td>").append(deadline == null ? "" : deadline.toString());
+        out.append("</td><td class=\"n\">").append(fee);
+        out.append("</td><td class=\"n\">").append(paid);
+        out.append("</td><td class=\"n\">").append(fee - paid);
+        out.append("</td><td class=\"n\">").append(daysOverdue).append("</td></tr>\n");
+    }
+
+    private static void appendHtmlText(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '"' -> out.append("&quot;");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    private static String htmlSummary(List<RangeSummary> summaries, RangeSummary total) {
+        StringBuilder out = new StringBuilder("</table>\n<h2>Summary by project number range</h2>\n<table>\n"
+                + "<tr><th>From</th><th>To</th><th>Projects</th><th>Overdue</th><th>Fee</th><th>Paid</th>"
+                + "<th>Outstanding</th><th>Scan ms</th></tr>\n");
+        for (RangeSummary summary : summaries) {
+            appendHtmlSummaryRow(out, String.valueOf(summary.fromProjectNum()), String.valueOf(summary.toProjectNum()), summary);
+        }
+        appendHtmlSummaryRow(out, "<b>Total</b>", "", total);
+        return out.append("</table>\n</body>\n</html>\n").toString();
+    }
+
+    private static void appendHtmlSummaryRow(StringBuilder out, String from, String to, RangeSummary summary) {
+        out.append("<tr><td class=\"n\">").append(from).append("</td><td class=\"n\">").append(to);
+        out.append("</td><td class=\"n\">").append(summary.projects());
+        out.append("</td><td class=\"n\">").append(summary.overdue());
+        out.append("</td><td class=\"n\">").append(summary.totalFee());
+        out.append("</td><td class=\"n\">").append(summary.totalPaid());
+        out.append("</td><td class=\"n\">").append(summary.outstanding());
+        out.append("</td><td class=\"n\">").append(summary.scanMillis()).append("</td></tr>\n");
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * The financial totals of one group of projects.
+ *
+ * @param group     The group: a building type, an architect or contractor id, or a deadline month such as "2024-03".
+ * @param projects  The number of projects in the group.
+ * @param totalFee  The sum of their fees.
+ * @param totalPaid The sum of what has been paid.
+ */
+public record ProjectRollup(String group, int projects, long totalFee, long totalPaid) {
+
+    public long outstanding() {
+        return totalFee - totalPaid;
+    }
+}
@@ -0,0 +1,71 @@
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * This class turns rows holding the PoisePMS columns into {@link Project} records. The column
+ * positions are looked up once when the mapper is created, and every row is read by index.
+ */
+public class ProjectRowMapper {
+
+    private final int projectNum;
+    private final int projectName;
+    private final int buildingType;
+    private final int physicalAddress;
+    private final int erfNum;
+    private final int totalFee;
+    private final int totalPaid;
+    private final int projectDeadline;
+    private final int architectId;
+    private final int contractorId;
+    private final int customerId;
+    private final int finalized;
+    private final int completionDate;
+
+    /**
+     * Creates a mapper for the columns of the given result set.
+     *
+     * @param columns The column positions of the result set.
+     * @throws SQLException If a PoisePMS column is missing.
+     */
+    public ProjectRowMapper(ColumnIndex columns) throws SQLException {
+        projectNum = columns.indexOf("Project_num");
+        projectName = columns.indexOf("Project_name");
+        buildingType = columns.indexOf("Building_type");
+        physicalAddress = columns.indexOf("Physical_address");
+        erfNum = columns.indexOf("ERF_num");
+        totalFee = columns.indexOf("Total_fee");
+        totalPaid = columns.indexOf("Total_paid");
+        projectDeadline = columns.indexOf("Project_deadline");
+        architectId = columns.indexOf("Architect_id");
+        contractorId = columns.indexOf("Contractor_id");
+        customerId = columns.indexOf("Customer_id");
+        finalized = columns.indexOf("Finalized");
+        completionDate = columns.indexOf("Completion_date");
+    }
+
+    /**
+     * Reads the project in the current row.
+     *
+     * @param resultSet The result set, positioned on a row.
+     * @return The project.
+     * @throws SQLException If a database error occurs.
+     */
+    public Project map(ResultSet resultSet) throws SQLException {
+        Date deadline = resultSet.getDate(projectDeadline);
+        Date completed = resultSet.getDate(completionDate);
+        return new Project(resultSet.getInt(projectNum),
+                resultSet.getString(projectName),
+                resultSet.getString(buildingType),
+                resultSet.getString(physicalAddress),
+                resultSet.getInt(erfNum),
+                resultSet.getInt(totalFee),
+                resultSet.getInt(totalPaid),
+                deadline == null ? null : deadline.toLocalDate(),
+                resultSet.getInt(architectId),
+                resultSet.getInt(contractorId),
+                resultSet.getInt(customerId),
+                resultSet.getBoolean(finalized),
+                completed == null ? null : completed.toLocalDate());
+    }
+}
@@ -0,0 +1,714 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class finds projects by any word of their name, physical address, building type, ERF number,
+ * project number or the name of their customer, architect or contractor, without a LIKE scan. It keeps
+ * an inverted index in memory: each term maps to the list of documents that contain it, stored as
+ * delta-encoded variable-length integers, and every word typed matches the terms it is a prefix of.
+ * Results are ranked by how rare the matched terms are and which field they were found in.
+ *
+ * <p>Each version of a project is a new document with a higher number than any before it, so adding
+ * to a posting list is always an append. The document a project replaces is only marked deleted, and
+ * the index is compacted once deleted documents outnumber live ones.</p>
+ *
+ * <p>The index is built by {@link #load(Path)}, from a snapshot file when there is one. After that,
+ * committed changes published through {@link ProjectChanges} mark their projects as pending, and a
+ * background refresh re-indexes just those projects, so results are at most one refresh interval
+ * behind the database.</p>
+ */
+public class ProjectSearchIndex implements ProjectChangeListener, AutoCloseable {
+
+    static final int MAGIC = 0x504D5349; // "PMSI"
+    static final int VERSION = 1;
+
+    private static final int NULL_DATE = Integer.MIN_VALUE;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SELECT_COLUMNS = "SELECT PoisePMS.Project_num, PoisePMS.Project_name, "
+            + "PoisePMS.Building_type, PoisePMS.Physical_address, PoisePMS.ERF_num, PoisePMS.Project_deadline, "
+            + "Customer.Customer_name, Architect.Architect_name, Contractor.Contractor_name "
+            + "FROM PoisePMS "
+            + "LEFT JOIN Customer ON PoisePMS.Customer_id = Customer.Customer_id "
+            + "LEFT JOIN Architect ON PoisePMS.Architect_id = Architect.Architect_id "
+            + "LEFT JOIN Contractor ON PoisePMS.Contractor_id = Contractor.Contractor_id";
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int REFRESH_CHUNK_SIZE = InList.CHUNK_SIZE;
+
+    // Rows indexed per write lock while building, so searches are not held up for the whole build
+    private static final int BUILD_BATCH_SIZE = 1000;
+
+    // Compaction waits until at least this many documents are deleted
+    private static final int MIN_DELETED_TO_COMPACT = 10_000;
+
+    // A word typed matches at most this many terms; a word that is itself a term always matches it
+    private static final int MAX_PREFIX_TERMS = 256;
+
+    // A word that is only a prefix of a term counts this much of a whole-word match
+    private static final float PREFIX_MATCH_FACTOR = 0.5f;
+
+    // Weight of a term in each field, added up per document and capped at 255
+    private static final int WEIGHT_NAME = 4;
+    private static final int WEIGHT_NUMBER = 4;
+    private static final int WEIGHT_ADDRESS = 2;
+    private static final int WEIGHT_PERSON = 2;
+    private static final int WEIGHT_BUILDING_TYPE = 1;
+
+    private final ConnectionPool pool;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final PendingRefresh pending = new PendingRefresh("project-search-refresh");
+    private volatile boolean verifyPending;
+
+    // One entry per document, all guarded by lock; a project's latest document is in docByProjectNum
+    private int docCount;
+    private ProjectSummary[] docProjects = new ProjectSummary[0];
+    private long[] docHashes = new long[0];
+    private final BitSet deletedDocs = new BitSet();
+    private int deletedCount;
+    private final Map<Integer, Integer> docByProjectNum = new HashMap<>();
+    private NavigableMap<String, PostingList> postings = new TreeMap<>();
+
+    /**
+     * Creates an empty index. Call {@link #load(Path)} to fill it.
+     *
+     * @param pool The connection pool to load from.
+     */
+    public ProjectSearchIndex(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Starts listening for changes and fills the index. If the snapshot file can be read the index is
+     * loaded from it and searchable straight away, and the first background refresh checks every
+     * project against the database; otherwise the index is built from the database now.
+     *
+     * @param snapshotFile A file written by {@link #saveSnapshot(Path)}, or null to always build.
+     * @return true if the index was loaded from the snapshot.
+     * @throws SQLException If a database error occurs while building.
+     */
+    public synchronized boolean load(Path snapshotFile) throws SQLException {
+        ProjectChanges.addListener(this);
+
+        if (snapshotFile != null) {
+            try {
+                readSnapshot(snapshotFile);
+                verifyPending = true;
+                return true;
+            } catch (NoSuchFileException e) {
+                // First start, nothing to load
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable search snapshot " + snapshotFile + ": " + e.getMessage());
+            }
+        }
+        verify();
+        return false;
+    }
+
+    /**
+     * Re-indexes pending projects at a fixed interval until {@link #close()} is called. The first run
+     * also checks an index loaded from a snapshot against the database.
+     *
+     * @param intervalMillis The time between refreshes.
+     */
+    public void startRefreshing(long intervalMillis) {
+        pending.start(0, intervalMillis, () -> {
+            if (verifyPending) {
+                verify();
+            }
+            refresh();
+        });
+    }
+
+    @Override
+    public void close() {
+        ProjectChanges.removeListener(this);
+        pending.close();
+    }
+
+    @Override
+    public void onChange(ProjectChange change) {
+        if (!change.isPersonChange()) {
+            pending.mark("PoisePMS", change.projectNum());
+        } else if (change.type() == ProjectChange.Type.PERSON_UPDATED) {
+            // A person can be shared, so every project of theirs is looked up on refresh
+            pending.mark(change.personTable(), change.personId());
+        }
+    }
+
+    // ================= Building ================= //
+
+    /**
+     * Reads every project and re-indexes those whose indexed text differs from the index, removing
+     * projects that no longer exist. On an empty index this builds it.
+     *
+     * @return The number of projects re-indexed.
+     * @throws SQLException If a database error occurs. The index stays searchable, partly checked.
+     */
+    public synchronized int verify() throws SQLException {
+        Set<Integer> seen = new HashSet<>();
+        List<Object[]> batch = new ArrayList<>(BUILD_BATCH_SIZE);
+        int indexed = 0;
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement selectStatement = connection.prepareStatement(SELECT_COLUMNS,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            selectStatement.setFetchSize(FETCH_SIZE);
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    Object[] row = readRow(resultSet);
+                    seen.add((Integer) row[0]);
+                    batch.add(row);
+                    if (batch.size() == BUILD_BATCH_SIZE) {
+                        indexed += indexRows(batch);
+                        batch.clear();
+                    }
+                }
+            }
+        }
+        indexed += indexRows(batch);
+
+        lock.writeLock().lock();
+        try {
+            for (int projectNum : new ArrayList<>(docByProjectNum.keySet())) {
+                if (!seen.contains(projectNum)) {
+                    removeProject(projectNum);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        verifyPending = false;
+        return indexed;
+    }
+
+    /**
+     * Re-indexes the projects changed since the last refresh, and every project of a changed person,
+     * removing those that no longer exist.
+     *
+     * @return The number of projects re-read.
+     * @throws SQLException If a database error occurs. The projects stay pending.
+     */
+    public synchronized int refresh() throws SQLException {
+        for (String table : Person.TABLES) {
+            pending.drain(table, REFRESH_CHUNK_SIZE, personIds ->
+                    findProjectsOf(table, personIds).forEach(projectNum -> pending.mark("PoisePMS", projectNum)));
+        }
+        return pending.drain("PoisePMS", REFRESH_CHUNK_SIZE, this::refreshChunk);
+    }
+
+    private List<Integer> findProjectsOf(String table, List<Integer> personIds) throws SQLException {
+        List<Integer> projectNums = new ArrayList<>();
+        String sql = "SELECT Project_num FROM PoisePMS WHERE " + table + "_id IN (%s)";
+        try (Connection connection = pool.getConnection()) {
+            for (int start = 0; start < personIds.size(); start += REFRESH_CHUNK_SIZE) {
+                List<Integer> chunk = personIds.subList(start, Math.min(personIds.size(), start + REFRESH_CHUNK_SIZE));
+                try (PreparedStatement selectStatement = InList.prepare(connection, sql, chunk);
+                     ResultSet resultSet = selectStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        projectNums.add(resultSet.getInt(1));
+                    }
+                }
+            }
+        }
+        return projectNums;
+    }
+
+    private void refreshChunk(List<Integer> projectNums) throws SQLException {
+        String sql = SELECT_COLUMNS + " WHERE PoisePMS.Project_num IN (%s)";
+
+        List<Object[]> rows = new ArrayList<>(projectNums.size());
+        try (Connection connection = pool.getConnection();
+             PreparedStatement selectStatement = InList.prepare(connection, sql, projectNums)) {
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    rows.add(readRow(resultSet));
+                }
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            Set<Integer> missing = new HashSet<>(projectNums);
+            for (Object[] row : rows) {
+                missing.remove((Integer) row[0]);
+            }
+            indexRows(rows);
+            missing.forEach(this::removeProject);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the indexed columns at the cursor: project number, name, building type, address, ERF
+     * number, deadline, then the customer, architect and contractor names.
+     */
+    private static Object[] readRow(ResultSet resultSet) throws SQLException {
+        Date deadline = resultSet.getDate(6);
+        int erfNum = resultSet.getInt(5);
+        return new Object[]{
+                resultSet.getInt(1), resultSet.getString(2), resultSet.getString(3), resultSet.getString(4),
+                resultSet.wasNull() ? null : erfNum, deadline == null ? null : deadline.toLocalDate(),
+                resultSet.getString(7), resultSet.getString(8), resultSet.getString(9)
+        };
+    }
+
+    /**
+     * Indexes each row as a new document unless the project's current document has the same text.
+     *
+     * @return The number of rows indexed.
+     */
+    private int indexRows(List<Object[]> rows) {
+        int indexed = 0;
+        lock.writeLock().lock();
+        try {
+            for (Object[] row : rows) {
+                int projectNum = (Integer) row[0];
+                long hash = hash(row);
+                Integer doc = docByProjectNum.get(projectNum);
+                if (doc != null && docHashes[doc] == hash) {
+                    continue;
+                }
+                removeProject(projectNum);
+                addDocument(row, hash);
+                indexed++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return indexed;
+    }
+
+    private void addDocument(Object[] row, long hash) {
+        int projectNum = (Integer) row[0];
+        Map<String, Integer> weights = new HashMap<>();
+        addTerms(weights, String.valueOf(projectNum), WEIGHT_NUMBER);
+        addTerms(weights, (String) row[1], WEIGHT_NAME);
+        addTerms(weights, (String) row[2], WEIGHT_BUILDING_TYPE);
+        addTerms(weights, (String) row[3], WEIGHT_ADDRESS);
+        addTerms(weights, row[4] == null ? null : String.valueOf(row[4]), WEIGHT_NUMBER);
+        for (int column = 6; column <= 8; column++) {
+            addTerms(weights, (String) row[column], WEIGHT_PERSON);
+        }
+
+        int doc = docCount++;
+        if (doc == docProjects.length) {
+            int capacity = Math.max(1024, doc * 2);
+            docProjects = Arrays.copyOf(docProjects, capacity);
+            docHashes = Arrays.copyOf(docHashes, capacity);
+        }
+        docProjects[doc] = new ProjectSummary(projectNum, (String) row[1], (LocalDate) row[5]);
+        docHashes[doc] = hash;
+        docByProjectNum.put(projectNum, doc);
+        for (Map.Entry<String, Integer> term : weights.entrySet()) {
+            postings.computeIfAbsent(term.getKey(), key -> new PostingList()).add(doc, Math.min(255, term.getValue()));
+        }
+    }
+
+    private static void addTerms(Map<String, Integer> weights, String text, int weight) {
+        for (String term : PersonDirectory.nameWords(text)) {
+            weights.merge(term, weight, Integer::sum);
+        }
+    }
+
+    private void removeProject(int projectNum) {
+        Integer doc = docByProjectNum.remove(projectNum);
+        if (doc != null) {
+            deletedDocs.set(doc);
+            deletedCount++;
+        }
+    }
+
+    /**
+     * FNV-1a over the indexed columns, so an unchanged project is not indexed again.
+     */
+    private static long hash(Object[] row) {
+        long hash = 0xcbf29ce484222325L;
+        for (Object value : row) {
+            String text = value == null ? "\0" : value.toString();
+            for (int i = 0; i < text.length(); i++) {
+                hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+            }
+            hash = (hash ^ 0x1F) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Rewrites the posting lists without deleted documents once they outnumber live ones. Called
+     * holding the write lock.
+     */
+    private void compactIfNeeded() {
+        if (deletedCount >= MIN_DELETED_TO_COMPACT && deletedCount > docByProjectNum.size()) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        int[] newDocs = new int[docCount];
+        int live = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            newDocs[doc] = deletedDocs.get(doc) ? -1 : live++;
+        }
+
+        ProjectSummary[] projects = new ProjectSummary[Math.max(1024, live)];
+        long[] hashes = new long[projects.length];
+        for (int doc = 0; doc < docCount; doc++) {
+            if (newDocs[doc] >= 0) {
+                projects[newDocs[doc]] = docProjects[doc];
+                hashes[newDocs[doc]] = docHashes[doc];
+            }
+        }
+
+        NavigableMap<String, PostingList> compacted = new TreeMap<>();
+        for (Map.Entry<String, PostingList> term : postings.entrySet()) {
+            PostingList list = new PostingList();
+            PostingList.Cursor cursor = term.getValue().cursor();
+            while (cursor.next()) {
+                if (newDocs[cursor.doc] >= 0) {
+                    list.add(newDocs[cursor.doc], cursor.weight);
+                }
+            }
+            if (list.count > 0) {
+                compacted.put(term.getKey(), list);
+            }
+        }
+
+        docProjects = projects;
+        docHashes = hashes;
+        docCount = live;
+        postings = compacted;
+        deletedDocs.clear();
+        deletedCount = 0;
+        docByProjectNum.replaceAll((projectNum, doc) -> newDocs[doc]);
+    }
+
+    // ================= Search ================= //
+
+    /**
+     * Finds the projects matching every word of the query, best match first. A word matches a term it
+     * is a prefix of, so "main st" finds "Main Street". Whole-word matches, matches in the project name
+     * or number, and rare terms rank higher; equal scores are ordered by project number.
+     *
+     * @param query The words to look for.
+     * @param limit The maximum number of projects returned.
+     * @return The best matching projects.
+     */
+    public List<ProjectSummary> search(String query, int limit) {
+        List<String> words = new ArrayList<>(new LinkedHashSet<>(PersonDirectory.nameWords(query)));
+        if (words.isEmpty() || limit < 1) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            int liveDocs = docByProjectNum.size();
+            Map<String, NavigableMap<String, PostingList>> matches = new HashMap<>();
+            for (String word : words) {
+                NavigableMap<String, PostingList> terms = postings.subMap(word, true, word + Character.MAX_VALUE, false);
+                if (terms.isEmpty()) {
+                    return new ArrayList<>();
+                }
+                matches.put(word, terms);
+            }
+            // Start with the word that matches the fewest documents, so later words only check candidates
+            words.sort((a, b) -> Long.compare(postingCount(matches.get(a)), postingCount(matches.get(b))));
+
+            Map<Integer, Float> scores = null;
+            for (String word : words) {
+                Map<Integer, Float> wordScores = new HashMap<>();
+                int expanded = 0;
+                for (Map.Entry<String, PostingList> term : matches.get(word).entrySet()) {
+                    if (expanded++ == MAX_PREFIX_TERMS) {
+                        break;
+                    }
+                    PostingList list = term.getValue();
+                    float idf = (float) Math.log(1 + (double) liveDocs / list.count);
+                    float factor = term.getKey().equals(word) ? 1 : PREFIX_MATCH_FACTOR;
+
+                    PostingList.Cursor cursor = list.cursor();
+                    while (cursor.next()) {
+                        int doc = cursor.doc;
+                        if (deletedDocs.get(doc) || (scores != null && !scores.containsKey(doc))) {
+                            continue;
+                        }
+                        wordScores.merge(doc, cursor.weight * idf * factor, Math::max);
+                    }
+                }
+
+                if (scores != null) {
+                    for (Map.Entry<Integer, Float> entry : wordScores.entrySet()) {
+                        entry.setValue(entry.getValue() + scores.get(entry.getKey()));
+                    }
+                }
+                scores = wordScores;
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+
+            return topK(scores, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long postingCount(NavigableMap<String, PostingList> terms) {
+        long count = 0;
+        int expanded = 0;
+        for (PostingList list : terms.values()) {
+            if (expanded++ == MAX_PREFIX_TERMS) {
+                break;
+            }
+            count += list.count;
+        }
+        return count;
+    }
+
+    /**
+     * Picks the best scores with a heap of the limit's size. Called holding the read lock.
+     */
+    private List<ProjectSummary> topK(Map<Integer, Float> scores, int limit) {
+        // The worst of the best so far is at the head
+        PriorityQueue<Map.Entry<Integer, Float>> best = new PriorityQueue<>(limit + 1, (a, b) -> {
+            int byScore = Float.compare(a.getValue(), b.getValue());
+            return byScore != 0 ? byScore
+                    : Integer.compare(docProjects[b.getKey()].projectNum(), docProjects[a.getKey()].projectNum());
+        });
+        for (Map.Entry<Integer, Float> entry : scores.entrySet()) {
+            best.add(entry);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        ProjectSummary[] ranked = new ProjectSummary[best.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = docProjects[best.poll().getKey()];
+        }
+        return new ArrayList<>(Arrays.asList(ranked));
+    }
+
+    // ================= Snapshot ================= //
+
+    /**
+     * Writes the index to a file, compacting it first, so the next start can load it instead of
+     * building it. The file is written under a temporary name and then moved into place.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void saveSnapshot(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        lock.writeLock().lock();
+        try {
+            if (deletedCount > 0) {
+                compact();
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(docCount);
+                for (int doc = 0; doc < docCount; doc++) {
+                    ProjectSummary project = docProjects[doc];
+                    out.writeInt(project.projectNum());
+                    out.writeBoolean(project.projectName() != null);
+                    if (project.projectName() != null) {
+                        out.writeUTF(project.projectName());
+                    }
+                    out.writeInt(project.projectDeadline() == null ? NULL_DATE : (int) project.projectDeadline().toEpochDay());
+                    out.writeLong(docHashes[doc]);
+                }
+                out.writeInt(postings.size());
+                for (Map.Entry<String, PostingList> term : postings.entrySet()) {
+                    PostingList list = term.getValue();
+                    out.writeUTF(term.getKey());
+                    out.writeInt(list.count);
+                    out.writeInt(list.lastDoc);
+                    out.writeInt(list.length);
+                    out.write(list.bytes, 0, list.length);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void readSnapshot(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a search snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+
+            int count = in.readInt();
+            ProjectSummary[] projects = new ProjectSummary[Math.max(1024, count)];
+            long[] hashes = new long[projects.length];
+            Map<Integer, Integer> docs = new HashMap<>();
+            for (int doc = 0; doc < count; doc++) {
+                int projectNum = in.readInt();
+                String projectName = in.readBoolean() ? in.readUTF() : null;
+                int deadline = in.readInt();
+                projects[doc] = new ProjectSummary(projectNum, projectName,
+                        deadline == NULL_DATE ? null : LocalDate.ofEpochDay(deadline));
+                hashes[doc] = in.readLong();
+                docs.put(projectNum, doc);
+            }
+
+            NavigableMap<String, PostingList> terms = new TreeMap<>();
+            int termCount = in.readInt();
+            for (int i = 0; i < termCount; i++) {
+                String term = in.readUTF();
+                PostingList list = new PostingList();
+                list.count = in.readInt();
+                list.lastDoc = in.readInt();
+                list.length = in.readInt();
+                list.bytes = new byte[list.length];
+                in.readFully(list.bytes);
+                terms.put(term, list);
+            }
+
+            lock.writeLock().lock();
+            try {
+                docProjects = projects;
+                docHashes = hashes;
+                docCount = count;
+                deletedDocs.clear();
+                deletedCount = 0;
+                docByProjectNum.clear();
+                docByProjectNum.putAll(docs);
+                postings = terms;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // ================= Statistics ================= //
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docByProjectNum.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public String toString() {
+        lock.readLock().lock();
+        try {
+            long postingBytes = 0;
+            for (PostingList list : postings.values()) {
+                postingBytes += list.length;
+            }
+            return "ProjectSearchIndex[projects=" + docByProjectNum.size() + ", deleted=" + deletedCount
+                    + ", terms=" + postings.size() + ", postingBytes=" + postingBytes
+                    + ", pending=" + getPendingCount() + "]";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The documents containing one term in increasing order, each stored as the variable-length gap
+     * from the previous document followed by a one-byte weight. Guarded by the index's lock.
+     */
+    private static final class PostingList {
+        byte[] bytes = new byte[8];
+        int length;
+        int count;
+        int lastDoc = -1;
+
+        void add(int doc, int weight) {
+            // At most five bytes of gap and one of weight
+            if (length + 6 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 6));
+            }
+            // Seven bits per byte, high bit set on all but the last
+            int gap = doc - lastDoc;
+            while (gap >= 0x80) {
+                bytes[length++] = (byte) (gap | 0x80);
+                gap >>>= 7;
+            }
+            bytes[length++] = (byte) gap;
+            bytes[length++] = (byte) weight;
+            lastDoc = doc;
+            count++;
+        }
+
+        Cursor cursor() {
+            return new Cursor(this);
+        }
+
+        /**
+         * Decodes a posting list one document at a time.
+         */
+        static final class Cursor {
+            private final PostingList list;
+            private int position;
+            int doc = -1;
+            int weight;
+
+            Cursor(PostingList list) {
+                this.list = list;
+            }
+
+            boolean next() {
+                if (position == list.length) {
+                    return false;
+                }
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = list.bytes[position++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += gap;
+                weight = list.bytes[position++] & 0xFF;
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,325 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * This class is the programmatic interface to the project management system. It does no console
+ * input or output, so it can be called from jobs and from several threads at once; each call borrows
+ * its own connection from the pool. The batch methods handle a whole list in one transaction.
+ */
+public class ProjectService {
+
+    private final ConnectionPool pool;
+    private volatile DeadlineTracker deadlineTracker;
+    private volatile PersonDirectory personDirectory;
+    private volatile ProjectSearchIndex searchIndex;
+    private volatile ReplicaRouter replicaRouter;
+    private volatile ProjectSnapshotStore snapshotStore;
+    private volatile int pageSize = ProjectInfoFetcher.DEFAULT_PAGE_SIZE;
+    private volatile int fetchSize = ProjectInfoFetcher.DEFAULT_FETCH_SIZE;
+
+    /**
+     * Creates a project service.
+     *
+     * @param pool The connection pool every operation borrows from.
+     */
+    public ProjectService(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the tracker overdue listings are answered from. Without one they are queried from the database.
+     */
+    public void setDeadlineTracker(DeadlineTracker deadlineTracker) {
+        this.deadlineTracker = deadlineTracker;
+    }
+
+    public DeadlineTracker getDeadlineTracker() {
+        return deadlineTracker;
+    }
+
+    /**
+     * Sets the directory new people are matched against, so adding a project links someone already
+     * on file instead of inserting them again. Without one every new person is inserted.
+     */
+    public void setPersonDirectory(PersonDirectory personDirectory) {
+        this.personDirectory = personDirectory;
+    }
+
+    public PersonDirectory getPersonDirectory() {
+        return personDirectory;
+    }
+
+    /**
+     * Sets the index project searches are answered from. Without one, searching is not available.
+     */
+    public void setSearchIndex(ProjectSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    public ProjectSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Sets the router fetches and listings are read through, so they can go to read replicas.
+     * Without one every read goes to the pool. Writes always go to the pool, which must be the primary.
+     */
+    public void setReplicaRouter(ReplicaRouter replicaRouter) {
+        this.replicaRouter = replicaRouter;
+    }
+
+    public ReplicaRouter getReplicaRouter() {
+        return replicaRouter;
+    }
+
+    /**
+     * Sets the store project lookups are answered from first. Lookups it cannot answer, and every
+     * lookup without one, go to the project cache and the database.
+     */
+    public void setSnapshotStore(ProjectSnapshotStore snapshotStore) {
+        this.snapshotStore = snapshotStore;
+    }
+
+    public ProjectSnapshotStore getSnapshotStore() {
+        return snapshotStore;
+    }
+
+    /**
+     * Sets how many rows listings read per query and per driver round trip. Takes effect for listings started afterwards.
+     *
+     * @param pageSize  The number of rows read per query.
+     * @param fetchSize The JDBC fetch size.
+     */
+    public void setListingSizes(int pageSize, int fetchSize) {
+        if (pageSize < 1 || fetchSize < 1) {
+            throw new IllegalArgumentException("Page and fetch size must be at least 1");
+        }
+        this.pageSize = pageSize;
+        this.fetchSize = fetchSize;
+    }
+
+    // ================= Find ================= //
+
+    /**
+     * Finds a project with its customer, architect and contractor.
+     *
+     * @param projectNum The project number.
+     * @return The project, or null if it does not exist.
+     * @throws SQLException If a database error occurs.
+     */
+    public ProjectDetails findProject(int projectNum) throws SQLException {
+        ProjectSnapshotStore store = snapshotStore;
+        if (store != null) {
+            ProjectDetails details = store.findProject(projectNum);
+            if (details != null) {
+                return details;
+            }
+        }
+        ReplicaRouter router = replicaRouter;
+        if (router != null) {
+            return ProjectInfoFetcher.findProject(router, projectNum);
+        }
+        return ProjectInfoFetcher.findProject(pool, projectNum);
+    }
+
+    /**
+     * Rebuilds a project and its people as they were at a given time from the audit log.
+     *
+     * @param projectNum The project number.
+     * @param at         The time.
+     * @return The project and people columns by name, or null if the project did not exist then.
+     * @throws SQLException          If a database error occurs.
+     * @throws IOException           If the audit log cannot be read.
+     * @throws IllegalStateException If no audit log is installed.
+     */
+    public Map<String, String> findProjectAsOf(int projectNum, Instant at) throws SQLException, IOException {
+        AuditLog log = AuditLog.current();
+        if (log == null) {
+            throw new IllegalStateException("Audit log is not enabled");
+        }
+        return log.reconstruct(pool, projectNum, at);
+    }
+
+    /**
+     * Finds several projects.
+     *
+     * @param projectNums The project numbers.
+     * @return The projects that exist, in the order given.
+     * @throws SQLException If a database error occurs.
+     */
+    public List<ProjectDetails> findProjects(List<Integer> projectNums) throws SQLException {
+        List<ProjectDetails> found = new ArrayList<>(projectNums.size());
+        for (int projectNum : projectNums) {
+            ProjectDetails details = findProject(projectNum);
+            if (details != null) {
+                found.add(details);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Streams projects that are not finalized. The stream must be closed.
+     *
+     * @return The incomplete projects in project number order.
+     */
+    public Stream<ProjectSummary> incompleteProjects() {
+        ReplicaRouter router = replicaRouter;
+        if (router != null) {
+            return ProjectInfoFetcher.streamIncompleteProjects(router, pageSize, fetchSize);
+        }
+        return ProjectInfoFetcher.streamIncompleteProjects(pool, pageSize, fetchSize);
+    }
+
+    /**
+     * Streams projects that are not finalized and have a deadline before the given date, earliest deadline
+     * first. The stream must be closed. With a deadline tracker set, the projects come from memory.
+     *
+     * @param today The date deadlines are compared against.
+     * @return The overdue projects.
+     */
+    public Stream<ProjectSummary> overdueProjects(LocalDate today) {
+        DeadlineTracker tracker = deadlineTracker;
+        if (tracker != null) {
+            return tracker.overdue(today);
+        }
+        ReplicaRouter router = replicaRouter;
+        if (router != null) {
+            return ProjectInfoFetcher.streamOverdueProjects(router, today, pageSize, fetchSize);
+        }
+        return ProjectInfoFetcher.streamOverdueProjects(pool, today, pageSize, fetchSize);
+    }
+
+    /**
+     * Finds projects by words of their name, address, building type, ERF number or people's names.
+     *
+     * @param query The words to look for; each may be the start of a word.
+     * @param limit The maximum number of projects returned.
+     * @return The best matching projects, best first.
+     * @throws IllegalStateException If no search index is set.
+     */
+    public List<ProjectSummary> searchProjects(String query, int limit) {
+        ProjectSearchIndex index = searchIndex;
+        if (index == null) {
+            throw new IllegalStateException("Search index is not loaded");
+        }
+        return index.search(query, limit);
+    }
+
+    // ================= Add ================= //
+
+    /**
+     * Adds a project. People with id 0 are inserted, others must already exist. With a person
+     * directory set, a person with id 0 who matches someone on file is linked to them instead.
+     *
+     * @param details The project and its people.
+     * @return The project as stored, with the ids of any people that were inserted or matched.
+     * @throws SQLException If a database error occurs.
+     */
+    public ProjectDetails addProject(ProjectDetails details) throws SQLException {
+        return addProjects(List.of(details)).get(0);
+    }
+
+    public List<ProjectDetails> addProjects(List<ProjectDetails> detailsList) throws SQLException {
+        PersonDirectory directory = personDirectory;
+        if (directory != null) {
+            detailsList = directory.resolveNewPeople(detailsList);
+        }
+        return ProjectInfoAdd.addProjects(pool, detailsList);
+    }
+
+    // ================= Edit ================= //
+
+    /**
+     * Updates the project columns of a project.
+     *
+     * @param project The project with its new values.
+     * @return true if the project was updated, false if it does not exist.
+     * @throws SQLException If a database error occurs.
+     */
+    public boolean updateProject(Project project) throws SQLException {
+        return ProjectInfoEditor.updateProject(pool, project);
+    }
+
+    public int updateProjects(List<Project> projects) throws SQLException {
+        return ProjectInfoEditor.updateProjects(pool, projects);
+    }
+
+    /**
+     * Applies the changed fields of a project and its people in one transaction, writing only what changed.
+     *
+     * @param edit The changes.
+     * @return The ids of any people inserted, by table name, or null if the project does not exist.
+     * @throws SQLException If a database error occurs.
+     */
+    public Map<String, Integer> editProject(ProjectEdit edit) throws SQLException {
+        return ProjectInfoEditor.applyEdit(pool, edit);
+    }
+
+    /**
+     * Updates a project's existing customer, architect or contractor.
+     *
+     * @param projectNum The project the person belongs to.
+     * @param tableName  "Customer", "Architect" or "Contractor".
+     * @param person     The person with their id and new values.
+     * @return true if the person was updated, false if they do not exist.
+     * @throws SQLException If a database error occurs.
+     */
+    public boolean updatePerson(int projectNum, String tableName, Person person) throws SQLException {
+        return ProjectInfoEditor.updatePerson(pool, projectNum, tableName, person);
+    }
+
+    /**
+     * Inserts a new customer, architect or contractor and assigns them to a project.
+     *
+     * @param projectNum The project.
+     * @param tableName  "Customer", "Architect" or "Contractor".
+     * @param person     The new person.
+     * @return The id of the new person, or 0 if the project does not exist.
+     * @throws SQLException If a database error occurs.
+     */
+    public int assignNewPerson(int projectNum, String tableName, Person person) throws SQLException {
+        return ProjectInfoEditor.assignNewPerson(pool, projectNum, tableName, person);
+    }
+
+    // ================= Finalize ================= //
+
+    public FinalizeProject.Outcome finalizeProject(int projectNum) throws SQLException {
+        return FinalizeProject.finalizeProject(pool, projectNum);
+    }
+
+    public Map<Integer, FinalizeProject.Outcome> finalizeProjects(List<Integer> projectNums) throws SQLException {
+        return FinalizeProject.finalizeProjects(pool, projectNums);
+    }
+
+    // ================= Delete ================= //
+
+    public boolean deleteProject(int projectNum) throws SQLException {
+        return ProjectInfoDelete.deleteProject(pool, projectNum);
+    }
+
+    public int deleteProjects(List<Integer> projectNums) throws SQLException {
+        return ProjectInfoDelete.deleteProjects(pool, projectNums);
+    }
+
+    /**
+     * Deletes a large number of projects, committing a chunk at a time.
+     *
+     * @param projectNums The project numbers.
+     * @return The number of projects deleted.
+     * @throws SQLException If a database error occurs. The chunks committed before it stay deleted.
+     */
+    public int purgeProjects(List<Integer> projectNums) throws SQLException {
+        return ProjectInfoDelete.purgeProjects(pool, projectNums, InList.CHUNK_SIZE);
+    }
+}
@@ -0,0 +1,812 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps a copy of the PoisePMS table and the three person tables in a memory-mapped file,
+ * so a freshly started process can answer project lookups without going to the database. Rows are
+ * stored as fixed-width records sorted by their key and found by binary search, and their text is
+ * kept in a string heap after the records. None of it is on the Java heap: the operating system pages
+ * the file in as it is read and can drop it again under memory pressure, so millions of rows cost
+ * the heap nothing.
+ *
+ * <p>The file may be older than the database. Once mapped, lookups are answered from it straight
+ * away, and the first background refresh streams every table in key order and compares it with the
+ * file; the rows that differ are kept on the heap as a delta over the file. Committed changes
+ * published through {@link ProjectChanges} mark their rows as changed, and a changed row is not
+ * answered from the store until the next refresh has read it again. When the delta grows past its
+ * limit the file is rewritten with the delta merged in and mapped again.</p>
+ *
+ * <p>Records are big-endian. The file starts with a header of the magic number, version, the time
+ * it was written, the row count of each table and the length of the string heap. Strings are
+ * referred to by their offset in the heap, which holds each as a length followed by its UTF-8
+ * bytes; a string never crosses a {@value #HEAP_SEGMENT_BYTES}-byte boundary, so the heap can be
+ * mapped in segments. The records of each table are mapped in segments of whole records too, so no
+ * table is limited to what one mapping can address.</p>
+ */
+public class ProjectSnapshotStore implements ProjectChangeListener, AutoCloseable {
+
+    static final int MAGIC = 0x504D5353; // "PMSS"
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 3 * 4 + 8;
+
+    // Number, name, building type, address, ERF number, fee, paid, deadline, three person ids, finalized, completion
+    private static final int PROJECT_BYTES = 4 + 3 * 8 + 4 + 4 + 4 + 4 + 3 * 4 + 1 + 4;
+
+    // Id, name, cell number, email, address
+    private static final int PERSON_BYTES = 4 + 4 * 8;
+
+    private static final int HEAP_SEGMENT_BYTES = 1 << 30;
+    private static final int NULL_DATE = Integer.MIN_VALUE;
+    private static final long NULL_STRING = -1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int REFRESH_CHUNK_SIZE = InList.CHUNK_SIZE;
+
+    // Strings remembered while writing, so repeated values such as building types are stored once
+    private static final int MAX_SHARED_STRINGS = 4096;
+
+    // Marks a row deleted since the file was written
+    private static final Project DELETED_PROJECT = new Project(0, null, null, null, 0, 0, 0, null, 0, 0, 0, false, null);
+    private static final Person DELETED_PERSON = new Person(0, null, null, null, null);
+
+    private final ConnectionPool pool;
+    private final Path file;
+    private final int maxDeltaRows;
+    private final long verifyMillis;
+    private final PendingRefresh pending = new PendingRefresh("project-snapshot-refresh");
+    private volatile Snapshot snapshot;
+    private volatile boolean verifyPending;
+    private volatile long verifiedAt;
+
+    // Statistics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long rewriteCount;
+
+    /**
+     * A mapped file and the rows that changed since it was written. A new file gets a new snapshot,
+     * so a reader always sees a file and the delta that belongs to it.
+     */
+    private static final class Snapshot {
+        final long writtenAt;
+        final long fileBytes;
+        final MappedRecords projects;
+        final int projectCount;
+        final MappedRecords[] people = new MappedRecords[Person.TABLES.length];
+        final int[] personCounts = new int[Person.TABLES.length];
+        final ByteBuffer[] heap;
+
+        // Rows changed since the file was written, or a DELETED marker; written only by the refresh
+        final Map<Integer, Project> projectDelta = new ConcurrentHashMap<>();
+        final List<Map<Integer, Person>> personDelta = new ArrayList<>();
+
+        Snapshot(FileChannel channel) throws IOException {
+            fileBytes = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Snapshot is shorter than its header");
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a project snapshot");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            writtenAt = header.getLong();
+            projectCount = header.getInt();
+            long position = HEADER_BYTES + (long) projectCount * PROJECT_BYTES;
+            for (int table = 0; table < personCounts.length; table++) {
+                personCounts[table] = header.getInt();
+                position += (long) personCounts[table] * PERSON_BYTES;
+            }
+            long heapBytes = header.getLong();
+            if (position + heapBytes != fileBytes) {
+                throw new IOException("Snapshot is " + fileBytes + " bytes, expected " + (position + heapBytes));
+            }
+
+            position = HEADER_BYTES;
+            projects = new MappedRecords(channel, position, projectCount, PROJECT_BYTES);
+            position += (long) projectCount * PROJECT_BYTES;
+            for (int table = 0; table < people.length; table++) {
+                people[table] = new MappedRecords(channel, position, personCounts[table], PERSON_BYTES);
+                position += (long) personCounts[table] * PERSON_BYTES;
+                personDelta.add(new ConcurrentHashMap<>());
+            }
+            heap = new ByteBuffer[(int) ((heapBytes + HEAP_SEGMENT_BYTES - 1) / HEAP_SEGMENT_BYTES)];
+            for (int segment = 0; segment < heap.length; segment++) {
+                long size = Math.min(HEAP_SEGMENT_BYTES, heapBytes - (long) segment * HEAP_SEGMENT_BYTES);
+                heap[segment] = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                position += size;
+            }
+        }
+
+        int deltaSize() {
+            int size = projectDelta.size();
+            for (Map<Integer, Person> delta : personDelta) {
+                size += delta.size();
+            }
+            return size;
+        }
+
+        /**
+         * @return The project in the file, or null if it is not there.
+         */
+        Project mappedProject(int projectNum) {
+            int index = projects.find(projectNum);
+            return index < 0 ? null : projectAt(index);
+        }
+
+        Project projectAt(int index) {
+            ByteBuffer segment = projects.segment(index);
+            int offset = projects.offset(index);
+            return new Project(segment.getInt(offset),
+                    string(segment.getLong(offset + 4)),
+                    string(segment.getLong(offset + 12)),
+                    string(segment.getLong(offset + 20)),
+                    segment.getInt(offset + 28),
+                    segment.getInt(offset + 32),
+                    segment.getInt(offset + 36),
+                    date(segment.getInt(offset + 40)),
+                    segment.getInt(offset + 44),
+                    segment.getInt(offset + 48),
+                    segment.getInt(offset + 52),
+                    segment.get(offset + 56) != 0,
+                    date(segment.getInt(offset + 57)));
+        }
+
+        /**
+         * @return The person in the file, or null if they are not there.
+         */
+        Person mappedPerson(int table, int id) {
+            int index = people[table].find(id);
+            return index < 0 ? null : personAt(table, index);
+        }
+
+        Person personAt(int table, int index) {
+            ByteBuffer segment = people[table].segment(index);
+            int offset = people[table].offset(index);
+            return new Person(segment.getInt(offset),
+                    string(segment.getLong(offset + 4)),
+                    string(segment.getLong(offset + 12)),
+                    string(segment.getLong(offset + 20)),
+                    string(segment.getLong(offset + 28)));
+        }
+
+        private String string(long reference) {
+            if (reference == NULL_STRING) {
+                return null;
+            }
+            ByteBuffer segment = heap[(int) (reference / HEAP_SEGMENT_BYTES)];
+            int offset = (int) (reference % HEAP_SEGMENT_BYTES);
+            byte[] bytes = new byte[segment.getInt(offset)];
+            segment.get(offset + 4, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static LocalDate date(int epochDay) {
+            return epochDay == NULL_DATE ? null : LocalDate.ofEpochDay(epochDay);
+        }
+    }
+
+    /**
+     * The fixed-width records of one table, sorted by the int key at their start and mapped in
+     * segments of whole records, so an offset within a segment always fits in an int.
+     */
+    private static final class MappedRecords {
+        final int count;
+        final int recordBytes;
+        final int segmentRecords;
+        final ByteBuffer[] segments;
+
+        MappedRecords(FileChannel channel, long position, int count, int recordBytes) throws IOException {
+            this.count = count;
+            this.recordBytes = recordBytes;
+            this.segmentRecords = HEAP_SEGMENT_BYTES / recordBytes;
+            segments = new ByteBuffer[(count + segmentRecords - 1) / segmentRecords];
+            for (int segment = 0; segment < segments.length; segment++) {
+                long size = (long) Math.min(segmentRecords, count - segment * segmentRecords) * recordBytes;
+                segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                position += size;
+            }
+        }
+
+        ByteBuffer segment(int index) {
+            return segments[index / segmentRecords];
+        }
+
+        int offset(int index) {
+            return index % segmentRecords * recordBytes;
+        }
+
+        int key(int index) {
+            return segment(index).getInt(offset(index));
+        }
+
+        /**
+         * Binary searches the records by key.
+         *
+         * @return The index of the record, or -1 if there is none with the key.
+         */
+        int find(int key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midKey = key(mid);
+                if (midKey < key) {
+                    low = mid + 1;
+                } else if (midKey > key) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Creates a store. It answers nothing until {@link #load()} has mapped the file or the first
+     * refresh has built it.
+     *
+     * @param pool         The connection pool to read the tables from.
+     * @param file         The snapshot file.
+     * @param maxDeltaRows The number of changed rows kept on the heap before the file is rewritten.
+     * @param verifyMillis How often the store is checked against the database again, for changes made
+     *                     by other instances or by hand that no change event announced; 0 only once.
+     */
+    public ProjectSnapshotStore(ConnectionPool pool, Path file, int maxDeltaRows, long verifyMillis) {
+        this.pool = pool;
+        this.file = file;
+        this.maxDeltaRows = maxDeltaRows;
+        this.verifyMillis = verifyMillis;
+    }
+
+    /**
+     * Starts listening for changes and maps the snapshot file if there is a readable one, so lookups
+     * are answered from it straight away. The first refresh then checks it against the database, or
+     * builds the file if it could not be mapped.
+     *
+     * @return true if the file was mapped.
+     */
+    public synchronized boolean load() {
+        ProjectChanges.addListener(this);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            snapshot = new Snapshot(channel);
+            verifyPending = true;
+            return true;
+        } catch (NoSuchFileException e) {
+            return false; // First start, built by the first refresh
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable project snapshot " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Refreshes the store at a fixed interval until {@link #close()} is called. The first run builds
+     * the file if none was mapped, or checks the mapped file against the database, and the check is
+     * repeated every verify interval.
+     *
+     * @param intervalMillis The time between refreshes.
+     */
+    public void startRefreshing(long intervalMillis) {
+        pending.start(0, intervalMillis, () -> {
+            if (snapshot == null) {
+                rebuild();
+            } else if (verifyPending || (verifyMillis > 0 && System.currentTimeMillis() - verifiedAt >= verifyMillis)) {
+                verify();
+            }
+            refresh();
+            if (snapshot != null && snapshot.deltaSize() > maxDeltaRows) {
+                saveSnapshot();
+            }
+        });
+    }
+
+    /**
+     * Stops listening and refreshing. The file stays mapped until the store is no longer referenced.
+     */
+    @Override
+    public void close() {
+        ProjectChanges.removeListener(this);
+        pending.close();
+    }
+
+    @Override
+    public void onChange(ProjectChange change) {
+        if (change.isPersonChange()) {
+            pending.mark(change.personTable(), change.personId());
+        } else {
+            pending.mark("PoisePMS", change.projectNum());
+        }
+    }
+
+    // ================= Reading ================= //
+
+    /**
+     * Finds a project with its customer, architect and contractor in the store.
+     *
+     * @param projectNum The project number.
+     * @return The project, or null if the store cannot answer: the file is not mapped, the project or
+     *         one of its people has changed since the last refresh, or the project is not in the store.
+     */
+    public ProjectDetails findProject(int projectNum) {
+        Snapshot current = snapshot;
+        if (current == null || pending.isPending("PoisePMS", projectNum)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        Project project = current.projectDelta.get(projectNum);
+        if (project == null) {
+            project = current.mappedProject(projectNum);
+        }
+        if (project == null || project == DELETED_PROJECT) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        Person customer = findPerson(current, 0, project.customerId());
+        Person architect = findPerson(current, 1, project.architectId());
+        Person contractor = findPerson(current, 2, project.contractorId());
+        if (customer == null || architect == null || contractor == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new ProjectDetails(project, customer, architect, contractor);
+    }
+
+    private Person findPerson(Snapshot current, int table, int id) {
+        if (pending.isPending(Person.TABLES[table], id)) {
+            return null;
+        }
+        Person person = current.personDelta.get(table).get(id);
+        if (person == null) {
+            person = current.mappedPerson(table, id);
+        }
+        return person == DELETED_PERSON ? null : person;
+    }
+
+    // ================= Refreshing ================= //
+
+    /**
+     * Streams every table in key order alongside the mapped file and keeps the rows that differ as
+     * the delta, with rows missing from the database marked deleted. Once the delta would grow past
+     * its limit the comparison stops and the file is rebuilt from the database instead, so a file far
+     * out of date never puts its differences on the heap.
+     *
+     * @return The number of rows found to differ from the file, counting only up to the limit if it was rebuilt.
+     * @throws SQLException If a database error occurs. The check is run again next time.
+     * @throws IOException  If the file had to be rebuilt and could not be written or mapped.
+     */
+    public synchronized int verify() throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        Snapshot current = snapshot;
+        if (current == null) {
+            return 0;
+        }
+        // Past this many differences the file is rebuilt rather than patched
+        int room = Math.max(0, maxDeltaRows - current.deltaSize());
+        int differences = 0;
+        try (Connection connection = pool.getConnection()) {
+            try (PreparedStatement selectStatement = prepareScan(connection, "SELECT * FROM PoisePMS ORDER BY Project_num");
+                 ResultSet resultSet = selectStatement.executeQuery()) {
+                ProjectRowMapper mapper = new ProjectRowMapper(new ColumnIndex(resultSet));
+                int index = 0;
+                while (differences <= room && resultSet.next()) {
+                    Project project = mapper.map(resultSet);
+                    // Every project in the file before this one is gone from the database
+                    while (differences <= room && index < current.projectCount && current.projects.key(index) < project.projectNum()) {
+                        current.projectDelta.put(current.projects.key(index), DELETED_PROJECT);
+                        index++;
+                        differences++;
+                    }
+                    if (index < current.projectCount && current.projects.key(index) == project.projectNum()) {
+                        if (!current.projectAt(index).equals(project)) {
+                            current.projectDelta.put(project.projectNum(), project);
+                            differences++;
+                        }
+                        index++;
+                    } else {
+                        current.projectDelta.put(project.projectNum(), project);
+                        differences++;
+                    }
+                }
+                for (; differences <= room && index < current.projectCount; index++, differences++) {
+                    current.projectDelta.put(current.projects.key(index), DELETED_PROJECT);
+                }
+            }
+
+            for (int table = 0; table < Person.TABLES.length && differences <= room; table++) {
+                String tableName = Person.TABLES[table];
+                Map<Integer, Person> delta = current.personDelta.get(table);
+                MappedRecords records = current.people[table];
+                int count = current.personCounts[table];
+                try (PreparedStatement selectStatement = prepareScan(connection,
+                        "SELECT * FROM " + tableName + " ORDER BY " + tableName + "_id");
+                     ResultSet resultSet = selectStatement.executeQuery()) {
+                    PersonRowMapper mapper = new PersonRowMapper(new ColumnIndex(resultSet), tableName);
+                    int index = 0;
+                    while (differences <= room && resultSet.next()) {
+                        Person person = mapper.map(resultSet);
+                        while (differences <= room && index < count && records.key(index) < person.id()) {
+                            delta.put(records.key(index), DELETED_PERSON);
+                            index++;
+                            differences++;
+                        }
+                        if (index < count && records.key(index) == person.id()) {
+                            if (!current.personAt(table, index).equals(person)) {
+                                delta.put(person.id(), person);
+                                differences++;
+                            }
+                            index++;
+                        } else {
+                            delta.put(person.id(), person);
+                            differences++;
+                        }
+                    }
+                    for (; differences <= room && index < count; index++, differences++) {
+                        delta.put(records.key(index), DELETED_PERSON);
+                    }
+                }
+            }
+        }
+
+        if (differences > room) {
+            // The partial delta belongs to the old snapshot and goes with it
+            rebuild();
+        }
+        verifiedAt = started;
+        verifyPending = false;
+        return differences;
+    }
+
+    /**
+     * Reads the rows changed since the last refresh again and adds them to the delta.
+     *
+     * @return The number of rows read again.
+     * @throws SQLException If a database error occurs. The rows stay changed.
+     */
+    public synchronized int refresh() throws SQLException {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return 0;
+        }
+        int refreshed = pending.drain("PoisePMS", REFRESH_CHUNK_SIZE, projectNums -> {
+            Set<Integer> missing = new HashSet<>(projectNums);
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement selectStatement = InList.prepare(connection,
+                         "SELECT * FROM PoisePMS WHERE Project_num IN (%s)", projectNums);
+                 ResultSet resultSet = selectStatement.executeQuery()) {
+                ProjectRowMapper mapper = new ProjectRowMapper(new ColumnIndex(resultSet));
+                while (resultSet.next()) {
+                    Project project = mapper.map(resultSet);
+                    missing.remove(project.projectNum());
+                    current.projectDelta.put(project.projectNum(), project);
+                }
+            }
+            missing.forEach(projectNum -> current.projectDelta.put(projectNum, DELETED_PROJECT));
+        });
+
+        for (int table = 0; table < Person.TABLES.length; table++) {
+            String tableName = Person.TABLES[table];
+            Map<Integer, Person> delta = current.personDelta.get(table);
+            refreshed += pending.drain(tableName, REFRESH_CHUNK_SIZE, personIds -> {
+                Set<Integer> missing = new HashSet<>(personIds);
+                try (Connection connection = pool.getConnection();
+                     PreparedStatement selectStatement = InList.prepare(connection,
+                             "SELECT * FROM " + tableName + " WHERE " + tableName + "_id IN (%s)", personIds);
+                     ResultSet resultSet = selectStatement.executeQuery()) {
+                    PersonRowMapper mapper = new PersonRowMapper(new ColumnIndex(resultSet), tableName);
+                    while (resultSet.next()) {
+                        Person person = mapper.map(resultSet);
+                        missing.remove(person.id());
+                        delta.put(person.id(), person);
+                    }
+                }
+                missing.forEach(id -> delta.put(id, DELETED_PERSON));
+            });
+        }
+        return refreshed;
+    }
+
+    private static PreparedStatement prepareScan(Connection connection, String sql) throws SQLException {
+        PreparedStatement selectStatement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        selectStatement.setFetchSize(FETCH_SIZE);
+        return selectStatement;
+    }
+
+    // ================= Writing ================= //
+
+    /**
+     * Builds the file from the database and maps it, replacing any delta.
+     *
+     * @throws SQLException If a database error occurs.
+     * @throws IOException  If the file cannot be written or mapped.
+     */
+    public synchronized void rebuild() throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            try (Connection connection = pool.getConnection()) {
+                try (PreparedStatement selectStatement = prepareScan(connection, "SELECT * FROM PoisePMS ORDER BY Project_num");
+                     ResultSet resultSet = selectStatement.executeQuery()) {
+                    ProjectRowMapper mapper = new ProjectRowMapper(new ColumnIndex(resultSet));
+                    while (resultSet.next()) {
+                        writer.writeProject(mapper.map(resultSet));
+                    }
+                }
+                for (int table = 0; table < Person.TABLES.length; table++) {
+                    String tableName = Person.TABLES[table];
+                    try (PreparedStatement selectStatement = prepareScan(connection,
+                            "SELECT * FROM " + tableName + " ORDER BY " + tableName + "_id");
+                         ResultSet resultSet = selectStatement.executeQuery()) {
+                        PersonRowMapper mapper = new PersonRowMapper(new ColumnIndex(resultSet), tableName);
+                        while (resultSet.next()) {
+                            writer.writePerson(table, mapper.map(resultSet));
+                        }
+                    }
+                }
+            }
+            writer.finish();
+        }
+        map();
+        verifiedAt = started;
+    }
+
+    /**
+     * Rewrites the file with the delta merged in and maps it, without reading the database. Rows
+     * changed since the last refresh stay marked and are read again by the next refresh. Builds the
+     * file from the database if none is mapped.
+     *
+     * @throws SQLException If a database error occurs while building.
+     * @throws IOException  If the file cannot be written or mapped.
+     */
+    public synchronized void saveSnapshot() throws SQLException, IOException {
+        Snapshot current = snapshot;
+        if (current == null) {
+            rebuild();
+            return;
+        }
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            // Both the file and the delta are sorted by key, so they are merged in one pass
+            Iterator<Map.Entry<Integer, Project>> projectDelta = new TreeMap<>(current.projectDelta).entrySet().iterator();
+            Map.Entry<Integer, Project> changedProject = projectDelta.hasNext() ? projectDelta.next() : null;
+            for (int index = 0; index < current.projectCount || changedProject != null; ) {
+                int mappedNum = index < current.projectCount ? current.projects.key(index) : Integer.MAX_VALUE;
+                if (changedProject != null && changedProject.getKey() <= mappedNum) {
+                    if (changedProject.getValue() != DELETED_PROJECT) {
+                        writer.writeProject(changedProject.getValue());
+                    }
+                    if (changedProject.getKey() == mappedNum) {
+                        index++;
+                    }
+                    changedProject = projectDelta.hasNext() ? projectDelta.next() : null;
+                } else {
+                    writer.writeProject(current.projectAt(index++));
+                }
+            }
+
+            for (int table = 0; table < Person.TABLES.length; table++) {
+                Iterator<Map.Entry<Integer, Person>> personDelta = new TreeMap<>(current.personDelta.get(table)).entrySet().iterator();
+                Map.Entry<Integer, Person> changedPerson = personDelta.hasNext() ? personDelta.next() : null;
+                int count = current.personCounts[table];
+                for (int index = 0; index < count || changedPerson != null; ) {
+                    int mappedId = index < count ? current.people[table].key(index) : Integer.MAX_VALUE;
+                    if (changedPerson != null && changedPerson.getKey() <= mappedId) {
+                        if (changedPerson.getValue() != DELETED_PERSON) {
+                            writer.writePerson(table, changedPerson.getValue());
+                        }
+                        if (changedPerson.getKey() == mappedId) {
+                            index++;
+                        }
+                        changedPerson = personDelta.hasNext() ? personDelta.next() : null;
+                    } else {
+                        writer.writePerson(table, current.personAt(table, index++));
+                    }
+                }
+            }
+            writer.finish();
+        }
+        map();
+        rewriteCount++;
+    }
+
+    private void map() throws IOException {
+        // The old mapping stays valid for readers still using it, as the file was replaced and not overwritten
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            snapshot = new Snapshot(channel);
+        }
+    }
+
+    /**
+     * Writes the records to a temporary file and the strings to a second one, then appends the
+     * strings, fills in the header and moves the file into place.
+     */
+    private static final class SnapshotWriter implements AutoCloseable {
+        private final Path file;
+        private final Path temporary;
+        private final Path heapFile;
+        private final DataOutputStream records;
+        private final DataOutputStream heap;
+        private final Map<String, Long> sharedStrings = new HashMap<>();
+        private final int[] counts = new int[1 + Person.TABLES.length];
+        private long heapBytes;
+        private int lastKey;
+        private int section;
+        private boolean finished;
+
+        SnapshotWriter(Path file) throws IOException {
+            this.file = file;
+            this.temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            this.heapFile = file.resolveSibling(file.getFileName() + ".heap.tmp");
+            this.records = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE));
+            this.heap = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(heapFile), BUFFER_SIZE));
+            records.write(new byte[HEADER_BYTES]);
+        }
+
+        void writeProject(Project project) throws IOException {
+            checkOrder(0, project.projectNum());
+            records.writeInt(project.projectNum());
+            records.writeLong(string(project.projectName()));
+            records.writeLong(string(project.buildingType()));
+            records.writeLong(string(project.physicalAddress()));
+            records.writeInt(project.erfNum());
+            records.writeInt(project.totalFee());
+            records.writeInt(project.totalPaid());
+            records.writeInt(date(project.projectDeadline()));
+            records.writeInt(project.architectId());
+            records.writeInt(project.contractorId());
+            records.writeInt(project.customerId());
+            records.writeBoolean(project.finalized());
+            records.writeInt(date(project.completionDate()));
+        }
+
+        void writePerson(int table, Person person) throws IOException {
+            checkOrder(1 + table, person.id());
+            records.writeInt(person.id());
+            records.writeLong(string(person.name()));
+            records.writeLong(string(person.cellNum()));
+            records.writeLong(string(person.email()));
+            records.writeLong(string(person.address()));
+        }
+
+        /**
+         * Checks that sections are written in order and keys ascend within each, as the binary search needs.
+         */
+        private void checkOrder(int recordSection, int key) {
+            if (recordSection < section || (recordSection == section && counts[section] > 0 && key <= lastKey)) {
+                throw new IllegalStateException("Snapshot records must be written in key order");
+            }
+            section = recordSection;
+            lastKey = key;
+            counts[section]++;
+        }
+
+        private long string(String value) throws IOException {
+            if (value == null) {
+                return NULL_STRING;
+            }
+            Long shared = sharedStrings.get(value);
+            if (shared != null) {
+                return shared;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            // Start the next segment rather than cross into it
+            long room = HEAP_SEGMENT_BYTES - heapBytes % HEAP_SEGMENT_BYTES;
+            if (room < 4 + bytes.length) {
+                heap.write(new byte[(int) room]);
+                heapBytes += room;
+            }
+            long reference = heapBytes;
+            heap.writeInt(bytes.length);
+            heap.write(bytes);
+            heapBytes += 4 + bytes.length;
+            if (sharedStrings.size() < MAX_SHARED_STRINGS) {
+                sharedStrings.put(value, reference);
+            }
+            return reference;
+        }
+
+        private static int date(LocalDate date) {
+            return date == null ? NULL_DATE : (int) date.toEpochDay();
+        }
+
+        void finish() throws IOException {
+            records.close();
+            heap.close();
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE);
+                 FileChannel in = FileChannel.open(heapFile, StandardOpenOption.READ)) {
+                long position = out.size();
+                for (long copied = 0; copied < heapBytes; ) {
+                    copied += out.transferFrom(in, position + copied, heapBytes - copied);
+                }
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+                for (int count : counts) {
+                    header.putInt(count);
+                }
+                header.putLong(heapBytes).flip();
+                while (header.hasRemaining()) {
+                    out.write(header, header.position());
+                }
+                out.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            records.close();
+            heap.close();
+            Files.deleteIfExists(heapFile);
+            if (!finished) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    // ================= Statistics ================= //
+
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * @return The number of rows changed since the last refresh, which are read from the database until then.
+     */
+    public int getChangedCount() {
+        return pending.size();
+    }
+
+    @Override
+    public String toString() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return "ProjectSnapshotStore[not loaded, misses=" + misses.get() + "]";
+        }
+        int people = 0;
+        for (int count : current.personCounts) {
+            people += count;
+        }
+        return "ProjectSnapshotStore[projects=" + current.projectCount + ", people=" + people
+                + ", mappedBytes=" + current.fileBytes + ", writtenAt=" + Instant.ofEpochMilli(current.writtenAt)
+                + ", delta=" + current.deltaSize() + ", changed=" + getChangedCount()
+                + ", verified=" + !verifyPending + ", rewrites=" + rewriteCount
+                + ", hits=" + hits.get() + ", misses=" + misses.get() + "]";
+    }
+}
@@ -0,0 +1,11 @@
+import java.time.LocalDate;
+
+/**
+ * The columns of a project needed for listings.
+ *
+ * @param projectNum      The project number.
+ * @param projectName     The project name.
+ * @param projectDeadline The project deadline, or null if none is set.
+ */
+public record ProjectSummary(int projectNum, String projectName, LocalDate projectDeadline) {
+}
@@ -0,0 +1,168 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+
+/**
+ * This class wraps a physical connection so that every statement prepared on it reports its
+ * timings, row counts and errors to a {@link QueryStats}. The connection pool applies it below the
+ * statement cache, so a cached statement keeps its wrapper for as long as it is cached.
+ */
+public final class QueryInstrumentation {
+
+    private QueryInstrumentation() {
+    }
+
+    /**
+     * Wraps a connection.
+     *
+     * @param physical The connection to instrument.
+     * @param stats    Where the timings are recorded.
+     * @return A connection that forwards every call to the physical one.
+     */
+    public static Connection wrap(Connection physical, QueryStats stats) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(physical, stats));
+    }
+
+    private static Object forward(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Wraps the prepared statements of the connection and forwards everything else.
+     */
+    private static final class ConnectionHandler implements InvocationHandler {
+        private final Connection physical;
+        private final QueryStats stats;
+
+        ConnectionHandler(Connection physical, QueryStats stats) {
+            this.physical = physical;
+            this.stats = stats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = forward(physical, method, args);
+            if (method.getName().equals("prepareStatement")) {
+                String sql = (String) args[0];
+                return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                        new Class<?>[]{PreparedStatement.class},
+                        new StatementHandler((PreparedStatement) result, stats, stats.template(sql)));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Times the execute methods of a prepared statement and remembers which setter filled each parameter.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final QueryStats stats;
+        private final QueryStats.Template template;
+
+        // The setter of each parameter, by index - 1; method names are interned, so nothing is copied
+        private String[] parameterTypes = new String[8];
+        private int parameterCount;
+        private int batchSize;
+
+        StatementHandler(PreparedStatement statement, QueryStats stats, QueryStats.Template template) {
+            this.statement = statement;
+            this.stats = stats;
+            this.template = template;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!stats.isEnabled()) {
+                return forward(statement, method, args);
+            }
+
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args, name);
+            }
+
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                rememberParameter((Integer) args[0], name);
+            } else if (name.equals("addBatch")) {
+                batchSize++;
+            } else if (name.equals("clearBatch")) {
+                batchSize = 0;
+            } else if (name.equals("clearParameters")) {
+                Arrays.fill(parameterTypes, 0, parameterCount, null);
+                parameterCount = 0;
+            }
+            return forward(statement, method, args);
+        }
+
+        private void rememberParameter(int index, String setter) {
+            if (index < 1) {
+                return;
+            }
+            if (index > parameterTypes.length) {
+                parameterTypes = Arrays.copyOf(parameterTypes, Math.max(index, parameterTypes.length * 2));
+            }
+            parameterTypes[index - 1] = setter;
+            parameterCount = Math.max(parameterCount, index);
+        }
+
+        private Object execute(Method method, Object[] args, String name) throws Throwable {
+            long start = System.nanoTime();
+            Object result = null;
+            boolean failed = true;
+            try {
+                result = forward(statement, method, args);
+                failed = false;
+            } finally {
+                long nanos = System.nanoTime() - start;
+                String[] slowParameters = stats.isSlow(nanos)
+                        ? Arrays.copyOf(parameterTypes, parameterCount) : null;
+                boolean batch = name.equals("executeBatch") || name.equals("executeLargeBatch");
+                stats.record(template, nanos, updatedRows(result), failed, slowParameters, batch ? batchSize : 0);
+                if (batch) {
+                    batchSize = 0;
+                }
+            }
+
+            if (result instanceof ResultSet) {
+                return new CountingResultSet((ResultSet) result, template.rows);
+            }
+            return result;
+        }
+
+        private static long updatedRows(Object result) {
+            if (result instanceof Integer) {
+                return (Integer) result;
+            }
+            if (result instanceof Long) {
+                return (Long) result;
+            }
+            long rows = 0;
+            if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    // SUCCESS_NO_INFO means the driver does not know, so the row is not counted
+                    if (count > 0) {
+                        rows += count;
+                    }
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    if (count > 0) {
+                        rows += count;
+                    }
+                }
+            }
+            return rows;
+        }
+    }
+}
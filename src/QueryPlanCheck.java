@@ -0,0 +1,82 @@
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class runs EXPLAIN on the queries of the fetcher classes and reports any that read
+ * a whole table. Run it against a database with realistic data, since MySQL prefers a full
+ * scan on tables with only a handful of rows.
+ */
+public class QueryPlanCheck {
+
+    /**
+     * A query to explain together with sample parameter values.
+     *
+     * @param name   A name for the query used in the report.
+     * @param sql    The SQL text.
+     * @param params The sample parameters.
+     */
+    private record CheckedQuery(String name, String sql, Object... params) {
+    }
+
+    private static List<CheckedQuery> queries() {
+        Date today = new Date(System.currentTimeMillis());
+        return List.of(
+                new CheckedQuery("ProjectInfoFetcher.fetchProjectInfo", ProjectInfoFetcher.SELECT_PROJECT_SQL, 1),
+                new CheckedQuery("ProjectInfoFetcher.findIncompleteProjects", ProjectInfoFetcher.INCOMPLETE_PAGE_SQL, 0, 100),
+                new CheckedQuery("ProjectInfoFetcher.findOverdueProjects", ProjectInfoFetcher.OVERDUE_PAGE_SQL, today,
+                        Date.valueOf("1000-01-01"), Date.valueOf("1000-01-01"), 0, 100)
+        );
+    }
+
+    /**
+     * Explains every checked query and prints its plan.
+     *
+     * @param pool The connection pool to borrow a connection from.
+     * @return A description of each table read with a full scan, empty if there are none.
+     * @throws SQLException If a database error occurs or the database does not report MySQL style plans.
+     */
+    public static List<String> findFullScans(ConnectionPool pool) throws SQLException {
+        List<String> fullScans = new ArrayList<>();
+
+        try (Connection connection = pool.getConnection()) {
+            for (CheckedQuery query : queries()) {
+                try (PreparedStatement explainStatement = connection.prepareStatement("EXPLAIN " + query.sql())) {
+                    for (int i = 0; i < query.params().length; i++) {
+                        explainStatement.setObject(i + 1, query.params()[i]);
+                    }
+
+                    try (ResultSet resultSet = explainStatement.executeQuery()) {
+                        requireColumn(resultSet.getMetaData(), "type");
+
+                        while (resultSet.next()) {
+                            String table = resultSet.getString("table");
+                            String type = resultSet.getString("type");
+                            String key = resultSet.getString("key");
+                            System.out.println(query.name() + ": " + table + " type=" + type + " key=" + key);
+
+                            if ("ALL".equalsIgnoreCase(type)) {
+                                fullScans.add(query.name() + " scans all of " + table);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return fullScans;
+    }
+
+    private static void requireColumn(ResultSetMetaData metaData, String column) throws SQLException {
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (metaData.getColumnLabel(i).equalsIgnoreCase(column)) {
+                return;
+            }
+        }
+        throw new SQLException("EXPLAIN output has no " + column + " column, the plan check only supports MySQL");
+    }
+}
@@ -0,0 +1,285 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class collects the timings of the statements run through the connections of one pool,
+ * grouped by SQL template: the SQL text with its ? placeholders, with IN lists of any length
+ * counted as one template. Statements slower than the threshold are logged with the types of
+ * their parameters but never their values.
+ *
+ * <p>Connections are only instrumented if they are opened while collection is enabled, so a pool
+ * that never enables it pays nothing. Disabling it stops the recording on connections that are
+ * already instrumented; they lose their wrapper when the pool retires them.</p>
+ */
+public class QueryStats implements QueryStatsMBean, AutoCloseable {
+
+    // Beyond this many templates new ones are counted together, so generated SQL cannot grow the map forever
+    private static final int MAX_TEMPLATES = 500;
+    private static final String OTHER_TEMPLATE = "(other statements)";
+
+    private volatile boolean enabled;
+    private volatile long slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+    private ScheduledExecutorService dumper;
+    private ObjectName registeredName;
+
+    /**
+     * The counters of one SQL template.
+     */
+    public static final class Template {
+        final String sql;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder slow = new LongAdder();
+
+        Template(String sql) {
+            this.sql = sql;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getSlowCount() {
+            return slow.sum();
+        }
+
+        @Override
+        public String toString() {
+            long totalMillis = Math.round(latency.getMeanMicros() * latency.getCount() / 1000);
+            return String.format("%s%n    total=%dms rows=%d errors=%d slow=%d %s",
+                    sql, totalMillis, getRows(), getErrors(), getSlowCount(), latency);
+        }
+    }
+
+    /**
+     * Returns the counters for a statement, creating them on first use. Called once per prepared statement.
+     *
+     * @param sql The SQL text the statement was prepared with.
+     * @return The counters of its template.
+     */
+    Template template(String sql) {
+        String normalized = normalize(sql);
+        Template template = templates.get(normalized);
+        if (template != null) {
+            return template;
+        }
+        if (templates.size() >= MAX_TEMPLATES) {
+            return templates.computeIfAbsent(OTHER_TEMPLATE, Template::new);
+        }
+        return templates.computeIfAbsent(normalized, Template::new);
+    }
+
+    /**
+     * Collapses whitespace and IN lists of placeholders, so "IN (?, ?, ?)" and "IN (?)" are one template.
+     */
+    static String normalize(String sql) {
+        return sql.trim().replaceAll("\\s+", " ").replaceAll("(?i)\\bIN \\(\\?(, ?\\?)*\\)", "IN (?, ...)");
+    }
+
+    /**
+     * Records one execution.
+     *
+     * @param template       The template of the statement.
+     * @param nanos          How long the execution took.
+     * @param rows           The rows updated, or 0 for a query, whose rows are counted as they are read.
+     * @param failed         Whether the execution threw.
+     * @param parameterTypes The setter used for each parameter, for the slow query log, or null.
+     * @param batchSize      The number of rows in the batch, or 0 if it was not a batch.
+     */
+    void record(Template template, long nanos, long rows, boolean failed, String[] parameterTypes, int batchSize) {
+        template.latency.record(nanos);
+        if (rows > 0) {
+            template.rows.add(rows);
+        }
+        if (failed) {
+            template.errors.increment();
+        }
+        if (isSlow(nanos)) {
+            template.slow.increment();
+            logSlowQuery(template, nanos, rows, parameterTypes, batchSize);
+        }
+    }
+
+    boolean isSlow(long nanos) {
+        return nanos >= slowQueryThresholdNanos;
+    }
+
+    private static void logSlowQuery(Template template, long nanos, long rows, String[] parameterTypes, int batchSize) {
+        StringBuilder line = new StringBuilder("Slow query: ")
+                .append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(" ms");
+        if (rows > 0) {
+            line.append(", ").append(rows).append(" rows");
+        }
+        if (batchSize > 0) {
+            line.append(", batch of ").append(batchSize);
+        }
+        line.append(": ").append(template.sql);
+
+        // Only the type of each parameter is logged; the values may be names, emails or addresses
+        if (parameterTypes != null && parameterTypes.length > 0) {
+            line.append(" [");
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    line.append(", ");
+                }
+                // "setString" is logged as "String"
+                line.append(parameterTypes[i] == null ? "unset" : parameterTypes[i].substring(3));
+            }
+            line.append(']');
+        }
+        System.err.println(line);
+    }
+
+    // ================= Management ================= //
+
+    /**
+     * Registers these statistics with the platform MBean server as PoisePMS:type=QueryStats,name=the given name.
+     *
+     * @param name The name of the pool, to tell several pools apart.
+     * @throws JMException If the MBean cannot be registered.
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("PoisePMS:type=QueryStats,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredName = objectName;
+    }
+
+    /**
+     * Prints the report to standard output at a fixed interval until {@link #close()} is called.
+     *
+     * @param intervalSeconds The number of seconds between reports.
+     */
+    public synchronized void startPeriodicDump(long intervalSeconds) {
+        if (dumper != null) {
+            dumper.shutdownNow();
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "query-stats-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> System.out.println(getReport()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic dump and unregisters the MBean.
+     */
+    @Override
+    public synchronized void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+        if (registeredName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(registeredName);
+            } catch (JMException e) {
+                // Already gone, which is what closing wants
+            }
+            registeredName = null;
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns collection on or off. Turning it on only instruments connections opened afterwards.
+     */
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowQueryThresholdNanos);
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis);
+    }
+
+    @Override
+    public int getTemplateCount() {
+        return templates.size();
+    }
+
+    @Override
+    public long getExecutionCount() {
+        return templates.values().stream().mapToLong(template -> template.latency.getCount()).sum();
+    }
+
+    @Override
+    public long getSlowQueryCount() {
+        return templates.values().stream().mapToLong(Template::getSlowCount).sum();
+    }
+
+    /**
+     * Returns the counters of every template, the one with the most total time first.
+     */
+    public List<Template> getTemplates() {
+        List<Template> sorted = new ArrayList<>(templates.values());
+        sorted.sort(Comparator.comparingDouble(
+                (Template template) -> template.latency.getMeanMicros() * template.latency.getCount()).reversed());
+        return sorted;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder(String.format("QueryStats[templates=%d, executions=%d, slow=%d]",
+                getTemplateCount(), getExecutionCount(), getSlowQueryCount()));
+        for (Template template : getTemplates()) {
+            report.append(System.lineSeparator()).append("  ").append(template);
+        }
+        return report.toString();
+    }
+
+    /**
+     * Zeroes the counters of every template. The templates are kept, since open statements still refer to them.
+     */
+    @Override
+    public void reset() {
+        for (Template template : templates.values()) {
+            template.latency.reset();
+            template.rows.reset();
+            template.errors.reset();
+            template.slow.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getReport();
+    }
+}
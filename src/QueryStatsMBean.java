@@ -0,0 +1,26 @@
+/**
+ * The management interface of {@link QueryStats}, shown in JConsole and other JMX clients.
+ */
+public interface QueryStatsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getSlowQueryThresholdMillis();
+
+    void setSlowQueryThresholdMillis(long slowQueryThresholdMillis);
+
+    int getTemplateCount();
+
+    long getExecutionCount();
+
+    long getSlowQueryCount();
+
+    /**
+     * @return One line per SQL template with its execution count, rows, errors and latency percentiles.
+     */
+    String getReport();
+
+    void reset();
+}
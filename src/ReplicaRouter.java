@@ -0,0 +1,292 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class sends read-only queries to read replicas of the database and everything else to the
+ * primary. Reads are spread over the healthy replicas, each going to whichever has the fewest
+ * connections in use. A background check validates every replica at a fixed interval; a replica that
+ * fails the check, or fails a read with a connection error, gets no more reads until it passes again,
+ * and when no replica is healthy reads go to the primary. A replica whose connections are all in use
+ * is busy rather than broken: the read that could not get one goes to the primary, and the replica
+ * stays in use.
+ *
+ * <p>Replicas may lag behind the primary. A session that has just written reads from the primary
+ * until the read-your-writes window has passed, so it always sees its own changes. A session is the
+ * thread by default, or what {@link #setCurrentSession(String)} names, such as the user of an HTTP
+ * request. Rows changed by anyone within the window are also read from the primary by callers that
+ * check {@link #changedRecently(String, int)}, which the project cache does so it never keeps a stale
+ * copy. The window should be longer than the replicas ever lag.</p>
+ */
+public class ReplicaRouter implements ProjectChangeListener, AutoCloseable {
+
+    /**
+     * A read-only query run against whichever database the router picks.
+     */
+    public interface Query<T> {
+        T run(ConnectionPool pool) throws SQLException;
+    }
+
+    private static final ThreadLocal<String> CURRENT_SESSION = new ThreadLocal<>();
+
+    private final ConnectionPool primary;
+    private final List<Replica> replicas;
+    private final long readYourWritesNanos;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final Map<String, Long> lastWriteBySession = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastChangeByRow = new ConcurrentHashMap<>();
+    private ScheduledExecutorService healthChecker;
+
+    // Statistics
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong busyReads = new AtomicLong();
+
+    /**
+     * A replica's pool and what the router knows about it.
+     */
+    private static final class Replica {
+        final String name;
+        final ConnectionPool pool;
+        volatile boolean healthy = true;
+        final AtomicLong reads = new AtomicLong();
+
+        Replica(String name, ConnectionPool pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+    }
+
+    /**
+     * Creates a router. Reads go to the replicas straight away; call {@link #start(long)} to begin
+     * tracking writes and checking replica health.
+     *
+     * @param primary             The pool of the primary database, which the router does not close.
+     * @param replicaPools        The pools of the replicas, closed with the router.
+     * @param readYourWritesMillis How long after a write a session, or a changed row, is read from the primary.
+     */
+    public ReplicaRouter(ConnectionPool primary, List<ConnectionPool> replicaPools, long readYourWritesMillis) {
+        if (readYourWritesMillis < 0) {
+            throw new IllegalArgumentException("Read-your-writes window must not be negative");
+        }
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicaPools.size());
+        for (int i = 0; i < replicaPools.size(); i++) {
+            replicas.add(new Replica("replica-" + (i + 1), replicaPools.get(i)));
+        }
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesMillis);
+    }
+
+    /**
+     * Starts listening for writes and checking every replica at a fixed interval until {@link #close()}.
+     *
+     * @param healthCheckMillis The time between checks.
+     */
+    public synchronized void start(long healthCheckMillis) {
+        ProjectChanges.addListener(this);
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, healthCheckMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the health checks and closes the replica pools.
+     */
+    @Override
+    public synchronized void close() {
+        ProjectChanges.removeListener(this);
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+            healthChecker = null;
+        }
+        replicas.forEach(replica -> replica.pool.close());
+    }
+
+    /**
+     * Names the session the reads and writes of this thread belong to.
+     *
+     * @param session The session, or null for the thread itself.
+     */
+    public static void setCurrentSession(String session) {
+        if (session == null) {
+            CURRENT_SESSION.remove();
+        } else {
+            CURRENT_SESSION.set(session);
+        }
+    }
+
+    private static String currentSession() {
+        String session = CURRENT_SESSION.get();
+        return session != null ? session : "thread-" + Thread.currentThread().getId();
+    }
+
+    public ConnectionPool getPrimary() {
+        return primary;
+    }
+
+    // ================= Routing ================= //
+
+    /**
+     * Picks the database the current session reads from: the primary if the session wrote within the
+     * read-your-writes window or no replica is healthy, otherwise the healthy replica with the fewest
+     * connections in use.
+     *
+     * @return The pool to read from.
+     */
+    public ConnectionPool readPool() {
+        Replica replica = pickReplica();
+        if (replica == null) {
+            primaryReads.incrementAndGet();
+            return primary;
+        }
+        replica.reads.incrementAndGet();
+        return replica.pool;
+    }
+
+    private Replica pickReplica() {
+        Long lastWrite = lastWriteBySession.get(currentSession());
+        if (lastWrite != null && System.nanoTime() - lastWrite < readYourWritesNanos) {
+            return null;
+        }
+
+        // Start from a different replica each time, so ties are spread evenly
+        int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(1, replicas.size()));
+        Replica best = null;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.healthy && (best == null || replica.pool.getActiveConnections() < best.pool.getActiveConnections())) {
+                best = replica;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Runs a read-only query on the database {@link #readPool()} picks. If a replica fails it with a
+     * connection error it is marked unhealthy and the query is run again on the primary. If the replica
+     * has no free connection in time, the query runs on the primary but the replica stays healthy.
+     *
+     * @param query The query.
+     * @return What the query returned.
+     * @throws SQLException If the query fails on the primary, or fails on a replica for a reason other
+     *                      than the connection.
+     */
+    public <T> T read(Query<T> query) throws SQLException {
+        Replica replica = pickReplica();
+        if (replica == null) {
+            primaryReads.incrementAndGet();
+            return query.run(primary);
+        }
+        replica.reads.incrementAndGet();
+        try {
+            return query.run(replica.pool);
+        } catch (SQLTimeoutException e) {
+            // No connection came free in time, or the query timed out: the replica is busy, not down
+            busyReads.incrementAndGet();
+            primaryReads.incrementAndGet();
+            return query.run(primary);
+        } catch (SQLException e) {
+            // A pool that cannot open a connection, or is closed, gives no SQL state
+            if (e.getSQLState() != null && !ConnectionPool.isConnectionFailure(e)) {
+                throw e;
+            }
+            markUnhealthy(replica, e);
+            failovers.incrementAndGet();
+            primaryReads.incrementAndGet();
+            return query.run(primary);
+        }
+    }
+
+    /**
+     * @return Whether the row was changed within the read-your-writes window, by any session, so a
+     *         replica may not have the change yet.
+     */
+    public boolean changedRecently(String tableName, int rowId) {
+        Long lastChange = lastChangeByRow.get(tableName + ':' + rowId);
+        return lastChange != null && System.nanoTime() - lastChange < readYourWritesNanos;
+    }
+
+    @Override
+    public void onChange(ProjectChange change) {
+        // Called on the thread that made the change, right after it committed
+        long now = System.nanoTime();
+        lastWriteBySession.put(currentSession(), now);
+        if (change.projectNum() != 0) {
+            lastChangeByRow.put("PoisePMS:" + change.projectNum(), now);
+        }
+        if (change.isPersonChange()) {
+            lastChangeByRow.put(change.personTable() + ':' + change.personId(), now);
+        }
+    }
+
+    // ================= Health ================= //
+
+    private void checkHealth() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.pool.getConnection()) {
+                if (!connection.isValid(2)) {
+                    throw new SQLException("Connection is not valid");
+                }
+                if (!replica.healthy) {
+                    replica.healthy = true;
+                    System.err.println("Read replica " + replica.name + " is back, reads resume");
+                }
+            } catch (SQLTimeoutException e) {
+                // No connection free to check with; busy, which says nothing about its health
+            } catch (SQLException | RuntimeException e) {
+                markUnhealthy(replica, e);
+            }
+        }
+
+        // Forget writes older than the window, so the maps only hold recent sessions and rows
+        long now = System.nanoTime();
+        lastWriteBySession.values().removeIf(time -> now - time >= readYourWritesNanos);
+        lastChangeByRow.values().removeIf(time -> now - time >= readYourWritesNanos);
+    }
+
+    private void markUnhealthy(Replica replica, Exception cause) {
+        if (replica.healthy) {
+            replica.healthy = false;
+            System.err.println("Read replica " + replica.name + " failed, reading from the others: " + cause.getMessage());
+        }
+    }
+
+    // ================= Statistics ================= //
+
+    public int getHealthyReplicaCount() {
+        int healthy = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("ReplicaRouter[primaryReads=").append(primaryReads.get())
+                .append(", failovers=").append(failovers.get())
+                .append(", busyReads=").append(busyReads.get());
+        for (Replica replica : replicas) {
+            out.append(", ").append(replica.name).append(replica.healthy ? " up" : " down")
+                    .append(" reads=").append(replica.reads.get());
+        }
+        return out.append(']').toString();
+    }
+}
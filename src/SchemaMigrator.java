@@ -0,0 +1,118 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class applies versioned schema migrations on startup. Each migration runs once and is
+ * recorded in the Schema_version table, so the tables created by "Create-Database.sql" are brought
+ * up to date without manual steps.
+ */
+public class SchemaMigrator {
+
+    /**
+     * A numbered schema change made of one or more SQL statements.
+     *
+     * @param version     The version number, applied in ascending order.
+     * @param description What the migration does.
+     * @param statements  The SQL statements to run.
+     */
+    public record Migration(int version, String description, List<String> statements) {
+    }
+
+    private static final String CREATE_VERSION_TABLE_SQL = "CREATE TABLE IF NOT EXISTS Schema_version ("
+            + "Version INT PRIMARY KEY, "
+            + "Description VARCHAR(255) NOT NULL, "
+            + "Applied_on TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
+
+    private static final String SELECT_VERSIONS_SQL = "SELECT Version FROM Schema_version";
+
+    private static final String INSERT_VERSION_SQL = "INSERT INTO Schema_version (Version, Description) VALUES (?, ?)";
+
+    // Add new migrations to the end of this list, never change one that has been released
+    static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Covering index for incomplete project listing", List.of(
+                    // findIncompleteProjects: Finalized IS NULL AND Project_num > ? ORDER BY Project_num
+                    "CREATE INDEX idx_poisepms_finalized ON PoisePMS "
+                            + "(Finalized, Project_num, Project_name, Project_deadline)")),
+            new Migration(2, "Covering index for overdue project listing", List.of(
+                    // findOverdueProjects: Project_deadline < ?, paged by (Project_deadline, Project_num)
+                    "CREATE INDEX idx_poisepms_deadline ON PoisePMS "
+                            + "(Project_deadline, Project_num, Project_name)")),
+            new Migration(3, "Audit log table", List.of(
+                    "CREATE TABLE Audit_log ("
+                            + "Audit_id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                            + "Logged_at BIGINT NOT NULL, "
+                            + "Changed_by VARCHAR(255), "
+                            + "Action VARCHAR(16) NOT NULL, "
+                            + "Table_name VARCHAR(32) NOT NULL, "
+                            + "Row_id INT NOT NULL, "
+                            + "Before_values TEXT, "
+                            + "After_values TEXT)",
+                    // AuditTableSink.read: Table_name = ? AND Row_id = ? AND Logged_at > ?
+                    "CREATE INDEX idx_audit_log_row ON Audit_log (Table_name, Row_id, Logged_at)")),
+            new Migration(4, "Overdue listing index covers Finalized", List.of(
+                    // findOverdueProjects: Project_deadline < ? AND Finalized IS NULL, paged by (Project_deadline, Project_num)
+                    "CREATE INDEX idx_poisepms_deadline_open ON PoisePMS "
+                            + "(Project_deadline, Project_num, Finalized, Project_name)",
+                    "DROP INDEX idx_poisepms_deadline ON PoisePMS")),
+            new Migration(5, "Unfinalized projects have Finalized NULL", List.of(
+                    // Both listings select Finalized IS NULL, so a false flag would hide a project from them;
+                    // idx_poisepms_finalized and idx_poisepms_deadline_open serve that predicate
+                    "UPDATE PoisePMS SET Finalized = NULL WHERE Finalized = false",
+                    "ALTER TABLE PoisePMS ADD CONSTRAINT chk_poisepms_finalized CHECK (Finalized IS NULL OR Finalized = true)"))
+    );
+
+    /**
+     * Applies every migration that has not been applied yet.
+     *
+     * @param pool The connection pool to borrow a connection from.
+     * @return The number of migrations applied.
+     * @throws SQLException If a migration fails. Migrations before it stay applied.
+     */
+    public static int migrate(ConnectionPool pool) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_VERSION_TABLE_SQL);
+            }
+
+            Set<Integer> appliedVersions = new HashSet<>();
+            try (PreparedStatement selectStatement = connection.prepareStatement(SELECT_VERSIONS_SQL);
+                 ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    appliedVersions.add(resultSet.getInt(1));
+                }
+            }
+
+            int applied = 0;
+            for (Migration migration : MIGRATIONS) {
+                if (!appliedVersions.contains(migration.version())) {
+                    apply(connection, migration);
+                    applied++;
+                }
+            }
+            return applied;
+        }
+    }
+
+    private static void apply(Connection connection, Migration migration) throws SQLException {
+        System.out.println("Applying schema migration " + migration.version() + ": " + migration.description());
+
+        // MySQL commits DDL implicitly, so the version row is written only after every statement succeeded
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : migration.statements()) {
+                statement.execute(sql);
+            }
+        }
+
+        try (PreparedStatement insertStatement = connection.prepareStatement(INSERT_VERSION_SQL)) {
+            insertStatement.setInt(1, migration.version());
+            insertStatement.setString(2, migration.description());
+            insertStatement.executeUpdate();
+        }
+    }
+}
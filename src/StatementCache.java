@@ -0,0 +1,296 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * This class keeps the prepared statements of one physical connection so that SQL which never
+ * changes is only parsed and prepared once. Statements are kept in least recently used order
+ * and keyed by their SQL text.
+ */
+public class StatementCache {
+
+    // The settings a borrower may change that are put back when the statement returns to the cache
+    private static final Set<String> RESET_SETTERS = Set.of("setFetchSize", "setMaxRows", "setLargeMaxRows", "setQueryTimeout");
+
+    private final Connection physical;
+    private final int maxSize;
+    private final Stats stats;
+    private final Consumer<SQLException> failureListener;
+    private final LinkedHashMap<String, CachedStatement> statements;
+    private boolean closed;
+
+    /**
+     * Creates a statement cache for a physical connection.
+     *
+     * @param physical The connection the statements are prepared on.
+     * @param maxSize  The maximum number of statements to keep.
+     * @param stats    The counters shared by all caches of a pool.
+     * @param failureListener Told of every error a cached statement raises, so the pool can
+     *                        tell when the connection has failed.
+     */
+    public StatementCache(Connection physical, int maxSize, Stats stats, Consumer<SQLException> failureListener) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.stats = stats;
+        this.failureListener = failureListener;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns a prepared statement for the given SQL, reusing a cached one when possible.
+     * Closing the returned statement puts it back in the cache.
+     *
+     * @param sql               The SQL text of the statement.
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS.
+     * @param owner             The connection the borrower holds, returned by getConnection().
+     * @return A prepared statement that is ready to have its parameters set.
+     * @throws SQLException If a database error occurs.
+     */
+    public synchronized PreparedStatement prepare(String sql, int autoGeneratedKeys, Connection owner) throws SQLException {
+        if (closed) {
+            throw new SQLException("Statement cache is closed");
+        }
+
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? sql + "\u0000keys" : sql;
+        CachedStatement cached = statements.get(key);
+
+        if (cached != null && !cached.inUse) {
+            stats.hits.incrementAndGet();
+            cached.inUse = true;
+            return cached.newHandle(owner);
+        }
+
+        stats.misses.incrementAndGet();
+        PreparedStatement statement = physical.prepareStatement(sql, autoGeneratedKeys);
+
+        if (cached != null) {
+            // The cached statement is already open elsewhere on this connection, so hand out one that is not cached
+            CachedStatement uncached = new CachedStatement(statement);
+            uncached.evicted = true;
+            uncached.inUse = true;
+            return uncached.newHandle(owner);
+        }
+
+        cached = new CachedStatement(statement);
+        cached.inUse = true;
+        statements.put(key, cached);
+        evictOverflow();
+        return cached.newHandle(owner);
+    }
+
+    private void evictOverflow() {
+        Iterator<CachedStatement> iterator = statements.values().iterator();
+        while (statements.size() > maxSize && iterator.hasNext()) {
+            CachedStatement eldest = iterator.next();
+            iterator.remove();
+            stats.evictions.incrementAndGet();
+            eldest.evicted = true;
+            if (!eldest.inUse) {
+                closeQuietly(eldest.statement);
+            }
+        }
+    }
+
+    private synchronized void checkIn(CachedStatement cached) throws SQLException {
+        cached.inUse = false;
+        if (cached.evicted || closed) {
+            cached.statement.close();
+            return;
+        }
+        try {
+            cached.statement.clearParameters();
+            cached.statement.clearBatch();
+            if (cached.defaults != null) {
+                // A borrower changed how the statement runs, so the next one gets the settings it was prepared with
+                cached.statement.setFetchSize(cached.defaults[0]);
+                cached.statement.setMaxRows(cached.defaults[1]);
+                cached.statement.setQueryTimeout(cached.defaults[2]);
+                cached.defaults = null;
+            }
+        } catch (SQLException e) {
+            // A statement that cannot be reset is not safe to reuse
+            statements.values().remove(cached);
+            closeQuietly(cached.statement);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes every cached statement. Called when the physical connection is closed.
+     */
+    public synchronized void close() {
+        closed = true;
+        for (CachedStatement cached : statements.values()) {
+            closeQuietly(cached.statement);
+        }
+        statements.clear();
+    }
+
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    private static boolean isClosedQuietly(ResultSet resultSet) {
+        try {
+            return resultSet.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // The statement is being thrown away, so there is nothing more to do
+        }
+    }
+
+    /**
+     * Hit, miss and eviction counters shared by the statement caches of one connection pool.
+     */
+    public static class Stats {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        public long getEvictions() {
+            return evictions.get();
+        }
+
+        public double getHitRatio() {
+            long total = hits.get() + misses.get();
+            return total == 0 ? 0 : (double) hits.get() / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("StatementCache[hits=%d, misses=%d, evictions=%d, hitRatio=%.2f]",
+                    getHits(), getMisses(), getEvictions(), getHitRatio());
+        }
+    }
+
+    /**
+     * A physical prepared statement owned by the cache.
+     */
+    private final class CachedStatement {
+        final PreparedStatement statement;
+        boolean inUse;
+        boolean evicted;
+        // Fetch size, max rows and query timeout before a borrower first changed them, or null if unchanged
+        int[] defaults;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement newHandle(Connection owner) {
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new Handle(this, owner));
+        }
+    }
+
+    /**
+     * Forwards calls to the cached statement, except close() which returns it to the cache and
+     * getConnection() which returns the borrower's connection rather than the physical one.
+     * Result sets opened through the handle are closed when the handle is closed.
+     */
+    private final class Handle implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection owner;
+        private final List<ResultSet> openResultSets = new ArrayList<>(1);
+        private boolean released;
+
+        Handle(CachedStatement cached, Connection owner) {
+            this.cached = cached;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        for (ResultSet resultSet : openResultSets) {
+                            resultSet.close();
+                        }
+                        checkIn(cached);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || cached.statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + cached.statement;
+                default:
+                    break;
+            }
+
+            if (released) {
+                throw new SQLException("Statement has already been closed");
+            }
+
+            switch (method.getName()) {
+                case "getConnection":
+                    return owner;
+                case "unwrap":
+                    // Only this handle is handed out; unwrapping to the driver's statement is not allowed
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    throw new SQLException("Cached statement does not wrap " + ((Class<?>) args[0]).getName());
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                default:
+                    break;
+            }
+
+            Object result;
+            try {
+                if (cached.defaults == null && RESET_SETTERS.contains(method.getName())) {
+                    cached.defaults = new int[]{cached.statement.getFetchSize(), cached.statement.getMaxRows(),
+                            cached.statement.getQueryTimeout()};
+                }
+                result = method.invoke(cached.statement, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    failureListener.accept((SQLException) cause);
+                }
+                throw cause;
+            }
+            if (result instanceof ResultSet) {
+                // A statement run many times keeps only its result sets that are still open
+                openResultSets.removeIf(StatementCache::isClosedQuietly);
+                openResultSets.add((ResultSet) result);
+            }
+            return result;
+        }
+    }
+}